@@ -0,0 +1,87 @@
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Memori per appointment: Appointment sekarang (tanpa daftar observer) dibanding layout lama,
+// di mana setiap appointment membawa CopyOnWriteArrayList berisi pasien dan dokternya.
+// Juga mengukur biaya langganan AppointmentEventBus, yang dibayar per pasien/dokter, bukan per appointment.
+//
+//   javac -encoding UTF-8 -d bin src/DoctorSchedulingApp.java
+//   javac -encoding UTF-8 -cp bin -d bin bench/AppointmentMemoryBenchmark.java
+//   java -Xmx2g -cp bin AppointmentMemoryBenchmark
+public class AppointmentMemoryBenchmark {
+    private static final int APPOINTMENTS = 1_000_000;
+    private static final int PATIENTS = 100_000;
+    private static final int DOCTORS = 500;
+
+    // Menjaga semua objek tetap hidup sampai pengukuran selesai
+    static volatile Object sink;
+
+    public static void main(String[] args) {
+        Patient[] patients = new Patient[PATIENTS];
+        for (int i = 0; i < PATIENTS; i++) {
+            patients[i] = new Patient(IdAllocator.format('P', i + 1), "Pasien " + i, "p" + i + "@mail.com", "0800", "-");
+        }
+        Doctor[] doctors = new Doctor[DOCTORS];
+        for (int i = 0; i < DOCTORS; i++) {
+            doctors[i] = new Doctor(IdAllocator.format('D', i + 1), "Dr. " + i, "Umum");
+        }
+
+        long base = usedMemory();
+        Appointment[] appointments = createAppointments();
+        long current = usedMemory() - base;
+
+        // Layout lama: observer list per appointment, terisi saat booking
+        List<Observer>[] legacyObservers = createLegacyObservers(patients, doctors);
+        long legacy = usedMemory() - base;
+
+        System.out.printf("%-34s %8.1f MB %8.1f B/appointment%n", "Appointment + observer list (lama)",
+                          legacy / 1e6, (double) legacy / APPOINTMENTS);
+        System.out.printf("%-34s %8.1f MB %8.1f B/appointment%n", "Appointment (event bus)",
+                          current / 1e6, (double) current / APPOINTMENTS);
+        System.out.printf("%-34s %8.1f MB %8.1f B/appointment%n", "hemat",
+                          (legacy - current) / 1e6, (double) (legacy - current) / APPOINTMENTS);
+
+        long beforeBus = usedMemory();
+        AppointmentEventBus bus = new AppointmentEventBus();
+        for (Patient patient : patients) {
+            bus.subscribePatient(patient.getId(), patient);
+        }
+        for (Doctor doctor : doctors) {
+            bus.subscribeDoctor(doctor.getId(), doctor);
+        }
+        long busBytes = usedMemory() - beforeBus;
+        System.out.printf("%-34s %8.1f MB %8.1f B/pengguna (%d pengguna)%n", "langganan event bus",
+                          busBytes / 1e6, (double) busBytes / (PATIENTS + DOCTORS), PATIENTS + DOCTORS);
+
+        sink = new Object[] {appointments, legacyObservers, bus};
+    }
+
+    private static Appointment[] createAppointments() {
+        Appointment[] appointments = new Appointment[APPOINTMENTS];
+        for (int i = 0; i < APPOINTMENTS; i++) {
+            appointments[i] = new Appointment(IdAllocator.format('A', i + 1),
+                                              IdAllocator.format('P', 1 + i % PATIENTS), IdAllocator.format('S', i + 1));
+        }
+        return appointments;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Observer>[] createLegacyObservers(Patient[] patients, Doctor[] doctors) {
+        List<Observer>[] lists = new List[APPOINTMENTS];
+        for (int i = 0; i < APPOINTMENTS; i++) {
+            List<Observer> observers = new CopyOnWriteArrayList<>();
+            observers.add(patients[i % PATIENTS]);
+            observers.add(doctors[i % DOCTORS]);
+            lists[i] = observers;
+        }
+        return lists;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
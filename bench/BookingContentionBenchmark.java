@@ -0,0 +1,165 @@
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Throughput booking dengan 1 - 64 thread pada satu Database.
+// Setiap thread memesan jadwal yang berbeda dari dokter acak lewat Database.bookSchedule.
+// Di akhir, semua thread berebut beberapa slot yang sama untuk memeriksa tidak ada double booking.
+//
+//   java -cp bin BookingContentionBenchmark
+public class BookingContentionBenchmark {
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+    private static final int DOCTORS = 200;
+    private static final int PATIENTS = 10000;
+    private static final int BOOKINGS_PER_RUN = 20000;
+    private static final int HOT_SLOTS = 16;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("clinic-contention");
+        try {
+            int totalSchedules = BOOKINGS_PER_RUN * (THREADS.length + 1);
+            generate(dir, totalSchedules);
+            Database db = new Database(dir.toString());
+            List<String> scheduleIds = new ArrayList<>();
+            for (int i = 1; i <= totalSchedules; i++) {
+                scheduleIds.add(IdAllocator.format('S', i));
+            }
+            Collections.shuffle(scheduleIds, new Random(42));
+
+            // Run pertama sebagai warmup JIT
+            run(db, scheduleIds.subList(0, BOOKINGS_PER_RUN), 4);
+
+            System.out.printf("%-8s %-14s %-14s%n", "threads", "bookings/s", "avg us/booking");
+            int offset = BOOKINGS_PER_RUN;
+            for (int threads : THREADS) {
+                List<String> slice = scheduleIds.subList(offset, offset + BOOKINGS_PER_RUN);
+                offset += BOOKINGS_PER_RUN;
+                long elapsed = run(db, slice, threads);
+                System.out.printf("%-8d %-14.0f %-14.1f%n", threads,
+                                  BOOKINGS_PER_RUN / (elapsed / 1e9), elapsed / 1e3 / BOOKINGS_PER_RUN * threads);
+            }
+            hotSlots(db, generateExtra(db, HOT_SLOTS));
+            db.shutdown();
+        } finally {
+            try (java.util.stream.Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    private static long run(Database db, List<String> scheduleIds, int threads) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int first = t;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = first; i < scheduleIds.size(); i += threads) {
+                    book(db, IdAllocator.format('P', 1 + i % PATIENTS), scheduleIds.get(i));
+                }
+                return null;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        long elapsed = System.nanoTime() - begin;
+        pool.shutdown();
+        return elapsed;
+    }
+
+    // Semua thread berebut slot yang sama; setiap slot harus punya tepat satu pemenang
+    private static void hotSlots(Database db, List<String> scheduleIds) throws Exception {
+        int threads = THREADS[THREADS.length - 1];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AtomicInteger winners = new AtomicInteger();
+        AtomicInteger losers = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final String patientId = IdAllocator.format('P', 1 + t);
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (String scheduleId : scheduleIds) {
+                    if (db.bookSchedule(patientId, scheduleId).getStatus() == BookingResult.Status.BOOKED) {
+                        winners.incrementAndGet();
+                    } else {
+                        losers.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        long elapsed = System.nanoTime() - begin;
+        pool.shutdown();
+        int appointments = 0;
+        for (String scheduleId : scheduleIds) {
+            appointments += db.getDoctorAppointments(db.getSchedule(scheduleId).getDoctorId()).stream()
+                .filter(a -> a.getScheduleId().equals(scheduleId)).count();
+        }
+        System.out.printf("hot slots: %d slot x %d thread, %d menang, %d ditolak, %d appointment, %.1f ms%n",
+                          scheduleIds.size(), threads, winners.get(), losers.get(), appointments, elapsed / 1e6);
+        if (winners.get() != scheduleIds.size() || appointments != scheduleIds.size()) {
+            throw new IllegalStateException("double booking terdeteksi");
+        }
+    }
+
+    private static List<String> generateExtra(Database db, int count) {
+        List<Schedule> batch = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        LocalDate date = LocalDate.now().plusDays(30);
+        for (int i = 0; i < count; i++) {
+            Schedule schedule = new Schedule(db.generateScheduleId(), "D001", date,
+                                             LocalTime.of(8, 0).plusMinutes(30L * i), LocalTime.of(8, 30).plusMinutes(30L * i));
+            batch.add(schedule);
+            ids.add(schedule.getId());
+        }
+        List<ScheduleConflict> conflicts = db.addSchedules(batch);
+        if (!conflicts.isEmpty()) {
+            throw new IllegalStateException(conflicts.get(0).getReason());
+        }
+        return ids;
+    }
+
+    private static void book(Database db, String patientId, String scheduleId) {
+        db.bookSchedule(patientId, scheduleId);
+    }
+
+    private static void generate(Path dir, int schedules) throws IOException {
+        Random random = new Random(7);
+        LocalDate day = LocalDate.of(2026, 1, 1);
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(dir.resolve("doctors.txt")))) {
+            for (int d = 1; d <= DOCTORS; d++) {
+                pw.println(IdAllocator.format('D', d) + "|Dr. Bench " + d + "|Umum");
+            }
+        }
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(dir.resolve("patients.txt")))) {
+            for (int p = 1; p <= PATIENTS; p++) {
+                pw.println(IdAllocator.format('P', p) + "|Pasien " + p + "|p" + p + "@mail.com|0800|-");
+            }
+        }
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(dir.resolve("schedules.txt")))) {
+            for (int i = 1; i <= schedules; i++) {
+                String doctorId = IdAllocator.format('D', 1 + random.nextInt(DOCTORS));
+                int hour = 8 + (i % 9);
+                pw.printf("%s|%s|%s|%02d:00|%02d:30|true%n", IdAllocator.format('S', i), doctorId,
+                          day.plusDays(i / 2000), hour, hour);
+            }
+        }
+        // Counter lanjut setelah data hasil generate, agar jadwal tambahan tidak menimpa ID yang ada
+        Files.write(dir.resolve("counters.txt"), Arrays.asList(
+            String.valueOf(PATIENTS + 1), String.valueOf(DOCTORS + 1), String.valueOf(schedules + 1), "1", "1"));
+    }
+}
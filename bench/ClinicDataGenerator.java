@@ -0,0 +1,307 @@
+import java.io.*;
+import java.nio.file.*;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+
+// Data klinik sintetis dalam skala besar untuk sizing hardware dan load test.
+// Menulis patients/doctors/schedules/appointments/histories.txt dan counters.txt,
+// lalu (default) snapshot.bin lewat checkpoint Database.
+//
+// Distribusi:
+//  - Spesialisasi berbobot (dokter umum terbanyak); durasi slot per spesialisasi (15 - 30 menit).
+//  - Dokter praktik 4 - 6 hari per minggu (Senin - Sabtu) pada sesi pagi, siang atau malam.
+//  - Tingkat booking turun untuk tanggal yang makin jauh ke depan; sesi pagi paling diminati.
+//  - Slot yang sudah lewat: sebagian besar selesai (dengan riwayat), sisanya batal atau tidak datang.
+//  - Frekuensi kunjungan pasien condong (sebagian kecil pasien sering datang).
+//
+//   javac -encoding UTF-8 -d bin src/DoctorSchedulingApp.java
+//   javac -encoding UTF-8 -cp bin -d bin bench/ClinicDataGenerator.java
+//   java -cp bin ClinicDataGenerator --out data-large --patients 200000 --doctors 500 --days-back 90 --days-ahead 30
+public class ClinicDataGenerator {
+    private static final String[] SPECIALIZATIONS = {
+        "Umum", "Pediatri", "Penyakit Dalam", "Kandungan", "Gigi",
+        "Kardiologi", "Orthopedi", "Saraf", "Kulit", "THT"
+    };
+    private static final int[] SPECIALIZATION_WEIGHTS = {40, 12, 10, 8, 8, 5, 5, 4, 4, 4};
+    private static final int[] SLOT_MINUTES = {15, 20, 20, 30, 30, 30, 20, 30, 15, 15};
+    private static final String[][] DIAGNOSES = {
+        {"ISPA", "Demam", "Gastritis", "Hipertensi ringan", "Sakit kepala"},
+        {"Demam anak", "Diare", "Imunisasi", "Batuk pilek"},
+        {"Diabetes melitus", "Hipertensi", "Dislipidemia", "Anemia"},
+        {"Kontrol kehamilan", "Anemia kehamilan", "Kista ovarium"},
+        {"Karies gigi", "Gingivitis", "Pencabutan gigi"},
+        {"Penyakit jantung koroner", "Aritmia", "Gagal jantung"},
+        {"Osteoartritis", "Fraktur", "Nyeri punggung bawah"},
+        {"Migrain", "Vertigo", "Stroke ringan"},
+        {"Dermatitis", "Jerawat", "Psoriasis"},
+        {"Otitis media", "Sinusitis", "Tonsilitis"}
+    };
+    private static final String[] FIRST_NAMES = {
+        "Andi", "Budi", "Citra", "Dewi", "Eko", "Fitri", "Gilang", "Hana", "Indra", "Joko",
+        "Kartika", "Lestari", "Maya", "Nanda", "Oki", "Putri", "Rizky", "Sari", "Teguh", "Wulan",
+        "Yusuf", "Zahra", "Agus", "Bayu", "Dian", "Fajar", "Intan", "Rahmat", "Siti", "Taufik"
+    };
+    private static final String[] LAST_NAMES = {
+        "Pratama", "Saputra", "Wijaya", "Hidayat", "Nugroho", "Lestari", "Santoso", "Kurniawan",
+        "Setiawan", "Siregar", "Nasution", "Harahap", "Simanjuntak", "Putra", "Rahmawati", "Anggraini"
+    };
+    private static final String[] CITIES = {
+        "Banda Aceh", "Medan", "Padang", "Pekanbaru", "Palembang", "Jakarta", "Bandung", "Semarang",
+        "Yogyakarta", "Surabaya", "Denpasar", "Makassar"
+    };
+    // Sesi praktik: jam mulai, jumlah jam, bobot minat booking
+    private static final int[][] SESSIONS = {{8, 4, 100}, {13, 4, 80}, {18, 3, 70}};
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = parseOptions(args);
+        Path out = Paths.get(options.getOrDefault("out", "data-generated"));
+        Config config = new Config();
+        config.patients = Integer.parseInt(options.getOrDefault("patients", "10000"));
+        config.doctors = Integer.parseInt(options.getOrDefault("doctors", "50"));
+        config.daysBack = Integer.parseInt(options.getOrDefault("days-back", "60"));
+        config.daysAhead = Integer.parseInt(options.getOrDefault("days-ahead", "30"));
+        config.pastBookingRate = Double.parseDouble(options.getOrDefault("past-booking-rate", "0.85"));
+        config.nextDayBookingRate = Double.parseDouble(options.getOrDefault("booking-rate", "0.75"));
+        config.completionRate = Double.parseDouble(options.getOrDefault("completion-rate", "0.88"));
+        config.cancellationRate = Double.parseDouble(options.getOrDefault("cancellation-rate", "0.05"));
+        config.seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        config.today = LocalDate.parse(options.getOrDefault("today", LocalDate.now().toString()));
+        boolean snapshot = !options.getOrDefault("snapshot", "true").equals("false");
+
+        long start = System.nanoTime();
+        Stats stats = generate(out, config);
+        System.out.printf("Data ditulis ke %s dalam %d ms%n", out, (System.nanoTime() - start) / 1_000_000);
+        System.out.println(stats);
+        if (snapshot) {
+            // Memuat .txt sekali lalu checkpoint, sehingga snapshot.bin ikut tersedia
+            long snapshotStart = System.nanoTime();
+            Database db = new Database(out.toString());
+            db.checkpoint();
+            db.close();
+            System.out.printf("snapshot.bin ditulis dalam %d ms%n", (System.nanoTime() - snapshotStart) / 1_000_000);
+        }
+    }
+
+    static class Config {
+        int patients;
+        int doctors;
+        int daysBack;
+        int daysAhead;
+        double pastBookingRate;
+        double nextDayBookingRate;
+        double completionRate;
+        double cancellationRate;
+        long seed;
+        LocalDate today;
+    }
+
+    static class Stats {
+        long patients;
+        long doctors;
+        long schedules;
+        long appointments;
+        long completed;
+        long cancelled;
+        long noShow;
+        long upcoming;
+        final Map<String, Integer> doctorsBySpecialization = new TreeMap<>();
+
+        @Override
+        public String toString() {
+            return String.format("pasien %,d | dokter %,d %s%njadwal %,d | appointment %,d (selesai %,d, batal %,d, "
+                                 + "tidak datang %,d, akan datang %,d)",
+                                 patients, doctors, doctorsBySpecialization, schedules, appointments,
+                                 completed, cancelled, noShow, upcoming);
+        }
+    }
+
+    static Stats generate(Path out, Config config) throws IOException {
+        Files.createDirectories(out);
+        for (String stale : new String[] {"journal.log", "snapshot.bin", "snapshot.idx"}) {
+            Files.deleteIfExists(out.resolve(stale));
+        }
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(out, "journal-*.log")) {
+            for (Path segment : segments) {
+                Files.delete(segment);
+            }
+        }
+        Path histories = out.resolve("histories");
+        if (Files.isDirectory(histories)) {
+            try (java.util.stream.Stream<Path> paths = Files.walk(histories)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        Random random = new Random(config.seed);
+        Stats stats = new Stats();
+
+        try (PrintWriter pw = writer(out, "patients.txt")) {
+            for (int p = 1; p <= config.patients; p++) {
+                String first = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+                String last = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+                pw.println(IdAllocator.format('P', p) + "|" + first + " " + last + "|"
+                           + first.toLowerCase() + "." + last.toLowerCase() + p + "@mail.com|08"
+                           + (1000000000L + random.nextInt(900000000)) + "|" + CITIES[random.nextInt(CITIES.length)]);
+            }
+        }
+        stats.patients = config.patients;
+
+        int[] specialization = new int[config.doctors];
+        try (PrintWriter pw = writer(out, "doctors.txt")) {
+            for (int d = 0; d < config.doctors; d++) {
+                specialization[d] = weighted(random, SPECIALIZATION_WEIGHTS);
+                String name = "Dr. " + FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+                              + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+                pw.println(IdAllocator.format('D', d + 1) + "|" + name + "|" + SPECIALIZATIONS[specialization[d]]);
+                stats.doctorsBySpecialization.merge(SPECIALIZATIONS[specialization[d]], 1, Integer::sum);
+            }
+        }
+        stats.doctors = config.doctors;
+
+        long scheduleSeq = 0;
+        long appointmentSeq = 0;
+        long historySeq = 0;
+        LocalDate first = config.today.minusDays(config.daysBack);
+        LocalDate last = config.today.plusDays(config.daysAhead);
+        try (PrintWriter ps = writer(out, "schedules.txt");
+             PrintWriter pa = writer(out, "appointments.txt");
+             PrintWriter ph = writer(out, "histories.txt")) {
+            for (int d = 0; d < config.doctors; d++) {
+                String doctorId = IdAllocator.format('D', d + 1);
+                int spec = specialization[d];
+                int slotMinutes = SLOT_MINUTES[spec];
+                // Hari praktik tetap per dokter (4 - 6 hari), satu atau dua sesi per hari
+                boolean[] workDays = new boolean[7];
+                int daysPerWeek = 4 + random.nextInt(3);
+                List<Integer> weekdays = new ArrayList<>(Arrays.asList(0, 1, 2, 3, 4, 5));
+                Collections.shuffle(weekdays, random);
+                for (int i = 0; i < daysPerWeek; i++) {
+                    workDays[weekdays.get(i)] = true;
+                }
+                int mainSession = weighted(random, new int[] {55, 30, 15});
+                int secondSession = random.nextInt(4) == 0 ? (mainSession + 1) % SESSIONS.length : -1;
+
+                for (LocalDate date = first; !date.isAfter(last); date = date.plusDays(1)) {
+                    DayOfWeek dow = date.getDayOfWeek();
+                    if (!workDays[dow.getValue() - 1]) {
+                        continue;
+                    }
+                    for (int session : new int[] {mainSession, secondSession}) {
+                        if (session < 0) {
+                            continue;
+                        }
+                        LocalTime time = LocalTime.of(SESSIONS[session][0], 0);
+                        LocalTime end = time.plusHours(SESSIONS[session][1]);
+                        while (!time.plusMinutes(slotMinutes).isAfter(end)) {
+                            String scheduleId = IdAllocator.format('S', ++scheduleSeq);
+                            LocalTime slotEnd = time.plusMinutes(slotMinutes);
+                            double rate = bookingRate(config, date, session, time, SESSIONS[session]);
+                            boolean booked = random.nextDouble() < rate;
+                            String status = null;
+                            if (booked) {
+                                boolean past = date.isBefore(config.today);
+                                double roll = random.nextDouble();
+                                if (roll < config.cancellationRate) {
+                                    status = Appointment.STATUS_CANCELLED;
+                                } else if (past && roll < config.cancellationRate + config.completionRate) {
+                                    status = Appointment.STATUS_DONE;
+                                } else {
+                                    status = Appointment.STATUS_BOOKED;
+                                }
+                            }
+                            // Slot kosong jika tidak dipesan atau appointment-nya dibatalkan
+                            boolean available = status == null || status.equals(Appointment.STATUS_CANCELLED);
+                            ps.println(scheduleId + "|" + doctorId + "|" + date + "|" + time + "|" + slotEnd + "|"
+                                       + available);
+                            if (status != null) {
+                                String appointmentId = IdAllocator.format('A', ++appointmentSeq);
+                                LocalDate bookedOn = date.minusDays(leadTimeDays(random));
+                                pa.println(appointmentId + "|" + IdAllocator.format('P', 1 + skewedPatient(random, config.patients))
+                                           + "|" + scheduleId + "|" + bookedOn + "|" + status);
+                                if (status.equals(Appointment.STATUS_DONE)) {
+                                    String[] options = DIAGNOSES[spec];
+                                    ph.println(IdAllocator.format('H', ++historySeq) + "|" + appointmentId + "|" + date + "|"
+                                               + options[random.nextInt(options.length)] + "|"
+                                               + (random.nextInt(3) == 0 ? "Kontrol 1 minggu lagi" : "-"));
+                                    stats.completed++;
+                                } else if (status.equals(Appointment.STATUS_CANCELLED)) {
+                                    stats.cancelled++;
+                                } else if (date.isBefore(config.today)) {
+                                    stats.noShow++;
+                                } else {
+                                    stats.upcoming++;
+                                }
+                            }
+                            time = slotEnd;
+                        }
+                    }
+                }
+            }
+        }
+        stats.schedules = scheduleSeq;
+        stats.appointments = appointmentSeq;
+
+        Files.write(out.resolve("counters.txt"), Arrays.asList(
+            String.valueOf(config.patients + 1), String.valueOf(config.doctors + 1), String.valueOf(scheduleSeq + 1),
+            String.valueOf(appointmentSeq + 1), String.valueOf(historySeq + 1)));
+        return stats;
+    }
+
+    // Slot lampau hampir penuh; slot mendatang makin kosong semakin jauh tanggalnya.
+    // Sesi pagi dan jam awal tiap sesi lebih diminati.
+    private static double bookingRate(Config config, LocalDate date, int session, LocalTime time, int[] sessionDef) {
+        double base;
+        long ahead = date.toEpochDay() - config.today.toEpochDay();
+        if (ahead < 0) {
+            base = config.pastBookingRate;
+        } else {
+            base = config.nextDayBookingRate * Math.exp(-ahead / 10.0);
+        }
+        double sessionFactor = sessionDef[2] / 100.0;
+        double hourIntoSession = time.getHour() - sessionDef[0] + time.getMinute() / 60.0;
+        double earlyFactor = 1.1 - 0.2 * hourIntoSession / sessionDef[1];
+        return Math.min(0.98, base * sessionFactor * earlyFactor);
+    }
+
+    // Sebagian besar booking dibuat 0 - 7 hari sebelumnya, sebagian kecil hingga sebulan
+    private static int leadTimeDays(Random random) {
+        return random.nextInt(4) == 0 ? random.nextInt(30) : random.nextInt(8);
+    }
+
+    // Pasien dengan indeks kecil lebih sering datang (kurang lebih 20% pasien = separuh kunjungan)
+    private static int skewedPatient(Random random, int patients) {
+        return (int) Math.min(patients - 1, patients * Math.pow(random.nextDouble(), 2.3));
+    }
+
+    private static int weighted(Random random, int[] weights) {
+        int total = 0;
+        for (int w : weights) {
+            total += w;
+        }
+        int roll = random.nextInt(total);
+        for (int i = 0; i < weights.length; i++) {
+            roll -= weights[i];
+            if (roll < 0) {
+                return i;
+            }
+        }
+        return weights.length - 1;
+    }
+
+    private static PrintWriter writer(Path dir, String name) throws IOException {
+        return new PrintWriter(new BufferedWriter(Files.newBufferedWriter(dir.resolve(name)), 1 << 16));
+    }
+
+    // --nama nilai
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Argumen tidak valid: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+}
@@ -0,0 +1,249 @@
+import java.io.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Load driver untuk Database: memutar trafik booking, pembatalan dan penyelesaian konsultasi
+// pada laju target (open-loop) terhadap data dari ClinicDataGenerator.
+// Setiap operasi punya waktu mulai terjadwal; latensi dihitung dari jadwal itu, bukan dari saat
+// thread sempat menjalankannya, sehingga antrean saat sistem lambat ikut terukur.
+//
+//   javac -encoding UTF-8 -d bin src/DoctorSchedulingApp.java
+//   javac -encoding UTF-8 -cp bin -d bin bench/ClinicDataGenerator.java bench/ClinicLoadDriver.java
+//   java -cp bin ClinicDataGenerator --out data-large --patients 200000 --doctors 500
+//   java -cp bin ClinicLoadDriver --data data-large --rate 2000 --duration 60 --threads 16 --mix book=70,cancel=10,complete=20
+public class ClinicLoadDriver {
+    private static final String[] OPERATIONS = {"book", "cancel", "complete"};
+    private static final int BOOK = 0;
+    private static final int CANCEL = 1;
+    private static final int COMPLETE = 2;
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final Database db;
+    private final String[] patientIds;
+    private final int[] mix;
+    private final Queue<String> openSchedules = new ConcurrentLinkedQueue<>();
+    private final Queue<String> bookedAppointments = new ConcurrentLinkedQueue<>();
+    private final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+    private final AtomicLong[] succeeded = new AtomicLong[OPERATIONS.length];
+    private final AtomicLong conflicts = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    ClinicLoadDriver(Database db, int[] mix) {
+        this.db = db;
+        this.mix = mix;
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            latencies[i] = new LatencyHistogram();
+            succeeded[i] = new AtomicLong();
+        }
+        patientIds = db.getAllPatients().stream().map(Patient::getId).toArray(String[]::new);
+        // Hanya slot dan appointment mendatang yang ikut diputar
+        LocalDate today = LocalDate.now();
+        for (Schedule schedule : db.getAllSchedules()) {
+            if (schedule.isAvailable() && !schedule.getDate().isBefore(today)) {
+                openSchedules.add(schedule.getId());
+            }
+        }
+        for (Appointment appointment : db.getAllAppointments()) {
+            Schedule schedule = db.getSchedule(appointment.getScheduleId());
+            if (Appointment.STATUS_BOOKED.equals(appointment.getStatus()) && schedule != null
+                    && !schedule.getDate().isBefore(today)) {
+                bookedAppointments.add(appointment.getId());
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = ClinicDataGenerator.parseOptions(args);
+        String dataDir = options.getOrDefault("data", "data-generated");
+        double rate = Double.parseDouble(options.getOrDefault("rate", "1000"));
+        int duration = Integer.parseInt(options.getOrDefault("duration", "30"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+        int[] mix = parseMix(options.getOrDefault("mix", "book=70,cancel=10,complete=20"));
+
+        PrintStream out = System.out;
+        // Notifikasi dicetak ke stdout oleh worker; dibuang agar laporan tetap terbaca
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            long loadStart = System.nanoTime();
+            Database db = new Database(dataDir);
+            ClinicLoadDriver driver = new ClinicLoadDriver(db, mix);
+            out.printf("Data dimuat dalam %d ms: %d pasien, %d slot kosong, %d appointment aktif%n",
+                       (System.nanoTime() - loadStart) / 1_000_000, driver.patientIds.length,
+                       driver.openSchedules.size(), driver.bookedAppointments.size());
+            out.printf("Target %.0f op/s selama %d s, %d thread, mix %s%n", rate, duration, threads,
+                       options.getOrDefault("mix", "book=70,cancel=10,complete=20"));
+            driver.run(rate, duration, threads, out);
+            NotificationDispatcher.getInstance().shutdown(5000);
+            db.shutdown();
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    void run(double rate, int durationSeconds, int threads, PrintStream out) throws InterruptedException {
+        long intervalNanos = (long) (1e9 / rate);
+        long totalOps = (long) (rate * durationSeconds);
+        AtomicLong sequence = new AtomicLong();
+        long begin = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            workers.execute(() -> {
+                Random random = ThreadLocalRandom.current();
+                long i;
+                while ((i = sequence.getAndIncrement()) < totalOps) {
+                    long intended = begin + i * intervalNanos;
+                    long wait = intended - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    int op = pick(random);
+                    execute(op, random);
+                    latencies[op].recordNanos(System.nanoTime() - intended);
+                }
+            });
+        }
+        workers.shutdown();
+        long lastReport = 0;
+        while (!workers.awaitTermination(200, TimeUnit.MILLISECONDS)) {
+            long now = System.nanoTime();
+            if (now - begin - lastReport >= REPORT_INTERVAL_NANOS) {
+                lastReport = now - begin;
+                out.printf("  [%3d s] %,d op selesai%n", lastReport / 1_000_000_000, completedOps());
+            }
+        }
+        long elapsed = System.nanoTime() - begin;
+        report(out, elapsed);
+    }
+
+    private int pick(Random random) {
+        int roll = random.nextInt(mix[OPERATIONS.length]);
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            if (roll < mix[op]) {
+                return op;
+            }
+        }
+        return BOOK;
+    }
+
+    private void execute(int op, Random random) {
+        try {
+            switch (op) {
+                case BOOK:
+                    book(random);
+                    break;
+                case CANCEL:
+                    cancel();
+                    break;
+                default:
+                    complete();
+                    break;
+            }
+        } catch (RuntimeException e) {
+            errors.incrementAndGet();
+        }
+    }
+
+    private void book(Random random) {
+        String scheduleId = openSchedules.poll();
+        if (scheduleId == null) {
+            skipped.incrementAndGet();
+            return;
+        }
+        String patientId = patientIds[random.nextInt(patientIds.length)];
+        BookingResult result = db.bookSchedule(patientId, scheduleId);
+        if (result.getStatus() != BookingResult.Status.BOOKED) {
+            conflicts.incrementAndGet();
+            return;
+        }
+        Schedule schedule = result.getSchedule();
+        db.getEventBus().publish(AppointmentEvent.booked(result.getAppointment(), schedule,
+                                                         db.getDoctor(schedule.getDoctorId())));
+        bookedAppointments.add(result.getAppointment().getId());
+        succeeded[BOOK].incrementAndGet();
+    }
+
+    private void cancel() {
+        String appointmentId = bookedAppointments.poll();
+        if (appointmentId == null) {
+            skipped.incrementAndGet();
+            return;
+        }
+        if (!db.cancelAppointment(appointmentId)) {
+            conflicts.incrementAndGet();
+            return;
+        }
+        openSchedules.add(db.getAppointment(appointmentId).getScheduleId());
+        succeeded[CANCEL].incrementAndGet();
+    }
+
+    private void complete() {
+        String appointmentId = bookedAppointments.poll();
+        if (appointmentId == null) {
+            skipped.incrementAndGet();
+            return;
+        }
+        Appointment appointment = db.getAppointment(appointmentId);
+        ConsultationHistory history = new ConsultationHistory(db.generateHistoryId(), appointmentId, "Kontrol rutin", "-");
+        if (!db.completeAppointment(appointment, history)) {
+            conflicts.incrementAndGet();
+            return;
+        }
+        succeeded[COMPLETE].incrementAndGet();
+    }
+
+    private long completedOps() {
+        long total = 0;
+        for (LatencyHistogram histogram : latencies) {
+            total += histogram.getCount();
+        }
+        return total;
+    }
+
+    private void report(PrintStream out, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        out.println();
+        out.printf("Throughput tercapai: %.0f op/s (%,d op dalam %.1f s)%n", completedOps() / seconds, completedOps(), seconds);
+        out.printf("Berhasil: book %,d | cancel %,d | complete %,d; konflik %,d, dilewati (pool kosong) %,d, error %,d%n",
+                   succeeded[BOOK].get(), succeeded[CANCEL].get(), succeeded[COMPLETE].get(),
+                   conflicts.get(), skipped.get(), errors.get());
+        out.printf("%-10s %-9s %-10s %-10s %-10s %-10s %-10s%n", "operasi", "n", "p50", "p90", "p99", "p99.9", "maks");
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            LatencyHistogram h = latencies[op];
+            out.printf("%-10s %-9d %-10s %-10s %-10s %-10s %-10s%n", OPERATIONS[op], h.getCount(),
+                       ms(h.percentileMicros(50)), ms(h.percentileMicros(90)), ms(h.percentileMicros(99)),
+                       ms(h.percentileMicros(99.9)), ms(h.getMaxMicros()));
+        }
+    }
+
+    // "book=70,cancel=10,complete=20" menjadi batas kumulatif; elemen terakhir adalah total bobot
+    static int[] parseMix(String spec) {
+        int[] weights = new int[OPERATIONS.length];
+        for (String part : spec.split(",")) {
+            String[] kv = part.trim().split("=");
+            int op = Arrays.asList(OPERATIONS).indexOf(kv[0]);
+            if (op < 0 || kv.length != 2) {
+                throw new IllegalArgumentException("Mix tidak valid: " + part);
+            }
+            weights[op] = Integer.parseInt(kv[1]);
+        }
+        int[] cumulative = new int[OPERATIONS.length + 1];
+        int total = 0;
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            total += weights[op];
+            cumulative[op] = total;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("Mix tidak valid: " + spec);
+        }
+        cumulative[OPERATIONS.length] = total;
+        return cumulative;
+    }
+
+    private static String ms(long micros) {
+        return String.format("%.2f ms", micros / 1000.0);
+    }
+}
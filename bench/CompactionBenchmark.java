@@ -0,0 +1,131 @@
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Booking dan pembatalan terus-menerus pada 100k jadwal, dengan checkpoint/compaction di background setiap
+// -Dclinic.checkpointRecords record (default benchmark 5.000). Diukur latensi writer selama compaction berjalan,
+// waktu dan ruang yang dibebaskan compaction, serta waktu recovery setelah proses berhenti tanpa checkpoint:
+// jumlah record yang diputar ulang tetap di bawah ambang checkpoint walaupun jumlah operasi naik. Setiap
+// booking + pembatalan menambah satu appointment, jadi snapshot (dan waktu memuatnya) tetap ikut tumbuh.
+//
+//   javac -encoding UTF-8 -d bin src/DoctorSchedulingApp.java
+//   javac -encoding UTF-8 -cp bin -d bin bench/CompactionBenchmark.java
+//   java -Dclinic.checkpointRecords=5000 -cp bin CompactionBenchmark
+public class CompactionBenchmark {
+    private static final int SCHEDULES = 100_000;
+    private static final int DOCTORS = 100;
+    private static final int PATIENTS = 10_000;
+    private static final int THREADS = 4;
+    private static final int[] OPERATIONS = {20_000, 80_000, 320_000};
+    private static final LocalDate FIRST_DAY = LocalDate.of(2027, 1, 1);
+
+    public static void main(String[] args) throws Exception {
+        if (System.getProperty("clinic.checkpointRecords") == null) {
+            System.setProperty("clinic.checkpointRecords", "5000");
+        }
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            out.printf("%,d jadwal, %d thread, checkpoint setiap %s record%n%n", SCHEDULES, THREADS,
+                       System.getProperty("clinic.checkpointRecords"));
+            out.printf("%-9s %10s %10s %10s %11s %15s %14s %10s %14s %14s%n", "operasi", "p50 (us)", "p99 (us)",
+                       "maks (us)", "compaction", "compaction (ms)", "dibebaskan", "journal", "diputar ulang", "recovery (ms)");
+            for (int round = 0; round < 2; round++) {
+                boolean print = round == 1; // round pertama untuk warmup JIT
+                for (int operations : OPERATIONS) {
+                    run(out, print, operations);
+                }
+            }
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static void run(PrintStream out, boolean print, int operations) throws Exception {
+        Path dir = Files.createTempDirectory("clinic-compaction");
+        try {
+            generate(dir);
+            Database db = new Database(dir.toString());
+            List<String> ids = new ArrayList<>();
+            for (Schedule schedule : db.getAllSchedules()) {
+                ids.add(schedule.getId());
+            }
+            Collections.shuffle(ids, new Random(11));
+            LatencyHistogram latency = new LatencyHistogram();
+            AtomicInteger next = new AtomicInteger();
+            ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+            for (int t = 0; t < THREADS; t++) {
+                pool.execute(() -> {
+                    int i;
+                    while ((i = next.getAndIncrement()) < operations) {
+                        // Slot yang sama dipesan lalu dibatalkan berulang kali: banyak record journal per entitas
+                        String scheduleId = ids.get(i % 2000);
+                        long begin = System.nanoTime();
+                        BookingResult result = db.bookSchedule(IdAllocator.format('P', i % PATIENTS + 1), scheduleId);
+                        if (result.getAppointment() != null) {
+                            db.cancelAppointment(result.getAppointment().getId());
+                        }
+                        latency.recordNanos(System.nanoTime() - begin);
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(30, TimeUnit.MINUTES);
+            db.flush();
+            LatencyHistogram compaction = db.getCompactionLatency();
+            long compactions = compaction.getCount();
+            long compactionMillis = compaction.getMeanMicros() / 1000;
+            long reclaimed = db.getBytesReclaimed();
+            long journalBytes = db.getJournal().getSizeBytes();
+            long journalRecords = db.getJournal().getRecordCount();
+            db.close();
+
+            // Recovery: snapshot terakhir + segmen journal yang tersisa
+            long start = System.nanoTime();
+            Database recovered = new Database(dir.toString());
+            long recoveryMillis = (System.nanoTime() - start) / 1_000_000;
+            recovered.close();
+            if (print) {
+                out.printf("%-9s %10d %10d %10d %11d %15d %11.1f MB %7.1f MB %14d %14d%n", String.format("%,d", operations),
+                           latency.percentileMicros(50), latency.percentileMicros(99), latency.getMaxMicros(),
+                           compactions, compactionMillis, reclaimed / 1048576.0, journalBytes / 1048576.0,
+                           journalRecords, recoveryMillis);
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static void generate(Path dir) throws IOException {
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(dir.resolve("doctors.txt")))) {
+            for (int d = 1; d <= DOCTORS; d++) {
+                pw.println(IdAllocator.format('D', d) + "|Dr. Bench " + d + "|Umum");
+            }
+        }
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(dir.resolve("patients.txt")))) {
+            for (int p = 1; p <= PATIENTS; p++) {
+                pw.println(IdAllocator.format('P', p) + "|Pasien Bench " + p + "|bench" + p + "@example.com|0800|Jl. Bench");
+            }
+        }
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(dir.resolve("schedules.txt")))) {
+            for (int i = 0; i < SCHEDULES; i++) {
+                int slot = i / DOCTORS;
+                LocalTime start = LocalTime.of(8, 0).plusMinutes(30L * (slot % 16));
+                pw.println(IdAllocator.format('S', i + 1) + "|" + IdAllocator.format('D', i % DOCTORS + 1) + "|"
+                           + FIRST_DAY.plusDays(slot / 16) + "|" + start + "|" + start.plusMinutes(30) + "|true");
+            }
+        }
+        Files.write(dir.resolve("counters.txt"), Arrays.asList(String.valueOf(PATIENTS + 1), String.valueOf(DOCTORS + 1),
+                                                             String.valueOf(SCHEDULES + 1), "1", "1"));
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (java.util.stream.Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,327 @@
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Crash test: trafik booking/pembatalan dijalankan di JVM anak, lalu dibunuh dengan SIGKILL pada titik acak.
+// Setelah itu JVM anak baru memulihkan data (waktunya diukur) dan memeriksa invariant:
+//   - setiap appointment Booked menunjuk jadwal yang ada dan isAvailable() == false
+//   - satu jadwal tidak dipegang lebih dari satu appointment Booked
+//   - jadwal yang tidak tersedia punya appointment Booked (semua jadwal awalnya tersedia)
+//   - total ClinicStatistics sama dengan hitungan ulang
+// Setiap booking/pembatalan yang sudah dikonfirmasi ke JVM induk (sudah kembali dari Database) harus tetap ada;
+// yang hilang dihitung sebagai "ack hilang" (sekali, lalu tidak diharapkan lagi pada kill berikutnya).
+// Sebelum kill acak, satu interleaving dijalankan secara pasti: slot diambil (tryReserve), checkpoint menulis
+// snapshot, lalu proses mati sebelum booking masuk journal. Slot itu harus tersedia lagi setelah recovery.
+// Mode dijalankan berurutan pada folder data masing-masing.
+//
+//   javac -encoding UTF-8 -d bin src/DoctorSchedulingApp.java
+//   javac -encoding UTF-8 -cp bin -d bin bench/ClinicDataGenerator.java bench/CrashRecoveryHarness.java
+//   java -cp bin CrashRecoveryHarness --runs 20 --modes txt,journal,group,async
+public class CrashRecoveryHarness {
+    private static final Map<String, List<String>> MODES = new LinkedHashMap<>();
+    static {
+        // Ambang checkpoint kecil agar sebagian kill jatuh di tengah compaction
+        MODES.put("txt", Arrays.asList("-Dclinic.storage=txt"));
+        MODES.put("journal", Arrays.asList("-Dclinic.checkpointRecords=2000"));
+        MODES.put("group", Arrays.asList("-Dclinic.durability=group", "-Dclinic.checkpointRecords=2000"));
+        MODES.put("async", Arrays.asList("-Dclinic.durability=async", "-Dclinic.checkpointRecords=2000"));
+    }
+    private static final int DOCTORS = 50;
+    private static final int PATIENTS = 1000;
+    private static final int SCHEDULES = 10_000;
+    private static final int THREADS = 4;
+    private static final long MIN_KILL_MILLIS = 100;
+    private static final long MAX_KILL_MILLIS = 1500;
+    private static final int MAX_EXAMPLES = 3;
+    private static final LocalDate FIRST_DAY = LocalDate.of(2027, 1, 1);
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("traffic")) {
+            traffic(args[1], Long.parseLong(args[2]));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("gap")) {
+            checkpointGap(args[1]);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("verify")) {
+            verify(args[1], args[2]);
+            return;
+        }
+        Map<String, String> options = ClinicDataGenerator.parseOptions(args);
+        int runs = Integer.parseInt(options.getOrDefault("runs", "20"));
+        List<String> modes = Arrays.asList(options.getOrDefault("modes", String.join(",", MODES.keySet())).split(","));
+        long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+
+        System.out.printf("%d kill per mode, %,d jadwal, %d thread%n%n", runs, SCHEDULES, THREADS);
+        System.out.printf("%-8s %10s %10s %12s %12s %16s %16s%n", "mode", "ack book", "ack batal", "ack hilang",
+                          "pelanggaran", "recovery p50 ms", "recovery maks ms");
+        for (String mode : modes) {
+            if (!MODES.containsKey(mode)) {
+                throw new IllegalArgumentException("Mode tidak dikenal: " + mode);
+            }
+            runMode(mode, runs, new Random(seed));
+        }
+    }
+
+    // ---------- induk ----------
+
+    private static void runMode(String mode, int runs, Random random) throws Exception {
+        Path dir = Files.createTempDirectory("clinic-crash-" + mode);
+        try {
+            generate(dir);
+            // appointmentId -> {scheduleId, status terakhir yang dikonfirmasi}
+            Map<String, String[]> acked = new ConcurrentHashMap<>();
+            long[] ackCounts = new long[2];
+            List<Long> recoveryMillis = new ArrayList<>();
+            long lost = 0;
+            long violations = 0;
+            List<String> examples = new ArrayList<>();
+            Path expected = dir.resolve("expected.txt");
+            Files.write(expected, Collections.emptyList());
+            start(mode, dir, "gap", dir.toString()).waitFor();
+            violations += check(mode, dir, expected, "celah checkpoint", acked, examples, recoveryMillis, new long[1]);
+            for (int run = 0; run < runs; run++) {
+                Process child = start(mode, dir, "traffic", dir.toString(), String.valueOf(random.nextLong()));
+                CountDownLatch ready = new CountDownLatch(1);
+                Thread reader = new Thread(() -> readAcks(child, ready, acked, ackCounts));
+                reader.start();
+                if (!ready.await(60, TimeUnit.SECONDS)) {
+                    child.destroyForcibly();
+                    throw new IllegalStateException("JVM anak tidak siap, lihat " + dir.resolve("child.err"));
+                }
+                Thread.sleep(MIN_KILL_MILLIS + (long) (random.nextDouble() * (MAX_KILL_MILLIS - MIN_KILL_MILLIS)));
+                child.destroyForcibly(); // SIGKILL
+                child.waitFor();
+                reader.join();
+
+                try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(expected))) {
+                    for (Map.Entry<String, String[]> entry : acked.entrySet()) {
+                        pw.println(entry.getKey() + "|" + entry.getValue()[0] + "|" + entry.getValue()[1]);
+                    }
+                }
+                long[] lostInRun = new long[1];
+                violations += check(mode, dir, expected, "kill #" + (run + 1), acked, examples, recoveryMillis, lostInRun);
+                lost += lostInRun[0];
+            }
+            Collections.sort(recoveryMillis);
+            System.out.printf("%-8s %10d %10d %12d %12d %16d %16d%n", mode, ackCounts[0], ackCounts[1], lost, violations,
+                              recoveryMillis.get(recoveryMillis.size() / 2), recoveryMillis.get(recoveryMillis.size() - 1));
+            for (String example : examples) {
+                System.out.println("         " + example);
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    // Menjalankan verify di JVM anak; mengembalikan jumlah pelanggaran, ack yang hilang ditambahkan ke lost
+    private static long check(String mode, Path dir, Path expected, String label, Map<String, String[]> acked,
+                              List<String> examples, List<Long> recoveryMillis, long[] lost) throws Exception {
+        long violations = 0;
+        Process checker = start(mode, dir, "verify", dir.toString(), expected.toString());
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(checker.getInputStream()))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] parts = line.split(" ", 2);
+                if (parts[0].equals("RESULT")) {
+                    String[] values = parts[1].split(" ");
+                    recoveryMillis.add(Long.parseLong(values[0]));
+                    violations += Long.parseLong(values[1]);
+                } else if (parts[0].equals("LOST")) {
+                    String[] values = parts[1].split(" ");
+                    lost[0]++;
+                    acked.remove(values[0]);
+                    if (examples.size() < MAX_EXAMPLES) {
+                        examples.add(label + ": ack hilang " + values[0] + " (" + values[1] + ") -> " + values[2]);
+                    }
+                } else if (examples.size() < MAX_EXAMPLES) {
+                    examples.add(label + ": " + line);
+                }
+            }
+        }
+        if (checker.waitFor() != 0) {
+            throw new IllegalStateException("Verifikasi gagal, lihat " + dir.resolve("child.err"));
+        }
+        return violations;
+    }
+
+    private static Process start(String mode, Path dir, String... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(MODES.get(mode));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(CrashRecoveryHarness.class.getName());
+        command.addAll(Arrays.asList(args));
+        return new ProcessBuilder(command)
+            .redirectError(ProcessBuilder.Redirect.appendTo(dir.resolve("child.err").toFile()))
+            .start();
+    }
+
+    // Baris dari JVM anak: READY, "B <appointmentId> <scheduleId>" atau "C <appointmentId>"
+    private static void readAcks(Process child, CountDownLatch ready, Map<String, String[]> acked, long[] ackCounts) {
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(child.getInputStream()))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] parts = line.split(" ");
+                if (parts[0].equals("READY")) {
+                    ready.countDown();
+                } else if (parts[0].equals("B") && parts.length == 3) {
+                    acked.put(parts[1], new String[] {parts[2], Appointment.STATUS_BOOKED});
+                    ackCounts[0]++;
+                } else if (parts[0].equals("C") && parts.length == 2 && acked.containsKey(parts[1])) {
+                    acked.get(parts[1])[1] = Appointment.STATUS_CANCELLED;
+                    ackCounts[1]++;
+                }
+            }
+        } catch (IOException e) {
+            // Pipe tertutup karena proses dibunuh
+        }
+    }
+
+    // ---------- JVM anak ----------
+
+    private static void traffic(String dir, long seed) {
+        PrintStream protocol = new PrintStream(new FileOutputStream(FileDescriptor.out), true);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Database db = new Database(dir);
+        List<String> scheduleIds = new ArrayList<>();
+        for (Schedule schedule : db.getAllSchedules()) {
+            scheduleIds.add(schedule.getId());
+        }
+        protocol.println("READY");
+        for (int t = 0; t < THREADS; t++) {
+            Random random = new Random(seed + t);
+            Thread thread = new Thread(() -> {
+                List<String> mine = new ArrayList<>();
+                while (true) {
+                    if (!mine.isEmpty() && random.nextInt(10) < 3) {
+                        String appointmentId = mine.remove(random.nextInt(mine.size()));
+                        if (db.cancelAppointment(appointmentId)) {
+                            protocol.println("C " + appointmentId);
+                        }
+                        continue;
+                    }
+                    String scheduleId = scheduleIds.get(random.nextInt(scheduleIds.size()));
+                    BookingResult result = db.bookSchedule(IdAllocator.format('P', random.nextInt(PATIENTS) + 1), scheduleId);
+                    if (result.getStatus() == BookingResult.Status.BOOKED) {
+                        mine.add(result.getAppointment().getId());
+                        protocol.println("B " + result.getAppointment().getId() + " " + scheduleId);
+                    }
+                }
+            });
+            thread.start();
+        }
+    }
+
+    // Seperti bookSchedule yang berhenti tepat setelah tryReserve: checkpoint di background menyimpan slot sebagai
+    // tidak tersedia, lalu proses mati sebelum transaksi booking ditulis ke journal
+    private static void checkpointGap(String dir) {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Database db = new Database(dir);
+        Schedule schedule = db.getSchedule(IdAllocator.format('S', 1));
+        if (schedule.tryReserve(IdAllocator.format('A', SCHEDULES + 1)) != null) {
+            throw new IllegalStateException("Jadwal " + schedule.getId() + " sudah dipesan");
+        }
+        db.checkpoint();
+        Runtime.getRuntime().halt(0);
+    }
+
+    // Mencetak baris pelanggaran (maksimal MAX_EXAMPLES), "LOST <appointmentId> <status diharapkan> <status>" untuk
+    // setiap ack yang hilang, lalu "RESULT <recovery ms> <pelanggaran>"
+    private static void verify(String dir, String expectedFile) throws IOException {
+        PrintStream protocol = new PrintStream(new FileOutputStream(FileDescriptor.out), true);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long start = System.nanoTime();
+        Database db = new Database(dir);
+        long recoveryMillis = (System.nanoTime() - start) / 1_000_000;
+
+        List<String> problems = new ArrayList<>();
+        Map<String, Integer> holders = new HashMap<>();
+        int booked = 0;
+        for (Appointment appointment : db.getAllAppointments()) {
+            if (!appointment.getStatus().equals(Appointment.STATUS_BOOKED)) {
+                continue;
+            }
+            booked++;
+            Schedule schedule = db.getSchedule(appointment.getScheduleId());
+            if (schedule == null || schedule.isAvailable()) {
+                problems.add("appointment " + appointment.getId() + " Booked, jadwal " + appointment.getScheduleId()
+                             + (schedule == null ? " tidak ada" : " masih tersedia"));
+            }
+            holders.merge(appointment.getScheduleId(), 1, Integer::sum);
+        }
+        int available = 0;
+        for (Schedule schedule : db.getAllSchedules()) {
+            int count = holders.getOrDefault(schedule.getId(), 0);
+            if (schedule.isAvailable()) {
+                available++;
+            } else if (count == 0) {
+                problems.add("jadwal " + schedule.getId() + " tidak tersedia tanpa appointment Booked");
+            }
+            if (count > 1) {
+                problems.add("jadwal " + schedule.getId() + " dipegang " + count + " appointment Booked");
+            }
+        }
+        ClinicStatistics statistics = db.getStatistics();
+        if (statistics.getAppointmentCount() != db.getAllAppointments().size()
+                || statistics.getAvailableScheduleCount() != available) {
+            problems.add("statistik " + statistics.getAppointmentCount() + "/" + statistics.getAvailableScheduleCount()
+                         + " != hitungan ulang " + db.getAllAppointments().size() + "/" + available);
+        }
+
+        // Booking yang dikonfirmasi harus ada; pembatalan yang dikonfirmasi tidak boleh kembali menjadi Booked.
+        // Booked yang ternyata Dibatalkan bukan kehilangan: pembatalannya sudah jalan tapi belum sempat dikonfirmasi.
+        for (String problem : problems.subList(0, Math.min(MAX_EXAMPLES, problems.size()))) {
+            protocol.println(problem);
+        }
+        for (String line : Files.readAllLines(Paths.get(expectedFile))) {
+            String[] parts = line.split("\\|");
+            Appointment appointment = db.getAppointment(parts[0]);
+            if (appointment == null || (parts[2].equals(Appointment.STATUS_CANCELLED)
+                                        && !appointment.getStatus().equals(Appointment.STATUS_CANCELLED))) {
+                protocol.println("LOST " + parts[0] + " " + parts[2] + " "
+                                 + (appointment == null ? "-" : appointment.getStatus()));
+            }
+        }
+        protocol.println("RESULT " + recoveryMillis + " " + problems.size());
+        // Tanpa checkpoint: JVM anak berikutnya melanjutkan dari hasil recovery yang sama
+        db.close();
+        System.exit(0);
+    }
+
+    // ---------- data ----------
+
+    private static void generate(Path dir) throws IOException {
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(dir.resolve("doctors.txt")))) {
+            for (int d = 1; d <= DOCTORS; d++) {
+                pw.println(IdAllocator.format('D', d) + "|Dr. Bench " + d + "|Umum");
+            }
+        }
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(dir.resolve("patients.txt")))) {
+            for (int p = 1; p <= PATIENTS; p++) {
+                pw.println(IdAllocator.format('P', p) + "|Pasien Bench " + p + "|bench" + p + "@example.com|0800|Jl. Bench");
+            }
+        }
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(dir.resolve("schedules.txt")))) {
+            for (int i = 0; i < SCHEDULES; i++) {
+                int slot = i / DOCTORS;
+                LocalTime start = LocalTime.of(8, 0).plusMinutes(30L * (slot % 16));
+                pw.println(IdAllocator.format('S', i + 1) + "|" + IdAllocator.format('D', i % DOCTORS + 1) + "|"
+                           + FIRST_DAY.plusDays(slot / 16) + "|" + start + "|" + start.plusMinutes(30) + "|true");
+            }
+        }
+        Files.write(dir.resolve("counters.txt"), Arrays.asList(String.valueOf(PATIENTS + 1), String.valueOf(DOCTORS + 1),
+                                                             String.valueOf(SCHEDULES + 1), "1", "1"));
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (java.util.stream.Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Latensi booking bersamaan untuk mode durability yang aktif (-Dclinic.durability=sync|group|async),
+// pada data kecil dan besar. Jalankan untuk setiap mode, dan juga dengan -Dclinic.storage=txt
+// untuk melihat apakah latensi masih bergantung pada ukuran file. -Dclinic.fsync=true pada mode sync
+// memperlihatkan biaya satu fsync per booking; group membagi satu fsync ke seluruh batch.
+//
+//   javac -encoding UTF-8 -d bin src/DoctorSchedulingApp.java
+//   javac -encoding UTF-8 -cp bin -d bin bench/DurabilityModeBenchmark.java
+//   java -Dclinic.durability=group -cp bin DurabilityModeBenchmark
+public class DurabilityModeBenchmark {
+    private static final int[] SCHEDULES = {10_000, 100_000};
+    private static final int DOCTORS = 100;
+    private static final int THREADS = 8;
+    private static final int BOOKINGS = 2000;
+    private static final LocalDate FIRST_DAY = LocalDate.of(2027, 1, 1);
+
+    public static void main(String[] args) throws Exception {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            out.printf("Storage: %s, durability: %s, fsync: %s, jendela: %s ms%n%n",
+                       System.getProperty("clinic.storage", "journal"), System.getProperty("clinic.durability", "sync"),
+                       System.getProperty("clinic.fsync", "default"), System.getProperty("clinic.flushWindowMs", "default"));
+            out.printf("%-10s %12s %10s %10s %10s %10s %14s %12s %16s%n", "jadwal", "booking/s", "p50 (us)", "p99 (us)",
+                       "maks (us)", "flush", "record/flush", "batch maks", "commit p99 (us)");
+            for (int round = 0; round < 2; round++) {
+                boolean print = round == 1; // round pertama untuk warmup JIT
+                for (int size : SCHEDULES) {
+                    run(out, print, size);
+                }
+            }
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static void run(PrintStream out, boolean print, int size) throws Exception {
+        Path dir = Files.createTempDirectory("clinic-durability");
+        try {
+            generate(dir, size);
+            Database db = new Database(dir.toString());
+            List<String> open = new ArrayList<>();
+            for (Schedule schedule : db.getAllSchedules()) {
+                open.add(schedule.getId());
+            }
+            Collections.shuffle(open, new Random(9));
+            LatencyHistogram latency = new LatencyHistogram();
+            AtomicInteger next = new AtomicInteger();
+            ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+            long start = System.nanoTime();
+            for (int t = 0; t < THREADS; t++) {
+                pool.execute(() -> {
+                    int i;
+                    while ((i = next.getAndIncrement()) < BOOKINGS) {
+                        long begin = System.nanoTime();
+                        db.bookSchedule("P001", open.get(i));
+                        latency.recordNanos(System.nanoTime() - begin);
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(10, TimeUnit.MINUTES);
+            long elapsed = System.nanoTime() - start;
+            db.flush();
+            WriteBehindFlusher flusher = db.getFlusher();
+            long flushes = flusher != null ? flusher.getFlushes() : BOOKINGS;
+            long written = flusher != null ? flusher.getRecordsWritten() : 2L * BOOKINGS;
+            long largest = flusher != null ? flusher.getLargestBatch() : 2;
+            // Mode sync tanpa flusher: commit = force journal (0 jika fsync tidak aktif)
+            long commitP99 = flusher != null ? flusher.getCommitLatency().percentileMicros(99)
+                : db.getJournal() != null ? db.getJournal().getForceLatency().percentileMicros(99) : 0;
+            db.close();
+            if (print) {
+                out.printf("%-10s %12.0f %10d %10d %10d %10d %14.1f %12d %16d%n", String.format("%,d", size),
+                           BOOKINGS / (elapsed / 1e9), latency.percentileMicros(50), latency.percentileMicros(99),
+                           latency.getMaxMicros(), flushes, written / (double) Math.max(1, flushes), largest, commitP99);
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static void generate(Path dir, int size) throws IOException {
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(dir.resolve("doctors.txt")))) {
+            for (int d = 1; d <= DOCTORS; d++) {
+                pw.println(IdAllocator.format('D', d) + "|Dr. Bench " + d + "|Umum");
+            }
+        }
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(dir.resolve("patients.txt")))) {
+            pw.println("P001|Pasien Bench|bench@example.com|0800|Jl. Bench");
+        }
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(dir.resolve("schedules.txt")))) {
+            for (int i = 0; i < size; i++) {
+                int doctor = i % DOCTORS;
+                int slot = i / DOCTORS;
+                LocalTime start = LocalTime.of(8, 0).plusMinutes(30L * (slot % 16));
+                pw.println(IdAllocator.format('S', i + 1) + "|" + IdAllocator.format('D', doctor + 1) + "|"
+                           + FIRST_DAY.plusDays(slot / 16) + "|" + start + "|" + start.plusMinutes(30) + "|true");
+            }
+        }
+        Files.write(dir.resolve("counters.txt"), Arrays.asList("2", String.valueOf(DOCTORS + 1), String.valueOf(size + 1), "1", "1"));
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (java.util.stream.Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,147 @@
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+
+// "Dokter spesialisasi X mana yang bebas 45 menit berturut-turut pada pagi hari tanggal Y":
+// scan Doctor.getSchedules() (filter, urutkan, cari slot bersambung) dibanding AvailabilityBitmap
+// lewat Database.findFreeWindows. Hasil kedua cara dibandingkan untuk setiap query.
+//
+//   javac -encoding UTF-8 -d bin src/DoctorSchedulingApp.java
+//   javac -encoding UTF-8 -cp bin -d bin bench/FreeWindowSearchBenchmark.java
+//   java -Xmx2g -cp bin FreeWindowSearchBenchmark
+public class FreeWindowSearchBenchmark {
+    private static final int DOCTORS = 300;
+    private static final int DAYS = 180;
+    private static final String[] SPECIALIZATIONS = {"Umum", "Pediatri", "Penyakit Dalam", "Gigi", "Kardiologi"};
+    private static final LocalDate FIRST_DAY = LocalDate.of(2027, 1, 1);
+    private static final LocalTime MORNING_FROM = LocalTime.of(8, 0);
+    private static final LocalTime MORNING_TO = LocalTime.of(12, 0);
+    private static final int[] DURATIONS = {30, 45, 90};
+    private static final int QUERIES = 1000;
+    private static final int LIMIT = 20;
+
+    static volatile Object sink;
+
+    public static void main(String[] args) throws IOException {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Path dir = Files.createTempDirectory("clinic-freewindow");
+        try {
+            int slots = generate(dir);
+            Database db = new Database(dir.toString());
+            Random random = new Random(5);
+            LocalDate[] dates = new LocalDate[QUERIES];
+            for (int i = 0; i < QUERIES; i++) {
+                dates[i] = FIRST_DAY.plusDays(random.nextInt(DAYS));
+            }
+            out.printf("%d dokter, %,d jadwal, %d hari%n%n", DOCTORS, slots, DAYS);
+            out.printf("%-26s %14s %14s%n", "query (pagi 08-12)", "scan (us)", "bitmap (us)");
+            for (int round = 0; round < 3; round++) {
+                boolean print = round == 2; // round sebelumnya untuk warmup JIT
+                for (int minutes : DURATIONS) {
+                    long scanNanos = 0;
+                    long bitmapNanos = 0;
+                    for (int i = 0; i < QUERIES; i++) {
+                        String specialization = SPECIALIZATIONS[i % SPECIALIZATIONS.length];
+                        long start = System.nanoTime();
+                        List<FreeWindow> scanned = scan(db, specialization, dates[i], minutes);
+                        scanNanos += System.nanoTime() - start;
+                        start = System.nanoTime();
+                        List<FreeWindow> found = db.findFreeWindows(specialization, dates[i], MORNING_FROM, MORNING_TO,
+                                                                    minutes, LIMIT);
+                        bitmapNanos += System.nanoTime() - start;
+                        if (!describe(scanned).equals(describe(found))) {
+                            throw new IllegalStateException("Hasil berbeda: " + describe(scanned) + " vs " + describe(found));
+                        }
+                        sink = found;
+                    }
+                    if (print) {
+                        out.printf("%-26s %14.1f %14.2f%n", "bebas " + minutes + " menit, 1 spesialisasi",
+                                   scanNanos / 1000.0 / QUERIES, bitmapNanos / 1000.0 / QUERIES);
+                    }
+                }
+            }
+            db.close();
+        } finally {
+            System.setOut(out);
+            delete(dir);
+        }
+    }
+
+    // Pendekatan tanpa bitmap: slot tersedia dokter pada tanggal itu, diurutkan, lalu cari deretan yang bersambung
+    private static List<FreeWindow> scan(Database db, String specialization, LocalDate date, int minutes) {
+        List<FreeWindow> result = new ArrayList<>();
+        for (Doctor doctor : db.getAllDoctors()) {
+            if (!doctor.getSpecialization().equalsIgnoreCase(specialization)) {
+                continue;
+            }
+            List<Schedule> day = new ArrayList<>();
+            for (Schedule schedule : doctor.getSchedules()) {
+                if (schedule.getDate().equals(date) && schedule.isAvailable()) {
+                    day.add(schedule);
+                }
+            }
+            day.sort(Comparator.comparing(Schedule::getStartTime));
+            for (int first = 0; first < day.size(); first++) {
+                LocalTime start = day.get(first).getStartTime();
+                LocalTime end = start.plusMinutes(minutes);
+                if (start.isBefore(MORNING_FROM) || end.isAfter(MORNING_TO)) {
+                    continue;
+                }
+                LocalTime covered = day.get(first).getEndTime();
+                for (int next = first + 1; covered.isBefore(end) && next < day.size()
+                        && day.get(next).getStartTime().equals(covered); next++) {
+                    covered = day.get(next).getEndTime();
+                }
+                if (!covered.isBefore(end)) {
+                    result.add(new FreeWindow(doctor.getId(), date, start, end));
+                    break;
+                }
+            }
+        }
+        result.sort(Comparator.comparing(FreeWindow::getStartTime).thenComparing(FreeWindow::getDoctorId));
+        return result.size() <= LIMIT ? result : result.subList(0, LIMIT);
+    }
+
+    private static List<String> describe(List<FreeWindow> windows) {
+        List<String> result = new ArrayList<>();
+        for (FreeWindow window : windows) {
+            result.add(window.getDoctorId() + "@" + window.getStartTime());
+        }
+        return result;
+    }
+
+    // Slot 15 atau 30 menit pukul 08:00 - 16:00, sebagian besar sudah dipesan
+    private static int generate(Path dir) throws IOException {
+        Random random = new Random(3);
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(dir.resolve("doctors.txt")))) {
+            for (int d = 1; d <= DOCTORS; d++) {
+                pw.println(IdAllocator.format('D', d) + "|Dr. Bench " + d + "|" + SPECIALIZATIONS[d % SPECIALIZATIONS.length]);
+            }
+        }
+        int seq = 0;
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(dir.resolve("schedules.txt")))) {
+            for (int d = 1; d <= DOCTORS; d++) {
+                int slotMinutes = d % 3 == 0 ? 30 : 15;
+                for (int day = 0; day < DAYS; day++) {
+                    for (LocalTime start = LocalTime.of(8, 0); start.isBefore(LocalTime.of(16, 0));
+                         start = start.plusMinutes(slotMinutes)) {
+                        pw.println(IdAllocator.format('S', ++seq) + "|" + IdAllocator.format('D', d) + "|"
+                                   + FIRST_DAY.plusDays(day) + "|" + start + "|" + start.plusMinutes(slotMinutes)
+                                   + "|" + (random.nextDouble() < 0.3));
+                    }
+                }
+            }
+        }
+        Files.write(dir.resolve("counters.txt"), Arrays.asList("1", String.valueOf(DOCTORS + 1), String.valueOf(seq + 1), "1", "1"));
+        return seq;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (java.util.stream.Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+
+// Insert dan baca riwayat per pasien langsung pada HistoryStore (mode -Dclinic.histories=lsm) untuk 1 juta dan
+// 4 juta riwayat, dengan satu pasien per 10 riwayat. Latensi insert harus tetap datar walaupun jumlah riwayat naik
+// (flush dan merge berjalan di thread background); baca per pasien hanya menyentuh segmen yang lolos bloom filter.
+// Juga diukur waktu membuka ulang store (memutar ulang journal memtable dan membaca index/bloom setiap segmen).
+// fsync dimatikan agar yang terukur adalah struktur datanya, bukan disk.
+//
+//   javac -encoding UTF-8 -d bin src/DoctorSchedulingApp.java
+//   javac -encoding UTF-8 -cp bin -d bin bench/HistoryStoreBenchmark.java
+//   java -cp bin HistoryStoreBenchmark
+public class HistoryStoreBenchmark {
+    private static final int[] HISTORIES = {1_000_000, 4_000_000};
+    private static final int HISTORIES_PER_PATIENT = 10;
+    private static final int MEMTABLE_RECORDS = 50_000;
+    private static final int READS = 2000;
+    private static final LocalDate FIRST_DAY = LocalDate.of(2026, 1, 1);
+
+    public static void main(String[] args) throws Exception {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            out.printf("Memtable %,d riwayat, %d riwayat per pasien%n%n", MEMTABLE_RECORDS, HISTORIES_PER_PATIENT);
+            out.printf("%-10s %12s %13s %13s %9s %7s %14s %14s %12s%n", "riwayat", "insert/detik", "insert p50 (us)",
+                       "insert p99 (us)", "segmen", "merge", "baca p50 (us)", "baca p99 (us)", "buka (ms)");
+            for (int round = 0; round < 2; round++) {
+                boolean print = round == 1; // round pertama untuk warmup JIT
+                for (int size : HISTORIES) {
+                    run(out, print, size);
+                }
+            }
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static void run(PrintStream out, boolean print, int size) throws Exception {
+        Path dir = Files.createTempDirectory("clinic-lsm");
+        try {
+            int patients = size / HISTORIES_PER_PATIENT;
+            HistoryStore store = new HistoryStore(dir.toFile(), false, MEMTABLE_RECORDS);
+            LatencyHistogram insert = new LatencyHistogram();
+            Random random = new Random(25);
+            long start = System.nanoTime();
+            for (int i = 1; i <= size; i++) {
+                // Pasien acak: riwayat satu pasien tersebar di banyak segmen, seperti kunjungan yang berulang
+                ConsultationHistory history = ConsultationHistory.restore(IdAllocator.format('H', i),
+                    IdAllocator.format('A', i), FIRST_DAY.plusDays(i / 1000), "ISPA",
+                    "Demam tiga hari, batuk berdahak. Diberi parasetamol dan obat batuk.");
+                String patientId = IdAllocator.format('P', random.nextInt(patients) + 1);
+                long begin = System.nanoTime();
+                store.put(history, patientId);
+                insert.recordNanos(System.nanoTime() - begin);
+            }
+            long insertNanos = System.nanoTime() - start;
+            store.flushAndMerge();
+            int segments = store.getSegmentCount();
+            long merges = store.getMergeLatency().getCount();
+
+            LatencyHistogram read = new LatencyHistogram();
+            for (int i = 0; i < READS; i++) {
+                String patientId = IdAllocator.format('P', random.nextInt(patients) + 1);
+                long begin = System.nanoTime();
+                store.forPatient(patientId);
+                read.recordNanos(System.nanoTime() - begin);
+            }
+            store.close();
+
+            start = System.nanoTime();
+            HistoryStore reopened = new HistoryStore(dir.toFile(), false, MEMTABLE_RECORDS);
+            long openMillis = (System.nanoTime() - start) / 1_000_000;
+            if (reopened.size() != size) {
+                throw new IllegalStateException("Jumlah riwayat " + reopened.size() + ", seharusnya " + size);
+            }
+            reopened.close();
+            if (print) {
+                out.printf("%-10s %12d %13d %13d %9d %7d %14d %14d %12d%n", String.format("%,d", size),
+                           size * 1_000_000_000L / insertNanos, insert.percentileMicros(50), insert.percentileMicros(99),
+                           segments, merges, read.percentileMicros(50), read.percentileMicros(99), openMillis);
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (java.util.stream.Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
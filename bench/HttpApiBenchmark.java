@@ -0,0 +1,164 @@
+import java.io.*;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Banyak pasien bersamaan booking lewat ClinicHttpServer (satu JVM, satu Database).
+// Setiap pasien login sekali lalu memesan jadwal acak berturut-turut; sebagian jadwal
+// diperebutkan sehingga ada respons 409. Latensi diukur di sisi klien dan di server.
+//
+//   javac -encoding UTF-8 -d bin src/DoctorSchedulingApp.java
+//   javac -encoding UTF-8 -cp bin -d bin bench/HttpApiBenchmark.java
+//   java -cp bin HttpApiBenchmark
+public class HttpApiBenchmark {
+    private static final int[] CONCURRENT_PATIENTS = {100, 500, 2000};
+    private static final int BOOKINGS_PER_PATIENT = 5;
+    private static final int DOCTORS = 200;
+    private static final int SCHEDULES = 20000;
+
+    public static void main(String[] args) throws Exception {
+        PrintStream out = System.out;
+        // Notifikasi booking dicetak ke stdout oleh worker; dibuang agar hasil tetap terbaca
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        int maxPatients = Arrays.stream(CONCURRENT_PATIENTS).max().getAsInt();
+        Path dir = Files.createTempDirectory("clinic-http");
+        try {
+            generate(dir, maxPatients);
+            Database db = new Database(dir.toString());
+            ClinicHttpServer server = new ClinicHttpServer(db, 0);
+            server.start();
+            ExecutorService clientExecutor = Executors.newFixedThreadPool(8);
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                .executor(clientExecutor).build();
+            String base = "http://localhost:" + server.getPort() + "/api";
+
+            // Warmup JIT
+            run(client, base, 50, new Random(1));
+
+            out.printf("%-10s %-10s %-10s %-10s %-12s %-12s %-12s %-14s%n", "pasien", "req/s", "201", "409",
+                       "klien p50", "klien p99", "klien maks", "server p99");
+            for (int patients : CONCURRENT_PATIENTS) {
+                Result result = run(client, base, patients, new Random(patients));
+                LatencyHistogram serverBooking = server.getLatencies().get("POST /api/bookings");
+                out.printf("%-10d %-10.0f %-10d %-10d %-12s %-12s %-12s %-14s%n", patients,
+                           result.requests / (result.elapsedNanos / 1e9), result.booked.get(), result.conflicts.get(),
+                           ms(result.latency.percentileMicros(50)), ms(result.latency.percentileMicros(99)),
+                           ms(result.latency.getMaxMicros()), ms(serverBooking.percentileMicros(99)));
+            }
+            out.println();
+            out.println("Latensi server per endpoint (kumulatif):");
+            for (Map.Entry<String, LatencyHistogram> entry : server.getLatencies().entrySet()) {
+                LatencyHistogram h = entry.getValue();
+                out.printf("  %-24s n=%-7d p50 %-10s p99 %-10s maks %s%n", entry.getKey(), h.getCount(),
+                           ms(h.percentileMicros(50)), ms(h.percentileMicros(99)), ms(h.getMaxMicros()));
+            }
+            clientExecutor.shutdown();
+            server.stop(0);
+            db.shutdown();
+        } finally {
+            System.setOut(out);
+            try (java.util.stream.Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    private static class Result {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicInteger booked = new AtomicInteger();
+        final AtomicInteger conflicts = new AtomicInteger();
+        long requests;
+        long elapsedNanos;
+    }
+
+    // Setiap pasien adalah rantai request async: login, lalu BOOKINGS_PER_PATIENT booking
+    private static Result run(HttpClient client, String base, int patients, Random random) throws Exception {
+        Result result = new Result();
+        List<CompletableFuture<?>> chains = new ArrayList<>();
+        long begin = System.nanoTime();
+        for (int p = 1; p <= patients; p++) {
+            String login = "{\"role\":\"patient\",\"id\":\"" + IdAllocator.format('P', p) + "\"}";
+            String[] scheduleIds = new String[BOOKINGS_PER_PATIENT];
+            for (int i = 0; i < scheduleIds.length; i++) {
+                scheduleIds[i] = IdAllocator.format('S', 1 + random.nextInt(SCHEDULES));
+            }
+            CompletableFuture<String> chain = send(client, post(base + "/login", null, login), result)
+                .thenApply(HttpApiBenchmark::token);
+            for (String scheduleId : scheduleIds) {
+                chain = chain.thenCompose(token -> send(client,
+                        post(base + "/bookings", token, "{\"scheduleId\":\"" + scheduleId + "\"}"), result)
+                    .thenApply(response -> {
+                        if (response.statusCode() == 201) {
+                            result.booked.incrementAndGet();
+                        } else if (response.statusCode() == 409) {
+                            result.conflicts.incrementAndGet();
+                        } else {
+                            throw new IllegalStateException("HTTP " + response.statusCode() + ": " + response.body());
+                        }
+                        return token;
+                    }));
+            }
+            chains.add(chain);
+        }
+        CompletableFuture.allOf(chains.toArray(new CompletableFuture[0])).get();
+        result.elapsedNanos = System.nanoTime() - begin;
+        result.requests = (long) patients * (BOOKINGS_PER_PATIENT + 1);
+        return result;
+    }
+
+    private static CompletableFuture<HttpResponse<String>> send(HttpClient client, HttpRequest request, Result result) {
+        long start = System.nanoTime();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+            .whenComplete((response, error) -> result.latency.recordNanos(System.nanoTime() - start));
+    }
+
+    private static HttpRequest post(String url, String token, String body) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+            .POST(HttpRequest.BodyPublishers.ofString(body));
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder.build();
+    }
+
+    private static String token(HttpResponse<String> response) {
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Login gagal: " + response.body());
+        }
+        return Json.parseObject(response.body().replaceAll(",\"user\":\\{[^}]*\\}", "")).get("token");
+    }
+
+    private static String ms(long micros) {
+        return String.format("%.2f ms", micros / 1000.0);
+    }
+
+    private static void generate(Path dir, int patients) throws IOException {
+        Random random = new Random(7);
+        LocalDate day = LocalDate.of(2026, 1, 1);
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(dir.resolve("doctors.txt")))) {
+            for (int d = 1; d <= DOCTORS; d++) {
+                pw.println(IdAllocator.format('D', d) + "|Dr. Bench " + d + "|Umum");
+            }
+        }
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(dir.resolve("patients.txt")))) {
+            for (int p = 1; p <= patients; p++) {
+                pw.println(IdAllocator.format('P', p) + "|Pasien " + p + "|p" + p + "@mail.com|0800|-");
+            }
+        }
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(dir.resolve("schedules.txt")))) {
+            for (int i = 1; i <= SCHEDULES; i++) {
+                int hour = 8 + (i % 9);
+                pw.printf("%s|%s|%s|%02d:00|%02d:30|true%n", IdAllocator.format('S', i),
+                          IdAllocator.format('D', 1 + random.nextInt(DOCTORS)), day.plusDays(i / 2000), hour, hour);
+            }
+        }
+        Files.write(dir.resolve("counters.txt"), Arrays.asList(
+            String.valueOf(patients + 1), String.valueOf(DOCTORS + 1), String.valueOf(SCHEDULES + 1), "1", "1"));
+    }
+}
@@ -0,0 +1,70 @@
+import java.io.*;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.*;
+import java.util.*;
+
+// Field dengan baris baru atau '|' lewat HTTP API: harus ditolak dengan 400, dan record yang ditulis sesudahnya
+// harus tetap ada setelah Database dibuka ulang dari journal (tanpa checkpoint). Keluar dengan status 1 jika gagal.
+//
+//   javac -encoding UTF-8 -d bin src/DoctorSchedulingApp.java
+//   javac -encoding UTF-8 -cp bin -d bin bench/HttpPayloadCheck.java
+//   java -cp bin HttpPayloadCheck
+public class HttpPayloadCheck {
+    // {nama (JSON), status yang diharapkan}
+    private static final String[][] PATIENTS = {
+        {"Alice", "201"}, {"Bob\\nEvil", "400"}, {"Carol", "201"}, {"Dan|X", "400"}, {"Eve\\r", "400"}, {"Frank", "201"},
+    };
+
+    public static void main(String[] args) throws Exception {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Path dir = Files.createTempDirectory("clinic-payload");
+        List<String> failures = new ArrayList<>();
+        try {
+            Database db = new Database(dir.toString());
+            ClinicHttpServer server = new ClinicHttpServer(db, 0);
+            server.start();
+            HttpClient client = HttpClient.newHttpClient();
+            String base = "http://localhost:" + server.getPort() + "/api";
+            List<String> accepted = new ArrayList<>();
+            for (String[] patient : PATIENTS) {
+                HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(base + "/patients"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"name\": \"" + patient[0] + "\", \"email\": \"x@example.com\"}"))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() != Integer.parseInt(patient[1])) {
+                    failures.add(patient[0] + ": status " + response.statusCode() + ", seharusnya " + patient[1]);
+                }
+                if (response.statusCode() == 201) {
+                    accepted.add(patient[0]);
+                }
+            }
+            server.stop(0);
+            db.close();
+
+            Database reopened = new Database(dir.toString());
+            Set<String> names = new HashSet<>();
+            for (Patient patient : reopened.getAllPatients()) {
+                names.add(patient.getName());
+            }
+            for (String name : accepted) {
+                if (!names.contains(name)) {
+                    failures.add(name + ": hilang setelah dibuka ulang");
+                }
+            }
+            reopened.close();
+        } finally {
+            System.setOut(out);
+            try (java.util.stream.Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        if (!failures.isEmpty()) {
+            failures.forEach(out::println);
+            System.exit(1);
+        }
+        out.println("OK: " + PATIENTS.length + " request, field tidak valid ditolak, record sesudahnya tetap ada");
+    }
+}
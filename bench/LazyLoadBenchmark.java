@@ -0,0 +1,135 @@
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+
+// Startup, heap dan latensi lookup pasien + riwayat untuk arsip 100k / 1 juta pasien, dengan pasien dan riwayat
+// dimuat penuh (default) atau dibaca per record lewat snapshot.idx (-Dclinic.lazy=true). Jalankan untuk kedua mode.
+// Lookup pertama untuk setiap pasien (dingin) membaca record dari file yang di-map; lookup kedua (hangat) dari cache.
+//
+//   javac -encoding UTF-8 -d bin src/DoctorSchedulingApp.java
+//   javac -encoding UTF-8 -cp bin -d bin bench/LazyLoadBenchmark.java
+//   java -Dclinic.lazy=true -cp bin LazyLoadBenchmark
+public class LazyLoadBenchmark {
+    private static final int[] PATIENTS = {100_000, 1_000_000};
+    private static final int DOCTORS = 100;
+    // Satu appointment selesai (dengan satu riwayat) per APPOINTMENT_EVERY pasien
+    private static final int APPOINTMENT_EVERY = 5;
+    private static final int LOOKUPS = 2000;
+    private static final LocalDate FIRST_DAY = LocalDate.of(2026, 1, 1);
+
+    public static void main(String[] args) throws Exception {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            out.printf("Lazy: %s, cache: %s record%n%n", Boolean.getBoolean("clinic.lazy"),
+                       System.getProperty("clinic.lazyCacheRecords", "10000"));
+            out.printf("%-10s %13s %11s %16s %16s %16s %16s%n", "pasien", "startup (ms)", "heap (MB)",
+                       "dingin p50 (us)", "dingin p99 (us)", "hangat p50 (us)", "hangat p99 (us)");
+            for (int size : PATIENTS) {
+                Path dir = Files.createTempDirectory("clinic-lazy");
+                try {
+                    generate(dir, size);
+                    for (int round = 0; round < 2; round++) {
+                        run(out, round == 1, dir, size); // round pertama untuk warmup JIT
+                    }
+                } finally {
+                    delete(dir);
+                }
+            }
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static void run(PrintStream out, boolean print, Path dir, int size) {
+        long before = usedHeap();
+        long start = System.nanoTime();
+        Database db = new Database(dir.toString());
+        long startupMillis = (System.nanoTime() - start) / 1_000_000;
+        long heap = usedHeap() - before;
+
+        Random random = new Random(21);
+        String[] ids = new String[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            ids[i] = IdAllocator.format('P', random.nextInt(size) + 1);
+        }
+        LatencyHistogram cold = lookups(db, ids);
+        LatencyHistogram hot = lookups(db, ids);
+        db.close();
+        if (print) {
+            out.printf("%-10s %13d %11.1f %16d %16d %16d %16d%n", String.format("%,d", size), startupMillis,
+                       heap / 1048576.0, cold.percentileMicros(50), cold.percentileMicros(99),
+                       hot.percentileMicros(50), hot.percentileMicros(99));
+        }
+    }
+
+    // Seperti layar login pasien lalu Lihat Riwayat Konsultasi
+    private static LatencyHistogram lookups(Database db, String[] ids) {
+        LatencyHistogram latency = new LatencyHistogram();
+        for (String id : ids) {
+            long begin = System.nanoTime();
+            Patient patient = db.getPatient(id);
+            if (patient == null) {
+                throw new IllegalStateException("Pasien tidak ditemukan: " + id);
+            }
+            db.getPatientConsultationHistory(patient.getId());
+            latency.recordNanos(System.nanoTime() - begin);
+        }
+        return latency;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // File .txt lalu satu checkpoint, sehingga snapshot.bin (dan snapshot.idx pada mode lazy) tersedia
+    private static void generate(Path dir, int size) throws IOException {
+        int appointments = size / APPOINTMENT_EVERY;
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(dir.resolve("doctors.txt")))) {
+            for (int d = 1; d <= DOCTORS; d++) {
+                pw.println(IdAllocator.format('D', d) + "|Dr. Bench " + d + "|Umum");
+            }
+        }
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(dir.resolve("patients.txt")))) {
+            for (int p = 1; p <= size; p++) {
+                pw.println(IdAllocator.format('P', p) + "|Pasien Bench " + p + "|bench" + p + "@example.com|0800"
+                           + (10_000_000 + p) + "|Jl. Bench No. " + p + ", Banda Aceh");
+            }
+        }
+        try (PrintWriter schedules = new PrintWriter(Files.newBufferedWriter(dir.resolve("schedules.txt")));
+             PrintWriter appointmentFile = new PrintWriter(Files.newBufferedWriter(dir.resolve("appointments.txt")));
+             PrintWriter histories = new PrintWriter(Files.newBufferedWriter(dir.resolve("histories.txt")))) {
+            for (int i = 0; i < appointments; i++) {
+                int slot = i / DOCTORS;
+                LocalDate date = FIRST_DAY.plusDays(slot / 16);
+                LocalTime start = LocalTime.of(8, 0).plusMinutes(30L * (slot % 16));
+                String scheduleId = IdAllocator.format('S', i + 1);
+                String appointmentId = IdAllocator.format('A', i + 1);
+                schedules.println(scheduleId + "|" + IdAllocator.format('D', i % DOCTORS + 1) + "|" + date + "|"
+                                  + start + "|" + start.plusMinutes(30) + "|false");
+                appointmentFile.println(appointmentId + "|" + IdAllocator.format('P', i * APPOINTMENT_EVERY % size + 1)
+                                        + "|" + scheduleId + "|" + date.minusDays(3) + "|Selesai");
+                histories.println(IdAllocator.format('H', i + 1) + "|" + appointmentId + "|" + date
+                                  + "|ISPA|Demam tiga hari, batuk berdahak. Diberi parasetamol dan obat batuk, "
+                                  + "kontrol satu minggu lagi jika belum membaik.");
+            }
+        }
+        Files.write(dir.resolve("counters.txt"), Arrays.asList(String.valueOf(size + 1), String.valueOf(DOCTORS + 1),
+            String.valueOf(appointments + 1), String.valueOf(appointments + 1), String.valueOf(appointments + 1)));
+        Database db = new Database(dir.toString());
+        db.checkpoint();
+        db.close();
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (java.util.stream.Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Biaya notifikasi di thread booking: kirim langsung (sinkron) vs NotificationDispatcher,
+// memakai gateway stub di dalam proses: EMAIL cepat, SMS lambat, WHATSAPP kadang gagal.
+// Juga menjalankan setiap OverflowPolicy saat SMS tidak bisa mengimbangi laju booking.
+//
+//   javac -encoding UTF-8 -d bin src/DoctorSchedulingApp.java
+//   javac -encoding UTF-8 -cp bin -d bin bench/NotificationDispatchBenchmark.java
+//   java -cp bin NotificationDispatchBenchmark
+public class NotificationDispatchBenchmark {
+    private static final int BOOKINGS = 2000;
+    private static final long SMS_DELAY_MS = 5;
+    private static final int QUEUE_CAPACITY = 256;
+    private static final int WORKERS = 8;
+
+    public static void main(String[] args) throws Exception {
+        List<NotificationStrategy> gateways = Arrays.asList(
+            new StubGateway("EMAIL", 0, 0), new StubGateway("SMS", SMS_DELAY_MS, 0), new StubGateway("WHATSAPP", 0, 10));
+
+        NotificationDispatcher sync = new NotificationDispatcher(false, QUEUE_CAPACITY, WORKERS,
+                                                                 NotificationDispatcher.OverflowPolicy.BLOCK, 0);
+        report("sinkron", sync, gateways, BOOKINGS / 10);
+
+        for (NotificationDispatcher.OverflowPolicy policy : NotificationDispatcher.OverflowPolicy.values()) {
+            NotificationDispatcher dispatcher = new NotificationDispatcher(true, QUEUE_CAPACITY, WORKERS, policy, 20);
+            report("async " + policy, dispatcher, gateways, BOOKINGS);
+            dispatcher.shutdown(0);
+        }
+    }
+
+    // Setiap booking mengirim satu notifikasi ke pasien di channel yang berganti-ganti
+    private static void report(String label, NotificationDispatcher dispatcher,
+                               List<NotificationStrategy> gateways, int bookings) {
+        long[] latencies = new long[bookings];
+        long begin = System.nanoTime();
+        for (int i = 0; i < bookings; i++) {
+            long start = System.nanoTime();
+            dispatcher.dispatch(gateways.get(i % gateways.size()), "p" + i + "@mail.com", "Appointment A" + i + " dikonfirmasi");
+            latencies[i] = System.nanoTime() - start;
+        }
+        long elapsed = System.nanoTime() - begin;
+        boolean drained = dispatcher.drain(30000);
+        long drainedAt = System.nanoTime() - begin;
+        Arrays.sort(latencies);
+        System.out.printf("%n== %s: %d booking, %.0f booking/s, p50 %.1f us, p99 %.1f us, maks %.1f ms, selesai %s dalam %.0f ms%n",
+                          label, bookings, bookings / (elapsed / 1e9), latencies[bookings / 2] / 1e3,
+                          latencies[bookings * 99 / 100] / 1e3, latencies[bookings - 1] / 1e6,
+                          drained ? "semua" : "SEBAGIAN", drainedAt / 1e6);
+        for (ChannelStats stats : dispatcher.getStats()) {
+            System.out.println("   " + stats);
+        }
+    }
+
+    private static class StubGateway implements NotificationStrategy {
+        private final String channel;
+        private final long delayMs;
+        private final int failEvery;
+        private final AtomicLong calls = new AtomicLong();
+
+        StubGateway(String channel, long delayMs, int failEvery) {
+            this.channel = channel;
+            this.delayMs = delayMs;
+            this.failEvery = failEvery;
+        }
+
+        @Override
+        public void sendNotification(String recipient, String message) {
+            long n = calls.incrementAndGet();
+            if (delayMs > 0) {
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failEvery > 0 && n % failEvery == 0) {
+                throw new IllegalStateException("gateway " + channel + " menolak pesan #" + n);
+            }
+        }
+
+        @Override
+        public String getChannel() {
+            return channel;
+        }
+    }
+}
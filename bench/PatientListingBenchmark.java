@@ -0,0 +1,133 @@
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+
+// Mengukur biaya viewAllPatients (jumlah appointment + riwayat per pasien)
+// pada data sintetis 1k - 100k pasien: ClinicStatistics (yang dipakai layar sekarang),
+// index per pasien, dan scan seluruh data.
+//
+//   javac -encoding UTF-8 -d bin src/DoctorSchedulingApp.java
+//   javac -encoding UTF-8 -cp bin -d bin bench/PatientListingBenchmark.java
+//   java -cp bin PatientListingBenchmark
+public class PatientListingBenchmark {
+    private static final int[] SIZES = {1000, 5000, 10000, 50000, 100000};
+    private static final int APPOINTMENTS_PER_PATIENT = 3;
+    private static final int DOCTORS = 50;
+    private static final int SCAN_BASELINE_LIMIT = 5000;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws IOException {
+        System.out.printf("%-10s %-16s %-14s %-14s %-16s%n", "patients", "statistics (ms)", "ns/patient", "indexed (ms)",
+                          "full scan (ms)");
+        for (int size : SIZES) {
+            Path dir = Files.createTempDirectory("clinic-bench");
+            try {
+                generate(dir, size);
+                Database db = new Database(dir.toString());
+                long counted = best(() -> listWithStatistics(db), RUNS);
+                long indexed = best(() -> listIndexed(db), RUNS);
+                String scan = size <= SCAN_BASELINE_LIMIT
+                    ? String.format("%.1f", best(() -> listByScan(db), 1) / 1e6)
+                    : "-";
+                System.out.printf("%-10d %-16.2f %-14d %-14.1f %-16s%n", size, counted / 1e6, counted / size,
+                                  indexed / 1e6, scan);
+            } finally {
+                deleteRecursively(dir);
+            }
+        }
+    }
+
+    private static long best(Runnable run, int runs) {
+        run.run(); // warmup
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            run.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    // Pekerjaan yang sama dengan viewAllPatients, tanpa output ke konsol
+    private static void listWithStatistics(Database db) {
+        ClinicStatistics statistics = db.getStatistics();
+        long total = 0;
+        for (Patient patient : db.getAllPatients()) {
+            total += statistics.getPatientAppointmentCount(patient.getId());
+            total += statistics.getPatientHistoryCount(patient.getId());
+        }
+        blackhole(total);
+    }
+
+    // Cara sebelumnya: salin daftar appointment pasien dari index, lalu kumpulkan riwayat per appointment
+    private static void listIndexed(Database db) {
+        long total = 0;
+        for (Patient patient : db.getAllPatients()) {
+            total += db.getPatientAppointments(patient.getId()).size();
+            total += db.getPatientConsultationHistory(patient.getId()).size();
+        }
+        blackhole(total);
+    }
+
+    // Algoritma lama: scan seluruh appointment dan riwayat untuk setiap pasien
+    private static void listByScan(Database db) {
+        long total = 0;
+        for (Patient patient : db.getAllPatients()) {
+            for (Appointment app : db.getAllAppointments()) {
+                if (app.getPatientId().equals(patient.getId())) {
+                    total++;
+                }
+            }
+            for (ConsultationHistory history : db.getAllConsultationHistories()) {
+                Appointment app = db.getAppointment(history.getAppointmentId());
+                if (app != null && app.getPatientId().equals(patient.getId())) {
+                    total++;
+                }
+            }
+        }
+        blackhole(total);
+    }
+
+    private static volatile long sink;
+
+    private static void blackhole(long value) {
+        sink = value;
+    }
+
+    private static void generate(Path dir, int patients) throws IOException {
+        LocalDate day = LocalDate.of(2025, 1, 1);
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(dir.resolve("doctors.txt")))) {
+            for (int d = 1; d <= DOCTORS; d++) {
+                pw.println(IdAllocator.format('D', d) + "|Dr. Bench " + d + "|Umum");
+            }
+        }
+        try (PrintWriter pp = new PrintWriter(Files.newBufferedWriter(dir.resolve("patients.txt")));
+             PrintWriter ps = new PrintWriter(Files.newBufferedWriter(dir.resolve("schedules.txt")));
+             PrintWriter pa = new PrintWriter(Files.newBufferedWriter(dir.resolve("appointments.txt")));
+             PrintWriter ph = new PrintWriter(Files.newBufferedWriter(dir.resolve("histories.txt")))) {
+            int seq = 1;
+            for (int p = 1; p <= patients; p++) {
+                String patientId = IdAllocator.format('P', p);
+                pp.println(patientId + "|Pasien " + p + "|p" + p + "@mail.com|0800|Alamat " + p);
+                for (int i = 0; i < APPOINTMENTS_PER_PATIENT; i++, seq++) {
+                    String scheduleId = IdAllocator.format('S', seq);
+                    String appointmentId = IdAllocator.format('A', seq);
+                    LocalDate date = day.plusDays(seq % 365);
+                    ps.println(scheduleId + "|" + IdAllocator.format('D', 1 + seq % DOCTORS) + "|" + date
+                               + "|09:00|09:30|false");
+                    pa.println(appointmentId + "|" + patientId + "|" + scheduleId + "|" + date + "|Booked");
+                    if (i == 0) {
+                        ph.println(IdAllocator.format('H', p) + "|" + appointmentId + "|" + date + "|sehat|-");
+                    }
+                }
+            }
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (java.util.stream.Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
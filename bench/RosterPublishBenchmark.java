@@ -0,0 +1,141 @@
+import java.io.*;
+import java.nio.file.*;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+
+// Mempublikasikan roster satu kuartal untuk 200 dokter: slot satu per satu (generateScheduleId +
+// addSchedule, seperti menu Tambah Jadwal) dibanding template berulang lewat publishTemplates.
+// Cara per slot hanya dijalankan untuk sebagian slot lalu diekstrapolasi ke seluruh roster.
+// Jalankan juga dengan -Dclinic.storage=txt untuk melihat biaya penulisan ulang schedules.txt per slot.
+//
+//   javac -encoding UTF-8 -d bin src/DoctorSchedulingApp.java
+//   javac -encoding UTF-8 -cp bin -d bin bench/RosterPublishBenchmark.java
+//   java -cp bin RosterPublishBenchmark
+public class RosterPublishBenchmark {
+    private static final int DOCTORS = 200;
+    private static final LocalDate FROM = LocalDate.of(2027, 1, 1);
+    private static final LocalDate UNTIL = LocalDate.of(2027, 3, 31);
+    private static final int SAMPLE_SLOTS = 2000;
+    private static final long SAMPLE_BUDGET_NANOS = 20_000_000_000L;
+
+    public static void main(String[] args) throws IOException {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            out.println("Storage: " + System.getProperty("clinic.storage", "journal"));
+            for (int round = 0; round < 2; round++) {
+                boolean print = round == 1; // round pertama untuk warmup JIT
+                perSlot(out, print);
+                templates(out, print);
+            }
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static List<ScheduleTemplate> roster() {
+        List<ScheduleTemplate> templates = new ArrayList<>();
+        for (int d = 1; d <= DOCTORS; d++) {
+            String doctorId = IdAllocator.format('D', d);
+            // Dua sesi per dokter: pagi tiga hari seminggu, sore dua hari seminggu
+            Set<DayOfWeek> morning = d % 2 == 0
+                ? EnumSet.of(DayOfWeek.MONDAY, DayOfWeek.WEDNESDAY, DayOfWeek.FRIDAY)
+                : EnumSet.of(DayOfWeek.TUESDAY, DayOfWeek.THURSDAY, DayOfWeek.SATURDAY);
+            templates.add(new ScheduleTemplate(doctorId, morning, LocalTime.of(8, 0), LocalTime.of(12, 0), 15, FROM, UNTIL));
+            templates.add(new ScheduleTemplate(doctorId, EnumSet.of(DayOfWeek.MONDAY, DayOfWeek.THURSDAY),
+                                               LocalTime.of(13, 0), LocalTime.of(16, 0), 30, FROM, UNTIL));
+        }
+        return templates;
+    }
+
+    private static void perSlot(PrintStream out, boolean print) throws IOException {
+        Path dir = prepare();
+        try {
+            Database db = new Database(dir.toString());
+            List<ScheduleTemplate> templates = roster();
+            int total = 0;
+            for (ScheduleTemplate template : templates) {
+                total += template.countSlots();
+            }
+            int added = 0;
+            long start = System.nanoTime();
+            outer:
+            for (ScheduleTemplate template : templates) {
+                for (Schedule slot : template.expand(new SlotIds(db))) {
+                    db.addSchedule(slot);
+                    if (++added >= SAMPLE_SLOTS || System.nanoTime() - start > SAMPLE_BUDGET_NANOS) {
+                        break outer;
+                    }
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            db.close();
+            if (print) {
+                double perSlotMs = elapsed / 1e6 / added;
+                // Batas bawah: pada mode txt biaya tulis ulang naik seiring jumlah jadwal yang sudah ada
+                out.printf("per slot          : %,d slot diukur, %.3f ms/slot -> %,d slot >= %.1f s%n",
+                           added, perSlotMs, total, perSlotMs * total / 1000);
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static void templates(PrintStream out, boolean print) throws IOException {
+        Path dir = prepare();
+        try {
+            Database db = new Database(dir.toString());
+            long start = System.nanoTime();
+            List<ScheduleConflict> conflicts = db.publishTemplates(roster());
+            long elapsed = System.nanoTime() - start;
+            if (!conflicts.isEmpty()) {
+                throw new IllegalStateException(conflicts.get(0).getReason());
+            }
+            int total = db.getAllSchedules().size();
+            db.close();
+            if (print) {
+                out.printf("publishTemplates  : %,d slot dalam %.2f s%n", total, elapsed / 1e9);
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    // Generator ID satu per satu, seperti menu Tambah Jadwal
+    private static class SlotIds implements Iterator<String> {
+        private final Database db;
+
+        SlotIds(Database db) {
+            this.db = db;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return true;
+        }
+
+        @Override
+        public String next() {
+            return db.generateScheduleId();
+        }
+    }
+
+    private static Path prepare() throws IOException {
+        Path dir = Files.createTempDirectory("clinic-roster");
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(dir.resolve("doctors.txt")))) {
+            for (int d = 1; d <= DOCTORS; d++) {
+                pw.println(IdAllocator.format('D', d) + "|Dr. Bench " + d + "|Umum");
+            }
+        }
+        Files.write(dir.resolve("counters.txt"), Arrays.asList("1", String.valueOf(DOCTORS + 1), "1", "1", "1"));
+        return dir;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (java.util.stream.Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
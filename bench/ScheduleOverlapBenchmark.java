@@ -0,0 +1,138 @@
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+
+// Dokter mempublikasikan jadwal beberapa bulan sekaligus di atas jadwal setahun yang sudah ada.
+// Cek overlap linear (setiap slot baru dibandingkan dengan semua jadwal dokter) dibanding
+// addSchedule per slot (cek lewat ScheduleIndex) dan addSchedules (satu batch, satu transaksi journal).
+//
+//   javac -encoding UTF-8 -d bin src/DoctorSchedulingApp.java
+//   javac -encoding UTF-8 -cp bin -d bin bench/ScheduleOverlapBenchmark.java
+//   java -cp bin ScheduleOverlapBenchmark
+public class ScheduleOverlapBenchmark {
+    private static final int EXISTING_DAYS = 365;
+    private static final int NEW_DAYS = 90;
+    private static final int SLOTS_PER_DAY = 24;
+    private static final int SLOT_MINUTES = 20;
+    private static final LocalDate FIRST_DAY = LocalDate.of(2026, 1, 1);
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        out.printf("Jadwal ada: %,d slot; batch baru: %,d slot%n%n", EXISTING_DAYS * SLOTS_PER_DAY, NEW_DAYS * SLOTS_PER_DAY);
+        out.printf("%-36s %12s%n", "cara", "total (ms)");
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean print = round == ROUNDS - 1; // round sebelumnya untuk warmup JIT
+            run(out, print, "cek linear + addSchedule", ScheduleOverlapBenchmark::addLinear);
+            run(out, print, "addSchedule (ScheduleIndex)", ScheduleOverlapBenchmark::addEach);
+            run(out, print, "addSchedules (satu batch)", ScheduleOverlapBenchmark::addBatch);
+        }
+
+        // Batch yang bentrok ditolak seluruhnya
+        Path dir = Files.createTempDirectory("clinic-overlap");
+        try {
+            generate(dir);
+            Database db = new Database(dir.toString());
+            List<Schedule> batch = newSlots(db);
+            batch.add(new Schedule(db.generateScheduleId(), "D001", FIRST_DAY.plusDays(10),
+                                   LocalTime.of(8, 10), LocalTime.of(8, 40)));
+            List<ScheduleConflict> conflicts = db.addSchedules(batch);
+            out.printf("%nBatch dengan 1 slot bentrok: %d konflik (%s), %d jadwal tersimpan%n", conflicts.size(),
+                       conflicts.isEmpty() ? "-" : conflicts.get(0).getReason(), db.getDoctorSchedules("D001").size());
+            db.close();
+        } finally {
+            System.setOut(out);
+            delete(dir);
+        }
+    }
+
+    private interface Strategy {
+        void add(Database db, List<Schedule> slots);
+    }
+
+    private static void run(PrintStream out, boolean print, String name, Strategy strategy) throws IOException {
+        Path dir = Files.createTempDirectory("clinic-overlap");
+        try {
+            generate(dir);
+            Database db = new Database(dir.toString());
+            List<Schedule> slots = newSlots(db);
+            long start = System.nanoTime();
+            strategy.add(db, slots);
+            long elapsed = System.nanoTime() - start;
+            if (db.getDoctorSchedules("D001").size() != (EXISTING_DAYS + NEW_DAYS) * SLOTS_PER_DAY) {
+                throw new IllegalStateException(name + ": jumlah jadwal tidak sesuai");
+            }
+            db.close();
+            if (print) {
+                out.printf("%-36s %12.1f%n", name, elapsed / 1e6);
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    // Pendekatan tanpa index: bandingkan dengan semua jadwal dokter
+    private static void addLinear(Database db, List<Schedule> slots) {
+        for (Schedule slot : slots) {
+            for (Schedule existing : db.getDoctor(slot.getDoctorId()).getSchedules()) {
+                if (existing.getDate().equals(slot.getDate()) && existing.getStartTime().isBefore(slot.getEndTime())
+                        && slot.getStartTime().isBefore(existing.getEndTime())) {
+                    throw new IllegalStateException("overlap");
+                }
+            }
+            db.addSchedule(slot);
+        }
+    }
+
+    private static void addEach(Database db, List<Schedule> slots) {
+        for (Schedule slot : slots) {
+            if (db.addSchedule(slot) != null) {
+                throw new IllegalStateException("overlap");
+            }
+        }
+    }
+
+    private static void addBatch(Database db, List<Schedule> slots) {
+        if (!db.addSchedules(slots).isEmpty()) {
+            throw new IllegalStateException("overlap");
+        }
+    }
+
+    private static List<Schedule> newSlots(Database db) {
+        List<Schedule> slots = new ArrayList<>();
+        for (int day = 0; day < NEW_DAYS; day++) {
+            for (int slot = 0; slot < SLOTS_PER_DAY; slot++) {
+                LocalTime start = LocalTime.of(8, 0).plusMinutes((long) SLOT_MINUTES * slot);
+                slots.add(new Schedule(db.generateScheduleId(), "D001", FIRST_DAY.plusDays(EXISTING_DAYS + day),
+                                       start, start.plusMinutes(SLOT_MINUTES)));
+            }
+        }
+        return slots;
+    }
+
+    private static void generate(Path dir) throws IOException {
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(dir.resolve("doctors.txt")))) {
+            pw.println("D001|Dr. Bench|Umum");
+        }
+        int seq = 0;
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(dir.resolve("schedules.txt")))) {
+            for (int day = 0; day < EXISTING_DAYS; day++) {
+                for (int slot = 0; slot < SLOTS_PER_DAY; slot++) {
+                    LocalTime start = LocalTime.of(8, 0).plusMinutes((long) SLOT_MINUTES * slot);
+                    pw.println(IdAllocator.format('S', ++seq) + "|D001|" + FIRST_DAY.plusDays(day) + "|" + start + "|"
+                               + start.plusMinutes(SLOT_MINUTES) + "|true");
+                }
+            }
+        }
+        Files.write(dir.resolve("counters.txt"), Arrays.asList("1", "2", String.valueOf(seq + 1), "1", "1"));
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (java.util.stream.Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,138 @@
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+
+// Query jadwal untuk layar booking: scan Doctor.getSchedules() seperti viewDoctorList lama
+// dibanding ScheduleIndex (terurut tanggal + jam mulai), pada ratusan dokter dengan jadwal setahun.
+//
+//   javac -encoding UTF-8 -d bin src/DoctorSchedulingApp.java
+//   javac -encoding UTF-8 -cp bin -d bin bench/ScheduleQueryBenchmark.java
+//   java -Xmx2g -cp bin ScheduleQueryBenchmark
+public class ScheduleQueryBenchmark {
+    private static final int DOCTORS = 300;
+    private static final int DAYS = 365;
+    private static final int SLOTS_PER_DAY = 8;
+    private static final String[] SPECIALIZATIONS = {"Umum", "Pediatri", "Penyakit Dalam", "Gigi", "Kardiologi"};
+    private static final int QUERIES = 2000;
+    private static final int LIMIT = 20;
+
+    static volatile Object sink;
+
+    public static void main(String[] args) {
+        LocalDate firstDay = LocalDate.of(2026, 1, 1);
+        Random random = new Random(11);
+        List<Doctor> doctors = new ArrayList<>();
+        ScheduleIndex index = new ScheduleIndex();
+        long seq = 0;
+        for (int d = 1; d <= DOCTORS; d++) {
+            Doctor doctor = new Doctor(IdAllocator.format('D', d), "Dr. " + d, SPECIALIZATIONS[d % SPECIALIZATIONS.length]);
+            doctors.add(doctor);
+            // Urutan penambahan acak, seperti jadwal yang ditambah dokter dari waktu ke waktu
+            List<Schedule> own = new ArrayList<>();
+            for (int day = 0; day < DAYS; day++) {
+                for (int slot = 0; slot < SLOTS_PER_DAY; slot++) {
+                    LocalTime start = LocalTime.of(8, 0).plusMinutes(30L * slot);
+                    own.add(new Schedule(IdAllocator.format('S', ++seq), doctor.getId(), firstDay.plusDays(day),
+                                         start, start.plusMinutes(30)));
+                }
+            }
+            Collections.shuffle(own, random);
+            for (Schedule schedule : own) {
+                // Hari-hari awal hampir penuh, makin jauh makin kosong
+                double bookedRate = 0.95 - 0.9 * (schedule.getDate().toEpochDay() - firstDay.toEpochDay()) / DAYS;
+                if (random.nextDouble() < bookedRate) {
+                    schedule.tryReserve("A" + schedule.getId());
+                }
+                doctor.addSchedule(schedule);
+                index.add(schedule, doctor.getSpecialization());
+            }
+        }
+        System.out.printf("%d dokter, %,d jadwal%n%n", DOCTORS, seq);
+        System.out.printf("%-42s %14s %14s%n", "query", "scan (us)", "index (us)");
+
+        LocalDateTime[] froms = new LocalDateTime[QUERIES];
+        String[] doctorIds = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            froms[i] = firstDay.plusDays(random.nextInt(DAYS - 7)).atTime(8 + random.nextInt(4), 0);
+            doctorIds[i] = IdAllocator.format('D', 1 + random.nextInt(DOCTORS));
+        }
+
+        for (int round = 0; round < 2; round++) {
+            boolean print = round == 1; // round pertama untuk warmup JIT
+            compare(print, "slot tersedia dalam rentang 1 hari (limit 20)",
+                i -> scanBetween(doctors, froms[i], froms[i].plusDays(1)),
+                i -> index.availableBetween(froms[i], froms[i].plusDays(1), LIMIT));
+            compare(print, "20 slot berikutnya per spesialisasi",
+                i -> scanNext(doctors, SPECIALIZATIONS[i % SPECIALIZATIONS.length], froms[i]),
+                i -> index.nextAvailable(SPECIALIZATIONS[i % SPECIALIZATIONS.length], froms[i], LIMIT));
+            compare(print, "hari dokter penuh?",
+                i -> scanFullyBooked(doctors.get(Integer.parseInt(doctorIds[i].substring(1)) - 1), froms[i].toLocalDate()),
+                i -> index.isFullyBooked(doctorIds[i], froms[i].toLocalDate()));
+        }
+    }
+
+    private interface Query {
+        Object run(int i);
+    }
+
+    private static void compare(boolean print, String name, Query scan, Query indexed) {
+        long scanNanos = time(scan);
+        long indexNanos = time(indexed);
+        if (print) {
+            System.out.printf("%-42s %14.1f %14.2f%n", name, scanNanos / 1000.0 / QUERIES, indexNanos / 1000.0 / QUERIES);
+        }
+    }
+
+    private static long time(Query query) {
+        long start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            sink = query.run(i);
+        }
+        return System.nanoTime() - start;
+    }
+
+    // Pendekatan tanpa index: scan semua jadwal semua dokter, lalu urutkan hasilnya
+    private static List<Schedule> scanBetween(List<Doctor> doctors, LocalDateTime from, LocalDateTime to) {
+        List<Schedule> result = new ArrayList<>();
+        for (Doctor doctor : doctors) {
+            for (Schedule schedule : doctor.getSchedules()) {
+                LocalDateTime start = schedule.getDate().atTime(schedule.getStartTime());
+                if (schedule.isAvailable() && !start.isBefore(from) && start.isBefore(to)) {
+                    result.add(schedule);
+                }
+            }
+        }
+        result.sort(Comparator.comparing(Schedule::getDate).thenComparing(Schedule::getStartTime));
+        return result.subList(0, Math.min(LIMIT, result.size()));
+    }
+
+    private static List<Schedule> scanNext(List<Doctor> doctors, String specialization, LocalDateTime from) {
+        List<Schedule> result = new ArrayList<>();
+        for (Doctor doctor : doctors) {
+            if (!doctor.getSpecialization().equals(specialization)) {
+                continue;
+            }
+            for (Schedule schedule : doctor.getSchedules()) {
+                if (schedule.isAvailable() && !schedule.getDate().atTime(schedule.getStartTime()).isBefore(from)) {
+                    result.add(schedule);
+                }
+            }
+        }
+        result.sort(Comparator.comparing(Schedule::getDate).thenComparing(Schedule::getStartTime));
+        return result.subList(0, Math.min(LIMIT, result.size()));
+    }
+
+    private static boolean scanFullyBooked(Doctor doctor, LocalDate date) {
+        boolean any = false;
+        for (Schedule schedule : doctor.getSchedules()) {
+            if (schedule.getDate().equals(date)) {
+                if (schedule.isAvailable()) {
+                    return false;
+                }
+                any = true;
+            }
+        }
+        return any;
+    }
+}
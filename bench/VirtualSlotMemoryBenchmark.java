@@ -0,0 +1,127 @@
+import java.io.*;
+import java.nio.file.*;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+
+// Heap dan latensi browsing untuk roster 300 dokter pada horizon 3, 6 dan 12 bulan:
+// template diekspansi menjadi Schedule (materialized) dibanding slot virtual yang dihitung dari template.
+// Heap diukur setelah GC dengan Database masih hidup, dikurangi heap sebelum Database dibuat.
+//
+//   javac -encoding UTF-8 -d bin src/DoctorSchedulingApp.java
+//   javac -encoding UTF-8 -cp bin -d bin bench/VirtualSlotMemoryBenchmark.java
+//   java -Xmx3g -cp bin VirtualSlotMemoryBenchmark
+public class VirtualSlotMemoryBenchmark {
+    private static final int DOCTORS = 300;
+    private static final int[] HORIZON_MONTHS = {3, 6, 12};
+    private static final String[] SPECIALIZATIONS = {"Umum", "Pediatri", "Penyakit Dalam", "Gigi", "Kardiologi"};
+    private static final LocalDate FROM = LocalDate.of(2027, 1, 1);
+    private static final int QUERIES = 2000;
+    private static final int LIMIT = 20;
+
+    static volatile Object sink;
+
+    public static void main(String[] args) throws IOException {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            out.printf("%-8s %-13s %10s %10s %16s %16s%n", "horizon", "mode", "slot", "heap (MB)",
+                       "1 hari (us)", "spesialisasi (us)");
+            for (int round = 0; round < 2; round++) {
+                boolean print = round == 1; // round pertama untuk warmup JIT
+                for (int months : HORIZON_MONTHS) {
+                    run(out, print, months, false);
+                    run(out, print, months, true);
+                }
+            }
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static void run(PrintStream out, boolean print, int months, boolean virtual) throws IOException {
+        Path dir = prepare();
+        try {
+            long before = usedHeap();
+            Database db = new Database(dir.toString());
+            List<ScheduleConflict> conflicts = db.publishTemplates(roster(FROM.plusMonths(months).minusDays(1)), virtual);
+            if (!conflicts.isEmpty()) {
+                throw new IllegalStateException(conflicts.get(0).getReason());
+            }
+            long heap = usedHeap() - before;
+
+            Random random = new Random(7);
+            int days = (int) (FROM.plusMonths(months).toEpochDay() - FROM.toEpochDay());
+            LocalDateTime[] froms = new LocalDateTime[QUERIES];
+            for (int i = 0; i < QUERIES; i++) {
+                froms[i] = FROM.plusDays(random.nextInt(days - 1)).atTime(7 + random.nextInt(8), 0);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                sink = db.getAvailableSchedules(froms[i], froms[i].plusDays(1), LIMIT);
+            }
+            long dayNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                sink = db.getNextAvailableSchedules(SPECIALIZATIONS[i % SPECIALIZATIONS.length], froms[i], LIMIT);
+            }
+            long specNanos = System.nanoTime() - start;
+
+            int slots = db.getAllSchedules().size();
+            if (virtual) {
+                for (ScheduleTemplate template : roster(FROM.plusMonths(months).minusDays(1))) {
+                    slots += template.countSlots();
+                }
+            }
+            db.close();
+            if (print) {
+                out.printf("%-8s %-13s %,10d %10.1f %16.2f %16.2f%n", months + " bln",
+                           virtual ? "virtual" : "materialized", slots, heap / 1048576.0,
+                           dayNanos / 1000.0 / QUERIES, specNanos / 1000.0 / QUERIES);
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static List<ScheduleTemplate> roster(LocalDate until) {
+        List<ScheduleTemplate> templates = new ArrayList<>();
+        for (int d = 1; d <= DOCTORS; d++) {
+            String doctorId = IdAllocator.format('D', d);
+            Set<DayOfWeek> morning = d % 2 == 0
+                ? EnumSet.of(DayOfWeek.MONDAY, DayOfWeek.WEDNESDAY, DayOfWeek.FRIDAY)
+                : EnumSet.of(DayOfWeek.TUESDAY, DayOfWeek.THURSDAY, DayOfWeek.SATURDAY);
+            templates.add(new ScheduleTemplate(doctorId, morning, LocalTime.of(8, 0), LocalTime.of(12, 0), 15, FROM, until));
+            templates.add(new ScheduleTemplate(doctorId, EnumSet.of(DayOfWeek.MONDAY, DayOfWeek.THURSDAY),
+                                               LocalTime.of(13, 0), LocalTime.of(16, 0), 30, FROM, until));
+        }
+        return templates;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static Path prepare() throws IOException {
+        Path dir = Files.createTempDirectory("clinic-virtual");
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(dir.resolve("doctors.txt")))) {
+            for (int d = 1; d <= DOCTORS; d++) {
+                pw.println(IdAllocator.format('D', d) + "|Dr. Bench " + d + "|" + SPECIALIZATIONS[d % SPECIALIZATIONS.length]);
+            }
+        }
+        Files.write(dir.resolve("counters.txt"), Arrays.asList("1", String.valueOf(DOCTORS + 1), "1", "1", "1"));
+        return dir;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (java.util.stream.Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
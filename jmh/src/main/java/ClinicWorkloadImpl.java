@@ -0,0 +1,206 @@
+import clinic.jmh.ClinicWorkload;
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+
+// Implementasi ClinicWorkload di default package agar dapat memakai Database dan model secara langsung
+public class ClinicWorkloadImpl implements ClinicWorkload {
+    private static final int SAMPLE_LINES = 1024;
+
+    private Database db;
+    private int patients;
+    private int schedules;
+    private int cursor;
+    private int openSlot;
+    private final Deque<String> openSchedules = new ArrayDeque<>();
+    private final Map<String, String[]> samples = new HashMap<>();
+
+    public ClinicWorkloadImpl() {
+        // Notifikasi booking dicetak ke stdout oleh worker; dibuang agar output JMH tetap terbaca
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @Override
+    public void generate(Path dataDir, int appointments) throws IOException {
+        Files.createDirectories(dataDir);
+        int doctors = Math.max(10, appointments / 1000);
+        patients = Math.max(1, appointments / 4);
+        schedules = appointments;
+        LocalDate day = LocalDate.of(2026, 1, 1);
+        Random random = new Random(42);
+        try (PrintWriter pd = writer(dataDir, "doctors.txt")) {
+            for (int d = 1; d <= doctors; d++) {
+                pd.println(IdAllocator.format('D', d) + "|Dr. Bench " + d + "|Umum");
+            }
+        }
+        try (PrintWriter pp = writer(dataDir, "patients.txt")) {
+            for (int p = 1; p <= patients; p++) {
+                pp.println(IdAllocator.format('P', p) + "|Pasien " + p + "|p" + p + "@mail.com|0800|Alamat " + p);
+            }
+        }
+        try (PrintWriter ps = writer(dataDir, "schedules.txt");
+             PrintWriter pa = writer(dataDir, "appointments.txt");
+             PrintWriter ph = writer(dataDir, "histories.txt")) {
+            for (int i = 1; i <= appointments; i++) {
+                String scheduleId = IdAllocator.format('S', i);
+                String appointmentId = IdAllocator.format('A', i);
+                LocalDate date = day.plusDays(i % 365);
+                int minute = (i / doctors) % 32 * 15;
+                LocalTime start = LocalTime.of(8, 0).plusMinutes(minute);
+                ps.println(scheduleId + "|" + IdAllocator.format('D', 1 + i % doctors) + "|" + date + "|"
+                           + start + "|" + start.plusMinutes(15) + "|false");
+                boolean done = i % 2 == 0;
+                pa.println(appointmentId + "|" + IdAllocator.format('P', 1 + random.nextInt(patients)) + "|"
+                           + scheduleId + "|" + date + "|" + (done ? "Selesai" : "Booked"));
+                if (done) {
+                    ph.println(IdAllocator.format('H', i / 2) + "|" + appointmentId + "|" + date + "|sehat|-");
+                }
+            }
+        }
+        Files.write(dataDir.resolve("counters.txt"), Arrays.asList(
+            String.valueOf(patients + 1), String.valueOf(doctors + 1), String.valueOf(appointments + 1),
+            String.valueOf(appointments + 1), String.valueOf(appointments / 2 + 1)));
+        loadSamples(dataDir);
+    }
+
+    @Override
+    public void writeBinarySnapshot(Path dataDir) {
+        Database loaded = new Database(dataDir.toString());
+        loaded.checkpoint();
+        loaded.close();
+    }
+
+    @Override
+    public void open(Path dataDir) {
+        db = new Database(dataDir.toString());
+        patients = Math.max(1, db.getAllPatients().size());
+        schedules = db.getAllSchedules().size();
+    }
+
+    @Override
+    public void close() {
+        if (db != null) {
+            db.close();
+        }
+    }
+
+    @Override
+    public void prepareOpenSchedules(int count) {
+        openSchedules.clear();
+        LocalDate firstDay = LocalDate.of(2027, 1, 1);
+        List<Schedule> batch = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // Slot 15 menit berurutan per dokter, tidak pernah tumpang tindih antar iterasi
+            int slot = openSlot++;
+            int k = slot / 10;
+            LocalTime start = LocalTime.of(8, 0).plusMinutes(k % 32 * 15);
+            Schedule schedule = new Schedule(db.generateScheduleId(), IdAllocator.format('D', 1 + slot % 10),
+                                             firstDay.plusDays(k / 32), start, start.plusMinutes(15));
+            batch.add(schedule);
+            openSchedules.add(schedule.getId());
+        }
+        List<ScheduleConflict> conflicts = db.addSchedules(batch);
+        if (!conflicts.isEmpty()) {
+            throw new IllegalStateException(conflicts.get(0).getReason());
+        }
+    }
+
+    @Override
+    public Object addAppointment() {
+        Appointment appointment = new Appointment(db.generateAppointmentId(), nextPatientId(),
+                                                  IdAllocator.format('S', 1 + next() % schedules));
+        db.addAppointment(appointment);
+        return appointment;
+    }
+
+    @Override
+    public Object bookAppointment() {
+        String scheduleId = openSchedules.poll();
+        if (scheduleId == null) {
+            throw new IllegalStateException("Jadwal kosong habis; panggil prepareOpenSchedules dulu");
+        }
+        BookingResult result = db.bookSchedule(nextPatientId(), scheduleId);
+        if (result.getStatus() == BookingResult.Status.BOOKED) {
+            Schedule schedule = result.getSchedule();
+            db.getEventBus().publish(AppointmentEvent.booked(result.getAppointment(), schedule,
+                                                             db.getDoctor(schedule.getDoctorId())));
+        }
+        return result;
+    }
+
+    @Override
+    public Object getPatientAppointments() {
+        return db.getPatientAppointments(nextPatientId());
+    }
+
+    @Override
+    public Object getPatientConsultationHistory() {
+        return db.getPatientConsultationHistory(nextPatientId());
+    }
+
+    @Override
+    public Object loadAllData(Path dataDir) {
+        Database loaded = new Database(dataDir.toString());
+        loaded.close();
+        return loaded;
+    }
+
+    @Override
+    public Object parsePatient() {
+        return Patient.fromFileString(sample("patients.txt"));
+    }
+
+    @Override
+    public Object parseDoctor() {
+        return Doctor.fromFileString(sample("doctors.txt"));
+    }
+
+    @Override
+    public Object parseSchedule() {
+        return Schedule.fromFileString(sample("schedules.txt"));
+    }
+
+    @Override
+    public Object parseAppointment() {
+        return Appointment.fromFileString(sample("appointments.txt"));
+    }
+
+    @Override
+    public Object parseHistory() {
+        return ConsultationHistory.fromFileString(sample("histories.txt"));
+    }
+
+    // Pola akses pseudo-acak yang sama di setiap run
+    private int next() {
+        cursor = cursor * 1103515245 + 12345;
+        return cursor >>> 1;
+    }
+
+    private String nextPatientId() {
+        return IdAllocator.format('P', 1 + next() % patients);
+    }
+
+    private String sample(String file) {
+        String[] lines = samples.get(file);
+        return lines[next() % lines.length];
+    }
+
+    private void loadSamples(Path dataDir) throws IOException {
+        for (String file : new String[] {"patients.txt", "doctors.txt", "schedules.txt", "appointments.txt", "histories.txt"}) {
+            List<String> lines = new ArrayList<>();
+            try (BufferedReader br = Files.newBufferedReader(dataDir.resolve(file))) {
+                String line;
+                while (lines.size() < SAMPLE_LINES && (line = br.readLine()) != null) {
+                    lines.add(line);
+                }
+            }
+            samples.put(file, lines.toArray(new String[0]));
+        }
+    }
+
+    private static PrintWriter writer(Path dir, String name) throws IOException {
+        return new PrintWriter(Files.newBufferedWriter(dir.resolve(name)));
+    }
+}
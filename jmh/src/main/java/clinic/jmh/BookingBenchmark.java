@@ -0,0 +1,49 @@
+package clinic.jmh;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Alur bookAppointment: setiap booking menghabiskan satu jadwal kosong, jadi diukur per batch
+// dengan jadwal kosong yang disiapkan sebelum setiap iterasi. Skor = waktu untuk BATCH booking.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = BookingBenchmark.BATCH)
+@Measurement(iterations = 10, batchSize = BookingBenchmark.BATCH)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class BookingBenchmark {
+    static final int BATCH = 5000;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private ClinicWorkload workload;
+    private Path dataDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataDir = Files.createTempDirectory("clinic-jmh");
+        workload = ClinicWorkload.create();
+        workload.generate(dataDir, size);
+        workload.open(dataDir);
+    }
+
+    @Setup(Level.Iteration)
+    public void prepareSchedules() {
+        workload.prepareOpenSchedules(BATCH);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        workload.close();
+        DataDirs.delete(dataDir);
+    }
+
+    @Benchmark
+    public Object bookAppointment() {
+        return workload.bookAppointment();
+    }
+}
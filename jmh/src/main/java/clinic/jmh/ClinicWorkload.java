@@ -0,0 +1,55 @@
+package clinic.jmh;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+// Class aplikasi berada di default package, yang tidak bisa di-import dari package bernama,
+// sedangkan JMH menolak benchmark di default package. Benchmark memanggil aplikasi lewat
+// interface ini; implementasinya (ClinicWorkloadImpl) berada di default package.
+public interface ClinicWorkload {
+
+    // Data sintetis dalam format .txt: `appointments` appointment, 1 pasien per 4 appointment,
+    // 1 dokter per 1000 appointment (minimal 10), separuh appointment punya riwayat konsultasi
+    void generate(Path dataDir, int appointments) throws IOException;
+
+    // Memuat data lalu menulis snapshot.bin, sehingga load berikutnya membaca snapshot biner
+    void writeBinarySnapshot(Path dataDir);
+
+    void open(Path dataDir);
+
+    // Menutup journal tanpa checkpoint
+    void close();
+
+    // Menambah jadwal kosong untuk bookAppointment berikutnya
+    void prepareOpenSchedules(int count);
+
+    Object addAppointment();
+
+    // Setara bookAppointment di CLI: booking atomik lalu notifikasi pasien dan dokter
+    Object bookAppointment();
+
+    Object getPatientAppointments();
+
+    Object getPatientConsultationHistory();
+
+    // Membuat Database baru dari folder data lalu menutupnya
+    Object loadAllData(Path dataDir);
+
+    Object parsePatient();
+
+    Object parseDoctor();
+
+    Object parseSchedule();
+
+    Object parseAppointment();
+
+    Object parseHistory();
+
+    static ClinicWorkload create() {
+        try {
+            return (ClinicWorkload) Class.forName("ClinicWorkloadImpl").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("ClinicWorkloadImpl tidak ditemukan", e);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package clinic.jmh;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Operasi baca/tulis pada Database yang sudah dimuat
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class DatabaseBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private ClinicWorkload workload;
+    private Path dataDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataDir = Files.createTempDirectory("clinic-jmh");
+        workload = ClinicWorkload.create();
+        workload.generate(dataDir, size);
+        workload.open(dataDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        workload.close();
+        DataDirs.delete(dataDir);
+    }
+
+    @Benchmark
+    public Object addAppointment() {
+        return workload.addAppointment();
+    }
+
+    @Benchmark
+    public Object getPatientAppointments() {
+        return workload.getPatientAppointments();
+    }
+
+    @Benchmark
+    public Object getPatientConsultationHistory() {
+        return workload.getPatientConsultationHistory();
+    }
+}
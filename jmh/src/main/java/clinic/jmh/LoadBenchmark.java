@@ -0,0 +1,46 @@
+package clinic.jmh;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// loadAllData dari file .txt dan dari snapshot.bin
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class LoadBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    @Param({"txt", "binary"})
+    public String snapshot;
+
+    private ClinicWorkload workload;
+    private Path dataDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataDir = Files.createTempDirectory("clinic-jmh");
+        workload = ClinicWorkload.create();
+        workload.generate(dataDir, size);
+        if (snapshot.equals("binary")) {
+            workload.writeBinarySnapshot(dataDir);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        DataDirs.delete(dataDir);
+    }
+
+    @Benchmark
+    public Object loadAllData() {
+        return workload.loadAllData(dataDir);
+    }
+}
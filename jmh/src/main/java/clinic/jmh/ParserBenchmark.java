@@ -0,0 +1,56 @@
+package clinic.jmh;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// fromFileString per baris, memakai baris asli dari data sintetis
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+    private ClinicWorkload workload;
+    private Path dataDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataDir = Files.createTempDirectory("clinic-jmh");
+        workload = ClinicWorkload.create();
+        workload.generate(dataDir, 4096);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        DataDirs.delete(dataDir);
+    }
+
+    @Benchmark
+    public Object patient() {
+        return workload.parsePatient();
+    }
+
+    @Benchmark
+    public Object doctor() {
+        return workload.parseDoctor();
+    }
+
+    @Benchmark
+    public Object schedule() {
+        return workload.parseSchedule();
+    }
+
+    @Benchmark
+    public Object appointment() {
+        return workload.parseAppointment();
+    }
+
+    @Benchmark
+    public Object history() {
+        return workload.parseHistory();
+    }
+}
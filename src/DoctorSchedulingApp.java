@@ -1,6 +1,44 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.CRC32;
 import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
@@ -11,16 +49,124 @@ interface Observer {
     void update(String message);
 }
 
-interface Subject {
-    void attach(Observer observer);
-    void detach(Observer observer);
-    void notifyObservers(String message);
+class AppointmentEvent {
+    public enum Type { BOOKED, STATUS_CHANGED }
+    
+    private final Type type;
+    private final String appointmentId;
+    private final String patientId;
+    private final String doctorId;
+    private final String message;
+    
+    public AppointmentEvent(Type type, String appointmentId, String patientId, String doctorId, String message) {
+        this.type = type;
+        this.appointmentId = appointmentId;
+        this.patientId = patientId;
+        this.doctorId = doctorId;
+        this.message = message;
+    }
+    
+    public static AppointmentEvent booked(Appointment appointment, Schedule schedule, Doctor doctor) {
+        return new AppointmentEvent(Type.BOOKED, appointment.getId(), appointment.getPatientId(), schedule.getDoctorId(),
+                                    "Booking berhasil! Appointment ID: " + appointment.getId() + 
+                                    " dengan " + (doctor != null ? doctor.getName() : "Dokter") + 
+                                    " pada " + schedule.getDate().format(DateTimeFormatter.ofPattern("dd-MM-yyyy")));
+    }
+    
+    public static AppointmentEvent statusChanged(Appointment appointment, String doctorId) {
+        return new AppointmentEvent(Type.STATUS_CHANGED, appointment.getId(), appointment.getPatientId(), doctorId,
+                                    "Status appointment berubah menjadi: " + appointment.getStatus());
+    }
+    
+    public Type getType() { return type; }
+    public String getAppointmentId() { return appointmentId; }
+    public String getPatientId() { return patientId; }
+    public String getDoctorId() { return doctorId; }
+    public String getMessage() { return message; }
+}
+
+// Subject pusat: pasien dan dokter berlangganan sekali berdasarkan ID-nya, dan setiap event
+// appointment diteruskan ke pasien dan dokter yang bersangkutan. Appointment sendiri tidak
+// menyimpan daftar observer.
+class AppointmentEventBus {
+    private static final Observer[] NONE = new Observer[0];
+    
+    // Copy-on-write array per ID: publish tanpa lock, subscribe jarang terjadi
+    private final Map<String, Observer[]> patientSubscribers = new ConcurrentHashMap<>();
+    private final Map<String, Observer[]> doctorSubscribers = new ConcurrentHashMap<>();
+    // Mode lazy: pasien arsip tidak berlangganan satu per satu, tetapi dicari saat event untuknya dikirim
+    private volatile Function<String, Observer> patientLookup;
+    
+    public void setPatientLookup(Function<String, Observer> lookup) {
+        this.patientLookup = lookup;
+    }
+    
+    public void subscribePatient(String patientId, Observer observer) {
+        subscribe(patientSubscribers, patientId, observer);
+    }
+    
+    public void unsubscribePatient(String patientId, Observer observer) {
+        unsubscribe(patientSubscribers, patientId, observer);
+    }
+    
+    public void subscribeDoctor(String doctorId, Observer observer) {
+        subscribe(doctorSubscribers, doctorId, observer);
+    }
+    
+    public void unsubscribeDoctor(String doctorId, Observer observer) {
+        unsubscribe(doctorSubscribers, doctorId, observer);
+    }
+    
+    public void publish(AppointmentEvent event) {
+        Observer[] patients = patientSubscribers.get(event.getPatientId());
+        Function<String, Observer> lookup = patientLookup;
+        if (patients == null && lookup != null) {
+            Observer patient = lookup.apply(event.getPatientId());
+            patients = patient != null ? new Observer[] {patient} : NONE;
+        }
+        for (Observer observer : patients != null ? patients : NONE) {
+            observer.update(event.getMessage());
+        }
+        if (event.getDoctorId() != null) {
+            for (Observer observer : doctorSubscribers.getOrDefault(event.getDoctorId(), NONE)) {
+                observer.update(event.getMessage());
+            }
+        }
+    }
+    
+    private static void subscribe(Map<String, Observer[]> subscribers, String key, Observer observer) {
+        subscribers.compute(key, (k, current) -> {
+            if (current == null) {
+                return new Observer[] {observer};
+            }
+            for (Observer o : current) {
+                if (o == observer) {
+                    return current;
+                }
+            }
+            Observer[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = observer;
+            return updated;
+        });
+    }
+    
+    private static void unsubscribe(Map<String, Observer[]> subscribers, String key, Observer observer) {
+        subscribers.computeIfPresent(key, (k, current) -> {
+            Observer[] updated = Arrays.stream(current).filter(o -> o != observer).toArray(Observer[]::new);
+            return updated.length == 0 ? null : updated;
+        });
+    }
 }
 
 // ==================== STRATEGY PATTERN ====================
 
 interface NotificationStrategy {
     void sendNotification(String recipient, String message);
+    
+    // Nama channel; setiap channel punya antrian dan worker sendiri di NotificationDispatcher
+    default String getChannel() {
+        return getClass().getSimpleName();
+    }
 }
 
 class EmailNotification implements NotificationStrategy {
@@ -28,6 +174,9 @@ class EmailNotification implements NotificationStrategy {
     public void sendNotification(String recipient, String message) {
         System.out.println("[EMAIL] Mengirim ke " + recipient + ": " + message);
     }
+    
+    @Override
+    public String getChannel() { return "EMAIL"; }
 }
 
 class SMSNotification implements NotificationStrategy {
@@ -35,6 +184,9 @@ class SMSNotification implements NotificationStrategy {
     public void sendNotification(String recipient, String message) {
         System.out.println("[SMS] Mengirim ke " + recipient + ": " + message);
     }
+    
+    @Override
+    public String getChannel() { return "SMS"; }
 }
 
 class WhatsAppNotification implements NotificationStrategy {
@@ -42,22 +194,341 @@ class WhatsAppNotification implements NotificationStrategy {
     public void sendNotification(String recipient, String message) {
         System.out.println("[WHATSAPP] Mengirim ke " + recipient + ": " + message);
     }
+    
+    @Override
+    public String getChannel() { return "WHATSAPP"; }
 }
 
 class NotificationContext {
-    private NotificationStrategy strategy;
+    private volatile NotificationStrategy strategy;
     
     public void setStrategy(NotificationStrategy strategy) {
         this.strategy = strategy;
     }
     
+    // Pengiriman ke gateway dilakukan di worker channel, bukan di thread booking
     public void sendNotification(String recipient, String message) {
-        if (strategy != null) {
-            strategy.sendNotification(recipient, message);
+        NotificationStrategy current = strategy;
+        if (current != null) {
+            NotificationDispatcher.getInstance().dispatch(current, recipient, message);
+        }
+    }
+}
+
+// ==================== VIRTUAL THREADS ====================
+
+// Thread.ofVirtual() hanya tersedia di Java 21+, jadi dipanggil lewat reflection.
+// Di JVM yang lebih lama dipakai daemon platform thread.
+final class VirtualThreads {
+    private VirtualThreads() {
+    }
+    
+    static boolean isAvailable() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+    
+    static ThreadFactory factory(String namePrefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger counter = new AtomicInteger();
+            return runnable -> {
+                Thread thread = new Thread(runnable, namePrefix + counter.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+    
+    // Satu virtual thread per task; tanpa virtual thread dibatasi fallbackThreads platform thread
+    static ExecutorService perTaskExecutor(String namePrefix, int fallbackThreads) {
+        ThreadFactory factory = factory(namePrefix);
+        if (isAvailable()) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+            } catch (ReflectiveOperationException e) {
+                // lanjut ke fixed pool
+            }
+        }
+        return Executors.newFixedThreadPool(fallbackThreads, factory);
+    }
+}
+
+// ==================== ASYNC NOTIFICATION DISPATCHER ====================
+
+// Satu antrian terbatas dan satu kelompok worker per channel, sehingga gateway SMS yang lambat
+// tidak menahan booking maupun channel lain. Worker memakai virtual thread jika JVM mendukung.
+class NotificationDispatcher {
+    // Apa yang dilakukan jika antrian channel penuh
+    public enum OverflowPolicy {
+        BLOCK,        // tunggu hingga offerTimeoutMs (backpressure), lalu buang pesan baru
+        DROP_NEWEST,  // buang pesan baru
+        DROP_OLDEST,  // buang pesan tertua di antrian
+        CALLER_RUNS   // kirim langsung di thread pemanggil
+    }
+    
+    private static class Holder {
+        static final NotificationDispatcher INSTANCE = new NotificationDispatcher(
+            Boolean.parseBoolean(System.getProperty("clinic.notify.async", "true")),
+            Integer.getInteger("clinic.notify.queueCapacity", 1024),
+            Integer.getInteger("clinic.notify.workers", 4),
+            OverflowPolicy.valueOf(System.getProperty("clinic.notify.overflow", "BLOCK")),
+            Long.getLong("clinic.notify.offerTimeoutMs", 50));
+    }
+    
+    public static NotificationDispatcher getInstance() {
+        return Holder.INSTANCE;
+    }
+    
+    private final boolean async;
+    private final int queueCapacity;
+    private final int workersPerChannel;
+    private final OverflowPolicy overflowPolicy;
+    private final long offerTimeoutMs;
+    private final ThreadFactory threadFactory;
+    private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+    private volatile boolean shutdown;
+    
+    // Package-private agar benchmark dapat membuat dispatcher dengan konfigurasi sendiri
+    NotificationDispatcher(boolean async, int queueCapacity, int workersPerChannel,
+                           OverflowPolicy overflowPolicy, long offerTimeoutMs) {
+        this.async = async;
+        this.queueCapacity = queueCapacity;
+        this.workersPerChannel = workersPerChannel;
+        this.overflowPolicy = overflowPolicy;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.threadFactory = VirtualThreads.factory("notify-");
+    }
+    
+    public void dispatch(NotificationStrategy gateway, String recipient, String message) {
+        Channel channel = channels.computeIfAbsent(gateway.getChannel(), Channel::new);
+        Task task = new Task(gateway, recipient, message);
+        channel.submitted.incrementAndGet();
+        if (!async || shutdown) {
+            channel.deliver(task);
+            return;
+        }
+        if (channel.queue.offer(task)) {
+            return;
+        }
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    if (channel.queue.offer(task, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                channel.dropped.incrementAndGet();
+                break;
+            case DROP_NEWEST:
+                channel.dropped.incrementAndGet();
+                break;
+            case DROP_OLDEST:
+                while (!channel.queue.offer(task)) {
+                    if (channel.queue.poll() != null) {
+                        channel.dropped.incrementAndGet();
+                    }
+                }
+                break;
+            case CALLER_RUNS:
+                channel.deliver(task);
+                break;
+        }
+    }
+    
+    // Menunggu antrian kosong; true jika semua pesan sempat dikirim sebelum timeout
+    public boolean drain(long timeoutMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        for (Channel channel : channels.values()) {
+            while (channel.pending() > 0) {
+                if (System.nanoTime() > deadline) {
+                    return false;
+                }
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+    
+    // Pesan yang datang setelah shutdown dikirim langsung di thread pemanggil
+    public boolean shutdown(long timeoutMs) {
+        shutdown = true;
+        boolean drained = drain(timeoutMs);
+        for (Channel channel : channels.values()) {
+            for (Thread worker : channel.workers) {
+                worker.interrupt();
+            }
+        }
+        return drained;
+    }
+    
+    public List<ChannelStats> getStats() {
+        List<ChannelStats> stats = new ArrayList<>();
+        for (Channel channel : channels.values()) {
+            stats.add(channel.stats());
+        }
+        stats.sort(Comparator.comparing(ChannelStats::getChannel));
+        return stats;
+    }
+    
+    public void resetStats() {
+        for (Channel channel : channels.values()) {
+            channel.resetCounters();
+        }
+    }
+    
+    private static class Task {
+        final NotificationStrategy gateway;
+        final String recipient;
+        final String message;
+        final long enqueuedNanos = System.nanoTime();
+        
+        Task(NotificationStrategy gateway, String recipient, String message) {
+            this.gateway = gateway;
+            this.recipient = recipient;
+            this.message = message;
+        }
+    }
+    
+    private class Channel {
+        final String name;
+        final BlockingQueue<Task> queue;
+        final List<Thread> workers = new ArrayList<>();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicLong submitted = new AtomicLong();
+        final AtomicLong sent = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+        final AtomicLong sendNanos = new AtomicLong();
+        final AtomicLong maxSendNanos = new AtomicLong();
+        final AtomicLong queueWaitNanos = new AtomicLong();
+        
+        Channel(String name) {
+            this.name = name;
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            if (async) {
+                for (int i = 0; i < workersPerChannel; i++) {
+                    Thread worker = threadFactory.newThread(this::work);
+                    workers.add(worker);
+                    worker.start();
+                }
+            }
+        }
+        
+        private void work() {
+            while (true) {
+                Task task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                inFlight.incrementAndGet();
+                try {
+                    queueWaitNanos.addAndGet(System.nanoTime() - task.enqueuedNanos);
+                    deliver(task);
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            }
+        }
+        
+        void deliver(Task task) {
+            long start = System.nanoTime();
+            try {
+                task.gateway.sendNotification(task.recipient, task.message);
+                sent.incrementAndGet();
+            } catch (RuntimeException e) {
+                failed.incrementAndGet();
+                System.err.println("Error sending " + name + " notification: " + e.getMessage());
+            }
+            long elapsed = System.nanoTime() - start;
+            sendNanos.addAndGet(elapsed);
+            maxSendNanos.accumulateAndGet(elapsed, Math::max);
+        }
+        
+        int pending() {
+            return queue.size() + inFlight.get();
+        }
+        
+        ChannelStats stats() {
+            long delivered = sent.get() + failed.get();
+            return new ChannelStats(name, queue.size(), submitted.get(), sent.get(), failed.get(), dropped.get(),
+                                    delivered == 0 ? 0 : sendNanos.get() / delivered, maxSendNanos.get(),
+                                    delivered == 0 ? 0 : queueWaitNanos.get() / delivered);
+        }
+        
+        void resetCounters() {
+            submitted.set(0);
+            sent.set(0);
+            failed.set(0);
+            dropped.set(0);
+            sendNanos.set(0);
+            maxSendNanos.set(0);
+            queueWaitNanos.set(0);
         }
     }
 }
 
+class ChannelStats {
+    private final String channel;
+    private final int queueDepth;
+    private final long submitted;
+    private final long sent;
+    private final long failed;
+    private final long dropped;
+    private final long avgSendNanos;
+    private final long maxSendNanos;
+    private final long avgQueueWaitNanos;
+    
+    ChannelStats(String channel, int queueDepth, long submitted, long sent, long failed, long dropped,
+                 long avgSendNanos, long maxSendNanos, long avgQueueWaitNanos) {
+        this.channel = channel;
+        this.queueDepth = queueDepth;
+        this.submitted = submitted;
+        this.sent = sent;
+        this.failed = failed;
+        this.dropped = dropped;
+        this.avgSendNanos = avgSendNanos;
+        this.maxSendNanos = maxSendNanos;
+        this.avgQueueWaitNanos = avgQueueWaitNanos;
+    }
+    
+    public String getChannel() { return channel; }
+    public int getQueueDepth() { return queueDepth; }
+    public long getSubmitted() { return submitted; }
+    public long getSent() { return sent; }
+    public long getFailed() { return failed; }
+    public long getDropped() { return dropped; }
+    public long getAvgSendNanos() { return avgSendNanos; }
+    public long getMaxSendNanos() { return maxSendNanos; }
+    public long getAvgQueueWaitNanos() { return avgQueueWaitNanos; }
+    
+    @Override
+    public String toString() {
+        return String.format("%s: antrian %d, masuk %d, terkirim %d, gagal %d, dibuang %d, " +
+                             "kirim rata-rata %.2f ms (maks %.2f ms), tunggu antrian %.2f ms",
+                             channel, queueDepth, submitted, sent, failed, dropped,
+                             avgSendNanos / 1e6, maxSendNanos / 1e6, avgQueueWaitNanos / 1e6);
+    }
+}
+
 // ==================== MODEL CLASSES ====================
 
 class Patient implements Observer {
@@ -122,7 +593,8 @@ class Doctor implements Observer {
     public String getId() { return id; }
     public String getName() { return name; }
     public String getSpecialization() { return specialization; }
-    public List<Schedule> getSchedules() { return schedules; }
+    // Salinan, agar aman diiterasi saat thread lain menambah/menghapus jadwal
+    public synchronized List<Schedule> getSchedules() { return new ArrayList<>(schedules); }
     
     public void setNotificationStrategy(NotificationStrategy strategy) {
         notificationContext.setStrategy(strategy);
@@ -133,11 +605,11 @@ class Doctor implements Observer {
         notificationContext.sendNotification(name, message);
     }
     
-    public void addSchedule(Schedule schedule) {
+    public synchronized void addSchedule(Schedule schedule) {
         schedules.add(schedule);
     }
     
-    public void removeSchedule(Schedule schedule) {
+    public synchronized void removeSchedule(Schedule schedule) {
         schedules.remove(schedule);
     }
     
@@ -157,7 +629,16 @@ class Schedule {
     private LocalDate date;
     private LocalTime startTime;
     private LocalTime endTime;
-    private boolean isAvailable;
+    // null = tersedia; selain itu ID appointment yang memegang slot ini
+    private volatile String holder;
+    
+    // Slot terpesan yang dimuat dari file tanpa appointment yang diketahui
+    public static final String UNKNOWN_HOLDER = "?";
+    // Slot yang sedang dihapus dokter, agar tidak bisa dipesan bersamaan
+    public static final String REMOVED_HOLDER = "#removed";
+    
+    private static final AtomicReferenceFieldUpdater<Schedule, String> HOLDER =
+        AtomicReferenceFieldUpdater.newUpdater(Schedule.class, String.class, "holder");
     
     public Schedule(String id, String doctorId, LocalDate date, LocalTime startTime, LocalTime endTime) {
         this.id = id;
@@ -165,7 +646,6 @@ class Schedule {
         this.date = date;
         this.startTime = startTime;
         this.endTime = endTime;
-        this.isAvailable = true;
     }
     
     public String getId() { return id; }
@@ -173,15 +653,43 @@ class Schedule {
     public LocalDate getDate() { return date; }
     public LocalTime getStartTime() { return startTime; }
     public LocalTime getEndTime() { return endTime; }
-    public boolean isAvailable() { return isAvailable; }
+    public boolean isAvailable() { return holder == null; }
+    public String getHolder() { return holder; }
     
+    // Untuk memuat data; booking harus memakai tryReserve
     public void setAvailable(boolean available) {
-        this.isAvailable = available;
+        if (available) {
+            holder = null;
+        } else {
+            HOLDER.compareAndSet(this, null, UNKNOWN_HOLDER);
+        }
+    }
+    
+    // CAS: mengembalikan null jika slot berhasil diambil, atau ID pemegang slot saat ini
+    public String tryReserve(String appointmentId) {
+        while (true) {
+            if (HOLDER.compareAndSet(this, null, appointmentId)) {
+                return null;
+            }
+            String current = holder;
+            if (current != null) {
+                return current;
+            }
+        }
+    }
+    
+    public boolean release(String appointmentId) {
+        return HOLDER.compareAndSet(this, appointmentId, null);
+    }
+    
+    // Mengisi pemegang slot yang dimuat sebagai UNKNOWN_HOLDER
+    void assignHolder(String appointmentId) {
+        HOLDER.compareAndSet(this, UNKNOWN_HOLDER, appointmentId);
     }
     
     public String toFileString() {
         return id + "|" + doctorId + "|" + date.toString() + "|" + 
-               startTime.toString() + "|" + endTime.toString() + "|" + isAvailable;
+               startTime.toString() + "|" + endTime.toString() + "|" + isAvailable();
     }
     
     public static Schedule fromFileString(String line) {
@@ -195,13 +703,170 @@ class Schedule {
     }
 }
 
-class Appointment implements Subject {
+// Jadwal berulang, mis. Senin & Rabu 09:00 - 12:00 dalam slot 30 menit sampai 31 Desember.
+// Diekspansi menjadi Schedule dalam satu batch lewat Database.publishTemplates, atau disimpan
+// apa adanya sebagai sumber slot virtual (VirtualSlotCalendar).
+class ScheduleTemplate {
+    private static final String[] DAY_NAMES = {"sen", "sel", "rab", "kam", "jum", "sab", "min"};
+    
+    private final String doctorId;
+    private final Set<DayOfWeek> days;
+    private final LocalTime startTime;
+    private final LocalTime endTime;
+    private final int slotMinutes;
+    private final LocalDate fromDate;
+    private final LocalDate untilDate;
+    
+    public ScheduleTemplate(String doctorId, Set<DayOfWeek> days, LocalTime startTime, LocalTime endTime,
+                            int slotMinutes, LocalDate fromDate, LocalDate untilDate) {
+        if (days.isEmpty()) {
+            throw new IllegalArgumentException("Hari praktik belum dipilih");
+        }
+        if (!endTime.isAfter(startTime)) {
+            throw new IllegalArgumentException("Jam selesai harus setelah jam mulai");
+        }
+        if (slotMinutes <= 0 || startTime.plusMinutes(slotMinutes).isAfter(endTime)
+                || startTime.plusMinutes(slotMinutes).isBefore(startTime)) {
+            throw new IllegalArgumentException("Durasi slot tidak muat dalam jam praktik");
+        }
+        if (untilDate.isBefore(fromDate)) {
+            throw new IllegalArgumentException("Tanggal akhir harus setelah tanggal mulai");
+        }
+        this.doctorId = doctorId;
+        this.days = EnumSet.copyOf(days);
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.slotMinutes = slotMinutes;
+        this.fromDate = fromDate;
+        this.untilDate = untilDate;
+    }
+    
+    public String getDoctorId() { return doctorId; }
+    public Set<DayOfWeek> getDays() { return Collections.unmodifiableSet(days); }
+    public LocalTime getStartTime() { return startTime; }
+    public LocalTime getEndTime() { return endTime; }
+    public int getSlotMinutes() { return slotMinutes; }
+    public LocalDate getFromDate() { return fromDate; }
+    public LocalDate getUntilDate() { return untilDate; }
+    
+    public int slotsPerDay() {
+        return (endTime.toSecondOfDay() - startTime.toSecondOfDay()) / 60 / slotMinutes;
+    }
+    
+    // Jumlah slot hasil ekspansi, agar ID dapat dialokasikan sekaligus sebelum ekspansi
+    public int countSlots() {
+        int dates = 0;
+        for (LocalDate date = fromDate; !date.isAfter(untilDate); date = date.plusDays(1)) {
+            if (days.contains(date.getDayOfWeek())) {
+                dates++;
+            }
+        }
+        return dates * slotsPerDay();
+    }
+    
+    public boolean covers(LocalDate date) {
+        return !date.isBefore(fromDate) && !date.isAfter(untilDate) && days.contains(date.getDayOfWeek());
+    }
+    
+    // Jam mulai slot ke-index pada hari praktik
+    public LocalTime slotStart(int index) {
+        return startTime.plusMinutes((long) index * slotMinutes);
+    }
+    
+    // Indeks slot pertama yang berakhir setelah time (slot yang beririsan dengan atau mulai setelah time)
+    public int firstSlotEndingAfter(LocalTime time) {
+        int minutes = (time.toSecondOfDay() - startTime.toSecondOfDay()) / 60;
+        return minutes < 0 ? 0 : minutes / slotMinutes;
+    }
+    
+    // Indeks slot yang mulai tepat pada time, atau -1
+    public int slotIndexAt(LocalTime time) {
+        int minutes = (time.toSecondOfDay() - startTime.toSecondOfDay()) / 60;
+        if (time.getSecond() != 0 || minutes < 0 || minutes % slotMinutes != 0 || minutes / slotMinutes >= slotsPerDay()) {
+            return -1;
+        }
+        return minutes / slotMinutes;
+    }
+    
+    // ids harus berisi setidaknya countSlots() ID
+    public List<Schedule> expand(Iterator<String> ids) {
+        List<Schedule> result = new ArrayList<>(countSlots());
+        int perDay = slotsPerDay();
+        for (LocalDate date = fromDate; !date.isAfter(untilDate); date = date.plusDays(1)) {
+            if (!days.contains(date.getDayOfWeek())) {
+                continue;
+            }
+            LocalTime start = startTime;
+            for (int i = 0; i < perDay; i++) {
+                LocalTime end = start.plusMinutes(slotMinutes);
+                result.add(new Schedule(ids.next(), doctorId, date, start, end));
+                start = end;
+            }
+        }
+        return result;
+    }
+    
+    // D001|1,3|09:00|12:00|30|2027-01-01|2027-12-31 (hari 1 = Senin)
+    public String toFileString() {
+        StringBuilder dayList = new StringBuilder();
+        for (DayOfWeek day : days) {
+            if (dayList.length() > 0) {
+                dayList.append(',');
+            }
+            dayList.append(day.getValue());
+        }
+        return doctorId + "|" + dayList + "|" + startTime + "|" + endTime + "|" + slotMinutes + "|"
+               + fromDate + "|" + untilDate;
+    }
+    
+    public static ScheduleTemplate fromFileString(String line) {
+        String[] parts = line.split("\\|");
+        Set<DayOfWeek> days = EnumSet.noneOf(DayOfWeek.class);
+        for (String day : parts[1].split(",")) {
+            days.add(DayOfWeek.of(Integer.parseInt(day)));
+        }
+        return new ScheduleTemplate(parts[0], days, LocalTime.parse(parts[2]), LocalTime.parse(parts[3]),
+                                    Integer.parseInt(parts[4]), LocalDate.parse(parts[5]), LocalDate.parse(parts[6]));
+    }
+    
+    // "Sen,Rab" / "senin rabu" / "MON,WED" -> {MONDAY, WEDNESDAY}
+    public static Set<DayOfWeek> parseDays(String text) {
+        Set<DayOfWeek> result = EnumSet.noneOf(DayOfWeek.class);
+        for (String token : text.trim().toLowerCase(Locale.ROOT).split("[,\\s]+")) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            DayOfWeek day = null;
+            for (int i = 0; i < DAY_NAMES.length && day == null; i++) {
+                DayOfWeek candidate = DayOfWeek.of(i + 1);
+                if (token.startsWith(DAY_NAMES[i])
+                        || token.startsWith(candidate.name().toLowerCase(Locale.ROOT).substring(0, 3))) {
+                    day = candidate;
+                }
+            }
+            if (day == null) {
+                throw new IllegalArgumentException("Hari tidak dikenal: " + token);
+            }
+            result.add(day);
+        }
+        return result;
+    }
+}
+
+// Notifikasi perubahan status dikirim lewat AppointmentEventBus
+class Appointment {
+    public static final String STATUS_BOOKED = "Booked";
+    public static final String STATUS_DONE = "Selesai";
+    public static final String STATUS_CANCELLED = "Dibatalkan";
+    
+    private static final AtomicReferenceFieldUpdater<Appointment, String> STATUS =
+        AtomicReferenceFieldUpdater.newUpdater(Appointment.class, String.class, "status");
+    
     private String id;
     private String patientId;
     private String scheduleId;
     private LocalDate bookingDate;
-    private String status;
-    private List<Observer> observers;
+    private volatile String status;
     
     public Appointment(String id, String patientId, String scheduleId) {
         this.id = id;
@@ -209,7 +874,6 @@ class Appointment implements Subject {
         this.scheduleId = scheduleId;
         this.bookingDate = LocalDate.now();
         this.status = "Booked";
-        this.observers = new ArrayList<>();
     }
     
     public String getId() { return id; }
@@ -220,24 +884,11 @@ class Appointment implements Subject {
     
     public void setStatus(String status) {
         this.status = status;
-        notifyObservers("Status appointment berubah menjadi: " + status);
-    }
-    
-    @Override
-    public void attach(Observer observer) {
-        observers.add(observer);
-    }
-    
-    @Override
-    public void detach(Observer observer) {
-        observers.remove(observer);
     }
     
-    @Override
-    public void notifyObservers(String message) {
-        for (Observer observer : observers) {
-            observer.update(message);
-        }
+    // Perubahan status atomik, agar pembatalan dan penyelesaian tidak saling menimpa
+    public boolean transitionStatus(String expected, String next) {
+        return STATUS.compareAndSet(this, expected, next);
     }
     
     public String toFileString() {
@@ -247,8 +898,14 @@ class Appointment implements Subject {
     
     public static Appointment fromFileString(String line) {
         String[] parts = line.split("\\|");
-        Appointment a = new Appointment(parts[0], parts[1], parts[2]);
-        a.status = parts[4];
+        return restore(parts[0], parts[1], parts[2], LocalDate.parse(parts[3]), parts[4]);
+    }
+    
+    // Membuat ulang appointment dari snapshot tanpa memicu notifikasi
+    static Appointment restore(String id, String patientId, String scheduleId, LocalDate bookingDate, String status) {
+        Appointment a = new Appointment(id, patientId, scheduleId);
+        a.bookingDate = bookingDate;
+        a.status = status;
         return a;
     }
 }
@@ -281,386 +938,5903 @@ class ConsultationHistory {
     
     public static ConsultationHistory fromFileString(String line) {
         String[] parts = line.split("\\|");
-        return new ConsultationHistory(parts[0], parts[1], parts[3], parts[4]);
+        return restore(parts[0], parts[1], LocalDate.parse(parts[2]), parts[3], parts[4]);
+    }
+    
+    static ConsultationHistory restore(String id, String appointmentId, LocalDate consultationDate, 
+                                       String diagnosis, String notes) {
+        ConsultationHistory h = new ConsultationHistory(id, appointmentId, diagnosis, notes);
+        h.consultationDate = consultationDate;
+        return h;
     }
 }
 
-// ==================== SINGLETON PATTERN - DATABASE ====================
+// ==================== PERSISTENCE - WRITE-AHEAD JOURNAL ====================
 
-class Database {
-    private static Database instance;
-    private Map<String, Patient> patients;
-    private Map<String, Doctor> doctors;
-    private Map<String, Schedule> schedules;
-    private Map<String, Appointment> appointments;
-    private Map<String, ConsultationHistory> consultationHistories;
-    
-    private static final String DATA_DIR = "data";
-    private static final String PATIENTS_FILE = DATA_DIR + "/patients.txt";
-    private static final String DOCTORS_FILE = DATA_DIR + "/doctors.txt";
-    private static final String SCHEDULES_FILE = DATA_DIR + "/schedules.txt";
-    private static final String APPOINTMENTS_FILE = DATA_DIR + "/appointments.txt";
-    private static final String HISTORIES_FILE = DATA_DIR + "/histories.txt";
-    private static final String COUNTERS_FILE = DATA_DIR + "/counters.txt";
-    
-    private int patientCounter = 1;
-    private int doctorCounter = 1;
-    private int scheduleCounter = 1;
-    private int appointmentCounter = 1;
-    private int historyCounter = 1;
-    
-    private Database() {
-        patients = new HashMap<>();
-        doctors = new HashMap<>();
-        schedules = new HashMap<>();
-        appointments = new HashMap<>();
-        consultationHistories = new HashMap<>();
-        
-        // Create data directory if not exists
-        File dataDir = new File(DATA_DIR);
-        if (!dataDir.exists()) {
-            dataDir.mkdirs();
-            System.out.println("[INFO] Folder 'data' berhasil dibuat untuk menyimpan database.");
-        }
-        
-        loadAllData();
+interface JournalHandler {
+    void apply(String op, String type, String payload);
+}
+
+// Setiap mutasi ditulis sebagai satu baris: <crc32>\t<op>\t<type>\t<payload>.
+// Payload memakai format toFileString() yang sama dengan file .txt.
+// Dengan fsync, setiap append baru kembali setelah FileChannel.force selesai (data sudah di disk, bukan hanya di page cache).
+// Journal dibagi menjadi segmen journal-000001.log, journal-000002.log, ...; hanya segmen terakhir yang ditulis.
+// Checkpoint menutup segmen aktif (roll) lalu menghapus segmen yang sudah tercakup snapshot (deleteThrough).
+// journal.log dari versi lama dibaca sebagai segmen 0.
+class WriteAheadJournal implements Closeable {
+    public static final String OP_PUT = "PUT";
+    public static final String OP_DEL = "DEL";
+    // Header transaksi: record-record berikutnya hanya diterapkan jika semuanya utuh
+    public static final String OP_TX = "TX";
+
+    private final File legacyFile;
+    private final File dir;
+    private final String prefix;
+    private final boolean fsync;
+    // nomor segmen -> jumlah record di dalamnya
+    private final TreeMap<Long, Long> segments = new TreeMap<>();
+    private long active;
+    private FileOutputStream stream;
+    private Writer writer;
+    // Record di semua segmen yang masih ada, yaitu yang akan diputar ulang saat recovery
+    private long recordCount;
+    private final LatencyHistogram forceLatency = new LatencyHistogram();
+
+    public WriteAheadJournal(File file) throws IOException {
+        this(file, false);
     }
-    
-    public static Database getInstance() {
-        if (instance == null) {
-            instance = new Database();
+
+    public WriteAheadJournal(File file, boolean fsync) throws IOException {
+        this.legacyFile = file;
+        this.dir = file.getAbsoluteFile().getParentFile();
+        String name = file.getName();
+        this.prefix = (name.endsWith(".log") ? name.substring(0, name.length() - 4) : name) + "-";
+        this.fsync = fsync;
+        if (file.exists()) {
+            segments.put(0L, 0L);
         }
-        return instance;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                long number = segmentNumber(f.getName());
+                if (number > 0) {
+                    segments.put(number, 0L);
+                }
+            }
+        }
+        if (segments.isEmpty()) {
+            segments.put(1L, 0L);
+        }
+        active = segments.lastKey();
+        this.writer = openWriter();
     }
-    
-    private void loadAllData() {
-        loadCounters();
-        loadPatients();
-        loadDoctors();
-        loadSchedules();
-        loadAppointments();
-        loadConsultationHistories();
-        
+
+    private File segmentFile(long number) {
+        return number == 0 ? legacyFile : new File(dir, prefix + String.format("%06d", number) + ".log");
+    }
+
+    private long segmentNumber(String name) {
+        if (!name.startsWith(prefix) || !name.endsWith(".log")) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(prefix.length(), name.length() - 4));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private Writer openWriter() throws IOException {
+        stream = new FileOutputStream(segmentFile(active), true);
+        return new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+    }
+
+    public synchronized void append(String op, String type, String payload) throws IOException {
+        writeLine(op, type, payload);
+        commit();
+        counted(1);
+    }
+
+    // records: {op, type, payload}; ditulis dan di-flush sebagai satu unit (satu force jika fsync aktif)
+    public synchronized void appendAll(List<String[]> records) throws IOException {
+        writeLine(OP_TX, Integer.toString(records.size()), "-");
+        for (String[] record : records) {
+            writeLine(record[0], record[1], record[2]);
+        }
+        commit();
+        counted(records.size());
+    }
+
+    private void commit() throws IOException {
+        writer.flush();
+        if (fsync) {
+            long start = System.nanoTime();
+            stream.getChannel().force(false);
+            forceLatency.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    private void counted(long records) {
+        recordCount += records;
+        segments.merge(active, records, Long::sum);
+    }
+
+    private void writeLine(String op, String type, String payload) throws IOException {
+        String body = op + "\t" + type + "\t" + payload;
+        writer.write(Long.toHexString(checksum(body)));
+        writer.write('\t');
+        writer.write(body);
+        writer.write('\n');
+    }
+
+    // Segmen diputar berurutan. Replay berhenti pada baris pertama yang rusak (misalnya tulisan terpotong saat crash);
+    // ekornya dipotong dan segmen sesudahnya disisihkan sebagai .corrupt agar tidak ikut diputar di kemudian hari
+    public synchronized int replay(JournalHandler handler) throws IOException {
+        int applied = 0;
+        recordCount = 0;
+        for (long number : new ArrayList<>(segments.keySet())) {
+            File file = segmentFile(number);
+            long[] result = replaySegment(file, handler);
+            applied += result[0];
+            recordCount += result[0];
+            segments.put(number, result[0]);
+            long length = file.length();
+            if (result[1] > length) {
+                // Record terakhir utuh tetapi '\n'-nya belum sempat ditulis (replaySegment menghitung '\n' di setiap
+                // baris): baris itu ditutup agar append berikutnya tidak menyambung ke baris yang sama
+                try (FileOutputStream out = new FileOutputStream(file, true)) {
+                    out.write('\n');
+                }
+            } else if (result[1] < length) {
+                writer.close();
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(result[1]);
+                }
+                for (long later : new ArrayList<>(segments.tailMap(number, false).keySet())) {
+                    File stale = segmentFile(later);
+                    if (!stale.renameTo(new File(stale.getPath() + ".corrupt"))) {
+                        System.err.println("Error setting aside journal segment: " + stale.getName());
+                    }
+                    segments.remove(later);
+                }
+                active = number;
+                writer = openWriter();
+                break;
+            }
+        }
+        return applied;
+    }
+
+    // {record diterapkan, byte valid}
+    private static long[] replaySegment(File file, JournalHandler handler) throws IOException {
+        long applied = 0;
+        long validBytes = 0;
+        if (!file.exists()) {
+            return new long[] {0, 0};
+        }
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] parts = parseLine(line);
+                if (parts == null) {
+                    break;
+                }
+                long lineBytes = line.getBytes(StandardCharsets.UTF_8).length + 1;
+                if (parts[0].equals(OP_TX)) {
+                    // Kumpulkan seluruh isi transaksi dulu; transaksi yang terpotong dibuang
+                    int size = Integer.parseInt(parts[1]);
+                    List<String[]> batch = new ArrayList<>(size);
+                    while (batch.size() < size && (line = br.readLine()) != null) {
+                        String[] record = parseLine(line);
+                        if (record == null) {
+                            break;
+                        }
+                        batch.add(record);
+                        lineBytes += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                    }
+                    if (batch.size() < size) {
+                        break;
+                    }
+                    for (String[] record : batch) {
+                        handler.apply(record[0], record[1], record[2]);
+                    }
+                    applied += size;
+                } else {
+                    handler.apply(parts[0], parts[1], parts[2]);
+                    applied++;
+                }
+                validBytes += lineBytes;
+            }
+        }
+        return new long[] {applied, validBytes};
+    }
+
+    // Tutup segmen aktif dan mulai segmen baru; mengembalikan nomor segmen yang ditutup
+    public synchronized long roll() throws IOException {
+        writer.close();
+        long sealed = active;
+        active = sealed + 1;
+        segments.put(active, 0L);
+        writer = openWriter();
+        return sealed;
+    }
+
+    // Hapus segmen sampai nomor ini (sudah tercakup snapshot); mengembalikan jumlah byte yang dibebaskan.
+    // Segmen aktif tidak pernah dihapus.
+    public synchronized long deleteThrough(long segment) {
+        long bytes = 0;
+        Iterator<Map.Entry<Long, Long>> it = segments.headMap(Math.min(segment, active), segment < active).entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Long> entry = it.next();
+            File file = segmentFile(entry.getKey());
+            long length = file.length();
+            if (!file.delete() && file.exists()) {
+                System.err.println("Error deleting journal segment: " + file.getName());
+                break;
+            }
+            bytes += length;
+            recordCount -= entry.getValue();
+            it.remove();
+        }
+        return bytes;
+    }
+
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    public synchronized long getSizeBytes() {
+        long bytes = 0;
+        for (long number : segments.keySet()) {
+            bytes += segmentFile(number).length();
+        }
+        return bytes;
+    }
+
+    public boolean isFsync() { return fsync; }
+    public LatencyHistogram getForceLatency() { return forceLatency; }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    // {op, type, payload}, atau null jika baris rusak
+    private static String[] parseLine(String line) {
+        int tab = line.indexOf('\t');
+        if (tab < 0) {
+            return null;
+        }
+        String body = line.substring(tab + 1);
+        try {
+            if (Long.parseLong(line.substring(0, tab), 16) != checksum(body)) {
+                return null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        String[] parts = body.split("\t", 3);
+        return parts.length < 3 ? null : parts;
+    }
+    
+    private static long checksum(String body) {
+        CRC32 crc = new CRC32();
+        crc.update(body.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+}
+
+// ==================== PERSISTENCE - WRITE-BEHIND FLUSHER ====================
+
+// Perubahan dicatat sebagai record kotor per (jenis, ID). Record yang berubah beberapa kali dalam satu jendela
+// hanya ditulis sekali, versi terakhirnya. Thread flusher menulis semua record kotor sebagai satu batch.
+//   SYNC  : tanpa flusher, ditulis di thread pemanggil
+//   GROUP : pemanggil menunggu flush berikutnya; banyak pemanggil berbagi satu penulisan (dan satu fsync)
+//   ASYNC : pemanggil langsung kembali; perubahan dalam jendela terakhir bisa hilang jika proses mati mendadak
+class WriteBehindFlusher implements Closeable {
+    enum Mode { SYNC, GROUP, ASYNC }
+    
+    private final Mode mode;
+    private final long windowMillis;
+    // Jendela ditutup lebih awal begitu batch mencapai jumlah record ini
+    private final int maxBatch;
+    private final Function<String[], String> keyOf;
+    private final Consumer<List<String[]>> sink;
+    private final Thread thread;
+    private final Object lock = new Object();
+    private LinkedHashMap<String, String[]> dirty = new LinkedHashMap<>();
+    private long submitted;
+    private long flushed;
+    // Batch terakhir yang gagal ditulis: tiket sampai failedThrough belum tersimpan. Record-nya dikembalikan ke
+    // dirty dan dicoba lagi; pemanggil yang menunggu tiket itu menerima error, bukan ack
+    private long failedThrough;
+    private IOException failure;
+    private static final long RETRY_MILLIS = 100;
+    private boolean urgent;
+    private boolean closed;
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong recordsSubmitted = new AtomicLong();
+    private final AtomicLong recordsWritten = new AtomicLong();
+    private final AtomicLong largestBatch = new AtomicLong();
+    // commit: durasi satu batch ditulis (termasuk fsync); ack: lama pemanggil menunggu pada mode group
+    private final LatencyHistogram commitLatency = new LatencyHistogram();
+    private final LatencyHistogram ackLatency = new LatencyHistogram();
+    
+    WriteBehindFlusher(Mode mode, long windowMillis, Function<String[], String> keyOf, Consumer<List<String[]>> sink) {
+        this(mode, windowMillis, Integer.MAX_VALUE, keyOf, sink);
+    }
+    
+    WriteBehindFlusher(Mode mode, long windowMillis, int maxBatch, Function<String[], String> keyOf,
+                       Consumer<List<String[]>> sink) {
+        this.mode = mode;
+        this.windowMillis = windowMillis;
+        this.maxBatch = maxBatch;
+        this.keyOf = keyOf;
+        this.sink = sink;
+        thread = new Thread(this::run, "clinic-flusher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    // records: {op, type, payload}; satu panggilan tidak pernah terpecah ke dua batch.
+    // Mengembalikan nomor tiket untuk awaitFlushed.
+    public long submit(List<String[]> records) {
+        synchronized (lock) {
+            for (String[] record : records) {
+                dirty.put(keyOf.apply(record), record);
+            }
+            recordsSubmitted.addAndGet(records.size());
+            lock.notifyAll();
+            return ++submitted;
+        }
+    }
+    
+    public void awaitFlushed(long ticket) {
+        if (mode != Mode.GROUP) {
+            return;
+        }
+        long start = System.nanoTime();
+        boolean interrupted = false;
+        try {
+            synchronized (lock) {
+                while (flushed < ticket && failedThrough < ticket && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                checkFlushed(ticket);
+            }
+        } finally {
+            ackLatency.recordNanos(System.nanoTime() - start);
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    // Dipanggil dengan lock dipegang
+    private void checkFlushed(long ticket) {
+        if (flushed < ticket && failure != null) {
+            throw new UncheckedIOException("Perubahan gagal ditulis", failure);
+        }
+    }
+    
+    // Tulis semua yang masih kotor tanpa menunggu jendela, lalu tunggu sampai selesai
+    public void flush() {
+        long ticket;
+        synchronized (lock) {
+            ticket = submitted;
+            urgent = true;
+            lock.notifyAll();
+        }
+        boolean interrupted = false;
+        try {
+            synchronized (lock) {
+                while (flushed < ticket && failedThrough < ticket && thread.isAlive()) {
+                    try {
+                        lock.wait(100);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                checkFlushed(ticket);
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    private void run() {
+        while (true) {
+            synchronized (lock) {
+                try {
+                    while (dirty.isEmpty() && !closed) {
+                        lock.wait();
+                    }
+                    // Jendela coalescing: beri kesempatan perubahan lain bergabung ke batch ini
+                    long deadline = System.currentTimeMillis() + windowMillis;
+                    long remaining;
+                    while (!urgent && !closed && dirty.size() < maxBatch
+                           && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                        lock.wait(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    closed = true;
+                }
+                urgent = false;
+                if (dirty.isEmpty()) {
+                    flushed = submitted;
+                    lock.notifyAll();
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+            List<String[]> batch;
+            long ticket;
+            synchronized (lock) {
+                batch = new ArrayList<>(dirty.values());
+                dirty = new LinkedHashMap<>();
+                ticket = submitted;
+            }
+            try {
+                long start = System.nanoTime();
+                sink.accept(batch);
+                commitLatency.recordNanos(System.nanoTime() - start);
+                flushes.incrementAndGet();
+                recordsWritten.addAndGet(batch.size());
+                largestBatch.accumulateAndGet(batch.size(), Math::max);
+            } catch (RuntimeException e) {
+                System.err.println("Error flushing changes: " + e.getMessage());
+                if (!failed(batch, ticket, e)) {
+                    return;
+                }
+                continue;
+            }
+            synchronized (lock) {
+                flushed = Math.max(flushed, ticket);
+                failure = null;
+                lock.notifyAll();
+            }
+        }
+    }
+    
+    // Batch dikembalikan ke dirty (record yang lebih baru untuk kunci yang sama tetap menang), pemanggil yang
+    // menunggu dibangunkan dengan error, lalu dicoba lagi setelah RETRY_MILLIS. false jika flusher sudah ditutup:
+    // record yang tersisa tidak bisa ditulis lagi.
+    private boolean failed(List<String[]> batch, long ticket, RuntimeException e) {
+        synchronized (lock) {
+            LinkedHashMap<String, String[]> retry = new LinkedHashMap<>();
+            for (String[] record : batch) {
+                retry.put(keyOf.apply(record), record);
+            }
+            retry.putAll(dirty);
+            dirty = retry;
+            failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e);
+            failedThrough = Math.max(failedThrough, ticket);
+            lock.notifyAll();
+            if (closed) {
+                System.err.println("Error flushing changes: " + dirty.size() + " perubahan tidak tersimpan");
+                return false;
+            }
+            try {
+                lock.wait(RETRY_MILLIS);
+            } catch (InterruptedException interrupted) {
+                closed = true;
+            }
+            return true;
+        }
+    }
+    
+    public Mode getMode() { return mode; }
+    public long getFlushes() { return flushes.get(); }
+    public long getRecordsSubmitted() { return recordsSubmitted.get(); }
+    public long getRecordsWritten() { return recordsWritten.get(); }
+    public long getLargestBatch() { return largestBatch.get(); }
+    public LatencyHistogram getCommitLatency() { return commitLatency; }
+    public LatencyHistogram getAckLatency() { return ackLatency; }
+    
+    public double getMeanBatch() {
+        long n = flushes.get();
+        return n == 0 ? 0 : recordsWritten.get() / (double) n;
+    }
+    
+    // Sisa record kotor ditulis dulu sebelum thread berhenti
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
+
+// ==================== PERSISTENCE - BINARY SNAPSHOT ====================
+
+// Format snapshot.bin (big-endian):
+//   header  : magic "CLNS" | version | waktu dibuat (epoch millis) | jumlah section
+//   section : tipe | jumlah record | panjang payload | CRC32 payload | payload
+// Tanggal disimpan sebagai epoch day, jam sebagai menit dalam sehari, ID sebagai int
+// (tanpa prefix) dan string sebagai UTF-8 dengan prefix panjang (varint).
+class BinarySnapshot {
+    public static final int MAGIC = 0x434C4E53;
+    public static final int VERSION = 1;
+    
+    static final byte SECTION_PATIENTS = 1;
+    static final byte SECTION_DOCTORS = 2;
+    static final byte SECTION_SCHEDULES = 3;
+    static final byte SECTION_APPOINTMENTS = 4;
+    static final byte SECTION_HISTORIES = 5;
+    static final int SECTION_HEADER_BYTES = 1 + 4 + 8 + 4;
+    
+    private static final int STATUS_BOOKED = 0;
+    private static final int STATUS_SELESAI = 1;
+    private static final int STATUS_OTHER = 2;
+    
+    public static class Contents {
+        public Map<String, Patient> patients = new ConcurrentHashMap<>();
+        public Map<String, Doctor> doctors = new ConcurrentHashMap<>();
+        public Map<String, Schedule> schedules = new ConcurrentHashMap<>();
+        public Map<String, Appointment> appointments = new ConcurrentHashMap<>();
+        public Map<String, ConsultationHistory> histories = new ConcurrentHashMap<>();
+    }
+    
+    // ---------- write ----------
+    
+    public static void write(File target, Collection<Patient> patients, Collection<Doctor> doctors,
+                             Collection<Schedule> schedules, Collection<Appointment> appointments,
+                             Collection<ConsultationHistory> histories) throws IOException {
+        write(target, patients, doctors, schedules, appointments, histories, () -> { });
+    }
+    
+    // beforePublish dijalankan setelah file sementara di-fsync, sebelum rename menggantikan snapshot lama
+    public static void write(File target, Collection<Patient> patients, Collection<Doctor> doctors,
+                             Collection<Schedule> schedules, Collection<Appointment> appointments,
+                             Collection<ConsultationHistory> histories, Runnable beforePublish) throws IOException {
+        File temp = new File(target.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(20);
+            header.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis()).putInt(5).flip();
+            channel.write(header);
+            
+            SectionWriter out = new SectionWriter(channel);
+            out.begin(SECTION_PATIENTS);
+            for (Patient p : patients) {
+                out.putId(p.getId(), 'P');
+                out.putString(p.getName());
+                out.putString(p.getEmail());
+                out.putString(p.getPhone());
+                out.putString(p.getAddress());
+                out.endRecord();
+            }
+            out.end();
+            out.begin(SECTION_DOCTORS);
+            for (Doctor d : doctors) {
+                out.putId(d.getId(), 'D');
+                out.putString(d.getName());
+                out.putString(d.getSpecialization());
+                out.endRecord();
+            }
+            out.end();
+            out.begin(SECTION_SCHEDULES);
+            for (Schedule s : schedules) {
+                out.putId(s.getId(), 'S');
+                out.putId(s.getDoctorId(), 'D');
+                out.putInt((int) s.getDate().toEpochDay());
+                out.putShort(s.getStartTime().toSecondOfDay() / 60);
+                out.putShort(s.getEndTime().toSecondOfDay() / 60);
+                out.putByte(s.isAvailable() ? 1 : 0);
+                out.endRecord();
+            }
+            out.end();
+            out.begin(SECTION_APPOINTMENTS);
+            for (Appointment a : appointments) {
+                out.putId(a.getId(), 'A');
+                out.putId(a.getPatientId(), 'P');
+                out.putId(a.getScheduleId(), 'S');
+                out.putInt((int) a.getBookingDate().toEpochDay());
+                putStatus(out, a.getStatus());
+                out.endRecord();
+            }
+            out.end();
+            out.begin(SECTION_HISTORIES);
+            for (ConsultationHistory h : histories) {
+                out.putId(h.getId(), 'H');
+                out.putId(h.getAppointmentId(), 'A');
+                out.putInt((int) h.getConsultationDate().toEpochDay());
+                out.putString(h.getDiagnosis());
+                out.putString(h.getNotes());
+                out.endRecord();
+            }
+            out.end();
+            channel.force(true);
+        }
+        beforePublish.run();
+        Files.move(temp.toPath(), target.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private static void putStatus(SectionWriter out, String status) throws IOException {
+        if (status.equals("Booked")) {
+            out.putByte(STATUS_BOOKED);
+        } else if (status.equals("Selesai")) {
+            out.putByte(STATUS_SELESAI);
+        } else {
+            out.putByte(STATUS_OTHER);
+            out.putString(status);
+        }
+    }
+    
+    // Record di-stream lewat buffer 1 MB; header section ditulis ulang setelah payload selesai
+    private static class SectionWriter {
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        private final CRC32 crc = new CRC32();
+        private byte type;
+        private long headerPosition;
+        private long length;
+        private int count;
+        
+        SectionWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+        
+        void begin(byte sectionType) throws IOException {
+            type = sectionType;
+            headerPosition = channel.position();
+            length = 0;
+            count = 0;
+            crc.reset();
+            channel.write(ByteBuffer.allocate(SECTION_HEADER_BYTES));
+        }
+        
+        void putByte(int value) throws IOException {
+            ensure(1);
+            buffer.put((byte) value);
+        }
+        
+        void putShort(int value) throws IOException {
+            ensure(2);
+            buffer.putShort((short) value);
+        }
+        
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+        
+        // ID standar (misal "A012") cukup 4 byte; ID lain ditandai -1 lalu disimpan sebagai string
+        void putId(String id, char prefix) throws IOException {
+            int number = IdAllocator.parseNumber(id, prefix);
+            putInt(number);
+            if (number < 0) {
+                putString(id);
+            }
+        }
+        
+        void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ensure(5 + bytes.length);
+            int v = bytes.length;
+            while ((v & ~0x7F) != 0) {
+                buffer.put((byte) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            buffer.put((byte) v);
+            buffer.put(bytes);
+        }
+        
+        void endRecord() {
+            count++;
+        }
+        
+        void end() throws IOException {
+            flush();
+            ByteBuffer header = ByteBuffer.allocate(SECTION_HEADER_BYTES);
+            header.put(type).putInt(count).putLong(length).putInt((int) crc.getValue()).flip();
+            long position = headerPosition;
+            while (header.hasRemaining()) {
+                position += channel.write(header, position);
+            }
+        }
+        
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+                if (buffer.capacity() < bytes) {
+                    buffer = ByteBuffer.allocate(bytes);
+                }
+            }
+        }
+        
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            length += buffer.remaining();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+    
+    // ---------- read ----------
+    
+    // Setiap section di-map lewat FileChannel lalu di-parse paralel di executor yang diberikan
+    public static Contents read(File file, ExecutorService executor, Map<String, Long> timings) throws IOException {
+        return read(file, executor, timings, false);
+    }
+    
+    // skipArchive: section pasien dan riwayat dilewati (dibaca per record lewat SnapshotIndex)
+    public static Contents read(File file, ExecutorService executor, Map<String, Long> timings,
+                                boolean skipArchive) throws IOException {
+        Contents contents = new Contents();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(20);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Bukan file snapshot: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Versi snapshot tidak didukung: " + version);
+            }
+            header.getLong();
+            int sections = header.getInt();
+            
+            List<Future<?>> pending = new ArrayList<>();
+            long position = 20;
+            for (int i = 0; i < sections; i++) {
+                ByteBuffer sectionHeader = ByteBuffer.allocate(SECTION_HEADER_BYTES);
+                readFully(channel, sectionHeader, position);
+                sectionHeader.flip();
+                byte type = sectionHeader.get();
+                int count = sectionHeader.getInt();
+                long length = sectionHeader.getLong();
+                int expectedCrc = sectionHeader.getInt();
+                if (skipArchive && (type == SECTION_PATIENTS || type == SECTION_HISTORIES)) {
+                    position += SECTION_HEADER_BYTES + length;
+                    continue;
+                }
+                ByteBuffer payload = channel.map(FileChannel.MapMode.READ_ONLY, position + SECTION_HEADER_BYTES, length);
+                position += SECTION_HEADER_BYTES + length;
+                pending.add(executor.submit(() -> {
+                    long start = System.nanoTime();
+                    CRC32 crc = new CRC32();
+                    crc.update(payload.duplicate());
+                    if ((int) crc.getValue() != expectedCrc) {
+                        throw new IOException("Checksum section " + type + " tidak cocok");
+                    }
+                    readSection(type, count, payload, contents);
+                    timings.put(sectionName(type), System.nanoTime() - start);
+                    return null;
+                }));
+            }
+            for (Future<?> future : pending) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Loading snapshot interrupted", e);
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof IOException
+                        ? (IOException) e.getCause()
+                        : new IOException(e.getCause());
+                }
+            }
+        }
+        return contents;
+    }
+    
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Snapshot terpotong");
+            }
+        }
+    }
+    
+    private static String sectionName(byte type) {
+        switch (type) {
+            case SECTION_PATIENTS: return "patients";
+            case SECTION_DOCTORS: return "doctors";
+            case SECTION_SCHEDULES: return "schedules";
+            case SECTION_APPOINTMENTS: return "appointments";
+            case SECTION_HISTORIES: return "histories";
+            default: return "section-" + type;
+        }
+    }
+    
+    private static int capacityFor(int count) {
+        return (int) (count / 0.75f) + 1;
+    }
+    
+    private static void readSection(byte type, int count, ByteBuffer in, Contents contents) {
+        switch (type) {
+            case SECTION_PATIENTS: {
+                Map<String, Patient> map = new ConcurrentHashMap<>(capacityFor(count));
+                for (int i = 0; i < count; i++) {
+                    Patient p = readPatient(in);
+                    map.put(p.getId(), p);
+                }
+                contents.patients = map;
+                break;
+            }
+            case SECTION_DOCTORS: {
+                Map<String, Doctor> map = new ConcurrentHashMap<>(capacityFor(count));
+                for (int i = 0; i < count; i++) {
+                    Doctor d = new Doctor(getId(in, 'D'), getString(in), getString(in));
+                    map.put(d.getId(), d);
+                }
+                contents.doctors = map;
+                break;
+            }
+            case SECTION_SCHEDULES: {
+                Map<String, Schedule> map = new ConcurrentHashMap<>(capacityFor(count));
+                for (int i = 0; i < count; i++) {
+                    String id = getId(in, 'S');
+                    String doctorId = getId(in, 'D');
+                    LocalDate date = LocalDate.ofEpochDay(in.getInt());
+                    LocalTime start = LocalTime.ofSecondOfDay(in.getShort() * 60L);
+                    LocalTime end = LocalTime.ofSecondOfDay(in.getShort() * 60L);
+                    Schedule s = new Schedule(id, doctorId, date, start, end);
+                    s.setAvailable(in.get() != 0);
+                    map.put(id, s);
+                }
+                contents.schedules = map;
+                break;
+            }
+            case SECTION_APPOINTMENTS: {
+                Map<String, Appointment> map = new ConcurrentHashMap<>(capacityFor(count));
+                for (int i = 0; i < count; i++) {
+                    String id = getId(in, 'A');
+                    String patientId = getId(in, 'P');
+                    String scheduleId = getId(in, 'S');
+                    LocalDate bookingDate = LocalDate.ofEpochDay(in.getInt());
+                    int statusCode = in.get();
+                    String status = statusCode == STATUS_BOOKED ? "Booked"
+                                  : statusCode == STATUS_SELESAI ? "Selesai"
+                                  : getString(in);
+                    map.put(id, Appointment.restore(id, patientId, scheduleId, bookingDate, status));
+                }
+                contents.appointments = map;
+                break;
+            }
+            case SECTION_HISTORIES: {
+                Map<String, ConsultationHistory> map = new ConcurrentHashMap<>(capacityFor(count));
+                for (int i = 0; i < count; i++) {
+                    ConsultationHistory h = readHistory(in);
+                    map.put(h.getId(), h);
+                }
+                contents.histories = map;
+                break;
+            }
+            default:
+                // Section dari versi yang lebih baru diabaikan
+        }
+    }
+    
+    // Satu record mulai dari posisi buffer saat ini
+    static Patient readPatient(ByteBuffer in) {
+        return new Patient(getId(in, 'P'), getString(in), getString(in), getString(in), getString(in));
+    }
+    
+    static ConsultationHistory readHistory(ByteBuffer in) {
+        String id = getId(in, 'H');
+        String appointmentId = getId(in, 'A');
+        LocalDate date = LocalDate.ofEpochDay(in.getInt());
+        return ConsultationHistory.restore(id, appointmentId, date, getString(in), getString(in));
+    }
+    
+    // Nomor ID tanpa membuat String; ID non-standar (-1) dilewati
+    static int skipId(ByteBuffer in) {
+        int number = in.getInt();
+        if (number < 0) {
+            skipString(in);
+        }
+        return number;
+    }
+    
+    static void skipString(ByteBuffer in) {
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        in.position(in.position() + length);
+    }
+    
+    private static String getId(ByteBuffer in, char prefix) {
+        int number = in.getInt();
+        return number >= 0 ? IdAllocator.format(prefix, number) : getString(in);
+    }
+    
+    static String getString(ByteBuffer in) {
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
+
+// ==================== PERSISTENCE - SNAPSHOT INDEX ====================
+
+// snapshot.idx: tabel terurut untuk section pasien dan riwayat di snapshot.bin, di-map langsung ke memori.
+//   header : magic "CLNI" | version | waktu dibuat snapshot | panjang snapshot | jumlah tabel
+//   tabel  : jenis | posisi payload section | panjang payload | jumlah entry | entry (long)
+// Entry = nomor (32 bit atas) | nilai (32 bit bawah). Tabel ID: nomor ID -> offset record di payload section.
+// Tabel riwayat per appointment: nomor appointment -> nomor ID riwayat.
+// Record dengan ID non-standar (tidak bisa dijadikan nomor) memakai nomor -1 dan dimuat langsung saat dibuka.
+class SnapshotIndex {
+    public static final int MAGIC = 0x434C4E49;
+    public static final int VERSION = 1;
+    
+    private static final byte TABLE_PATIENTS = 1;
+    private static final byte TABLE_HISTORIES = 2;
+    private static final byte TABLE_HISTORIES_BY_APPOINTMENT = 3;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4;
+    private static final int TABLE_HEADER_BYTES = 1 + 8 + 8 + 4;
+    
+    ByteBuffer patientRecords = ByteBuffer.allocate(0);
+    LongBuffer patients = LongBuffer.allocate(0);
+    ByteBuffer historyRecords = ByteBuffer.allocate(0);
+    LongBuffer histories = LongBuffer.allocate(0);
+    LongBuffer historiesByAppointment = LongBuffer.allocate(0);
+    
+    // snapshot.idx dipakai jika cocok dengan snapshot.bin; jika belum ada atau tertinggal (misalnya proses mati
+    // setelah snapshot baru ditulis) index dibangun ulang sekali dari snapshot
+    public static SnapshotIndex open(File snapshot, File index) throws IOException {
+        long created = snapshotCreated(snapshot);
+        if (!matches(index, created, snapshot.length())) {
+            write(snapshot, index);
+        }
+        SnapshotIndex result = new SnapshotIndex();
+        try (FileChannel indexChannel = FileChannel.open(index.toPath(), StandardOpenOption.READ);
+             FileChannel snapshotChannel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(indexChannel, header, 0);
+            header.flip().position(HEADER_BYTES - 4);
+            int tables = header.getInt();
+            long position = HEADER_BYTES;
+            for (int i = 0; i < tables; i++) {
+                ByteBuffer tableHeader = ByteBuffer.allocate(TABLE_HEADER_BYTES);
+                readFully(indexChannel, tableHeader, position);
+                tableHeader.flip();
+                byte type = tableHeader.get();
+                long sectionPosition = tableHeader.getLong();
+                long sectionLength = tableHeader.getLong();
+                int count = tableHeader.getInt();
+                position += TABLE_HEADER_BYTES;
+                LongBuffer entries = indexChannel.map(FileChannel.MapMode.READ_ONLY, position, count * 8L).asLongBuffer();
+                position += count * 8L;
+                switch (type) {
+                    case TABLE_PATIENTS:
+                        result.patientRecords = snapshotChannel.map(FileChannel.MapMode.READ_ONLY, sectionPosition, sectionLength);
+                        result.patients = entries;
+                        break;
+                    case TABLE_HISTORIES:
+                        result.historyRecords = snapshotChannel.map(FileChannel.MapMode.READ_ONLY, sectionPosition, sectionLength);
+                        result.histories = entries;
+                        break;
+                    case TABLE_HISTORIES_BY_APPOINTMENT:
+                        result.historiesByAppointment = entries;
+                        break;
+                    default:
+                        // Tabel dari versi yang lebih baru diabaikan
+                }
+            }
+        }
+        return result;
+    }
+    
+    private static long snapshotCreated(File snapshot) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(16);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != BinarySnapshot.MAGIC) {
+                throw new IOException("Bukan file snapshot: " + snapshot);
+            }
+            header.getInt();
+            return header.getLong();
+        }
+    }
+    
+    private static boolean matches(File index, long created, long length) {
+        if (!index.exists()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(index.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(channel, header, 0);
+            header.flip();
+            return header.getInt() == MAGIC && header.getInt() == VERSION
+                && header.getLong() == created && header.getLong() == length;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+    
+    // Memindai section pasien dan riwayat (checksum diperiksa) dan menulis index lewat file sementara + rename
+    public static void write(File snapshot, File index) throws IOException {
+        long created = snapshotCreated(snapshot);
+        long length = snapshot.length();
+        List<Object[]> tables = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(20);
+            readFully(channel, header, 0);
+            header.flip().position(16);
+            int sections = header.getInt();
+            long position = 20;
+            for (int i = 0; i < sections; i++) {
+                ByteBuffer sectionHeader = ByteBuffer.allocate(BinarySnapshot.SECTION_HEADER_BYTES);
+                readFully(channel, sectionHeader, position);
+                sectionHeader.flip();
+                byte type = sectionHeader.get();
+                int count = sectionHeader.getInt();
+                long sectionLength = sectionHeader.getLong();
+                int expectedCrc = sectionHeader.getInt();
+                long sectionPosition = position + BinarySnapshot.SECTION_HEADER_BYTES;
+                position = sectionPosition + sectionLength;
+                if (type != BinarySnapshot.SECTION_PATIENTS && type != BinarySnapshot.SECTION_HISTORIES) {
+                    continue;
+                }
+                ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, sectionPosition, sectionLength);
+                CRC32 crc = new CRC32();
+                crc.update(in.duplicate());
+                if ((int) crc.getValue() != expectedCrc) {
+                    throw new IOException("Checksum section " + type + " tidak cocok");
+                }
+                long[] byId = new long[count];
+                if (type == BinarySnapshot.SECTION_PATIENTS) {
+                    for (int r = 0; r < count; r++) {
+                        int offset = in.position();
+                        byId[r] = entry(BinarySnapshot.skipId(in), offset);
+                        for (int field = 0; field < 4; field++) {
+                            BinarySnapshot.skipString(in);
+                        }
+                    }
+                    tables.add(new Object[] {TABLE_PATIENTS, sectionPosition, sectionLength, byId});
+                } else {
+                    long[] byAppointment = new long[count];
+                    for (int r = 0; r < count; r++) {
+                        int offset = in.position();
+                        int id = BinarySnapshot.skipId(in);
+                        int appointment = BinarySnapshot.skipId(in);
+                        in.getInt();
+                        BinarySnapshot.skipString(in);
+                        BinarySnapshot.skipString(in);
+                        byId[r] = entry(id, offset);
+                        byAppointment[r] = entry(id < 0 ? -1 : appointment, id);
+                    }
+                    tables.add(new Object[] {TABLE_HISTORIES, sectionPosition, sectionLength, byId});
+                    tables.add(new Object[] {TABLE_HISTORIES_BY_APPOINTMENT, sectionPosition, sectionLength, byAppointment});
+                }
+            }
+        }
+        
+        File temp = new File(index.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putLong(created).putLong(length).putInt(tables.size()).flip();
+            writeFully(channel, header);
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+            for (Object[] table : tables) {
+                long[] entries = (long[]) table[3];
+                Arrays.sort(entries);
+                buffer.put((Byte) table[0]).putLong((Long) table[1]).putLong((Long) table[2]).putInt(entries.length);
+                for (long entry : entries) {
+                    if (buffer.remaining() < 8) {
+                        buffer.flip();
+                        writeFully(channel, buffer);
+                        buffer.clear();
+                    }
+                    buffer.putLong(entry);
+                }
+                buffer.flip();
+                writeFully(channel, buffer);
+                buffer.clear();
+            }
+            channel.force(true);
+        }
+        Files.move(temp.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    // Nomor negatif (ID non-standar) terurut paling depan
+    static long entry(int number, int value) {
+        return ((long) number << 32) | (value & 0xFFFFFFFFL);
+    }
+    
+    static int number(long entry) {
+        return (int) (entry >> 32);
+    }
+    
+    static int value(long entry) {
+        return (int) entry;
+    }
+    
+    // Posisi entry pertama dengan nomor >= number
+    static int lowerBound(LongBuffer table, int number) {
+        long target = (long) number << 32;
+        int lo = 0;
+        int hi = table.limit();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (table.get(mid) < target) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+    
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("File terpotong");
+            }
+        }
+    }
+    
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
+
+// ==================== LAZY RECORD STORE ====================
+
+// Map pasien/riwayat yang dibaca per record dari snapshot.bin saat dibutuhkan, lewat SnapshotIndex.
+// Record yang berubah sejak snapshot (registrasi, riwayat baru, replay journal) disimpan di overlay dan selalu
+// didahulukan; record arsip yang dibaca disimpan di cache LRU berukuran tetap. Heap sebanding dengan perubahan
+// sejak snapshot ditambah cache, bukan jumlah record di arsip. Iterasi (daftar pasien, checkpoint) membaca arsip
+// berurutan tanpa mengisi cache. Record tidak pernah dihapus.
+class LazyRecordStore<T> extends AbstractMap<String, T> {
+    private final char prefix;
+    private final ByteBuffer records;
+    private final LongBuffer byId;
+    // Tabel grup (riwayat per appointment); kosong jika tidak dipakai
+    private final LongBuffer byGroup;
+    private final char groupPrefix;
+    private final Function<ByteBuffer, T> decoder;
+    private final Function<T, String> idOf;
+    private final Map<String, T> overlay = new ConcurrentHashMap<>();
+    // ID di overlay yang tidak ada di arsip
+    private final Set<String> added = ConcurrentHashMap.newKeySet();
+    private final Map<String, T> cache;
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    
+    LazyRecordStore(char prefix, ByteBuffer records, LongBuffer byId, LongBuffer byGroup, char groupPrefix,
+                    Function<ByteBuffer, T> decoder, Function<T, String> idOf, int cacheSize) {
+        this.prefix = prefix;
+        this.records = records;
+        this.byId = byId;
+        this.byGroup = byGroup;
+        this.groupPrefix = groupPrefix;
+        this.decoder = decoder;
+        this.idOf = idOf;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<String, T>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        // Record dengan ID atau kunci grup non-standar tidak bisa dicari lewat tabel, jadi langsung di overlay
+        for (int i = 0; i < byId.limit() && SnapshotIndex.number(byId.get(i)) < 0; i++) {
+            T record = decode(SnapshotIndex.value(byId.get(i)));
+            overlay.put(idOf.apply(record), record);
+        }
+        for (int i = 0; i < byGroup.limit() && SnapshotIndex.number(byGroup.get(i)) < 0; i++) {
+            int id = SnapshotIndex.value(byGroup.get(i));
+            T record = id >= 0 ? loadArchived(id) : null;
+            if (record != null) {
+                overlay.put(idOf.apply(record), record);
+            }
+        }
+    }
+    
+    @Override
+    public T get(Object key) {
+        T record = overlay.get(key);
+        if (record != null) {
+            return record;
+        }
+        record = cache.get(key);
+        if (record != null) {
+            cacheHits.incrementAndGet();
+            return record;
+        }
+        int number = key instanceof String ? IdAllocator.parseNumber((String) key, prefix) : -1;
+        record = number >= 0 ? loadArchived(number) : null;
+        if (record != null) {
+            cache.put((String) key, record);
+        }
+        return record;
+    }
+    
+    @Override
+    public boolean containsKey(Object key) {
+        if (overlay.containsKey(key)) {
+            return true;
+        }
+        int number = key instanceof String ? IdAllocator.parseNumber((String) key, prefix) : -1;
+        return number >= 0 && find(number) >= 0;
+    }
+    
+    // Mengembalikan versi sebelumnya, juga jika masih di arsip
+    @Override
+    public T put(String id, T record) {
+        cache.remove(id);
+        T previous = overlay.put(id, record);
+        if (previous == null) {
+            int number = IdAllocator.parseNumber(id, prefix);
+            previous = number >= 0 ? loadArchived(number) : null;
+            if (previous == null) {
+                added.add(id);
+            }
+        }
+        return previous;
+    }
+    
+    @Override
+    public int size() {
+        return byId.limit() + added.size();
+    }
+    
+    @Override
+    public Set<Map.Entry<String, T>> entrySet() {
+        return new AbstractSet<Map.Entry<String, T>>() {
+            @Override
+            public int size() {
+                return LazyRecordStore.this.size();
+            }
+            
+            @Override
+            public Iterator<Map.Entry<String, T>> iterator() {
+                Iterator<String> addedIds = added.iterator();
+                return new Iterator<Map.Entry<String, T>>() {
+                    private int next;
+                    
+                    @Override
+                    public boolean hasNext() {
+                        return next < byId.limit() || addedIds.hasNext();
+                    }
+                    
+                    @Override
+                    public Map.Entry<String, T> next() {
+                        T record;
+                        if (next < byId.limit()) {
+                            long entry = byId.get(next++);
+                            int number = SnapshotIndex.number(entry);
+                            record = number >= 0 ? overlay.get(IdAllocator.format(prefix, number)) : null;
+                            if (record == null) {
+                                record = decode(SnapshotIndex.value(entry));
+                                record = overlay.getOrDefault(idOf.apply(record), record);
+                            }
+                        } else {
+                            record = overlay.get(addedIds.next());
+                        }
+                        return new SimpleImmutableEntry<>(idOf.apply(record), record);
+                    }
+                };
+            }
+        };
+    }
+    
+    // Jumlah record arsip dengan kunci grup ini (termasuk yang sudah ditimpa overlay)
+    public int countGroup(String groupId) {
+        int number = IdAllocator.parseNumber(groupId, groupPrefix);
+        if (number < 0) {
+            return 0;
+        }
+        int count = 0;
+        for (int i = SnapshotIndex.lowerBound(byGroup, number);
+             i < byGroup.limit() && SnapshotIndex.number(byGroup.get(i)) == number; i++) {
+            count++;
+        }
+        return count;
+    }
+    
+    // Record arsip dengan kunci grup ini yang belum ditimpa overlay; versi overlay diindeks pemanggil sendiri
+    public List<T> archivedGroup(String groupId) {
+        List<T> result = new ArrayList<>();
+        int number = IdAllocator.parseNumber(groupId, groupPrefix);
+        if (number < 0) {
+            return result;
+        }
+        for (int i = SnapshotIndex.lowerBound(byGroup, number);
+             i < byGroup.limit() && SnapshotIndex.number(byGroup.get(i)) == number; i++) {
+            String id = IdAllocator.format(prefix, SnapshotIndex.value(byGroup.get(i)));
+            if (!overlay.containsKey(id)) {
+                T record = get(id);
+                if (record != null) {
+                    result.add(record);
+                }
+            }
+        }
+        return result;
+    }
+    
+    // Record yang selalu ada di memori: overlay, termasuk record arsip ber-ID non-standar
+    public Collection<T> residentValues() {
+        return overlay.values();
+    }
+    
+    public int getArchivedCount() { return byId.limit(); }
+    public int getResidentCount() { return overlay.size(); }
+    public int getCachedCount() { return cache.size(); }
+    public long getLoads() { return loads.get(); }
+    public long getCacheHits() { return cacheHits.get(); }
+    
+    private int find(int number) {
+        int i = SnapshotIndex.lowerBound(byId, number);
+        return i < byId.limit() && SnapshotIndex.number(byId.get(i)) == number ? i : -1;
+    }
+    
+    private T loadArchived(int number) {
+        int i = find(number);
+        if (i < 0) {
+            return null;
+        }
+        loads.incrementAndGet();
+        return decode(SnapshotIndex.value(byId.get(i)));
+    }
+    
+    // duplicate() per baca: posisi buffer tidak dibagi antar thread
+    private T decode(int offset) {
+        ByteBuffer in = records.duplicate();
+        in.position(offset);
+        return decoder.apply(in);
+    }
+}
+
+// ==================== PERSISTENCE - HISTORY LSM STORE ====================
+
+// Bloom filter per segmen: k posisi bit dari dua hash (double hashing), sekitar 1% false positive
+// dengan 10 bit per kunci
+class BloomFilter {
+    private static final int BITS_PER_KEY = 10;
+    private static final int HASHES = 7;
+    
+    private final long[] bits;
+    
+    BloomFilter(long expectedKeys) {
+        this(new long[(int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, expectedKeys * BITS_PER_KEY / 64 + 1))]);
+    }
+    
+    BloomFilter(long[] bits) {
+        this.bits = bits;
+    }
+    
+    public void add(String key) {
+        long hash = hash(key);
+        long size = bits.length * 64L;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = Math.floorMod((int) hash + i * (hash >>> 32), size);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+    
+    public boolean mightContain(String key) {
+        long hash = hash(key);
+        long size = bits.length * 64L;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = Math.floorMod((int) hash + i * (hash >>> 32), size);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    long[] getBits() {
+        return bits;
+    }
+    
+    // FNV-1a 64 bit lalu finalizer murmur3 agar bit atas dan bawah sama-sama teracak
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+}
+
+// Riwayat konsultasi hanya ditambah, tidak pernah diubah, dan terus bertambah. Dengan -Dclinic.histories=lsm
+// riwayat tidak lagi ikut snapshot, tetapi disimpan di folder histories/ sebagai LSM tree:
+//   memtable-NNNNNN.log : journal riwayat yang masih di memtable (WriteAheadJournal, ikut clinic.fsync)
+//   seg-NNNNNN.sst      : segmen immutable, terurut (ID pasien, ID appointment, ID riwayat)
+// Insert = satu append ke journal + put ke memtable, berapa pun jumlah riwayat. Memtable yang penuh ditulis
+// menjadi segmen baru di thread background lalu segmen journal-nya dihapus. Segmen dengan ukuran setingkat (tier)
+// digabung begitu jumlahnya mencapai MERGE_FANIN, sehingga jumlah segmen tetap logaritmik. Riwayat satu pasien
+// dibaca dari memtable dan dari segmen yang bloom filter-nya memuat ID pasien itu: sparse index -> blok -> scan
+// sampai prefix pasien habis. Satu appointment hanya punya satu riwayat (put mengembalikan false jika sudah ada),
+// sehingga journal yang diputar ulang, flush yang terputus atau penyelesaian yang diulang tidak menggandakan riwayat.
+class HistoryStore implements Closeable {
+    private static final int MERGE_FANIN = 4;
+    private static final String RECORD_TYPE = "HISTORY";
+    
+    private final File dir;
+    private final int memtableRecords;
+    private final WriteAheadJournal log;
+    // Kunci: ID pasien \0 ID appointment \0 ID riwayat
+    private volatile ConcurrentSkipListMap<String, ConsultationHistory> memtable = new ConcurrentSkipListMap<>();
+    private final AtomicInteger memtableSize = new AtomicInteger();
+    // Memtable yang sedang ditulis menjadi segmen; tetap dibaca sampai segmennya terpasang
+    private volatile ConcurrentSkipListMap<String, ConsultationHistory> flushing;
+    // put memegang read lock, pergantian memtable (bersama roll journal) memegang write lock
+    private final ReentrantReadWriteLock memtableLock = new ReentrantReadWriteLock();
+    // Terbaru di depan; diganti utuh saat flush/merge. Write lock dipegang saat segmen lama ditutup
+    private volatile List<HistorySegment> segments;
+    private final ReentrantReadWriteLock segmentLock = new ReentrantReadWriteLock();
+    private final AtomicLong nextSegment = new AtomicLong(1);
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ExecutorService background = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "clinic-history-lsm");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final LatencyHistogram flushLatency = new LatencyHistogram();
+    private final LatencyHistogram mergeLatency = new LatencyHistogram();
+    private final AtomicLong segmentReads = new AtomicLong();
+    private final AtomicLong bloomSkips = new AtomicLong();
+    
+    HistoryStore(File dir, boolean fsync, int memtableRecords) throws IOException {
+        this.dir = dir;
+        this.memtableRecords = memtableRecords;
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Folder tidak bisa dibuat: " + dir);
+        }
+        List<HistorySegment> opened = new ArrayList<>();
+        File[] files = dir.listFiles();
+        for (File file : files != null ? files : new File[0]) {
+            String name = file.getName();
+            if (name.endsWith(".sst.tmp")) {
+                file.delete();
+            } else if (name.startsWith("seg-") && name.endsWith(".sst")) {
+                long number = Long.parseLong(name.substring(4, name.length() - 4));
+                opened.add(HistorySegment.open(file, number));
+                nextSegment.set(Math.max(nextSegment.get(), number + 1));
+            }
+        }
+        // Merge yang sudah terpasang tetapi belum sempat menghapus segmen sumbernya
+        Set<Long> merged = new HashSet<>();
+        for (HistorySegment segment : opened) {
+            for (long source : segment.getSources()) {
+                merged.add(source);
+            }
+        }
+        List<HistorySegment> live = new ArrayList<>();
+        for (HistorySegment segment : opened) {
+            if (merged.contains(segment.getNumber())) {
+                segment.close();
+                segment.getFile().delete();
+            } else {
+                live.add(segment);
+            }
+        }
+        live.sort(Comparator.comparingLong(HistorySegment::getNumber).reversed());
+        segments = live;
+        log = new WriteAheadJournal(new File(dir, "memtable.log"), fsync);
+        log.replay((op, type, payload) -> {
+            int bar = payload.lastIndexOf('|');
+            ConsultationHistory history = ConsultationHistory.fromFileString(payload.substring(0, bar));
+            String patientId = payload.substring(bar + 1);
+            String key = key(patientId, history.getAppointmentId(), history.getId());
+            if (!contains(key, key + '\0', history.getAppointmentId()) && memtable.put(key, history) == null) {
+                memtableSize.incrementAndGet();
+            }
+        });
+    }
+    
+    static String key(String patientId, String appointmentId, String historyId) {
+        return patientId + '\0' + appointmentId + '\0' + historyId;
+    }
+    
+    static String patientOf(String key) {
+        return key.substring(0, key.indexOf('\0'));
+    }
+    
+    // false jika appointment ini sudah punya riwayat. patientId kosong untuk appointment yang tidak dikenal
+    public boolean put(ConsultationHistory history, String patientId) throws IOException {
+        String key = key(patientId, history.getAppointmentId(), history.getId());
+        String from = patientId + '\0' + history.getAppointmentId() + '\0';
+        String to = patientId + '\0' + history.getAppointmentId() + '\1';
+        memtableLock.readLock().lock();
+        try {
+            if (contains(from, to, history.getAppointmentId())) {
+                return false;
+            }
+            log.append(WriteAheadJournal.OP_PUT, RECORD_TYPE, history.toFileString() + "|" + patientId);
+            if (memtable.put(key, history) == null) {
+                memtableSize.incrementAndGet();
+            }
+        } finally {
+            memtableLock.readLock().unlock();
+        }
+        maybeFlush();
+        return true;
+    }
+    
+    // Ada kunci di [from, to) milik appointmentId
+    private boolean contains(String from, String to, String appointmentId) {
+        ConcurrentSkipListMap<String, ConsultationHistory> frozen = flushing;
+        if (!memtable.subMap(from, to).isEmpty() || (frozen != null && !frozen.subMap(from, to).isEmpty())) {
+            return true;
+        }
+        segmentLock.readLock().lock();
+        try {
+            for (HistorySegment segment : segments) {
+                if (!segment.mightContain(appointmentId)) {
+                    bloomSkips.incrementAndGet();
+                    continue;
+                }
+                segmentReads.incrementAndGet();
+                if (!segment.range(from, to).isEmpty()) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+    
+    // Riwayat satu pasien, terurut ID appointment lalu ID riwayat
+    public List<ConsultationHistory> forPatient(String patientId) {
+        String from = patientId + '\0';
+        String to = patientId + '\1';
+        TreeMap<String, ConsultationHistory> result = new TreeMap<>(memtable.subMap(from, to));
+        ConcurrentSkipListMap<String, ConsultationHistory> frozen = flushing;
+        if (frozen != null) {
+            result.putAll(frozen.subMap(from, to));
+        }
+        segmentLock.readLock().lock();
+        try {
+            for (HistorySegment segment : segments) {
+                if (!segment.mightContain(patientId)) {
+                    bloomSkips.incrementAndGet();
+                    continue;
+                }
+                segmentReads.incrementAndGet();
+                for (Map.Entry<String, ConsultationHistory> entry : segment.range(from, to)) {
+                    result.putIfAbsent(entry.getKey(), entry.getValue());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+        return new ArrayList<>(result.values());
+    }
+    
+    // Migrasi sekali dari snapshot/.txt: semua riwayat ditulis langsung sebagai satu segmen
+    public void importAll(Collection<ConsultationHistory> histories, Function<ConsultationHistory, String> patientOf)
+            throws IOException {
+        TreeMap<String, ConsultationHistory> sorted = new TreeMap<>();
+        for (ConsultationHistory history : histories) {
+            String patientId = patientOf.apply(history);
+            sorted.put(key(patientId != null ? patientId : "", history.getAppointmentId(), history.getId()), history);
+        }
+        install(Collections.emptyList(), HistorySegment.write(segmentFile(nextSegment.getAndIncrement()),
+                sorted.entrySet().iterator(), sorted.size(), new long[0]));
+    }
+    
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+    
+    public long size() {
+        long size = memtableSize.get();
+        Map<String, ConsultationHistory> frozen = flushing;
+        if (frozen != null) {
+            size += frozen.size();
+        }
+        for (HistorySegment segment : segments) {
+            size += segment.getRecordCount();
+        }
+        return size;
+    }
+    
+    // Jumlah riwayat per pasien dari tabel di setiap segmen dan memtable, tanpa membaca record segmen
+    public void forEachPatientCount(BiConsumer<String, Integer> consumer) throws IOException {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String key : memtable.keySet()) {
+            counts.merge(patientOf(key), 1, Integer::sum);
+        }
+        Map<String, ConsultationHistory> frozen = flushing;
+        if (frozen != null) {
+            for (String key : frozen.keySet()) {
+                counts.merge(patientOf(key), 1, Integer::sum);
+            }
+        }
+        segmentLock.readLock().lock();
+        try {
+            for (HistorySegment segment : segments) {
+                segment.forEachPatientCount((patientId, count) -> counts.merge(patientId, count, Integer::sum));
+            }
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+        counts.forEach((patientId, count) -> consumer.accept(patientId.isEmpty() ? null : patientId, count));
+    }
+    
+    // Semua riwayat (export dan benchmark); dimuat ke list karena segmen bisa diganti merge selama iterasi
+    public List<ConsultationHistory> values() {
+        List<ConsultationHistory> result = new ArrayList<>(memtable.values());
+        Map<String, ConsultationHistory> frozen = flushing;
+        if (frozen != null) {
+            result.addAll(frozen.values());
+        }
+        segmentLock.readLock().lock();
+        try {
+            for (HistorySegment segment : segments) {
+                Iterator<Map.Entry<String, ConsultationHistory>> it = segment.scan();
+                while (it.hasNext()) {
+                    result.add(it.next().getValue());
+                }
+            }
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+        return result;
+    }
+    
+    private void maybeFlush() {
+        if (memtableSize.get() < memtableRecords || flushing != null || !flushScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            background.execute(() -> {
+                try {
+                    flushMemtable();
+                    mergeTiers();
+                } finally {
+                    flushScheduled.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Store sudah ditutup
+            flushScheduled.set(false);
+        }
+    }
+    
+    // Memtable diganti bersamaan dengan roll journal, sehingga segmen journal yang ditutup berisi tepat
+    // record memtable lama dan boleh dihapus begitu segmennya terpasang
+    void flushMemtable() {
+        ConcurrentSkipListMap<String, ConsultationHistory> full;
+        long sealed;
+        memtableLock.writeLock().lock();
+        try {
+            full = memtable;
+            if (full.isEmpty()) {
+                return;
+            }
+            sealed = log.roll();
+            flushing = full;
+            memtable = new ConcurrentSkipListMap<>();
+            memtableSize.set(0);
+        } catch (IOException e) {
+            System.err.println("Error rolling history log: " + e.getMessage());
+            return;
+        } finally {
+            memtableLock.writeLock().unlock();
+        }
+        long start = System.nanoTime();
+        try {
+            install(Collections.emptyList(), HistorySegment.write(segmentFile(nextSegment.getAndIncrement()),
+                    full.entrySet().iterator(), full.size(), new long[0]));
+        } catch (IOException e) {
+            // Record dikembalikan ke memtable; segmen journal-nya tetap ada sampai flush berikutnya berhasil
+            System.err.println("Error flushing history memtable: " + e.getMessage());
+            memtableLock.writeLock().lock();
+            try {
+                memtable.putAll(full);
+                memtableSize.set(memtable.size());
+                flushing = null;
+            } finally {
+                memtableLock.writeLock().unlock();
+            }
+            return;
+        }
+        log.deleteThrough(sealed);
+        flushLatency.recordNanos(System.nanoTime() - start);
+    }
+    
+    // Tier = log_FANIN(record / ukuran memtable); tier terendah yang sudah berisi FANIN segmen digabung, berulang
+    private void mergeTiers() {
+        while (true) {
+            Map<Integer, List<HistorySegment>> tiers = new TreeMap<>();
+            for (HistorySegment segment : segments) {
+                tiers.computeIfAbsent(tier(segment.getRecordCount()), k -> new ArrayList<>()).add(segment);
+            }
+            List<HistorySegment> sources = null;
+            for (List<HistorySegment> tier : tiers.values()) {
+                if (tier.size() >= MERGE_FANIN) {
+                    sources = tier;
+                    break;
+                }
+            }
+            if (sources == null) {
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                merge(sources);
+            } catch (IOException e) {
+                System.err.println("Error merging history segments: " + e.getMessage());
+                return;
+            }
+            mergeLatency.recordNanos(System.nanoTime() - start);
+        }
+    }
+    
+    private int tier(long records) {
+        int tier = 0;
+        for (long size = (long) memtableRecords * MERGE_FANIN; records >= size && tier < 30; size *= MERGE_FANIN) {
+            tier++;
+        }
+        return tier;
+    }
+    
+    // Posisi satu segmen sumber dalam k-way merge
+    private static class MergeHead {
+        final Iterator<Map.Entry<String, ConsultationHistory>> source;
+        final HistorySegment segment;
+        Map.Entry<String, ConsultationHistory> entry;
+        
+        MergeHead(Iterator<Map.Entry<String, ConsultationHistory>> source, HistorySegment segment) {
+            this.source = source;
+            this.segment = segment;
+        }
+        
+        // false jika segmen sudah habis
+        boolean advance() {
+            entry = source.hasNext() ? source.next() : null;
+            return entry != null;
+        }
+    }
+    
+    // K-way merge; untuk kunci yang sama versi dari segmen terbaru yang dipakai
+    private void merge(List<HistorySegment> sources) throws IOException {
+        PriorityQueue<MergeHead> heads = new PriorityQueue<>(
+            Comparator.comparing((MergeHead head) -> head.entry.getKey())
+                .thenComparing(head -> head.segment.getNumber(), Comparator.reverseOrder()));
+        long expected = 0;
+        long[] numbers = new long[sources.size()];
+        for (int i = 0; i < sources.size(); i++) {
+            HistorySegment source = sources.get(i);
+            MergeHead head = new MergeHead(source.scan(), source);
+            if (head.advance()) {
+                heads.add(head);
+            }
+            expected += source.getRecordCount();
+            numbers[i] = source.getNumber();
+        }
+        Iterator<Map.Entry<String, ConsultationHistory>> merged = new Iterator<Map.Entry<String, ConsultationHistory>>() {
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+            
+            @Override
+            public Map.Entry<String, ConsultationHistory> next() {
+                MergeHead head = heads.poll();
+                Map.Entry<String, ConsultationHistory> entry = head.entry;
+                advance(head);
+                while (!heads.isEmpty() && heads.peek().entry.getKey().equals(entry.getKey())) {
+                    advance(heads.poll());
+                }
+                return entry;
+            }
+            
+            private void advance(MergeHead head) {
+                if (head.advance()) {
+                    heads.add(head);
+                }
+            }
+        };
+        install(sources, HistorySegment.write(segmentFile(nextSegment.getAndIncrement()), merged, expected, numbers));
+    }
+    
+    private void install(List<HistorySegment> replaced, HistorySegment added) {
+        segmentLock.writeLock().lock();
+        try {
+            List<HistorySegment> updated = new ArrayList<>(segments);
+            updated.removeAll(replaced);
+            updated.add(added);
+            updated.sort(Comparator.comparingLong(HistorySegment::getNumber).reversed());
+            segments = updated;
+            flushing = null;
+            for (HistorySegment segment : replaced) {
+                segment.close();
+                if (!segment.getFile().delete()) {
+                    System.err.println("Error deleting history segment: " + segment.getFile().getName());
+                }
+            }
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+    }
+    
+    private File segmentFile(long number) {
+        return new File(dir, "seg-" + String.format("%06d", number) + ".sst");
+    }
+    
+    // Tulis memtable menjadi segmen dan tunggu merge yang dipicunya (benchmark/tools)
+    void flushAndMerge() {
+        try {
+            background.submit(() -> {
+                flushMemtable();
+                mergeTiers();
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("Error flushing history memtable: " + e.getCause().getMessage());
+        }
+    }
+    
+    public int getSegmentCount() { return segments.size(); }
+    public int getMemtableSize() { return memtableSize.get(); }
+    public LatencyHistogram getFlushLatency() { return flushLatency; }
+    public LatencyHistogram getMergeLatency() { return mergeLatency; }
+    public long getSegmentReads() { return segmentReads.get(); }
+    public long getBloomSkips() { return bloomSkips.get(); }
+    
+    // Memtable tidak di-flush: isinya sudah ada di journal dan diputar ulang saat dibuka lagi
+    @Override
+    public void close() {
+        background.shutdown();
+        try {
+            background.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            log.close();
+        } catch (IOException e) {
+            System.err.println("Error closing history log: " + e.getMessage());
+        }
+        segmentLock.writeLock().lock();
+        try {
+            for (HistorySegment segment : segments) {
+                segment.close();
+            }
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+    }
+}
+
+// Format seg-NNNNNN.sst (big-endian):
+//   header  : magic "CLHS" | version
+//   data    : record terurut kunci: ID pasien | ID appointment | ID riwayat | epoch day | diagnosis | catatan
+//             (string UTF-8 dengan prefix panjang varint)
+//   index   : jumlah | (kunci, offset) untuk setiap record ke-INDEX_INTERVAL
+//   bloom   : jumlah long | bit; berisi ID pasien dan ID appointment
+//   counts  : jumlah | (ID pasien, jumlah riwayat)
+//   sources : jumlah | nomor segmen yang digabung menjadi segmen ini
+//   trailer : posisi index | posisi bloom | posisi counts | posisi sources | jumlah record | CRC32 metadata | magic
+// Index dan bloom filter disimpan di memori; record dan counts dibaca dari file saat dibutuhkan.
+class HistorySegment implements Closeable {
+    public static final int MAGIC = 0x434C4853;
+    public static final int VERSION = 1;
+    private static final int INDEX_INTERVAL = 64;
+    private static final int HEADER_BYTES = 8;
+    private static final int TRAILER_BYTES = 5 * 8 + 4 + 4;
+    
+    private final File file;
+    private final long number;
+    private final FileChannel channel;
+    private final long recordCount;
+    private final long dataEnd;
+    private final String[] indexKeys;
+    private final long[] indexOffsets;
+    private final BloomFilter bloom;
+    private final long countsOffset;
+    private final long sourcesOffset;
+    private final long[] sources;
+    
+    private HistorySegment(File file, long number, FileChannel channel, long recordCount, long dataEnd,
+                           String[] indexKeys, long[] indexOffsets, BloomFilter bloom, long countsOffset,
+                           long sourcesOffset, long[] sources) {
+        this.file = file;
+        this.number = number;
+        this.channel = channel;
+        this.recordCount = recordCount;
+        this.dataEnd = dataEnd;
+        this.indexKeys = indexKeys;
+        this.indexOffsets = indexOffsets;
+        this.bloom = bloom;
+        this.countsOffset = countsOffset;
+        this.sourcesOffset = sourcesOffset;
+        this.sources = sources;
+    }
+    
+    // ---------- write ----------
+    
+    // Ditulis ke file sementara, di-fsync, lalu di-rename; entries harus terurut kunci
+    public static HistorySegment write(File target, Iterator<Map.Entry<String, ConsultationHistory>> entries,
+                                       long expected, long[] sources) throws IOException {
+        File temp = new File(target.getPath() + ".tmp");
+        BloomFilter bloom = new BloomFilter(Math.max(1, expected * 2));
+        List<String> indexKeys = new ArrayList<>();
+        List<Long> indexOffsets = new ArrayList<>();
+        ByteArrayOutputStream counts = new ByteArrayOutputStream();
+        DataOutputStream countsOut = new DataOutputStream(counts);
+        int countEntries = 0;
+        long records = 0;
+        try (FileOutputStream file = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            long position = HEADER_BYTES;
+            ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+            DataOutputStream recordOut = new DataOutputStream(record);
+            String currentPatient = null;
+            int currentCount = 0;
+            while (entries.hasNext()) {
+                Map.Entry<String, ConsultationHistory> entry = entries.next();
+                ConsultationHistory history = entry.getValue();
+                String patientId = HistoryStore.patientOf(entry.getKey());
+                if (records % INDEX_INTERVAL == 0) {
+                    indexKeys.add(entry.getKey());
+                    indexOffsets.add(position);
+                }
+                putString(recordOut, patientId);
+                putString(recordOut, history.getAppointmentId());
+                putString(recordOut, history.getId());
+                recordOut.writeInt((int) history.getConsultationDate().toEpochDay());
+                putString(recordOut, history.getDiagnosis());
+                putString(recordOut, history.getNotes());
+                record.writeTo(out);
+                position += record.size();
+                record.reset();
+                records++;
+                bloom.add(patientId);
+                bloom.add(history.getAppointmentId());
+                if (!patientId.equals(currentPatient)) {
+                    if (currentPatient != null) {
+                        putString(countsOut, currentPatient);
+                        countsOut.writeInt(currentCount);
+                        countEntries++;
+                    }
+                    currentPatient = patientId;
+                    currentCount = 0;
+                }
+                currentCount++;
+            }
+            if (currentPatient != null) {
+                putString(countsOut, currentPatient);
+                countsOut.writeInt(currentCount);
+                countEntries++;
+            }
+            
+            ByteArrayOutputStream meta = new ByteArrayOutputStream();
+            DataOutputStream metaOut = new DataOutputStream(meta);
+            long indexOffset = position;
+            metaOut.writeInt(indexKeys.size());
+            for (int i = 0; i < indexKeys.size(); i++) {
+                putString(metaOut, indexKeys.get(i));
+                metaOut.writeLong(indexOffsets.get(i));
+            }
+            long bloomOffset = indexOffset + meta.size();
+            metaOut.writeInt(bloom.getBits().length);
+            for (long word : bloom.getBits()) {
+                metaOut.writeLong(word);
+            }
+            long countsOffset = indexOffset + meta.size();
+            metaOut.writeInt(countEntries);
+            counts.writeTo(metaOut);
+            long sourcesOffset = indexOffset + meta.size();
+            metaOut.writeInt(sources.length);
+            for (long source : sources) {
+                metaOut.writeLong(source);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(meta.toByteArray());
+            meta.writeTo(out);
+            out.writeLong(indexOffset);
+            out.writeLong(bloomOffset);
+            out.writeLong(countsOffset);
+            out.writeLong(sourcesOffset);
+            out.writeLong(records);
+            out.writeInt((int) crc.getValue());
+            out.writeInt(MAGIC);
+            out.flush();
+            file.getChannel().force(true);
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return open(target, Long.parseLong(target.getName().substring(4, target.getName().length() - 4)));
+    }
+    
+    private static void putString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int v = bytes.length;
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+        out.write(bytes);
+    }
+    
+    // ---------- read ----------
+    
+    public static HistorySegment open(File file, long number) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < HEADER_BYTES + TRAILER_BYTES) {
+                throw new IOException("Segmen terpotong: " + file.getName());
+            }
+            ByteBuffer trailer = read(channel, size - TRAILER_BYTES, TRAILER_BYTES);
+            long indexOffset = trailer.getLong();
+            long bloomOffset = trailer.getLong();
+            long countsOffset = trailer.getLong();
+            long sourcesOffset = trailer.getLong();
+            long records = trailer.getLong();
+            int expectedCrc = trailer.getInt();
+            if (trailer.getInt() != MAGIC) {
+                throw new IOException("Bukan segmen riwayat: " + file.getName());
+            }
+            // Index, bloom dan sources dibaca sekali; counts hanya diperiksa checksum-nya
+            ByteBuffer meta = read(channel, indexOffset, (int) (size - TRAILER_BYTES - indexOffset));
+            CRC32 crc = new CRC32();
+            crc.update(meta.duplicate());
+            if ((int) crc.getValue() != expectedCrc) {
+                throw new IOException("Checksum segmen tidak cocok: " + file.getName());
+            }
+            int indexCount = meta.getInt();
+            String[] keys = new String[indexCount];
+            long[] offsets = new long[indexCount];
+            for (int i = 0; i < indexCount; i++) {
+                keys[i] = BinarySnapshot.getString(meta);
+                offsets[i] = meta.getLong();
+            }
+            meta.position((int) (bloomOffset - indexOffset));
+            long[] bits = new long[meta.getInt()];
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] = meta.getLong();
+            }
+            meta.position((int) (sourcesOffset - indexOffset));
+            long[] sources = new long[meta.getInt()];
+            for (int i = 0; i < sources.length; i++) {
+                sources[i] = meta.getLong();
+            }
+            return new HistorySegment(file, number, channel, records, indexOffset, keys, offsets, new BloomFilter(bits),
+                                      countsOffset, sourcesOffset, sources);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    public boolean mightContain(String id) {
+        return bloom.mightContain(id);
+    }
+    
+    // Record dengan from <= kunci < to: mulai dari blok index terakhir yang kuncinya <= from
+    public List<Map.Entry<String, ConsultationHistory>> range(String from, String to) throws IOException {
+        List<Map.Entry<String, ConsultationHistory>> result = new ArrayList<>();
+        int block = Arrays.binarySearch(indexKeys, from);
+        block = block >= 0 ? block : Math.max(0, -block - 2);
+        for (; block < indexKeys.length; block++) {
+            ByteBuffer in = readBlock(block);
+            while (in.hasRemaining()) {
+                Map.Entry<String, ConsultationHistory> entry = decode(in);
+                if (entry.getKey().compareTo(to) >= 0) {
+                    return result;
+                }
+                if (entry.getKey().compareTo(from) >= 0) {
+                    result.add(entry);
+                }
+            }
+        }
+        return result;
+    }
+    
+    // Semua record berurutan, satu blok index pada satu waktu
+    public Iterator<Map.Entry<String, ConsultationHistory>> scan() {
+        return new Iterator<Map.Entry<String, ConsultationHistory>>() {
+            private int block;
+            private ByteBuffer in = ByteBuffer.allocate(0);
+            
+            @Override
+            public boolean hasNext() {
+                while (!in.hasRemaining() && block < indexKeys.length) {
+                    try {
+                        in = readBlock(block++);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return in.hasRemaining();
+            }
+            
+            @Override
+            public Map.Entry<String, ConsultationHistory> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return decode(in);
+            }
+        };
+    }
+    
+    public void forEachPatientCount(BiConsumer<String, Integer> consumer) {
+        try {
+            ByteBuffer in = read(channel, countsOffset, (int) (sourcesOffset - countsOffset));
+            int count = in.getInt();
+            for (int i = 0; i < count; i++) {
+                consumer.accept(BinarySnapshot.getString(in), in.getInt());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private ByteBuffer readBlock(int block) throws IOException {
+        long start = indexOffsets[block];
+        long end = block + 1 < indexOffsets.length ? indexOffsets[block + 1] : dataEnd;
+        return read(channel, start, (int) (end - start));
+    }
+    
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Segmen terpotong");
+            }
+        }
+        return buffer.flip();
+    }
+    
+    private static Map.Entry<String, ConsultationHistory> decode(ByteBuffer in) {
+        String patientId = BinarySnapshot.getString(in);
+        String appointmentId = BinarySnapshot.getString(in);
+        String id = BinarySnapshot.getString(in);
+        LocalDate date = LocalDate.ofEpochDay(in.getInt());
+        ConsultationHistory history = ConsultationHistory.restore(id, appointmentId, date,
+            BinarySnapshot.getString(in), BinarySnapshot.getString(in));
+        return new AbstractMap.SimpleImmutableEntry<>(HistoryStore.key(patientId, appointmentId, id), history);
+    }
+    
+    public File getFile() { return file; }
+    public long getNumber() { return number; }
+    public long getRecordCount() { return recordCount; }
+    public long[] getSources() { return sources; }
+    
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing history segment: " + e.getMessage());
+        }
+    }
+}
+
+// ==================== ID ALLOCATOR (BLOCK LEASING) ====================
+
+// ID dibagikan dari memori. Yang disimpan ke counters.txt hanya batas atas blok
+// yang sudah disewa (high-water mark), sehingga setelah crash ID tidak pernah dipakai ulang.
+class IdAllocator {
+    public static final int PATIENT = 0;
+    public static final int DOCTOR = 1;
+    public static final int SCHEDULE = 2;
+    public static final int APPOINTMENT = 3;
+    public static final int HISTORY = 4;
+    
+    private static final char[] PREFIXES = {'P', 'D', 'S', 'A', 'H'};
+    private static final int MIN_DIGITS = 3;
+    
+    private final File file;
+    private final int blockSize;
+    private final AtomicLong[] next = new AtomicLong[PREFIXES.length];
+    private final AtomicLongArray limit = new AtomicLongArray(PREFIXES.length);
+    
+    public IdAllocator(File file, int blockSize) {
+        this.file = file;
+        this.blockSize = blockSize;
+        long[] stored = read(file);
+        for (int i = 0; i < PREFIXES.length; i++) {
+            next[i] = new AtomicLong(stored[i]);
+            limit.set(i, stored[i]);
+        }
+    }
+    
+    public String next(int sequence) {
+        long n = next[sequence].getAndIncrement();
+        if (n >= limit.get(sequence)) {
+            lease(sequence, n);
+        }
+        return format(PREFIXES[sequence], n);
+    }
+    
+    // count ID berurutan sekaligus; paling banyak satu penulisan counters.txt berapa pun jumlahnya
+    public List<String> next(int sequence, int count) {
+        long first = next[sequence].getAndAdd(count);
+        long last = first + count - 1;
+        if (count > 0 && last >= limit.get(sequence)) {
+            lease(sequence, last);
+        }
+        List<String> result = new ArrayList<>(count);
+        for (long n = first; n <= last; n++) {
+            result.add(format(PREFIXES[sequence], n));
+        }
+        return result;
+    }
+    
+    // Dipakai data contoh yang ID-nya ditulis manual
+    public void reserveThrough(int sequence, long number) {
+        next[sequence].accumulateAndGet(number + 1, Math::max);
+        lease(sequence, number);
+    }
+    
+    private synchronized void lease(int sequence, long needed) {
+        if (needed < limit.get(sequence)) {
+            return;
+        }
+        long newLimit = needed + blockSize;
+        long[] snapshot = new long[PREFIXES.length];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = limit.get(i);
+        }
+        snapshot[sequence] = newLimit;
+        try {
+            write(snapshot);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error saving counters", e);
+        }
+        limit.set(sequence, newLimit);
+    }
+    
+    // Saat shutdown normal, blok yang belum terpakai dikembalikan agar ID tetap berurutan
+    public synchronized void release() {
+        long[] values = new long[PREFIXES.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = next[i].get();
+            limit.set(i, values[i]);
+        }
+        try {
+            write(values);
+        } catch (IOException e) {
+            System.err.println("Error saving counters: " + e.getMessage());
+        }
+    }
+    
+    private void write(long[] values) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            StringBuilder sb = new StringBuilder();
+            for (long v : values) {
+                sb.append(v).append('\n');
+            }
+            out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(), 
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private static long[] read(File file) {
+        long[] values = new long[PREFIXES.length];
+        Arrays.fill(values, 1);
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            for (int i = 0; i < values.length; i++) {
+                String line = br.readLine();
+                if (line == null) {
+                    break;
+                }
+                values[i] = Long.parseLong(line.trim());
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Use default values if file doesn't exist
+        }
+        return values;
+    }
+    
+    // Kebalikan dari format(); -1 jika ID tidak mengikuti pola standar
+    public static int parseNumber(String id, char prefix) {
+        int length = id.length();
+        if (length < 1 + MIN_DIGITS || length > 11 || id.charAt(0) != prefix) {
+            return -1;
+        }
+        if (length > 1 + MIN_DIGITS && id.charAt(1) == '0') {
+            return -1;
+        }
+        long number = 0;
+        for (int i = 1; i < length; i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number > Integer.MAX_VALUE ? -1 : (int) number;
+    }
+    
+    // Pengganti String.format("A%03d", n) di jalur booking
+    public static String format(char prefix, long number) {
+        int digits = 1;
+        for (long v = number; v >= 10; v /= 10) {
+            digits++;
+        }
+        int width = Math.max(digits, MIN_DIGITS);
+        char[] buf = new char[width + 1];
+        buf[0] = prefix;
+        long v = number;
+        for (int i = width; i >= 1; i--) {
+            buf[i] = (char) ('0' + (v % 10));
+            v /= 10;
+        }
+        return new String(buf);
+    }
+}
+
+// ==================== DOCTOR APPOINTMENT INDEX ====================
+
+// Appointment per dokter, terurut berdasarkan tanggal dan jam jadwal.
+// Halaman berikutnya diambil dari posisi appointment terakhir (cursor) dalam O(log n + k).
+// Pembacaan tanpa lock; penulisan untuk satu dokter diserialkan oleh pemanggil (Database).
+class DoctorAppointmentIndex {
+    private static class Entry implements Comparable<Entry> {
+        final String doctorId;
+        final long slotKey;
+        final Appointment appointment;
+        
+        Entry(String doctorId, long slotKey, Appointment appointment) {
+            this.doctorId = doctorId;
+            this.slotKey = slotKey;
+            this.appointment = appointment;
+        }
+        
+        @Override
+        public int compareTo(Entry other) {
+            int c = Long.compare(slotKey, other.slotKey);
+            return c != 0 ? c : appointment.getId().compareTo(other.appointment.getId());
+        }
+    }
+    
+    private static class DoctorEntries {
+        final NavigableSet<Entry> entries = new ConcurrentSkipListSet<>();
+        final AtomicInteger size = new AtomicInteger();
+    }
+    
+    private final Map<String, DoctorEntries> byDoctor = new ConcurrentHashMap<>();
+    private final Map<String, Entry> byAppointment = new ConcurrentHashMap<>();
+    
+    public void add(Schedule schedule, Appointment appointment) {
+        remove(appointment.getId());
+        Entry entry = new Entry(schedule.getDoctorId(), slotKey(schedule), appointment);
+        DoctorEntries doctorEntries = byDoctor.computeIfAbsent(entry.doctorId, k -> new DoctorEntries());
+        if (doctorEntries.entries.add(entry)) {
+            doctorEntries.size.incrementAndGet();
+        }
+        byAppointment.put(appointment.getId(), entry);
+    }
+    
+    public void remove(String appointmentId) {
+        Entry entry = byAppointment.remove(appointmentId);
+        if (entry == null) {
+            return;
+        }
+        DoctorEntries doctorEntries = byDoctor.get(entry.doctorId);
+        if (doctorEntries != null && doctorEntries.entries.remove(entry)) {
+            doctorEntries.size.decrementAndGet();
+        }
+    }
+    
+    // afterAppointmentId null berarti halaman pertama
+    public List<Appointment> page(String doctorId, String afterAppointmentId, int limit) {
+        List<Appointment> result = new ArrayList<>();
+        DoctorEntries doctorEntries = byDoctor.get(doctorId);
+        if (doctorEntries == null) {
+            return result;
+        }
+        NavigableSet<Entry> entries = doctorEntries.entries;
+        Entry cursor = afterAppointmentId == null ? null : byAppointment.get(afterAppointmentId);
+        Iterable<Entry> view = cursor == null ? entries : entries.tailSet(cursor, false);
+        for (Entry entry : view) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(entry.appointment);
+        }
+        return result;
+    }
+    
+    public int count(String doctorId) {
+        DoctorEntries doctorEntries = byDoctor.get(doctorId);
+        return doctorEntries == null ? 0 : doctorEntries.size.get();
+    }
+    
+    private static long slotKey(Schedule schedule) {
+        return ScheduleIndex.slotKey(schedule.getDate(), schedule.getStartTime());
+    }
+}
+
+// ==================== SCHEDULE TIME INDEX ====================
+
+// Jadwal terurut berdasarkan (tanggal, jam mulai): semua jadwal per dokter, dan slot yang masih
+// tersedia secara global, per dokter dan per spesialisasi. Setiap query O(log n + k).
+// Ketersediaan slot berubah lewat CAS di Schedule; Database memanggil refresh setelahnya, dan query
+// tetap memeriksa isAvailable() sehingga entri yang sesaat tertinggal tidak ikut dikembalikan.
+class ScheduleIndex {
+    private static class Entry implements Comparable<Entry> {
+        final long slotKey;
+        final long endKey;
+        final String scheduleId;
+        final Schedule schedule;
+        final String specialization;
+        
+        Entry(long slotKey, long endKey, String scheduleId, Schedule schedule, String specialization) {
+            this.slotKey = slotKey;
+            this.endKey = endKey;
+            this.scheduleId = scheduleId;
+            this.schedule = schedule;
+            this.specialization = specialization;
+        }
+        
+        // Batas range: "" lebih kecil dari semua ID jadwal
+        static Entry bound(long slotKey) {
+            return new Entry(slotKey, slotKey, "", null, null);
+        }
+        
+        @Override
+        public int compareTo(Entry other) {
+            int c = Long.compare(slotKey, other.slotKey);
+            return c != 0 ? c : scheduleId.compareTo(other.scheduleId);
+        }
+    }
+    
+    private final Map<String, Entry> byId = new ConcurrentHashMap<>();
+    private final Map<String, NavigableSet<Entry>> byDoctor = new ConcurrentHashMap<>();
+    private final NavigableSet<Entry> available = new ConcurrentSkipListSet<>();
+    private final Map<String, NavigableSet<Entry>> availableByDoctor = new ConcurrentHashMap<>();
+    private final Map<String, NavigableSet<Entry>> availableBySpecialization = new ConcurrentHashMap<>();
+    // Durasi slot terpanjang yang pernah diindeks; membatasi seberapa jauh ke belakang cek overlap mencari
+    private final AtomicLong longestSlotMinutes = new AtomicLong();
+    
+    public void add(Schedule schedule, String specialization) {
+        remove(schedule.getId());
+        long startKey = slotKey(schedule.getDate(), schedule.getStartTime());
+        Entry entry = new Entry(startKey, endKey(schedule), schedule.getId(), schedule,
+                                specialization == null ? null : specialization.toLowerCase(Locale.ROOT));
+        longestSlotMinutes.accumulateAndGet(entry.endKey - entry.slotKey, Math::max);
+        byId.put(entry.scheduleId, entry);
+        setOf(byDoctor, schedule.getDoctorId()).add(entry);
+        refresh(entry);
+    }
+    
+    public void remove(String scheduleId) {
+        Entry entry = byId.remove(scheduleId);
+        if (entry == null) {
+            return;
+        }
+        NavigableSet<Entry> doctorEntries = byDoctor.get(entry.schedule.getDoctorId());
+        if (doctorEntries != null) {
+            doctorEntries.remove(entry);
+        }
+        unlist(entry);
+    }
+    
+    // Dipanggil setelah tryReserve/release agar daftar slot tersedia mengikuti status slot
+    public void refresh(Schedule schedule) {
+        Entry entry = byId.get(schedule.getId());
+        if (entry != null && entry.schedule == schedule) {
+            refresh(entry);
+        }
+    }
+    
+    // Diulang sampai status yang dibaca tidak berubah selama update, sehingga dua refresh yang
+    // bersamaan (booking dan pembatalan) tetap berakhir sesuai status slot terakhir
+    private void refresh(Entry entry) {
+        while (true) {
+            boolean open = entry.schedule.isAvailable() && byId.get(entry.scheduleId) == entry;
+            if (open) {
+                list(entry);
+            } else {
+                unlist(entry);
+            }
+            if ((entry.schedule.isAvailable() && byId.get(entry.scheduleId) == entry) == open) {
+                return;
+            }
+        }
+    }
+    
+    private void list(Entry entry) {
+        available.add(entry);
+        setOf(availableByDoctor, entry.schedule.getDoctorId()).add(entry);
+        if (entry.specialization != null) {
+            setOf(availableBySpecialization, entry.specialization).add(entry);
+        }
+    }
+    
+    private void unlist(Entry entry) {
+        available.remove(entry);
+        NavigableSet<Entry> doctorEntries = availableByDoctor.get(entry.schedule.getDoctorId());
+        if (doctorEntries != null) {
+            doctorEntries.remove(entry);
+        }
+        if (entry.specialization != null) {
+            NavigableSet<Entry> specializationEntries = availableBySpecialization.get(entry.specialization);
+            if (specializationEntries != null) {
+                specializationEntries.remove(entry);
+            }
+        }
+    }
+    
+    // Jadwal dokter yang beririsan dengan [start, end) pada tanggal tersebut, atau null.
+    // Hanya slot yang mulai dalam rentang [start - slot terpanjang, end) yang diperiksa: O(log n + k).
+    public Schedule findOverlap(String doctorId, LocalDate date, LocalTime start, LocalTime end) {
+        NavigableSet<Entry> doctorEntries = byDoctor.get(doctorId);
+        if (doctorEntries == null) {
+            return null;
+        }
+        long startKey = slotKey(date, start);
+        long endKey = slotKey(date, end);
+        Entry from = Entry.bound(startKey - longestSlotMinutes.get());
+        for (Entry entry : doctorEntries.subSet(from, true, Entry.bound(endKey), false)) {
+            if (entry.endKey > startKey) {
+                return entry.schedule;
+            }
+        }
+        return null;
+    }
+    
+    // Slot tersedia yang mulai di [from, to)
+    public List<Schedule> availableBetween(LocalDateTime from, LocalDateTime to, int limit) {
+        return collect(available, slotKey(from), slotKey(to), limit, true);
+    }
+    
+    public List<Schedule> availableForDoctor(String doctorId, LocalDateTime from, LocalDateTime to, int limit) {
+        return collect(availableByDoctor.get(doctorId), slotKey(from), slotKey(to), limit, true);
+    }
+    
+    // N slot tersedia berikutnya sejak from untuk satu spesialisasi (tanpa membedakan huruf besar/kecil)
+    public List<Schedule> nextAvailable(String specialization, LocalDateTime from, int limit) {
+        return collect(availableBySpecialization.get(specialization.toLowerCase(Locale.ROOT)),
+                       slotKey(from), Long.MAX_VALUE, limit, true);
+    }
+    
+    // Semua jadwal dokter (tersedia maupun terpesan) terurut waktu
+    public List<Schedule> doctorSchedules(String doctorId) {
+        return collect(byDoctor.get(doctorId), Long.MIN_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE, false);
+    }
+    
+    public List<Schedule> doctorSchedules(String doctorId, LocalDateTime from, LocalDateTime to) {
+        return collect(byDoctor.get(doctorId), slotKey(from), slotKey(to), Integer.MAX_VALUE, false);
+    }
+    
+    // Urutan yang sama dengan index: waktu mulai, lalu ID
+    static final Comparator<Schedule> BY_TIME = Comparator
+        .comparingLong((Schedule s) -> slotKey(s.getDate(), s.getStartTime())).thenComparing(Schedule::getId);
+    
+    // Gabungan dua daftar yang sudah terurut BY_TIME, dipotong pada limit
+    static List<Schedule> merge(List<Schedule> a, List<Schedule> b, int limit) {
+        if (b.isEmpty()) {
+            return a.size() <= limit ? a : new ArrayList<>(a.subList(0, limit));
+        }
+        List<Schedule> result = new ArrayList<>(Math.min(limit, a.size() + b.size()));
+        int i = 0;
+        int j = 0;
+        while (result.size() < limit && (i < a.size() || j < b.size())) {
+            if (j >= b.size() || (i < a.size() && BY_TIME.compare(a.get(i), b.get(j)) <= 0)) {
+                result.add(a.get(i++));
+            } else {
+                result.add(b.get(j++));
+            }
+        }
+        return result;
+    }
+    
+    // true jika dokter punya jadwal pada tanggal tersebut dan semuanya sudah terpesan
+    public boolean isFullyBooked(String doctorId, LocalDate date) {
+        long dayStart = slotKey(date, LocalTime.MIN);
+        long dayEnd = slotKey(date.plusDays(1), LocalTime.MIN);
+        NavigableSet<Entry> doctorEntries = byDoctor.get(doctorId);
+        if (doctorEntries == null || doctorEntries.subSet(Entry.bound(dayStart), true, Entry.bound(dayEnd), false).isEmpty()) {
+            return false;
+        }
+        return collect(availableByDoctor.get(doctorId), dayStart, dayEnd, 1, true).isEmpty();
+    }
+    
+    private static List<Schedule> collect(NavigableSet<Entry> entries, long fromKey, long toKey, int limit,
+                                          boolean availableOnly) {
+        List<Schedule> result = new ArrayList<>();
+        if (entries == null || fromKey >= toKey) {
+            return result;
+        }
+        for (Entry entry : entries.subSet(Entry.bound(fromKey), true, Entry.bound(toKey), false)) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (!availableOnly || entry.schedule.isAvailable()) {
+                result.add(entry.schedule);
+            }
+        }
+        return result;
+    }
+    
+    private static NavigableSet<Entry> setOf(Map<String, NavigableSet<Entry>> map, String key) {
+        return map.computeIfAbsent(key, k -> new ConcurrentSkipListSet<>());
+    }
+    
+    // Menit sejak epoch; urutan yang sama dipakai DoctorAppointmentIndex
+    static long slotKey(LocalDate date, LocalTime time) {
+        return date.toEpochDay() * 1440 + time.toSecondOfDay() / 60;
+    }
+    
+    static long slotKey(LocalDateTime dateTime) {
+        return slotKey(dateTime.toLocalDate(), dateTime.toLocalTime());
+    }
+    
+    static long endKey(Schedule schedule) {
+        return slotKey(schedule.getDate(), schedule.getEndTime());
+    }
+}
+
+// ==================== AVAILABILITY BITMAPS ====================
+
+// Ketersediaan per dokter per hari sebagai bitset 96 unit x 15 menit. Satu hari = 4 word:
+// word 0-1 berisi unit yang seluruhnya berada di dalam slot tersedia, word 2-3 unit tempat slot tersedia dimulai.
+// Booking dan pembatalan membalik bit lewat operasi atomik per word, sehingga pencarian seperti
+// "dokter mana yang bebas 45 menit berturut-turut besok pagi" cukup beberapa shift/AND per dokter.
+class AvailabilityBitmap {
+    static final int UNIT_MINUTES = 15;
+    static final int UNITS = 1440 / UNIT_MINUTES;
+    static final int WORDS = 4;
+    private static final int STARTS = 2;
+    
+    private final Map<String, Map<Long, AtomicLongArray>> days = new ConcurrentHashMap<>();
+    
+    public void add(Schedule schedule) {
+        update(schedule, schedule.isAvailable());
+    }
+    
+    public void remove(Schedule schedule) {
+        update(schedule, false);
+    }
+    
+    // Seperti ScheduleIndex.refresh: diulang sampai bit sesuai dengan status slot yang terakhir terlihat
+    public void refresh(Schedule schedule) {
+        boolean available;
+        do {
+            available = schedule.isAvailable();
+            update(schedule, available);
+        } while (schedule.isAvailable() != available);
+    }
+    
+    private void update(Schedule schedule, boolean available) {
+        long[] mask = new long[WORDS];
+        mark(mask, schedule);
+        if ((mask[0] | mask[1]) == 0) {
+            return;
+        }
+        Map<Long, AtomicLongArray> doctorDays = days.computeIfAbsent(schedule.getDoctorId(), k -> new ConcurrentHashMap<>());
+        AtomicLongArray bits = available
+            ? doctorDays.computeIfAbsent(schedule.getDate().toEpochDay(), k -> new AtomicLongArray(WORDS))
+            : doctorDays.get(schedule.getDate().toEpochDay());
+        if (bits == null) {
+            return;
+        }
+        for (int i = 0; i < WORDS; i++) {
+            if (mask[i] == 0) {
+                continue;
+            }
+            if (available) {
+                bits.accumulateAndGet(i, mask[i], (word, m) -> word | m);
+            } else {
+                bits.accumulateAndGet(i, ~mask[i], (word, m) -> word & m);
+            }
+        }
+    }
+    
+    // Salinan bit satu hari dokter, semua nol jika tidak ada slot tersedia
+    public long[] snapshot(String doctorId, LocalDate date) {
+        long[] words = new long[WORDS];
+        Map<Long, AtomicLongArray> doctorDays = days.get(doctorId);
+        AtomicLongArray bits = doctorDays != null ? doctorDays.get(date.toEpochDay()) : null;
+        if (bits != null) {
+            for (int i = 0; i < WORDS; i++) {
+                words[i] = bits.get(i);
+            }
+        }
+        return words;
+    }
+    
+    // Unit slot ditandai pada words; unit yang hanya sebagian tertutup slot tidak dihitung bebas
+    static void mark(long[] words, Schedule slot) {
+        int startMinute = slot.getStartTime().toSecondOfDay() / 60;
+        int endMinute = slot.getEndTime().toSecondOfDay() / 60;
+        int first = (startMinute + UNIT_MINUTES - 1) / UNIT_MINUTES;
+        int last = endMinute / UNIT_MINUTES;
+        for (int unit = first; unit < last; unit++) {
+            words[unit >>> 6] |= 1L << unit;
+        }
+        if (first < last && startMinute % UNIT_MINUTES == 0) {
+            words[STARTS + (first >>> 6)] |= 1L << first;
+        }
+    }
+    
+    // Unit awal pertama di [fromUnit, toUnit - units] tempat sebuah slot dimulai dan units unit berikutnya bebas,
+    // atau -1. Run dihitung word-parallel: free & (free >>> 1) & ... dengan penggandaan shift, O(log units).
+    static int firstWindow(long[] words, int units, int fromUnit, int toUnit) {
+        int lastStart = toUnit - units;
+        if (units <= 0 || lastStart < fromUnit) {
+            return -1;
+        }
+        long lo = words[0];
+        long hi = words[1];
+        for (int length = 1; length < units; ) {
+            int step = Math.min(length, units - length);
+            lo &= (lo >>> step) | (hi << (64 - step));
+            hi &= hi >>> step;
+            length += step;
+        }
+        lo &= words[STARTS] & range(fromUnit, lastStart + 1, 0);
+        hi &= words[STARTS + 1] & range(fromUnit, lastStart + 1, 64);
+        if (lo != 0) {
+            return Long.numberOfTrailingZeros(lo);
+        }
+        return hi != 0 ? 64 + Long.numberOfTrailingZeros(hi) : -1;
+    }
+    
+    // Bit [from, to) yang jatuh pada word yang dimulai di base
+    private static long range(int from, int to, int base) {
+        int a = Math.max(from - base, 0);
+        int b = Math.min(to - base, 64);
+        if (a >= b) {
+            return 0;
+        }
+        long upper = b == 64 ? -1L : (1L << b) - 1;
+        return upper & (-1L << a);
+    }
+}
+
+// Rentang waktu bebas seorang dokter hasil pencarian bitmap
+class FreeWindow {
+    private final String doctorId;
+    private final LocalDate date;
+    private final LocalTime startTime;
+    private final LocalTime endTime;
+    
+    public FreeWindow(String doctorId, LocalDate date, LocalTime startTime, LocalTime endTime) {
+        this.doctorId = doctorId;
+        this.date = date;
+        this.startTime = startTime;
+        this.endTime = endTime;
+    }
+    
+    public String getDoctorId() { return doctorId; }
+    public LocalDate getDate() { return date; }
+    public LocalTime getStartTime() { return startTime; }
+    public LocalTime getEndTime() { return endTime; }
+}
+
+// ==================== VIRTUAL SLOTS ====================
+
+// Ketersediaan dihitung dari template berulang dokter ditambah sedikit pengecualian, tanpa objek
+// Schedule untuk setiap slot di masa depan. Slot virtual ber-ID "V<dokter>-<yyyyMMdd>-<HHmm>".
+// Saat dipesan, slot dibuat menjadi Schedule biasa (masuk ScheduleIndex) dan slot virtual yang
+// beririsan dengan jadwal nyata disembunyikan; slot yang dihapus dokter dicatat sebagai "blocked".
+class VirtualSlotCalendar {
+    static final char PREFIX = 'V';
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HHmm");
+    
+    private final ScheduleIndex index;
+    // Copy-on-write: pembacaan tanpa lock, template jarang berubah
+    private final Map<String, List<ScheduleTemplate>> templatesByDoctor = new ConcurrentHashMap<>();
+    private final Set<String> blocked = ConcurrentHashMap.newKeySet();
+    
+    VirtualSlotCalendar(ScheduleIndex index) {
+        this.index = index;
+    }
+    
+    // false jika template yang sama persis sudah ada (record journal yang diputar ulang di atas snapshot)
+    public boolean addTemplate(ScheduleTemplate template) {
+        boolean[] added = new boolean[1];
+        String line = template.toFileString();
+        templatesByDoctor.compute(template.getDoctorId(), (doctorId, current) -> {
+            if (current != null) {
+                for (ScheduleTemplate existing : current) {
+                    if (existing.toFileString().equals(line)) {
+                        return current;
+                    }
+                }
+            }
+            List<ScheduleTemplate> next = current == null ? new ArrayList<>() : new ArrayList<>(current);
+            next.add(template);
+            added[0] = true;
+            return Collections.unmodifiableList(next);
+        });
+        return added[0];
+    }
+    
+    public List<ScheduleTemplate> getTemplates(String doctorId) {
+        return templatesByDoctor.getOrDefault(doctorId, Collections.emptyList());
+    }
+    
+    public List<ScheduleTemplate> getAllTemplates() {
+        List<ScheduleTemplate> result = new ArrayList<>();
+        for (List<ScheduleTemplate> templates : templatesByDoctor.values()) {
+            result.addAll(templates);
+        }
+        return result;
+    }
+    
+    public boolean isEmpty() {
+        return templatesByDoctor.isEmpty();
+    }
+    
+    public boolean block(String slotId) {
+        return blocked.add(slotId);
+    }
+    
+    public boolean unblock(String slotId) {
+        return blocked.remove(slotId);
+    }
+    
+    public boolean isBlocked(String slotId) {
+        return blocked.contains(slotId);
+    }
+    
+    public Set<String> getBlocked() {
+        return Collections.unmodifiableSet(blocked);
+    }
+    
+    static boolean isVirtualId(String id) {
+        return id != null && !id.isEmpty() && id.charAt(0) == PREFIX;
+    }
+    
+    static String slotId(String doctorId, LocalDate date, LocalTime start) {
+        return PREFIX + doctorId + "-" + date.format(DATE_FORMAT) + "-" + start.format(TIME_FORMAT);
+    }
+    
+    // Slot dari template untuk ID tersebut, tanpa memeriksa apakah tersembunyi; null jika tidak ada
+    public Schedule slotAt(String slotId) {
+        if (!isVirtualId(slotId)) {
+            return null;
+        }
+        String[] parts = slotId.substring(1).split("-");
+        if (parts.length != 3) {
+            return null;
+        }
+        LocalDate date;
+        LocalTime start;
+        try {
+            date = LocalDate.parse(parts[1], DATE_FORMAT);
+            start = LocalTime.parse(parts[2], TIME_FORMAT);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+        for (ScheduleTemplate template : getTemplates(parts[0])) {
+            int slot = template.covers(date) ? template.slotIndexAt(start) : -1;
+            if (slot >= 0) {
+                return slot(template, date, slot);
+            }
+        }
+        return null;
+    }
+    
+    // Slot virtual yang masih dapat dipesan (tidak diblok dan tidak beririsan dengan jadwal nyata)
+    public Schedule resolve(String slotId) {
+        Schedule slot = slotAt(slotId);
+        return slot != null && isVisible(slot) ? slot : null;
+    }
+    
+    // Slot virtual (yang tidak diblok) milik dokter yang beririsan dengan [start, end), atau null
+    public Schedule findOverlap(String doctorId, LocalDate date, LocalTime start, LocalTime end) {
+        for (ScheduleTemplate template : getTemplates(doctorId)) {
+            if (!template.covers(date)) {
+                continue;
+            }
+            for (int i = template.firstSlotEndingAfter(start); i < template.slotsPerDay(); i++) {
+                if (!template.slotStart(i).isBefore(end)) {
+                    break;
+                }
+                Schedule slot = slot(template, date, i);
+                if (!blocked.contains(slot.getId())) {
+                    return slot;
+                }
+            }
+        }
+        return null;
+    }
+    
+    // Template lain dokter yang sama yang beririsan dengan template baru, sebagai pasangan slot yang bentrok
+    public ScheduleConflict findConflict(ScheduleTemplate template) {
+        for (ScheduleTemplate other : getTemplates(template.getDoctorId())) {
+            if (!other.getStartTime().isBefore(template.getEndTime())
+                    || !template.getStartTime().isBefore(other.getEndTime())) {
+                continue;
+            }
+            LocalDate from = max(template.getFromDate(), other.getFromDate());
+            LocalDate until = template.getUntilDate().isBefore(other.getUntilDate())
+                ? template.getUntilDate() : other.getUntilDate();
+            // Cukup satu minggu pertama dari rentang yang sama untuk menemukan hari yang bertabrakan
+            for (LocalDate date = from; !date.isAfter(until) && date.isBefore(from.plusDays(7)); date = date.plusDays(1)) {
+                if (template.covers(date) && other.covers(date)) {
+                    int mine = template.firstSlotEndingAfter(other.getStartTime());
+                    int theirs = other.firstSlotEndingAfter(template.getStartTime());
+                    return new ScheduleConflict(slot(template, date, Math.min(mine, template.slotsPerDay() - 1)),
+                                                slot(other, date, Math.min(theirs, other.slotsPerDay() - 1)));
+                }
+            }
+        }
+        return null;
+    }
+    
+    public boolean hasSlots(String doctorId, LocalDate date) {
+        for (ScheduleTemplate template : getTemplates(doctorId)) {
+            if (template.covers(date)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // Slot virtual yang dapat dipesan dan mulai di [from, to), terurut waktu. doctorIds null berarti semua dokter.
+    // Template digabung dengan priority queue: O(t log t + k log t) untuk t template.
+    public List<Schedule> available(Collection<String> doctorIds, LocalDateTime from, LocalDateTime to, int limit) {
+        List<Schedule> result = new ArrayList<>();
+        long toKey = ScheduleIndex.slotKey(to);
+        List<Cursor> started = new ArrayList<>();
+        Iterable<String> doctors = doctorIds != null ? doctorIds : templatesByDoctor.keySet();
+        for (String doctorId : doctors) {
+            for (ScheduleTemplate template : getTemplates(doctorId)) {
+                Cursor cursor = new Cursor(template, from);
+                if (cursor.key >= 0 && cursor.key < toKey) {
+                    started.add(cursor);
+                }
+            }
+        }
+        PriorityQueue<Cursor> cursors = new PriorityQueue<>(started);
+        while (result.size() < limit && !cursors.isEmpty()) {
+            Cursor cursor = cursors.poll();
+            if (cursor.key >= toKey) {
+                break;
+            }
+            Schedule slot = slot(cursor.template, cursor.date, cursor.slot);
+            if (isVisible(slot)) {
+                result.add(slot);
+            }
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
+        return result;
+    }
+    
+    private boolean isVisible(Schedule slot) {
+        return !blocked.contains(slot.getId())
+            && index.findOverlap(slot.getDoctorId(), slot.getDate(), slot.getStartTime(), slot.getEndTime()) == null;
+    }
+    
+    static Schedule slot(ScheduleTemplate template, LocalDate date, int index) {
+        LocalTime start = template.slotStart(index);
+        return new Schedule(slotId(template.getDoctorId(), date, start), template.getDoctorId(), date,
+                            start, start.plusMinutes(template.getSlotMinutes()));
+    }
+    
+    private static LocalDate max(LocalDate a, LocalDate b) {
+        return a.isAfter(b) ? a : b;
+    }
+    
+    // Posisi slot berikutnya dari satu template; key -1 jika template sudah habis
+    private static class Cursor implements Comparable<Cursor> {
+        final ScheduleTemplate template;
+        LocalDate date;
+        int slot;
+        long key;
+        
+        Cursor(ScheduleTemplate template, LocalDateTime from) {
+            this.template = template;
+            if (from.toLocalDate().isBefore(template.getFromDate())) {
+                date = template.getFromDate();
+                slot = 0;
+            } else {
+                date = from.toLocalDate();
+                slot = template.firstSlotEndingAfter(from.toLocalTime());
+                if (slot < template.slotsPerDay() && template.slotStart(slot).isBefore(from.toLocalTime())) {
+                    slot++;
+                }
+            }
+            normalize();
+        }
+        
+        boolean advance() {
+            slot++;
+            normalize();
+            return key >= 0;
+        }
+        
+        private void normalize() {
+            while (!date.isAfter(template.getUntilDate())
+                    && (slot >= template.slotsPerDay() || !template.covers(date))) {
+                date = date.plusDays(1);
+                slot = 0;
+            }
+            key = date.isAfter(template.getUntilDate()) ? -1
+                : ScheduleIndex.slotKey(date, template.slotStart(slot));
+        }
+        
+        @Override
+        public int compareTo(Cursor other) {
+            int c = Long.compare(key, other.key);
+            return c != 0 ? c : template.getDoctorId().compareTo(other.template.getDoctorId());
+        }
+    }
+}
+
+// ==================== CONCURRENCY - STRIPED LOCKS ====================
+
+// Lock per "stripe": key yang berbeda (misalnya dokter yang berbeda) hampir selalu
+// mendapat lock berbeda, sehingga penulis tidak saling menunggu.
+class StripedLock {
+    private final ReentrantLock[] locks;
+    
+    public StripedLock(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+    
+    public ReentrantLock forKey(String key) {
+        return locks[indexFor(key)];
+    }
+    
+    // Stripe untuk beberapa key tanpa duplikat, selalu dalam urutan stripe yang sama agar tidak deadlock
+    public List<ReentrantLock> forKeys(Collection<String> keys) {
+        TreeSet<Integer> indexes = new TreeSet<>();
+        for (String key : keys) {
+            indexes.add(indexFor(key));
+        }
+        List<ReentrantLock> result = new ArrayList<>(indexes.size());
+        for (int index : indexes) {
+            result.add(locks[index]);
+        }
+        return result;
+    }
+    
+    private int indexFor(String key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return h & (locks.length - 1);
+    }
+}
+
+// ==================== BOOKING RESULT ====================
+
+class BookingResult {
+    public enum Status { BOOKED, NOT_FOUND, ALREADY_BOOKED }
+    
+    private final Status status;
+    private final Schedule schedule;
+    private final Appointment appointment;
+    private final String holderAppointmentId;
+    
+    private BookingResult(Status status, Schedule schedule, Appointment appointment, String holderAppointmentId) {
+        this.status = status;
+        this.schedule = schedule;
+        this.appointment = appointment;
+        this.holderAppointmentId = holderAppointmentId;
+    }
+    
+    static BookingResult booked(Schedule schedule, Appointment appointment) {
+        return new BookingResult(Status.BOOKED, schedule, appointment, appointment.getId());
+    }
+    
+    static BookingResult notFound() {
+        return new BookingResult(Status.NOT_FOUND, null, null, null);
+    }
+    
+    static BookingResult alreadyBooked(Schedule schedule, String holderAppointmentId) {
+        return new BookingResult(Status.ALREADY_BOOKED, schedule, null, holderAppointmentId);
+    }
+    
+    public Status getStatus() { return status; }
+    public Schedule getSchedule() { return schedule; }
+    public Appointment getAppointment() { return appointment; }
+    // ID appointment pemegang slot (bisa Schedule.UNKNOWN_HOLDER untuk data lama)
+    public String getHolderAppointmentId() { return holderAppointmentId; }
+}
+
+// ==================== SCHEDULE CONFLICT ====================
+
+// Jadwal baru yang ditolak: jam tidak valid, atau beririsan dengan jadwal lain dokter yang sama
+class ScheduleConflict {
+    private final Schedule schedule;
+    private final Schedule conflictingSchedule;
+    
+    ScheduleConflict(Schedule schedule, Schedule conflictingSchedule) {
+        this.schedule = schedule;
+        this.conflictingSchedule = conflictingSchedule;
+    }
+    
+    public Schedule getSchedule() { return schedule; }
+    // null jika jadwal ditolak karena jam selesai tidak setelah jam mulai
+    public Schedule getConflictingSchedule() { return conflictingSchedule; }
+    
+    public String getReason() {
+        if (conflictingSchedule == null) {
+            return "Jam selesai harus setelah jam mulai";
+        }
+        return "Bentrok dengan jadwal " + conflictingSchedule.getId() + " ("
+            + conflictingSchedule.getDate().format(DateTimeFormatter.ofPattern("dd-MM-yyyy")) + " "
+            + conflictingSchedule.getStartTime() + " - " + conflictingSchedule.getEndTime() + ")";
+    }
+}
+
+// ==================== STATISTICS ====================
+
+// Jumlah jadwal, appointment dan riwayat per dokter/pasien serta totalnya, diperbarui O(1) setiap kali
+// data berubah, sehingga layar daftar dan dashboard tidak perlu memindai seluruh data.
+// Slot virtual dari template ikut dihitung sebagai jadwal tersedia selama masih terlihat.
+class ClinicStatistics {
+    private final Map<String, DoctorCounts> doctors = new ConcurrentHashMap<>();
+    private final Map<String, PatientCounts> patients = new ConcurrentHashMap<>();
+    private final AtomicLong schedules = new AtomicLong();
+    private final AtomicLong availableSchedules = new AtomicLong();
+    private final AtomicLong appointments = new AtomicLong();
+    private final AtomicLong histories = new AtomicLong();
+    
+    // Dua int volatile per entitas lewat field updater, bukan dua AtomicInteger: jumlah pasien bisa ratusan ribu
+    private static final class DoctorCounts {
+        static final AtomicIntegerFieldUpdater<DoctorCounts> SCHEDULES =
+            AtomicIntegerFieldUpdater.newUpdater(DoctorCounts.class, "schedules");
+        static final AtomicIntegerFieldUpdater<DoctorCounts> AVAILABLE =
+            AtomicIntegerFieldUpdater.newUpdater(DoctorCounts.class, "available");
+        volatile int schedules;
+        volatile int available;
+    }
+    
+    private static final class PatientCounts {
+        static final AtomicIntegerFieldUpdater<PatientCounts> APPOINTMENTS =
+            AtomicIntegerFieldUpdater.newUpdater(PatientCounts.class, "appointments");
+        static final AtomicIntegerFieldUpdater<PatientCounts> HISTORIES =
+            AtomicIntegerFieldUpdater.newUpdater(PatientCounts.class, "histories");
+        volatile int appointments;
+        volatile int histories;
+    }
+    
+    public void schedulesAdded(String doctorId, int count, int available) {
+        DoctorCounts counts = doctors.computeIfAbsent(doctorId, k -> new DoctorCounts());
+        DoctorCounts.SCHEDULES.addAndGet(counts, count);
+        DoctorCounts.AVAILABLE.addAndGet(counts, available);
+        schedules.addAndGet(count);
+        availableSchedules.addAndGet(available);
+    }
+    
+    public void scheduleAdded(Schedule schedule) {
+        schedulesAdded(schedule.getDoctorId(), 1, schedule.isAvailable() ? 1 : 0);
+    }
+    
+    public void scheduleRemoved(Schedule schedule, boolean wasAvailable) {
+        schedulesAdded(schedule.getDoctorId(), -1, wasAvailable ? -1 : 0);
+    }
+    
+    // Slot dipesan (delta -1) atau dilepas lagi karena pembatalan (delta +1)
+    public void availabilityChanged(String doctorId, int delta) {
+        schedulesAdded(doctorId, 0, delta);
+    }
+    
+    public void appointmentAdded(String patientId, int delta) {
+        PatientCounts.APPOINTMENTS.addAndGet(patients.computeIfAbsent(patientId, k -> new PatientCounts()), delta);
+        appointments.addAndGet(delta);
+    }
+    
+    public void historyAdded(String patientId, int delta) {
+        if (patientId != null) {
+            patientHistoriesAdded(patientId, delta);
+        }
+        histories.addAndGet(delta);
+    }
+    
+    // Hanya jumlah per pasien; dipakai untuk riwayat arsip mode lazy yang totalnya ditambahkan sekaligus
+    public void patientHistoriesAdded(String patientId, int delta) {
+        PatientCounts.HISTORIES.addAndGet(patients.computeIfAbsent(patientId, k -> new PatientCounts()), delta);
+    }
+    
+    public int getDoctorScheduleCount(String doctorId) {
+        DoctorCounts counts = doctors.get(doctorId);
+        return counts != null ? counts.schedules : 0;
+    }
+    
+    public int getDoctorAvailableCount(String doctorId) {
+        DoctorCounts counts = doctors.get(doctorId);
+        return counts != null ? counts.available : 0;
+    }
+    
+    public int getPatientAppointmentCount(String patientId) {
+        PatientCounts counts = patients.get(patientId);
+        return counts != null ? counts.appointments : 0;
+    }
+    
+    public int getPatientHistoryCount(String patientId) {
+        PatientCounts counts = patients.get(patientId);
+        return counts != null ? counts.histories : 0;
+    }
+    
+    public long getScheduleCount() { return schedules.get(); }
+    public long getAvailableScheduleCount() { return availableSchedules.get(); }
+    public long getAppointmentCount() { return appointments.get(); }
+    public long getHistoryCount() { return histories.get(); }
+}
+
+// ==================== SINGLETON PATTERN - DATABASE ====================
+
+class Database {
+    // Holder idiom: instance dibuat sekali saat pertama dipakai, aman walau banyak thread memanggil bersamaan
+    private static class Holder {
+        static final Database INSTANCE = new Database();
+    }
+    
+    private Map<String, Patient> patients;
+    private Map<String, Doctor> doctors;
+    private Map<String, Schedule> schedules;
+    private Map<String, Appointment> appointments;
+    private Map<String, ConsultationHistory> consultationHistories;
+    
+    // Secondary index agar query per pasien/dokter sebanding dengan jumlah hasil
+    private Map<String, List<Appointment>> appointmentsByPatient;
+    private DoctorAppointmentIndex appointmentsByDoctor;
+    private Map<String, List<ConsultationHistory>> historiesByAppointment;
+    private ScheduleIndex scheduleIndex;
+    private VirtualSlotCalendar virtualSlots;
+    private AvailabilityBitmap availability;
+    private ClinicStatistics statistics;
+    
+    private static final String DATA_DIR = "data";
+    private final String patientsFile;
+    private final String doctorsFile;
+    private final String schedulesFile;
+    private final String appointmentsFile;
+    private final String historiesFile;
+    private final String countersFile;
+    private final String journalFile;
+    private final String snapshotFile;
+    private final String snapshotIndexFile;
+    private final String slotRulesFile;
+    
+    // "journal" (default): mutasi di-append ke journal.log, file .txt menjadi snapshot.
+    // "txt": perilaku lama, setiap mutasi menulis ulang seluruh file .txt.
+    private static final String STORAGE_MODE = System.getProperty("clinic.storage", "journal");
+    
+    // sync (default), group atau async; lihat WriteBehindFlusher. Jendela coalescing dalam milidetik:
+    // default 0 untuk group (batch terbentuk selama flush sebelumnya berjalan, caller tidak ikut menunggu jendela)
+    // dan 5 untuk async.
+    private static final WriteBehindFlusher.Mode DURABILITY = WriteBehindFlusher.Mode.valueOf(
+        System.getProperty("clinic.durability", "sync").toUpperCase(Locale.ROOT));
+    private static final long FLUSH_WINDOW_MS = Long.getLong("clinic.flushWindowMs",
+        DURABILITY == WriteBehindFlusher.Mode.GROUP ? 0 : 5);
+    private static final int FLUSH_MAX_BATCH = Integer.getInteger("clinic.flushMaxBatch", 4096);
+    // fsync journal (dan file .txt sebelum rename) setiap commit. Default aktif pada mode group/async, di mana satu
+    // force dibagi seluruh batch; pada mode sync setiap mutasi membayar satu force sendiri.
+    private static final boolean FSYNC = Boolean.parseBoolean(System.getProperty("clinic.fsync",
+        String.valueOf(DURABILITY != WriteBehindFlusher.Mode.SYNC)));
+    
+    // "materialized" (default): template berulang diekspansi menjadi Schedule.
+    // "virtual": template disimpan apa adanya; slot dihitung saat dibutuhkan dan Schedule baru dibuat saat dipesan.
+    private static final boolean VIRTUAL_SLOTS = System.getProperty("clinic.slots", "materialized").equals("virtual");
+    // Checkpoint dijadwalkan di background begitu journal berisi sebanyak ini record. Selama checkpoint berjalan
+    // writer terus menambah record; jika journal mencapai batas kedua, writer menunggu checkpoint selesai.
+    // Dengan begitu recovery tidak pernah memutar ulang lebih dari batas itu, berapa lama pun proses sudah berjalan.
+    private static final long JOURNAL_CHECKPOINT_THRESHOLD = Long.getLong("clinic.checkpointRecords", 10000);
+    private static final long JOURNAL_MAX_RECORDS = Long.getLong("clinic.journalMaxRecords", 5 * JOURNAL_CHECKPOINT_THRESHOLD);
+    
+    // "binary" (default): checkpoint menulis snapshot.bin; "txt": checkpoint menulis file .txt.
+    // -Dclinic.txtExport=true tetap menulis file .txt di samping snapshot.bin.
+    private static final String SNAPSHOT_FORMAT = System.getProperty("clinic.snapshot", "binary");
+    private static final boolean TXT_EXPORT = Boolean.getBoolean("clinic.txtExport");
+    // -Dclinic.lazy=true: pasien dan riwayat tidak dimuat saat startup, tetapi dibaca per record dari snapshot.bin
+    // lewat snapshot.idx (LazyRecordStore), dengan cache LRU sebanyak clinic.lazyCacheRecords record per jenis.
+    // Dokter, jadwal dan appointment tetap dimuat semua karena index, pemegang slot dan statistik bergantung padanya.
+    // Tidak tersedia di Windows: file yang sedang di-map tidak bisa diganti lewat ATOMIC_MOVE, sehingga
+    // checkpoint tidak bisa menerbitkan snapshot.bin/snapshot.idx baru selama mapping lama masih dipakai.
+    private static final boolean LAZY = lazyEnabled();
+    private static final int LAZY_CACHE_RECORDS = Integer.getInteger("clinic.lazyCacheRecords", 10000);
+
+    private static boolean lazyEnabled() {
+        if (!Boolean.getBoolean("clinic.lazy")) {
+            return false;
+        }
+        if (System.getProperty("os.name", "").startsWith("Windows")) {
+            System.out.println("[INFO] clinic.lazy tidak didukung di Windows, semua data dimuat saat startup.");
+            return false;
+        }
+        return true;
+    }
+    // null jika tidak lazy (atau belum ada snapshot.bin)
+    private LazyRecordStore<Patient> lazyPatients;
+    private LazyRecordStore<ConsultationHistory> lazyHistories;
+    // -Dclinic.histories=lsm: riwayat konsultasi disimpan di folder histories/ (HistoryStore), tidak lagi di
+    // snapshot.bin atau histories.txt, sehingga checkpoint tidak menulis ulang seluruh riwayat. Riwayat yang sudah ada
+    // dipindahkan sekali saat store masih kosong. Memtable ditulis menjadi segmen setiap clinic.historyMemtableRecords riwayat.
+    private static final boolean LSM_HISTORIES = System.getProperty("clinic.histories", "snapshot").equals("lsm");
+    private static final int HISTORY_MEMTABLE_RECORDS = Integer.getInteger("clinic.historyMemtableRecords", 50000);
+    private final String historyStoreDir;
+    // null jika riwayat disimpan di snapshot
+    private HistoryStore historyStore;
+    private static final long SNAPSHOT_INTERVAL_MS = Long.getLong("clinic.snapshotIntervalSec", 300) * 1000;
+    private volatile long lastCheckpointMillis = System.currentTimeMillis();
+    
+    private static final String RECORD_PATIENT = "PATIENT";
+    private static final String RECORD_DOCTOR = "DOCTOR";
+    private static final String RECORD_SCHEDULE = "SCHEDULE";
+    private static final String RECORD_APPOINTMENT = "APPOINTMENT";
+    private static final String RECORD_HISTORY = "HISTORY";
+    private static final String RECORD_TEMPLATE = "TEMPLATE";
+    private static final String RECORD_SLOT_BLOCK = "SLOTBLOCK";
+    
+    private WriteAheadJournal journal;
+    // null pada mode sync
+    private WriteBehindFlusher flusher;
+    // Tiket flush terakhir milik thread ini; ditunggu (mode group) setelah semua lock dilepas
+    private final ThreadLocal<long[]> pendingFlush = ThreadLocal.withInitial(() -> new long[1]);
+    
+    private static final int ID_BLOCK_SIZE = Integer.getInteger("clinic.idBlockSize", 1000);
+    
+    private IdAllocator ids;
+    
+    // Mutasi jadwal/appointment satu dokter diserialkan per stripe; dokter lain tetap jalan.
+    // Checkpoint mengambil write lock agar snapshot dan pengosongan journal tidak kehilangan mutasi.
+    private final StripedLock doctorLocks = new StripedLock(64);
+    private final AppointmentEventBus eventBus = new AppointmentEventBus();
+    private final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+    private final AtomicBoolean checkpointInProgress = new AtomicBoolean();
+    // Checkpoint otomatis berjalan di sini, bukan di thread writer yang kebetulan melewati ambang batas
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "clinic-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Satu checkpoint pada satu waktu (compactor dan shutdown)
+    private final ReentrantLock checkpointRun = new ReentrantLock();
+    private final LatencyHistogram compactionLatency = new LatencyHistogram();
+    private final AtomicLong bytesReclaimed = new AtomicLong();
+    private final AtomicLong recordsReclaimed = new AtomicLong();
+    private volatile long lastBytesReclaimed;
+    private final Object compactionDone = new Object();
+    
+    private static final int LOADER_THREADS = Math.min(5, Runtime.getRuntime().availableProcessors());
+    private static final int LOAD_BUFFER_SIZE = 64 * 1024;
+    private final Map<String, Long> loadTimings = Collections.synchronizedMap(new LinkedHashMap<>());
+    
+    private Database() {
+        this(DATA_DIR);
+    }
+    
+    // Dipakai langsung oleh benchmark/tools yang butuh folder data terpisah
+    Database(String dataDirPath) {
+        patients = new ConcurrentHashMap<>();
+        doctors = new ConcurrentHashMap<>();
+        schedules = new ConcurrentHashMap<>();
+        appointments = new ConcurrentHashMap<>();
+        consultationHistories = new ConcurrentHashMap<>();
+        appointmentsByPatient = new ConcurrentHashMap<>();
+        appointmentsByDoctor = new DoctorAppointmentIndex();
+        historiesByAppointment = new ConcurrentHashMap<>();
+        scheduleIndex = new ScheduleIndex();
+        virtualSlots = new VirtualSlotCalendar(scheduleIndex);
+        availability = new AvailabilityBitmap();
+        statistics = new ClinicStatistics();
+        
+        patientsFile = dataDirPath + "/patients.txt";
+        doctorsFile = dataDirPath + "/doctors.txt";
+        schedulesFile = dataDirPath + "/schedules.txt";
+        appointmentsFile = dataDirPath + "/appointments.txt";
+        historiesFile = dataDirPath + "/histories.txt";
+        countersFile = dataDirPath + "/counters.txt";
+        journalFile = dataDirPath + "/journal.log";
+        snapshotFile = dataDirPath + "/snapshot.bin";
+        snapshotIndexFile = dataDirPath + "/snapshot.idx";
+        historyStoreDir = dataDirPath + "/histories";
+        slotRulesFile = dataDirPath + "/slot_rules.txt";
+        
+        // Create data directory if not exists
+        File dataDir = new File(dataDirPath);
+        if (!dataDir.exists()) {
+            dataDir.mkdirs();
+            System.out.println("[INFO] Folder '" + dataDirPath + "' berhasil dibuat untuk menyimpan database.");
+        }
+        
+        loadAllData();
+    }
+    
+    public static Database getInstance() {
+        return Holder.INSTANCE;
+    }
+    
+    private void loadAllData() {
+        long start = System.nanoTime();
+        loadCounters();
+        if (LSM_HISTORIES) {
+            openHistoryStore();
+        }
+        
+        // File-file independen di-parse paralel, relasi antar entitas disambung setelahnya
+        ExecutorService loader = Executors.newFixedThreadPool(LOADER_THREADS);
+        try {
+            if (!binarySnapshotIsNewest() || !loadBinarySnapshot(loader)) {
+                loadTextSnapshot(loader);
+            }
+        } finally {
+            loader.shutdown();
+        }
+        
+        loadSlotRules();
+        if (historyStore != null) {
+            migrateHistories();
+        }
+        
+        long joinStart = System.nanoTime();
+        linkLoadedRecords();
+        loadTimings.put("join", System.nanoTime() - joinStart);
+        loadTimings.put("total", System.nanoTime() - start);
+        printLoadReport();
+        
+        if (STORAGE_MODE.equals("journal")) {
+            openJournal();
+        }
+        releaseOrphanedSlots();
+        if (DURABILITY != WriteBehindFlusher.Mode.SYNC) {
+            flusher = new WriteBehindFlusher(DURABILITY, FLUSH_WINDOW_MS, FLUSH_MAX_BATCH, Database::recordKey,
+                                             this::writeDirty);
+        }
+        
         // Initialize sample data if empty
         if (doctors.isEmpty()) {
             initializeSampleData();
         }
     }
     
-    private void loadCounters() {
-        try (BufferedReader br = new BufferedReader(new FileReader(COUNTERS_FILE))) {
-            patientCounter = Integer.parseInt(br.readLine());
-            doctorCounter = Integer.parseInt(br.readLine());
-            scheduleCounter = Integer.parseInt(br.readLine());
-            appointmentCounter = Integer.parseInt(br.readLine());
-            historyCounter = Integer.parseInt(br.readLine());
-        } catch (IOException e) {
-            // Use default values if file doesn't exist
+    private void loadTextSnapshot(ExecutorService loader) {
+        Future<Map<String, Patient>> loadedPatients = loader.submit(
+            () -> loadRecords(patientsFile, Patient::fromFileString, Patient::getId));
+        Future<Map<String, Doctor>> loadedDoctors = loader.submit(
+            () -> loadRecords(doctorsFile, Doctor::fromFileString, Doctor::getId));
+        Future<Map<String, Schedule>> loadedSchedules = loader.submit(
+            () -> loadRecords(schedulesFile, Schedule::fromFileString, Schedule::getId));
+        Future<Map<String, Appointment>> loadedAppointments = loader.submit(
+            () -> loadRecords(appointmentsFile, Appointment::fromFileString, Appointment::getId));
+        // histories.txt yang sudah dipindahkan ke HistoryStore tidak dibaca lagi
+        boolean historiesMigrated = historyStore != null && !historyStore.isEmpty();
+        Future<Map<String, ConsultationHistory>> loadedHistories = loader.submit(
+            () -> historiesMigrated ? new ConcurrentHashMap<>()
+                : loadRecords(historiesFile, ConsultationHistory::fromFileString, ConsultationHistory::getId));
+        
+        patients = awaitLoad(loadedPatients);
+        doctors = awaitLoad(loadedDoctors);
+        schedules = awaitLoad(loadedSchedules);
+        appointments = awaitLoad(loadedAppointments);
+        consultationHistories = awaitLoad(loadedHistories);
+    }
+    
+    // snapshot.bin dipakai jika tidak lebih tua dari file .txt manapun
+    private boolean binarySnapshotIsNewest() {
+        File snapshot = new File(snapshotFile);
+        if (!snapshot.exists()) {
+            return false;
+        }
+        for (String fileName : new String[] {patientsFile, doctorsFile, schedulesFile, appointmentsFile, historiesFile}) {
+            if (new File(fileName).lastModified() > snapshot.lastModified()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private boolean loadBinarySnapshot(ExecutorService loader) {
+        try {
+            BinarySnapshot.Contents contents = BinarySnapshot.read(new File(snapshotFile), loader, loadTimings,
+                                                                   LAZY && openSnapshotIndex());
+            doctors = contents.doctors;
+            schedules = contents.schedules;
+            appointments = contents.appointments;
+            if (lazyPatients == null) {
+                patients = contents.patients;
+                consultationHistories = contents.histories;
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error loading snapshot.bin, memakai file .txt: " + e.getMessage());
+            loadTimings.clear();
+            return false;
+        }
+    }
+    
+    // false jika index tidak bisa dibuka; pasien dan riwayat lalu dimuat penuh seperti biasa
+    private boolean openSnapshotIndex() {
+        long start = System.nanoTime();
+        try {
+            SnapshotIndex index = SnapshotIndex.open(new File(snapshotFile), new File(snapshotIndexFile));
+            lazyPatients = new LazyRecordStore<>('P', index.patientRecords, index.patients, LongBuffer.allocate(0), 'A',
+                                                 BinarySnapshot::readPatient, Patient::getId, LAZY_CACHE_RECORDS);
+            lazyHistories = new LazyRecordStore<>('H', index.historyRecords, index.histories, index.historiesByAppointment,
+                                                  'A', BinarySnapshot::readHistory, ConsultationHistory::getId,
+                                                  LAZY_CACHE_RECORDS);
+            patients = lazyPatients;
+            consultationHistories = lazyHistories;
+            loadTimings.put("snapshot.idx", System.nanoTime() - start);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error opening snapshot.idx, memuat semua pasien dan riwayat: " + e.getMessage());
+            lazyPatients = null;
+            lazyHistories = null;
+            return false;
+        }
+    }
+    
+    // Gagal dibuka: riwayat kembali disimpan di snapshot
+    private void openHistoryStore() {
+        long start = System.nanoTime();
+        try {
+            historyStore = new HistoryStore(new File(historyStoreDir), FSYNC, HISTORY_MEMTABLE_RECORDS);
+            loadTimings.put("histories/", System.nanoTime() - start);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error opening history store, riwayat disimpan di snapshot: " + e.getMessage());
+            historyStore = null;
+        }
+    }
+    
+    // Riwayat dari snapshot/.txt dipindahkan ke store yang masih kosong (sekali, sebagai satu segmen); sesudahnya
+    // riwayat tidak lagi disimpan di memori. Snapshot berikutnya ditulis tanpa riwayat.
+    private void migrateHistories() {
+        if (historyStore.isEmpty() && !consultationHistories.isEmpty()) {
+            try {
+                historyStore.importAll(consultationHistories.values(), this::patientIdOf);
+                System.out.println("[INFO] " + historyStore.size() + " riwayat konsultasi dipindahkan ke " + historyStoreDir);
+            } catch (IOException e) {
+                System.err.println("Error migrating histories, riwayat disimpan di snapshot: " + e.getMessage());
+                historyStore.close();
+                historyStore = null;
+                return;
+            }
+        }
+        consultationHistories = new ConcurrentHashMap<>();
+        lazyHistories = null;
+    }
+    
+    // Template slot virtual dan slot yang diblok: T|<template> atau B|<ID slot>
+    private void loadSlotRules() {
+        File file = new File(slotRulesFile);
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.startsWith("T|")) {
+                    putTemplate(ScheduleTemplate.fromFileString(line.substring(2)));
+                } else if (line.startsWith("B|")) {
+                    blockVirtualSlot(line.substring(2));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error loading slot rules: " + e.getMessage());
+        }
+    }
+    
+    private void loadCounters() {
+        ids = new IdAllocator(new File(countersFile), ID_BLOCK_SIZE);
+    }
+    
+    private <T> Map<String, T> loadRecords(String fileName, Function<String, T> parser, 
+                                           Function<T, String> idOf) {
+        long start = System.nanoTime();
+        File file = new File(fileName);
+        Map<String, T> records = new ConcurrentHashMap<>(capacityFor(estimateRecordCount(file)));
+        if (file.exists()) {
+            try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), StandardCharsets.UTF_8), LOAD_BUFFER_SIZE)) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    T record = parser.apply(line);
+                    records.put(idOf.apply(record), record);
+                }
+            } catch (IOException e) {
+                System.err.println("Error loading " + file.getName() + ": " + e.getMessage());
+            }
+        }
+        loadTimings.put(file.getName(), System.nanoTime() - start);
+        return records;
+    }
+    
+    private static <T> T awaitLoad(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Loading data interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+    
+    // Perkiraan jumlah baris dari ukuran file dan rata-rata panjang baris di awal file
+    private static int estimateRecordCount(File file) {
+        long length = file.length();
+        if (length == 0) {
+            return 0;
+        }
+        byte[] sample = new byte[(int) Math.min(length, LOAD_BUFFER_SIZE)];
+        int read;
+        try (InputStream in = new FileInputStream(file)) {
+            read = in.readNBytes(sample, 0, sample.length);
+        } catch (IOException e) {
+            return 0;
+        }
+        int lines = 0;
+        for (int i = 0; i < read; i++) {
+            if (sample[i] == '\n') {
+                lines++;
+            }
+        }
+        if (read == 0 || lines == 0) {
+            return 1;
+        }
+        return (int) Math.min(Integer.MAX_VALUE / 2, length * lines / read + 1);
+    }
+    
+    private static int capacityFor(int expectedSize) {
+        return (int) (expectedSize / 0.75f) + 1;
+    }
+    
+    // Join setelah semua file dimuat: jadwal ke dokter, lalu secondary index
+    private void linkLoadedRecords() {
+        for (Patient patient : lazyPatients != null ? lazyPatients.residentValues() : patients.values()) {
+            eventBus.subscribePatient(patient.getId(), patient);
+        }
+        if (lazyPatients != null) {
+            eventBus.setPatientLookup(lazyPatients::get);
+        }
+        for (Doctor doctor : doctors.values()) {
+            eventBus.subscribeDoctor(doctor.getId(), doctor);
+        }
+        for (Schedule schedule : schedules.values()) {
+            Doctor doctor = doctors.get(schedule.getDoctorId());
+            if (doctor != null) {
+                doctor.addSchedule(schedule);
+            }
+            scheduleIndex.add(schedule, doctor != null ? doctor.getSpecialization() : null);
+            availability.add(schedule);
+            countSchedule(schedule, 1, schedule.isAvailable());
+        }
+        appointmentsByPatient = new ConcurrentHashMap<>(capacityFor(patients.size()));
+        for (Appointment appointment : appointments.values()) {
+            indexAppointment(appointment);
+            assignScheduleHolder(appointment);
+            reclaimHalfWrittenBooking(appointment);
+            int archivedHistories = lazyHistories != null ? lazyHistories.countGroup(appointment.getId()) : 0;
+            if (archivedHistories > 0) {
+                statistics.patientHistoriesAdded(appointment.getPatientId(), archivedHistories);
+            }
+        }
+        // Mode lazy: hanya riwayat yang ada di memori masuk index; riwayat arsip dicari lewat snapshot.idx
+        Collection<ConsultationHistory> residentHistories = lazyHistories != null
+            ? lazyHistories.residentValues() : consultationHistories.values();
+        historiesByAppointment = new ConcurrentHashMap<>(capacityFor(residentHistories.size()));
+        for (ConsultationHistory history : residentHistories) {
+            indexConsultationHistory(history);
+        }
+        if (lazyHistories != null) {
+            statistics.historyAdded(null, lazyHistories.size() - residentHistories.size());
+        }
+        if (historyStore != null) {
+            try {
+                historyStore.forEachPatientCount(statistics::historyAdded);
+            } catch (IOException | UncheckedIOException e) {
+                System.err.println("Error counting histories: " + e.getMessage());
+            }
+        }
+    }
+    
+    private void printLoadReport() {
+        StringBuilder sb = new StringBuilder("[INFO] Data dimuat dalam ")
+            .append(toMillis(loadTimings.get("total"))).append(" ms (");
+        String separator = "";
+        for (Map.Entry<String, Long> entry : loadTimings.entrySet()) {
+            if (!entry.getKey().equals("total")) {
+                sb.append(separator).append(entry.getKey()).append(' ').append(toMillis(entry.getValue())).append(" ms");
+                separator = ", ";
+            }
+        }
+        System.out.println(sb.append(')'));
+    }
+    
+    private static long toMillis(long nanos) {
+        return nanos / 1_000_000;
+    }
+    
+    // Waktu muat per file, join dan total (nanodetik) dari startup terakhir
+    Map<String, Long> getLoadTimings() {
+        return loadTimings;
+    }
+    
+    private void savePatients() {
+        saveRecords(patientsFile, patients.values(), Patient::toFileString, "patients");
+    }
+    
+    private void saveDoctors() {
+        saveRecords(doctorsFile, doctors.values(), Doctor::toFileString, "doctors");
+    }
+    
+    private void saveSchedules() {
+        saveRecords(schedulesFile, schedules.values(), Schedule::toFileString, "schedules");
+    }
+    
+    private void saveAppointments() {
+        saveRecords(appointmentsFile, appointments.values(), Appointment::toFileString, "appointments");
+    }
+    
+    // Mode LSM: riwayat hanya ada di HistoryStore, histories.txt lama dibiarkan
+    private void saveConsultationHistories() {
+        if (historyStore != null) {
+            return;
+        }
+        saveRecords(historiesFile, consultationHistories.values(), ConsultationHistory::toFileString, "consultation histories");
+    }
+    
+    private void saveSlotRules() {
+        if (virtualSlots.isEmpty() && !new File(slotRulesFile).exists()) {
+            return;
+        }
+        List<String> lines = new ArrayList<>();
+        for (ScheduleTemplate template : virtualSlots.getAllTemplates()) {
+            lines.add("T|" + template.toFileString());
+        }
+        for (String slotId : virtualSlots.getBlocked()) {
+            lines.add("B|" + slotId);
+        }
+        saveRecords(slotRulesFile, lines, line -> line, "slot rules");
+    }
+    
+    // Tulis ke file sementara lalu rename, agar snapshot lama tetap utuh jika proses mati di tengah jalan
+    private synchronized <T> void saveRecords(String fileName, Collection<T> records, Function<T, String> formatter, String label) {
+        File target = new File(fileName);
+        File temp = new File(fileName + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp);
+             PrintWriter pw = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            for (T record : records) {
+                pw.println(formatter.apply(record));
+            }
+            pw.flush();
+            if (FSYNC) {
+                out.getChannel().force(false);
+            }
+        } catch (IOException e) {
+            System.err.println("Error saving " + label + ": " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), target.toPath(), 
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Error saving " + label + ": " + e.getMessage());
+        }
+    }
+    
+    private void openJournal() {
+        try {
+            journal = new WriteAheadJournal(new File(journalFile), FSYNC);
+            int replayed = journal.replay(this::applyJournalRecord);
+            if (replayed > 0) {
+                System.out.println("[INFO] " + replayed + " perubahan dipulihkan dari journal ("
+                                   + journal.getSegmentCount() + " segmen)");
+            }
+        } catch (IOException e) {
+            // Tanpa journal setiap mutasi menulis ulang file .txt-nya; semua file ditulis sekali dulu agar file
+            // yang lebih baru dari snapshot.bin tidak bercampur dengan file .txt lama saat startup berikutnya
+            System.err.println("Error opening journal: " + e.getMessage());
+            journal = null;
+            exportTxt();
+        }
+    }
+    
+    private void applyJournalRecord(String op, String type, String payload) {
+        boolean delete = op.equals(WriteAheadJournal.OP_DEL);
+        switch (type) {
+            case RECORD_PATIENT:
+                putPatient(Patient.fromFileString(payload));
+                break;
+            case RECORD_DOCTOR:
+                Doctor doctor = Doctor.fromFileString(payload);
+                Doctor previous = putDoctor(doctor);
+                if (previous != null) {
+                    for (Schedule s : previous.getSchedules()) {
+                        doctor.addSchedule(s);
+                        scheduleIndex.add(s, doctor.getSpecialization());
+                    }
+                }
+                break;
+            case RECORD_SCHEDULE:
+                String scheduleId = delete ? payload : payload.substring(0, payload.indexOf('|'));
+                Schedule old = schedules.remove(scheduleId);
+                if (old != null && doctors.get(old.getDoctorId()) != null) {
+                    doctors.get(old.getDoctorId()).removeSchedule(old);
+                }
+                if (old != null) {
+                    availability.remove(old);
+                    countSchedule(old, -1, old.isAvailable());
+                }
+                scheduleIndex.remove(scheduleId);
+                if (!delete) {
+                    Schedule schedule = Schedule.fromFileString(payload);
+                    if (old != null && !schedule.isAvailable() && old.getHolder() != null) {
+                        schedule.assignHolder(old.getHolder());
+                    }
+                    schedules.put(schedule.getId(), schedule);
+                    Doctor owner = doctors.get(schedule.getDoctorId());
+                    if (owner != null) {
+                        owner.addSchedule(schedule);
+                    }
+                    scheduleIndex.add(schedule, owner != null ? owner.getSpecialization() : null);
+                    availability.add(schedule);
+                    countSchedule(schedule, 1, schedule.isAvailable());
+                }
+                break;
+            case RECORD_APPOINTMENT:
+                if (delete) {
+                    unindexAppointment(appointments.remove(payload));
+                } else {
+                    Appointment appointment = Appointment.fromFileString(payload);
+                    putAppointment(appointment);
+                    assignScheduleHolder(appointment);
+                }
+                break;
+            case RECORD_HISTORY:
+                putConsultationHistory(ConsultationHistory.fromFileString(payload));
+                break;
+            case RECORD_TEMPLATE:
+                putTemplate(ScheduleTemplate.fromFileString(payload));
+                break;
+            case RECORD_SLOT_BLOCK:
+                if (delete) {
+                    Schedule slot = virtualSlots.unblock(payload) ? virtualSlots.resolve(payload) : null;
+                    if (slot != null) {
+                        statistics.schedulesAdded(slot.getDoctorId(), 1, 1);
+                    }
+                } else {
+                    blockVirtualSlot(payload);
+                }
+                break;
+            default:
+                System.err.println("Record journal tidak dikenal: " + type);
+        }
+    }
+    
+    private void journalWrite(String op, String type, String payload, Runnable fullRewrite) {
+        if (flusher != null) {
+            pendingFlush.get()[0] = flusher.submit(Collections.singletonList(new String[] {op, type, payload}));
+            return;
+        }
+        if (journal == null) {
+            fullRewrite.run();
+            return;
+        }
+        try {
+            journal.append(op, type, payload);
+        } catch (IOException e) {
+            throw journalFailure(e);
+        }
+    }
+    
+    private void journalWriteAll(List<String[]> records, Runnable fullRewrite) {
+        if (flusher != null) {
+            pendingFlush.get()[0] = flusher.submit(records);
+            return;
+        }
+        if (journal == null) {
+            fullRewrite.run();
+            return;
+        }
+        try {
+            journal.appendAll(records);
+        } catch (IOException e) {
+            throw journalFailure(e);
+        }
+    }
+    
+    // Journal yang gagal ditulis tidak diganti dengan menulis ulang sebagian file .txt: file itu akan lebih baru
+    // dari snapshot.bin dan dimuat saat startup berikutnya, padahal jenis record lain di dalamnya sudah basi dan
+    // segmen journal yang mencakupnya sudah dihapus checkpoint. Mutasi digagalkan dan pemanggil menerima errornya.
+    private static UncheckedIOException journalFailure(IOException e) {
+        System.err.println("Error writing journal: " + e.getMessage());
+        return new UncheckedIOException("Perubahan gagal ditulis ke journal", e);
+    }
+    
+    // Dijalankan thread flusher: batch record kotor sebagai satu transaksi journal, atau pada mode txt
+    // tulis ulang hanya file dari jenis record yang berubah
+    private void writeDirty(List<String[]> records) {
+        if (journal != null) {
+            // Gagal: dilempar ke flusher, yang mengembalikan batch ke antrean dan memberi tahu pemanggil yang menunggu
+            try {
+                journal.appendAll(records);
+                return;
+            } catch (IOException e) {
+                throw journalFailure(e);
+            }
+        }
+        Set<String> types = new LinkedHashSet<>();
+        for (String[] record : records) {
+            types.add(record[1]);
+        }
+        for (String type : types) {
+            switch (type) {
+                case RECORD_PATIENT:
+                    savePatients();
+                    break;
+                case RECORD_DOCTOR:
+                    saveDoctors();
+                    break;
+                case RECORD_SCHEDULE:
+                    saveSchedules();
+                    break;
+                case RECORD_APPOINTMENT:
+                    saveAppointments();
+                    break;
+                case RECORD_HISTORY:
+                    saveConsultationHistories();
+                    break;
+                default:
+                    saveSlotRules();
+            }
+        }
+    }
+    
+    // Record dengan kunci yang sama digabung oleh flusher: ID record, atau seluruh payload untuk template
+    private static String recordKey(String[] record) {
+        String payload = record[2];
+        int bar = payload.indexOf('|');
+        String id = record[1].equals(RECORD_TEMPLATE) || bar < 0 ? payload : payload.substring(0, bar);
+        return record[1] + "\t" + id;
+    }
+    
+    // Pada mode group pemanggil menunggu batch-nya tertulis; dipanggil setelah semua lock dilepas
+    // agar thread lain tetap bisa bergabung ke batch yang sama
+    private void finishWrite() {
+        long[] ticket = pendingFlush.get();
+        if (flusher != null && ticket[0] != 0) {
+            flusher.awaitFlushed(ticket[0]);
+            ticket[0] = 0;
+        }
+        maybeCheckpoint();
+        awaitCompaction();
+    }
+    
+    // Backpressure: journal sudah mencapai JOURNAL_MAX_RECORDS sementara checkpoint masih berjalan
+    private void awaitCompaction() {
+        if (journal == null || journal.getRecordCount() < JOURNAL_MAX_RECORDS) {
+            return;
+        }
+        synchronized (compactionDone) {
+            while (journal.getRecordCount() >= JOURNAL_MAX_RECORDS && checkpointInProgress.get()) {
+                try {
+                    compactionDone.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+    
+    // Tulis semua perubahan yang masih tertunda (mode group/async)
+    public void flush() {
+        if (flusher != null) {
+            flusher.flush();
+        }
+    }
+    
+    // null pada mode sync
+    WriteBehindFlusher getFlusher() {
+        return flusher;
+    }
+    
+    // null pada mode storage txt
+    WriteAheadJournal getJournal() {
+        return journal;
+    }
+    
+    // doctorId null untuk data yang tidak terikat dokter (pasien, dokter baru, riwayat)
+    private void mutate(String doctorId, Runnable change) {
+        ReentrantLock stripe = doctorId == null ? null : doctorLocks.forKey(doctorId);
+        checkpointLock.readLock().lock();
+        try {
+            if (stripe != null) {
+                stripe.lock();
+            }
+            try {
+                change.run();
+            } finally {
+                if (stripe != null) {
+                    stripe.unlock();
+                }
+            }
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        finishWrite();
+    }
+    
+    private boolean checkpointDue() {
+        return journal != null && journal.getRecordCount() > 0
+            && (journal.getRecordCount() >= JOURNAL_CHECKPOINT_THRESHOLD
+                || System.currentTimeMillis() - lastCheckpointMillis >= SNAPSHOT_INTERVAL_MS);
+    }
+    
+    private void maybeCheckpoint() {
+        if (!checkpointDue() || !checkpointInProgress.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            compactor.execute(() -> {
+                try {
+                    if (checkpointDue()) {
+                        checkpoint();
+                    }
+                } finally {
+                    checkpointInProgress.set(false);
+                    synchronized (compactionDone) {
+                        compactionDone.notifyAll();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Database sudah ditutup
+            checkpointInProgress.set(false);
+        }
+    }
+    
+    private void putPatient(Patient patient) {
+        Patient previous = patients.put(patient.getId(), patient);
+        if (previous != null) {
+            eventBus.unsubscribePatient(previous.getId(), previous);
+        }
+        eventBus.subscribePatient(patient.getId(), patient);
+    }
+    
+    private Doctor putDoctor(Doctor doctor) {
+        Doctor previous = doctors.put(doctor.getId(), doctor);
+        if (previous != null) {
+            eventBus.unsubscribeDoctor(previous.getId(), previous);
+        }
+        eventBus.subscribeDoctor(doctor.getId(), doctor);
+        return previous;
+    }
+    
+    public AppointmentEventBus getEventBus() {
+        return eventBus;
+    }
+    
+    // File hanya menyimpan true/false; pemegang slot dipulihkan dari appointment yang masih Booked
+    private void assignScheduleHolder(Appointment appointment) {
+        if (appointment.getStatus().equals("Booked")) {
+            Schedule schedule = schedules.get(appointment.getScheduleId());
+            if (schedule != null) {
+                schedule.assignHolder(appointment.getId());
+            }
+        }
+    }
+    
+    // Mode txt menyimpan appointments.txt dan schedules.txt secara terpisah. Jika proses mati di antaranya,
+    // appointment Booked bisa menunjuk jadwal yang tercatat masih tersedia; slot itu dipegang kembali oleh
+    // appointment tersebut (booking dianggap selesai, pembatalan dianggap belum terjadi).
+    private void reclaimHalfWrittenBooking(Appointment appointment) {
+        if (!appointment.getStatus().equals(Appointment.STATUS_BOOKED)) {
+            return;
+        }
+        Schedule schedule = schedules.get(appointment.getScheduleId());
+        if (schedule != null && schedule.tryReserve(appointment.getId()) == null) {
+            scheduleIndex.refresh(schedule);
+            availability.refresh(schedule);
+            statistics.availabilityChanged(schedule.getDoctorId(), -1);
+        }
+    }
+    
+    // Kebalikan reclaimHalfWrittenBooking: jadwal tersimpan tidak tersedia tetapi tidak ada appointment (selain yang
+    // dibatalkan) yang menunjuknya. Slot sempat diambil dengan tryReserve dan ikut tertulis di snapshot atau
+    // schedules.txt, lalu proses mati sebelum booking (atau penghapusan jadwal) masuk journal. Slot dilepas lagi;
+    // dipanggil setelah journal diputar ulang, dan snapshot berikutnya menyimpannya sebagai tersedia.
+    private void releaseOrphanedSlots() {
+        Set<String> referenced = new HashSet<>(capacityFor(appointments.size()));
+        for (Appointment appointment : appointments.values()) {
+            if (!appointment.getStatus().equals(Appointment.STATUS_CANCELLED)) {
+                referenced.add(appointment.getScheduleId());
+            }
+        }
+        for (Schedule schedule : schedules.values()) {
+            if (Schedule.UNKNOWN_HOLDER.equals(schedule.getHolder()) && !referenced.contains(schedule.getId())
+                    && schedule.release(Schedule.UNKNOWN_HOLDER)) {
+                scheduleIndex.refresh(schedule);
+                availability.refresh(schedule);
+                statistics.availabilityChanged(schedule.getDoctorId(), 1);
+            }
+        }
+    }
+    
+    private String doctorIdOf(Appointment appointment) {
+        Schedule schedule = schedules.get(appointment.getScheduleId());
+        return schedule != null ? schedule.getDoctorId() : null;
+    }
+    
+    // Dipanggil sekali saat aplikasi keluar
+    public void shutdown() {
+        try {
+            flush();
+        } catch (UncheckedIOException e) {
+            // Batch yang gagal tetap di antrean; close() melaporkan yang tidak tersimpan
+            System.err.println("Error saving data: " + e.getMessage());
+        }
+        checkpoint();
+        ids.release();
+        close();
+    }
+    
+    // Menutup journal tanpa checkpoint, seperti proses yang berhenti; dipakai benchmark/tools.
+    // Checkpoint yang sedang berjalan di background ditunggu selesai.
+    void close() {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (flusher != null) {
+            flusher.close();
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Error closing journal: " + e.getMessage());
+            }
+        }
+        if (historyStore != null) {
+            historyStore.close();
+        }
+    }
+    
+    // Tulis snapshot lengkap lalu buang segmen journal yang sudah tercakup, tanpa menghentikan writer.
+    // Write lock hanya dipegang selama journal di-roll ke segmen baru; snapshot ditulis sambil mutasi berjalan
+    // ke segmen baru itu. Snapshot bisa memuat sebagian perubahan sesudah roll, tetapi setiap record journal
+    // berisi state lengkap satu entitas, sehingga memutar ulang segmen baru di atasnya menghasilkan state yang sama.
+    public void checkpoint() {
+        checkpointRun.lock();
+        try {
+            long start = System.nanoTime();
+            long sealed = -1;
+            if (journal != null) {
+                checkpointLock.writeLock().lock();
+                try {
+                    sealed = journal.roll();
+                } catch (IOException e) {
+                    System.err.println("Error rolling journal: " + e.getMessage());
+                    return;
+                } finally {
+                    checkpointLock.writeLock().unlock();
+                }
+            }
+            if (!writeCheckpoint() || journal == null) {
+                return;
+            }
+            long records = journal.getRecordCount();
+            long bytes = journal.deleteThrough(sealed);
+            recordsReclaimed.addAndGet(records - journal.getRecordCount());
+            bytesReclaimed.addAndGet(bytes);
+            lastBytesReclaimed = bytes;
+            compactionLatency.recordNanos(System.nanoTime() - start);
+        } finally {
+            checkpointRun.unlock();
+        }
+    }
+    
+    // false jika snapshot gagal ditulis; segmen journal lama dibiarkan agar tidak ada perubahan yang hilang
+    private boolean writeCheckpoint() {
+        boolean binary = SNAPSHOT_FORMAT.equals("binary") && STORAGE_MODE.equals("journal");
+        if (!binary || TXT_EXPORT) {
+            exportTxt();
+        }
+        saveSlotRules();
+        if (binary) {
+            try {
+                // Perubahan yang ikut terbaca snapshot harus sudah ada di journal sebelum snapshot dipakai recovery
+                BinarySnapshot.write(new File(snapshotFile), patients.values(), doctors.values(),
+                                     schedules.values(), appointments.values(), consultationHistories.values(),
+                                     this::flush);
+            } catch (IOException | UncheckedIOException e) {
+                System.err.println("Error saving snapshot: " + e.getMessage());
+                return false;
+            }
+            if (LAZY) {
+                writeSnapshotIndex();
+            }
+        } else {
+            try {
+                flush();
+            } catch (UncheckedIOException e) {
+                System.err.println("Error saving data: " + e.getMessage());
+                return false;
+            }
+        }
+        lastCheckpointMillis = System.currentTimeMillis();
+        return true;
+    }
+    
+    // Gagal di sini tidak fatal: index yang tertinggal dibangun ulang dari snapshot saat startup berikutnya
+    private void writeSnapshotIndex() {
+        try {
+            SnapshotIndex.write(new File(snapshotFile), new File(snapshotIndexFile));
+        } catch (IOException e) {
+            System.err.println("Error saving snapshot index: " + e.getMessage());
+        }
+    }
+    
+    LatencyHistogram getCompactionLatency() { return compactionLatency; }
+    long getBytesReclaimed() { return bytesReclaimed.get(); }
+    long getRecordsReclaimed() { return recordsReclaimed.get(); }
+    long getLastBytesReclaimed() { return lastBytesReclaimed; }
+    
+    // Tulis seluruh data ke file .txt (format lama)
+    public void exportTxt() {
+        savePatients();
+        saveDoctors();
+        saveSchedules();
+        saveAppointments();
+        saveConsultationHistories();
+    }
+    
+    private void initializeSampleData() {
+        Doctor d1 = new Doctor("D001", "Dr. Ahmad Yani", "Kardiologi");
+        Doctor d2 = new Doctor("D002", "Dr. Siti Rahma", "Pediatri");
+        Doctor d3 = new Doctor("D003", "Dr. Budi Santoso", "Orthopedi");
+        addDoctor(d1);
+        addDoctor(d2);
+        addDoctor(d3);
+        ids.reserveThrough(IdAllocator.DOCTOR, 3);
+        
+        addSchedule(new Schedule("S001", d1.getId(), LocalDate.now().plusDays(1), LocalTime.of(9, 0), LocalTime.of(10, 0)));
+        addSchedule(new Schedule("S002", d1.getId(), LocalDate.now().plusDays(1), LocalTime.of(10, 0), LocalTime.of(11, 0)));
+        addSchedule(new Schedule("S003", d2.getId(), LocalDate.now().plusDays(2), LocalTime.of(14, 0), LocalTime.of(15, 0)));
+        addSchedule(new Schedule("S004", d3.getId(), LocalDate.now().plusDays(3), LocalTime.of(11, 0), LocalTime.of(12, 0)));
+        ids.reserveThrough(IdAllocator.SCHEDULE, 4);
+    }
+    
+    public String generatePatientId() {
+        return ids.next(IdAllocator.PATIENT);
+    }
+    
+    public String generateDoctorId() {
+        return ids.next(IdAllocator.DOCTOR);
+    }
+    
+    public String generateScheduleId() {
+        return ids.next(IdAllocator.SCHEDULE);
+    }
+    
+    public List<String> generateScheduleIds(int count) {
+        return ids.next(IdAllocator.SCHEDULE, count);
+    }
+    
+    public String generateAppointmentId() {
+        return ids.next(IdAllocator.APPOINTMENT);
+    }
+    
+    public String generateHistoryId() {
+        return ids.next(IdAllocator.HISTORY);
+    }
+    
+    public void addPatient(Patient patient) {
+        mutate(null, () -> {
+            putPatient(patient);
+            journalWrite(WriteAheadJournal.OP_PUT, RECORD_PATIENT, patient.toFileString(), this::savePatients);
+        });
+    }
+    
+    public void addDoctor(Doctor doctor) {
+        mutate(doctor.getId(), () -> {
+            putDoctor(doctor);
+            journalWrite(WriteAheadJournal.OP_PUT, RECORD_DOCTOR, doctor.toFileString(), this::saveDoctors);
+        });
+    }
+    
+    // null jika jadwal tersimpan; jadwal yang beririsan dengan jadwal lain dokter yang sama ditolak
+    public ScheduleConflict addSchedule(Schedule schedule) {
+        if (!schedule.getEndTime().isAfter(schedule.getStartTime())) {
+            return new ScheduleConflict(schedule, null);
+        }
+        ScheduleConflict[] conflict = new ScheduleConflict[1];
+        mutate(schedule.getDoctorId(), () -> {
+            Schedule existing = findOverlap(schedule);
+            if (existing != null) {
+                conflict[0] = new ScheduleConflict(schedule, existing);
+                return;
+            }
+            putSchedule(schedule);
+            journalWrite(WriteAheadJournal.OP_PUT, RECORD_SCHEDULE, schedule.toFileString(), this::saveSchedules);
+        });
+        return conflict[0];
+    }
+    
+    // Banyak jadwal sekaligus (mis. beberapa bulan praktik): batch diurutkan lalu divalidasi dalam satu lintasan,
+    // terhadap sesamanya dan terhadap index. Semua atau tidak sama sekali; batch yang lolos ditulis sebagai
+    // satu transaksi journal. Mengembalikan daftar konflik (kosong jika semua tersimpan).
+    public List<ScheduleConflict> addSchedules(List<Schedule> batch) {
+        List<Schedule> sorted = new ArrayList<>(batch);
+        sorted.sort(Comparator.comparing(Schedule::getDoctorId)
+            .thenComparingLong(s -> ScheduleIndex.slotKey(s.getDate(), s.getStartTime())));
+        List<ScheduleConflict> conflicts = new ArrayList<>();
+        // Slot dokter yang sama dengan jam selesai paling akhir sejauh ini: slot panjang bisa menimpa beberapa
+        // slot sesudahnya, bukan hanya slot berikutnya
+        Schedule furthest = null;
+        for (Schedule schedule : sorted) {
+            if (!schedule.getEndTime().isAfter(schedule.getStartTime())) {
+                conflicts.add(new ScheduleConflict(schedule, null));
+                continue;
+            }
+            if (furthest != null && !furthest.getDoctorId().equals(schedule.getDoctorId())) {
+                furthest = null;
+            }
+            if (furthest != null
+                    && ScheduleIndex.endKey(furthest) > ScheduleIndex.slotKey(schedule.getDate(), schedule.getStartTime())) {
+                conflicts.add(new ScheduleConflict(schedule, furthest));
+            }
+            if (furthest == null || ScheduleIndex.endKey(schedule) > ScheduleIndex.endKey(furthest)) {
+                furthest = schedule;
+            }
+        }
+        if (!conflicts.isEmpty() || sorted.isEmpty()) {
+            return conflicts;
+        }
+        
+        Set<String> doctorIds = new HashSet<>();
+        for (Schedule schedule : sorted) {
+            doctorIds.add(schedule.getDoctorId());
+        }
+        List<ReentrantLock> stripes = doctorLocks.forKeys(doctorIds);
+        checkpointLock.readLock().lock();
+        try {
+            stripes.forEach(ReentrantLock::lock);
+            try {
+                for (Schedule schedule : sorted) {
+                    Schedule existing = findOverlap(schedule);
+                    if (existing != null) {
+                        conflicts.add(new ScheduleConflict(schedule, existing));
+                    }
+                }
+                if (!conflicts.isEmpty()) {
+                    return conflicts;
+                }
+                List<String[]> records = new ArrayList<>(sorted.size());
+                for (Schedule schedule : sorted) {
+                    putSchedule(schedule);
+                    records.add(new String[] {WriteAheadJournal.OP_PUT, RECORD_SCHEDULE, schedule.toFileString()});
+                }
+                journalWriteAll(records, this::saveSchedules);
+            } finally {
+                stripes.forEach(ReentrantLock::unlock);
+            }
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        finishWrite();
+        return conflicts;
+    }
+    
+    // Jadwal nyata atau slot virtual dokter yang beririsan dengan jadwal baru
+    private Schedule findOverlap(Schedule schedule) {
+        Schedule existing = scheduleIndex.findOverlap(schedule.getDoctorId(), schedule.getDate(),
+                                                      schedule.getStartTime(), schedule.getEndTime());
+        if (existing == null) {
+            existing = virtualSlots.findOverlap(schedule.getDoctorId(), schedule.getDate(),
+                                                schedule.getStartTime(), schedule.getEndTime());
+        }
+        return existing;
+    }
+    
+    public List<ScheduleConflict> publishTemplates(List<ScheduleTemplate> templates) {
+        return publishTemplates(templates, VIRTUAL_SLOTS);
+    }
+    
+    // Mode materialized: template diekspansi menjadi satu batch addSchedules; ID dialokasikan sekaligus, lalu
+    // divalidasi dan disimpan sebagai satu transaksi journal (atau satu kali tulis schedules.txt).
+    // Mode virtual: hanya template yang disimpan, slot dihitung saat dibaca (lihat VirtualSlotCalendar).
+    List<ScheduleConflict> publishTemplates(List<ScheduleTemplate> templates, boolean virtual) {
+        if (virtual) {
+            return addTemplates(templates);
+        }
+        int total = 0;
+        for (ScheduleTemplate template : templates) {
+            total += template.countSlots();
+        }
+        Iterator<String> scheduleIds = generateScheduleIds(total).iterator();
+        List<Schedule> batch = new ArrayList<>(total);
+        for (ScheduleTemplate template : templates) {
+            batch.addAll(template.expand(scheduleIds));
+        }
+        return addSchedules(batch);
+    }
+    
+    // Template divalidasi terhadap template lain (termasuk sesama batch) dan jadwal nyata dalam rentangnya.
+    // Semua atau tidak sama sekali, seperti addSchedules.
+    private List<ScheduleConflict> addTemplates(List<ScheduleTemplate> templates) {
+        List<ScheduleConflict> conflicts = new ArrayList<>();
+        if (templates.isEmpty()) {
+            return conflicts;
+        }
+        Set<String> doctorIds = new HashSet<>();
+        for (ScheduleTemplate template : templates) {
+            doctorIds.add(template.getDoctorId());
+        }
+        List<ReentrantLock> stripes = doctorLocks.forKeys(doctorIds);
+        checkpointLock.readLock().lock();
+        try {
+            stripes.forEach(ReentrantLock::lock);
+            try {
+                VirtualSlotCalendar staged = new VirtualSlotCalendar(scheduleIndex);
+                for (ScheduleTemplate template : templates) {
+                    ScheduleConflict conflict = virtualSlots.findConflict(template);
+                    if (conflict == null) {
+                        conflict = staged.findConflict(template);
+                    }
+                    if (conflict == null) {
+                        conflict = findScheduleConflict(template);
+                    }
+                    if (conflict != null) {
+                        conflicts.add(conflict);
+                    }
+                    staged.addTemplate(template);
+                }
+                if (!conflicts.isEmpty()) {
+                    return conflicts;
+                }
+                List<String[]> records = new ArrayList<>(templates.size());
+                for (ScheduleTemplate template : templates) {
+                    putTemplate(template);
+                    records.add(new String[] {WriteAheadJournal.OP_PUT, RECORD_TEMPLATE, template.toFileString()});
+                }
+                journalWriteAll(records, this::saveSlotRules);
+            } finally {
+                stripes.forEach(ReentrantLock::unlock);
+            }
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        finishWrite();
+        return conflicts;
+    }
+    
+    // Jadwal nyata dokter yang jatuh pada salah satu slot template, atau null
+    private ScheduleConflict findScheduleConflict(ScheduleTemplate template) {
+        List<Schedule> existing = scheduleIndex.doctorSchedules(template.getDoctorId(),
+            template.getFromDate().atStartOfDay(), template.getUntilDate().plusDays(1).atStartOfDay());
+        for (Schedule schedule : existing) {
+            if (!template.covers(schedule.getDate())) {
+                continue;
+            }
+            int slot = template.firstSlotEndingAfter(schedule.getStartTime());
+            if (slot < template.slotsPerDay() && template.slotStart(slot).isBefore(schedule.getEndTime())) {
+                return new ScheduleConflict(VirtualSlotCalendar.slot(template, schedule.getDate(), slot), schedule);
+            }
+        }
+        return null;
+    }
+    
+    private void putSchedule(Schedule schedule) {
+        schedules.put(schedule.getId(), schedule);
+        Doctor doctor = doctors.get(schedule.getDoctorId());
+        if (doctor != null) {
+            doctor.addSchedule(schedule);
+        }
+        scheduleIndex.add(schedule, doctor != null ? doctor.getSpecialization() : null);
+        availability.add(schedule);
+        countSchedule(schedule, 1, schedule.isAvailable());
+    }
+    
+    private void putTemplate(ScheduleTemplate template) {
+        if (!virtualSlots.addTemplate(template)) {
+            return;
+        }
+        int slots = template.countSlots();
+        statistics.schedulesAdded(template.getDoctorId(), slots, slots);
+    }
+    
+    // true jika slot baru saja diblok; slot yang masih terlihat berkurang dari statistik
+    private boolean blockVirtualSlot(String slotId) {
+        Schedule slot = virtualSlots.resolve(slotId);
+        if (!virtualSlots.block(slotId)) {
+            return false;
+        }
+        if (slot != null) {
+            statistics.schedulesAdded(slot.getDoctorId(), -1, -1);
+        }
+        return true;
+    }
+    
+    // Jadwal nyata yang menutupi slot virtual (slot yang sudah dipesan) menggantikan slot itu dalam hitungan
+    private void countSchedule(Schedule schedule, int delta, boolean available) {
+        statistics.schedulesAdded(schedule.getDoctorId(), delta, available ? delta : 0);
+        if (!virtualSlots.isEmpty() && virtualSlots.findOverlap(schedule.getDoctorId(), schedule.getDate(),
+                                                                schedule.getStartTime(), schedule.getEndTime()) != null) {
+            statistics.schedulesAdded(schedule.getDoctorId(), -delta, -delta);
+        }
+    }
+    
+    public void updateSchedule(Schedule schedule) {
+        mutate(schedule.getDoctorId(), () ->
+            journalWrite(WriteAheadJournal.OP_PUT, RECORD_SCHEDULE, schedule.toFileString(), this::saveSchedules));
+    }
+    
+    // false jika jadwal tidak ada atau sudah dipesan
+    public boolean removeSchedule(String scheduleId) {
+        if (VirtualSlotCalendar.isVirtualId(scheduleId)) {
+            return blockSlot(scheduleId);
+        }
+        Schedule schedule = schedules.get(scheduleId);
+        if (schedule == null || schedule.tryReserve(Schedule.REMOVED_HOLDER) != null) {
+            return false;
+        }
+        scheduleIndex.remove(scheduleId);
+        availability.remove(schedule);
+        mutate(schedule.getDoctorId(), () -> {
+            if (schedules.remove(scheduleId) == null) {
+                return;
+            }
+            Doctor doctor = doctors.get(schedule.getDoctorId());
+            if (doctor != null) {
+                doctor.removeSchedule(schedule);
+            }
+            countSchedule(schedule, -1, true);
+            journalWrite(WriteAheadJournal.OP_DEL, RECORD_SCHEDULE, scheduleId, this::saveSchedules);
+        });
+        return true;
+    }
+    
+    // Slot virtual tidak bisa dihapus dari template; slot itu diblok dan disimpan sebagai pengecualian
+    private boolean blockSlot(String slotId) {
+        Schedule slot = virtualSlots.resolve(slotId);
+        if (slot == null) {
+            return false;
+        }
+        boolean[] blocked = new boolean[1];
+        mutate(slot.getDoctorId(), () -> {
+            if (virtualSlots.resolve(slotId) != null && blockVirtualSlot(slotId)) {
+                journalWrite(WriteAheadJournal.OP_PUT, RECORD_SLOT_BLOCK, slotId, this::saveSlotRules);
+                blocked[0] = true;
+            }
+        });
+        return blocked[0];
+    }
+    
+    // Booking atomik: slot diambil dengan CAS (tanpa lock), lalu appointment dan status slot
+    // ditulis ke journal sebagai satu transaksi. Pemesan yang kalah langsung gagal tanpa menunggu.
+    public BookingResult bookSchedule(String patientId, String scheduleId) {
+        Schedule schedule = VirtualSlotCalendar.isVirtualId(scheduleId)
+            ? materialize(scheduleId) : schedules.get(scheduleId);
+        if (schedule == null) {
+            return BookingResult.notFound();
+        }
+        String holder = schedule.getHolder();
+        if (holder != null) {
+            return BookingResult.alreadyBooked(schedule, holder);
+        }
+        String appointmentId = generateAppointmentId();
+        holder = schedule.tryReserve(appointmentId);
+        if (holder != null) {
+            return BookingResult.alreadyBooked(schedule, holder);
+        }
+        scheduleIndex.refresh(schedule);
+        availability.refresh(schedule);
+        statistics.availabilityChanged(schedule.getDoctorId(), -1);
+        Appointment appointment = new Appointment(appointmentId, patientId, schedule.getId());
+        ReentrantLock stripe = doctorLocks.forKey(schedule.getDoctorId());
+        checkpointLock.readLock().lock();
+        stripe.lock();
+        try {
+            putAppointment(appointment);
+            // Status jadwal dibaca di bawah stripe lock, sehingga record terakhir jadwal ini di journal selalu
+            // sesuai state terbaru walaupun pembatalan dan booking ulang slot yang sama berjalan bersamaan
+            journalWriteAll(Arrays.asList(
+                new String[] {WriteAheadJournal.OP_PUT, RECORD_SCHEDULE, schedule.toFileString()},
+                new String[] {WriteAheadJournal.OP_PUT, RECORD_APPOINTMENT, appointment.toFileString()}),
+                () -> {
+                    saveAppointments();
+                    saveSchedules();
+                });
+        } finally {
+            stripe.unlock();
+            checkpointLock.readLock().unlock();
+        }
+        finishWrite();
+        return BookingResult.booked(schedule, appointment);
+    }
+    
+    // Schedule nyata untuk slot virtual yang akan dipesan. Belum ditulis ke journal: transaksi booking
+    // menyimpannya bersama appointment. Jika pemesan lain sudah membuatnya, Schedule yang sama dipakai
+    // dan CAS di bookSchedule yang menentukan pemenangnya.
+    private Schedule materialize(String slotId) {
+        Schedule slot = virtualSlots.slotAt(slotId);
+        if (slot == null) {
+            return null;
+        }
+        Schedule[] result = new Schedule[1];
+        mutate(slot.getDoctorId(), () -> {
+            if (virtualSlots.isBlocked(slotId)) {
+                return;
+            }
+            Schedule existing = scheduleIndex.findOverlap(slot.getDoctorId(), slot.getDate(),
+                                                          slot.getStartTime(), slot.getEndTime());
+            if (existing == null) {
+                Schedule schedule = new Schedule(generateScheduleId(), slot.getDoctorId(), slot.getDate(),
+                                                 slot.getStartTime(), slot.getEndTime());
+                putSchedule(schedule);
+                result[0] = schedule;
+            } else if (existing.getStartTime().equals(slot.getStartTime())
+                    && existing.getEndTime().equals(slot.getEndTime())) {
+                result[0] = existing;
+            }
+        });
+        return result[0];
+    }
+    
+    public void addAppointment(Appointment appointment) {
+        mutate(doctorIdOf(appointment), () -> {
+            putAppointment(appointment);
+            journalWrite(WriteAheadJournal.OP_PUT, RECORD_APPOINTMENT, appointment.toFileString(), this::saveAppointments);
+        });
+    }
+    
+    // Membatalkan appointment yang masih Booked: status menjadi Dibatalkan dan slot dapat dipesan lagi.
+    // Status appointment dan jadwal ditulis sebagai satu transaksi journal, seperti booking.
+    public boolean cancelAppointment(String appointmentId) {
+        Appointment appointment = appointments.get(appointmentId);
+        if (appointment == null
+                || !appointment.transitionStatus(Appointment.STATUS_BOOKED, Appointment.STATUS_CANCELLED)) {
+            return false;
+        }
+        Schedule schedule = schedules.get(appointment.getScheduleId());
+        boolean released = schedule != null && schedule.release(appointmentId);
+        if (released) {
+            scheduleIndex.refresh(schedule);
+            availability.refresh(schedule);
+            statistics.availabilityChanged(schedule.getDoctorId(), 1);
+        }
+        ReentrantLock stripe = schedule != null ? doctorLocks.forKey(schedule.getDoctorId()) : null;
+        checkpointLock.readLock().lock();
+        if (stripe != null) {
+            stripe.lock();
+        }
+        try {
+            List<String[]> records = new ArrayList<>(2);
+            if (released) {
+                records.add(new String[] {WriteAheadJournal.OP_PUT, RECORD_SCHEDULE, schedule.toFileString()});
+            }
+            records.add(new String[] {WriteAheadJournal.OP_PUT, RECORD_APPOINTMENT, appointment.toFileString()});
+            // Mode txt: jadwal dulu, agar crash di antaranya meninggalkan appointment Booked pada slot yang
+            // tersedia, yang diperbaiki saat dimuat (lihat linkLoadedRecords)
+            journalWriteAll(records, () -> {
+                saveSchedules();
+                saveAppointments();
+            });
+        } finally {
+            if (stripe != null) {
+                stripe.unlock();
+            }
+            checkpointLock.readLock().unlock();
+        }
+        finishWrite();
+        eventBus.publish(AppointmentEvent.statusChanged(appointment, schedule != null ? schedule.getDoctorId() : null));
+        return true;
+    }
+    
+    // Booked -> Selesai secara atomik, lalu riwayat disimpan. false (riwayat tidak ditulis) jika appointment sudah
+    // diselesaikan atau dibatalkan lebih dulu, misalnya oleh request lain yang bersamaan.
+    // Riwayat dan status harus pulih bersama setelah crash: tanpa HistoryStore keduanya satu transaksi journal.
+    // Mode LSM memakai journal terpisah, jadi status ditulis dulu; riwayat yang hilang karena crash di antaranya
+    // bisa ditulis ulang karena HistoryStore hanya menerima satu riwayat per appointment.
+    public boolean completeAppointment(Appointment appointment, ConsultationHistory history) {
+        if (!appointment.transitionStatus(Appointment.STATUS_BOOKED, Appointment.STATUS_DONE)) {
+            return false;
+        }
+        if (historyStore != null) {
+            updateAppointment(appointment);
+            addConsultationHistory(history);
+        } else {
+            mutate(doctorIdOf(appointment), () -> {
+                putConsultationHistory(history);
+                journalWriteAll(Arrays.asList(
+                    new String[] {WriteAheadJournal.OP_PUT, RECORD_HISTORY, history.toFileString()},
+                    new String[] {WriteAheadJournal.OP_PUT, RECORD_APPOINTMENT, appointment.toFileString()}),
+                    () -> {
+                        saveConsultationHistories();
+                        saveAppointments();
+                    });
+            });
         }
+        eventBus.publish(AppointmentEvent.statusChanged(appointment, doctorIdOf(appointment)));
+        return true;
     }
     
-    private void saveCounters() {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(COUNTERS_FILE))) {
-            pw.println(patientCounter);
-            pw.println(doctorCounter);
-            pw.println(scheduleCounter);
-            pw.println(appointmentCounter);
-            pw.println(historyCounter);
-        } catch (IOException e) {
-            System.err.println("Error saving counters: " + e.getMessage());
+    // Mengubah status, menyimpan, lalu memberi tahu pasien dan dokter lewat event bus
+    public void changeAppointmentStatus(Appointment appointment, String status) {
+        appointment.setStatus(status);
+        updateAppointment(appointment);
+        eventBus.publish(AppointmentEvent.statusChanged(appointment, doctorIdOf(appointment)));
+    }
+    
+    public void updateAppointment(Appointment appointment) {
+        mutate(doctorIdOf(appointment), () ->
+            journalWrite(WriteAheadJournal.OP_PUT, RECORD_APPOINTMENT, appointment.toFileString(), this::saveAppointments));
+    }
+    
+    public void removeAppointment(String appointmentId) {
+        Appointment appointment = appointments.get(appointmentId);
+        if (appointment == null) {
+            return;
         }
+        mutate(doctorIdOf(appointment), () -> {
+            if (appointments.remove(appointmentId) == null) {
+                return;
+            }
+            unindexAppointment(appointment);
+            journalWrite(WriteAheadJournal.OP_DEL, RECORD_APPOINTMENT, appointmentId, this::saveAppointments);
+        });
     }
     
-    private void loadPatients() {
-        try (BufferedReader br = new BufferedReader(new FileReader(PATIENTS_FILE))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                Patient patient = Patient.fromFileString(line);
-                patients.put(patient.getId(), patient);
+    public void addConsultationHistory(ConsultationHistory history) {
+        mutate(null, () -> {
+            putConsultationHistory(history);
+            // Mode LSM: HistoryStore mencatat riwayat di journal memtable-nya sendiri
+            if (historyStore == null) {
+                journalWrite(WriteAheadJournal.OP_PUT, RECORD_HISTORY, history.toFileString(), this::saveConsultationHistories);
             }
-        } catch (IOException e) {
-            // File doesn't exist yet
+        });
+    }
+    
+    private void putAppointment(Appointment appointment) {
+        unindexAppointment(appointments.put(appointment.getId(), appointment));
+        indexAppointment(appointment);
+    }
+    
+    private void indexAppointment(Appointment appointment) {
+        addToIndex(appointmentsByPatient, appointment.getPatientId(), appointment);
+        statistics.appointmentAdded(appointment.getPatientId(), 1);
+        Schedule schedule = schedules.get(appointment.getScheduleId());
+        if (schedule != null) {
+            appointmentsByDoctor.add(schedule, appointment);
         }
     }
     
-    private void savePatients() {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(PATIENTS_FILE))) {
-            for (Patient patient : patients.values()) {
-                pw.println(patient.toFileString());
-            }
-        } catch (IOException e) {
-            System.err.println("Error saving patients: " + e.getMessage());
+    private void unindexAppointment(Appointment appointment) {
+        if (appointment == null) {
+            return;
         }
+        removeFromIndex(appointmentsByPatient, appointment.getPatientId(), appointment);
+        statistics.appointmentAdded(appointment.getPatientId(), -1);
+        appointmentsByDoctor.remove(appointment.getId());
     }
     
-    private void loadDoctors() {
-        try (BufferedReader br = new BufferedReader(new FileReader(DOCTORS_FILE))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                Doctor doctor = Doctor.fromFileString(line);
-                doctors.put(doctor.getId(), doctor);
+    private void putConsultationHistory(ConsultationHistory history) {
+        if (historyStore != null) {
+            String patientId = patientIdOf(history);
+            try {
+                if (historyStore.put(history, patientId != null ? patientId : "")) {
+                    statistics.historyAdded(patientId, 1);
+                }
+            } catch (IOException e) {
+                System.err.println("Error writing history store: " + e.getMessage());
             }
-        } catch (IOException e) {
-            // File doesn't exist yet
+            return;
         }
+        ConsultationHistory previous = consultationHistories.put(history.getId(), history);
+        if (previous != null) {
+            removeFromIndex(historiesByAppointment, previous.getAppointmentId(), previous);
+            statistics.historyAdded(patientIdOf(previous), -1);
+        }
+        indexConsultationHistory(history);
     }
     
-    private void saveDoctors() {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(DOCTORS_FILE))) {
-            for (Doctor doctor : doctors.values()) {
-                pw.println(doctor.toFileString());
+    private void indexConsultationHistory(ConsultationHistory history) {
+        addToIndex(historiesByAppointment, history.getAppointmentId(), history);
+        statistics.historyAdded(patientIdOf(history), 1);
+    }
+    
+    private String patientIdOf(ConsultationHistory history) {
+        Appointment appointment = appointments.get(history.getAppointmentId());
+        return appointment != null ? appointment.getPatientId() : null;
+    }
+    
+    // List di dalam index tidak pernah diubah setelah dipublikasikan (copy-on-write),
+    // jadi pembaca bisa mengiterasinya tanpa lock
+    private static <T> void addToIndex(Map<String, List<T>> index, String key, T value) {
+        index.compute(key, (k, list) -> {
+            List<T> copy = list == null ? new ArrayList<>(1) : new ArrayList<>(list);
+            copy.add(value);
+            return copy;
+        });
+    }
+    
+    private static <T> void removeFromIndex(Map<String, List<T>> index, String key, T value) {
+        index.computeIfPresent(key, (k, list) -> {
+            List<T> copy = new ArrayList<>(list);
+            copy.remove(value);
+            return copy.isEmpty() ? null : copy;
+        });
+    }
+    
+    public Patient getPatient(String id) {
+        return patients.get(id);
+    }
+    
+    public Doctor getDoctor(String id) {
+        return doctors.get(id);
+    }
+    
+    public Schedule getSchedule(String id) {
+        return VirtualSlotCalendar.isVirtualId(id) ? virtualSlots.resolve(id) : schedules.get(id);
+    }
+    
+    public Appointment getAppointment(String id) {
+        return appointments.get(id);
+    }
+    
+    // Query jadwal terurut waktu lewat ScheduleIndex, digabung dengan slot virtual dari template
+    public List<Schedule> getAvailableSchedules(LocalDateTime from, LocalDateTime to, int limit) {
+        return ScheduleIndex.merge(scheduleIndex.availableBetween(from, to, limit),
+                                   virtualSlots.available(null, from, to, limit), limit);
+    }
+    
+    public List<Schedule> getAvailableSchedules(String doctorId, LocalDateTime from, LocalDateTime to, int limit) {
+        return ScheduleIndex.merge(scheduleIndex.availableForDoctor(doctorId, from, to, limit),
+                                   virtualSlots.available(Collections.singleton(doctorId), from, to, limit), limit);
+    }
+    
+    public List<Schedule> getNextAvailableSchedules(String specialization, LocalDateTime from, int limit) {
+        List<Schedule> concrete = scheduleIndex.nextAvailable(specialization, from, limit);
+        if (virtualSlots.isEmpty()) {
+            return concrete;
+        }
+        List<String> doctorIds = new ArrayList<>();
+        for (Doctor doctor : doctors.values()) {
+            if (doctor.getSpecialization().equalsIgnoreCase(specialization)) {
+                doctorIds.add(doctor.getId());
             }
-        } catch (IOException e) {
-            System.err.println("Error saving doctors: " + e.getMessage());
         }
+        return ScheduleIndex.merge(concrete, virtualSlots.available(doctorIds, from, LocalDateTime.MAX, limit), limit);
     }
     
-    private void loadSchedules() {
-        try (BufferedReader br = new BufferedReader(new FileReader(SCHEDULES_FILE))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                Schedule schedule = Schedule.fromFileString(line);
-                schedules.put(schedule.getId(), schedule);
-                Doctor doctor = doctors.get(schedule.getDoctorId());
-                if (doctor != null) {
-                    doctor.addSchedule(schedule);
+    // Jadwal nyata ditambah slot virtual yang masih terlihat
+    public List<Schedule> getDoctorSchedules(String doctorId) {
+        List<Schedule> concrete = scheduleIndex.doctorSchedules(doctorId);
+        if (virtualSlots.getTemplates(doctorId).isEmpty()) {
+            return concrete;
+        }
+        return ScheduleIndex.merge(concrete, virtualSlots.available(Collections.singleton(doctorId),
+            LocalDateTime.MIN, LocalDateTime.MAX, Integer.MAX_VALUE), Integer.MAX_VALUE);
+    }
+    
+    public boolean isDoctorFullyBooked(String doctorId, LocalDate date) {
+        if (!virtualSlots.hasSlots(doctorId, date)) {
+            return scheduleIndex.isFullyBooked(doctorId, date);
+        }
+        LocalDateTime from = date.atStartOfDay();
+        LocalDateTime to = date.plusDays(1).atStartOfDay();
+        return getAvailableSchedules(doctorId, from, to, 1).isEmpty();
+    }
+    
+    // Dokter yang bebas minutes menit berturut-turut pada tanggal dan rentang jam tersebut, satu jendela paling awal
+    // per dokter, terurut jam mulai. specialization null berarti semua dokter. Dicari lewat AvailabilityBitmap
+    // dalam unit 15 menit: jendela dimulai di awal slot tersedia dan hanya melewati slot yang tersedia.
+    public List<FreeWindow> findFreeWindows(String specialization, LocalDate date, LocalTime from, LocalTime to,
+                                            int minutes, int limit) {
+        int units = (minutes + AvailabilityBitmap.UNIT_MINUTES - 1) / AvailabilityBitmap.UNIT_MINUTES;
+        int fromUnit = (from.toSecondOfDay() / 60 + AvailabilityBitmap.UNIT_MINUTES - 1) / AvailabilityBitmap.UNIT_MINUTES;
+        int toUnit = to.equals(LocalTime.MAX) ? AvailabilityBitmap.UNITS
+            : to.toSecondOfDay() / 60 / AvailabilityBitmap.UNIT_MINUTES;
+        List<FreeWindow> result = new ArrayList<>();
+        for (Doctor doctor : doctors.values()) {
+            if (specialization != null && !doctor.getSpecialization().equalsIgnoreCase(specialization)) {
+                continue;
+            }
+            long[] words = availability.snapshot(doctor.getId(), date);
+            if (virtualSlots.hasSlots(doctor.getId(), date)) {
+                for (Schedule slot : virtualSlots.available(Collections.singleton(doctor.getId()), date.atStartOfDay(),
+                                                            date.plusDays(1).atStartOfDay(), Integer.MAX_VALUE)) {
+                    AvailabilityBitmap.mark(words, slot);
                 }
             }
-        } catch (IOException e) {
-            // File doesn't exist yet
+            int start = AvailabilityBitmap.firstWindow(words, units, fromUnit, toUnit);
+            if (start >= 0) {
+                LocalTime startTime = LocalTime.of(0, 0).plusMinutes((long) start * AvailabilityBitmap.UNIT_MINUTES);
+                result.add(new FreeWindow(doctor.getId(), date, startTime, startTime.plusMinutes(minutes)));
+            }
         }
+        result.sort(Comparator.comparing(FreeWindow::getStartTime).thenComparing(FreeWindow::getDoctorId));
+        return result.size() <= limit ? result : new ArrayList<>(result.subList(0, limit));
     }
     
-    private void saveSchedules() {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(SCHEDULES_FILE))) {
-            for (Schedule schedule : schedules.values()) {
-                pw.println(schedule.toFileString());
+    public ClinicStatistics getStatistics() {
+        return statistics;
+    }
+    
+    // null jika pasien dan riwayat dimuat penuh
+    LazyRecordStore<Patient> getLazyPatients() { return lazyPatients; }
+    LazyRecordStore<ConsultationHistory> getLazyHistories() { return lazyHistories; }
+    // null jika riwayat disimpan di snapshot
+    HistoryStore getHistoryStore() { return historyStore; }
+    
+    public Collection<Patient> getAllPatients() {
+        return patients.values();
+    }
+    
+    public Collection<Doctor> getAllDoctors() {
+        return doctors.values();
+    }
+    
+    public Collection<Schedule> getAllSchedules() {
+        return schedules.values();
+    }
+    
+    public Collection<Appointment> getAllAppointments() {
+        return appointments.values();
+    }
+    
+    public Collection<ConsultationHistory> getAllConsultationHistories() {
+        return historyStore != null ? historyStore.values() : consultationHistories.values();
+    }
+    
+    public List<Appointment> getPatientAppointments(String patientId) {
+        List<Appointment> result = appointmentsByPatient.get(patientId);
+        return result == null ? new ArrayList<>() : new ArrayList<>(result);
+    }
+    
+    public List<Appointment> getDoctorAppointments(String doctorId) {
+        return appointmentsByDoctor.page(doctorId, null, Integer.MAX_VALUE);
+    }
+    
+    public List<Appointment> getDoctorAppointments(String doctorId, String afterAppointmentId, int limit) {
+        return appointmentsByDoctor.page(doctorId, afterAppointmentId, limit);
+    }
+    
+    public int countDoctorAppointments(String doctorId) {
+        return appointmentsByDoctor.count(doctorId);
+    }
+    
+    public List<ConsultationHistory> getPatientConsultationHistory(String patientId) {
+        if (historyStore != null) {
+            return historyStore.forPatient(patientId);
+        }
+        List<ConsultationHistory> result = new ArrayList<>();
+        List<Appointment> patientAppointments = appointmentsByPatient.get(patientId);
+        if (patientAppointments == null) {
+            return result;
+        }
+        for (Appointment app : patientAppointments) {
+            List<ConsultationHistory> histories = historiesByAppointment.get(app.getId());
+            if (histories != null) {
+                result.addAll(histories);
             }
-        } catch (IOException e) {
-            System.err.println("Error saving schedules: " + e.getMessage());
+            if (lazyHistories != null) {
+                result.addAll(lazyHistories.archivedGroup(app.getId()));
+            }
+        }
+        return result;
+    }
+}
+
+// ==================== FACTORY METHOD PATTERN ====================
+
+abstract class UserFactory {
+    public abstract Patient createPatient(String name, String email, String phone, String address);
+    public abstract Doctor createDoctor(String name, String specialization);
+}
+
+class ConcreteUserFactory extends UserFactory {
+    private Database db = Database.getInstance();
+    
+    @Override
+    public Patient createPatient(String name, String email, String phone, String address) {
+        String id = db.generatePatientId();
+        Patient patient = new Patient(id, name, email, phone, address);
+        db.addPatient(patient);
+        System.out.println("\n[FACTORY] Patient baru berhasil dibuat dengan ID: " + id);
+        return patient;
+    }
+    
+    @Override
+    public Doctor createDoctor(String name, String specialization) {
+        String id = db.generateDoctorId();
+        Doctor doctor = new Doctor(id, name, specialization);
+        db.addDoctor(doctor);
+        System.out.println("\n[FACTORY] Doctor baru berhasil dibuat dengan ID: " + id);
+        return doctor;
+    }
+}
+
+// ==================== LATENCY HISTOGRAM ====================
+
+// Histogram log-linear dalam mikrodetik (8 sub-bucket per pangkat dua, galat < 12.5%).
+// record() tanpa lock sehingga aman dipanggil dari ribuan thread request.
+class LatencyHistogram {
+    private static final int SUB_BUCKETS = 8;
+    private static final int LINEAR_LIMIT = 16;
+    private static final int BUCKETS = LINEAR_LIMIT + (63 - 4) * SUB_BUCKETS;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+    
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(bucketOf(micros));
+        total.incrementAndGet();
+        totalMicros.addAndGet(micros);
+        maxMicros.accumulateAndGet(micros, Math::max);
+    }
+    
+    public long getCount() { return total.get(); }
+    public long getMaxMicros() { return maxMicros.get(); }
+    
+    public long getMeanMicros() {
+        long n = total.get();
+        return n == 0 ? 0 : totalMicros.get() / n;
+    }
+    
+    // Batas atas bucket yang memuat persentil ke-p (0 - 100)
+    public long percentileMicros(double p) {
+        long n = total.get();
+        if (n == 0) {
+            return 0;
         }
+        long rank = Math.max(1, (long) Math.ceil(n * p / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), maxMicros.get());
+            }
+        }
+        return maxMicros.get();
     }
     
-    private void loadAppointments() {
-        try (BufferedReader br = new BufferedReader(new FileReader(APPOINTMENTS_FILE))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                Appointment appointment = Appointment.fromFileString(line);
-                appointments.put(appointment.getId(), appointment);
+    private static int bucketOf(long micros) {
+        if (micros < LINEAR_LIMIT) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - 4) * SUB_BUCKETS + sub;
+    }
+    
+    private static long upperBoundOf(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + 4;
+        int sub = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exponent - 3)) - 1;
+    }
+}
+
+// ==================== HTTP API SERVER ====================
+
+// JSON minimal untuk HTTP API: objek datar dengan nilai string, angka, boolean atau null
+class Json {
+    private final StringBuilder sb = new StringBuilder("{");
+    
+    public Json put(String key, Object value) {
+        if (sb.length() > 1) {
+            sb.append(',');
+        }
+        quote(sb, key);
+        sb.append(':');
+        if (value == null) {
+            sb.append("null");
+        } else if (value instanceof Number || value instanceof Boolean || value instanceof Json) {
+            sb.append(value);
+        } else if (value instanceof Collection) {
+            sb.append('[');
+            String separator = "";
+            for (Object item : (Collection<?>) value) {
+                sb.append(separator);
+                if (item instanceof Json) {
+                    sb.append(item);
+                } else {
+                    quote(sb, String.valueOf(item));
+                }
+                separator = ",";
             }
-        } catch (IOException e) {
-            // File doesn't exist yet
+            sb.append(']');
+        } else {
+            quote(sb, value.toString());
         }
+        return this;
     }
     
-    private void saveAppointments() {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(APPOINTMENTS_FILE))) {
-            for (Appointment appointment : appointments.values()) {
-                pw.println(appointment.toFileString());
+    @Override
+    public String toString() {
+        return sb + "}";
+    }
+    
+    private static void quote(StringBuilder out, String s) {
+        out.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
             }
-        } catch (IOException e) {
-            System.err.println("Error saving appointments: " + e.getMessage());
         }
+        out.append('"');
     }
     
-    private void loadConsultationHistories() {
-        try (BufferedReader br = new BufferedReader(new FileReader(HISTORIES_FILE))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                ConsultationHistory history = ConsultationHistory.fromFileString(line);
-                consultationHistories.put(history.getId(), history);
+    // Hanya objek datar; nilai dikembalikan sebagai string
+    public static Map<String, String> parseObject(String text) {
+        Map<String, String> result = new LinkedHashMap<>();
+        int[] pos = {skipSpace(text, 0)};
+        if (text.trim().isEmpty()) {
+            return result;
+        }
+        expect(text, pos, '{');
+        pos[0] = skipSpace(text, pos[0]);
+        if (pos[0] < text.length() && text.charAt(pos[0]) == '}') {
+            return result;
+        }
+        while (true) {
+            pos[0] = skipSpace(text, pos[0]);
+            String key = parseString(text, pos);
+            pos[0] = skipSpace(text, pos[0]);
+            expect(text, pos, ':');
+            pos[0] = skipSpace(text, pos[0]);
+            result.put(key, parseValue(text, pos));
+            pos[0] = skipSpace(text, pos[0]);
+            if (pos[0] < text.length() && text.charAt(pos[0]) == ',') {
+                pos[0]++;
+                continue;
             }
-        } catch (IOException e) {
-            // File doesn't exist yet
+            expect(text, pos, '}');
+            return result;
         }
     }
     
-    private void saveConsultationHistories() {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(HISTORIES_FILE))) {
-            for (ConsultationHistory history : consultationHistories.values()) {
-                pw.println(history.toFileString());
+    private static String parseValue(String text, int[] pos) {
+        if (pos[0] < text.length() && text.charAt(pos[0]) == '"') {
+            return parseString(text, pos);
+        }
+        int start = pos[0];
+        while (pos[0] < text.length() && ",} \t\r\n".indexOf(text.charAt(pos[0])) < 0) {
+            pos[0]++;
+        }
+        String literal = text.substring(start, pos[0]);
+        if (literal.isEmpty() || literal.startsWith("{") || literal.startsWith("[")) {
+            throw new IllegalArgumentException("Nilai JSON tidak didukung pada posisi " + start);
+        }
+        return literal.equals("null") ? null : literal;
+    }
+    
+    private static String parseString(String text, int[] pos) {
+        expect(text, pos, '"');
+        StringBuilder out = new StringBuilder();
+        while (pos[0] < text.length()) {
+            char c = text.charAt(pos[0]++);
+            if (c == '"') {
+                return out.toString();
+            }
+            if (c == '\\') {
+                if (pos[0] >= text.length()) {
+                    break;
+                }
+                char escaped = text.charAt(pos[0]++);
+                switch (escaped) {
+                    case 'n': out.append('\n'); break;
+                    case 'r': out.append('\r'); break;
+                    case 't': out.append('\t'); break;
+                    case 'b': out.append('\b'); break;
+                    case 'f': out.append('\f'); break;
+                    case 'u':
+                        if (pos[0] + 4 > text.length()) {
+                            throw new IllegalArgumentException("Escape \\u tidak lengkap");
+                        }
+                        out.append((char) Integer.parseInt(text.substring(pos[0], pos[0] + 4), 16));
+                        pos[0] += 4;
+                        break;
+                    default: out.append(escaped);
+                }
+            } else {
+                out.append(c);
             }
-        } catch (IOException e) {
-            System.err.println("Error saving consultation histories: " + e.getMessage());
         }
+        throw new IllegalArgumentException("String JSON tidak ditutup");
     }
     
-    private void initializeSampleData() {
-        Doctor d1 = new Doctor("D001", "Dr. Ahmad Yani", "Kardiologi");
-        Doctor d2 = new Doctor("D002", "Dr. Siti Rahma", "Pediatri");
-        Doctor d3 = new Doctor("D003", "Dr. Budi Santoso", "Orthopedi");
-        addDoctor(d1);
-        addDoctor(d2);
-        addDoctor(d3);
-        doctorCounter = 4;
+    private static void expect(String text, int[] pos, char c) {
+        if (pos[0] >= text.length() || text.charAt(pos[0]) != c) {
+            throw new IllegalArgumentException("JSON tidak valid: diharapkan '" + c + "' pada posisi " + pos[0]);
+        }
+        pos[0]++;
+    }
+    
+    private static int skipSpace(String text, int pos) {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+}
+
+// HTTP/JSON API di atas Database. Setiap request membawa token sesi (header Authorization: Bearer),
+// jadi banyak pasien dan dokter dapat bekerja bersamaan, tidak seperti CLI yang hanya satu pengguna.
+// Setiap request ditangani virtual thread sendiri (Java 21+), atau pool platform thread di JVM lama.
+class ClinicHttpServer {
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final long SESSION_IDLE_MS = Long.getLong("clinic.http.sessionIdleSec", 1800) * 1000;
+    private static final int FALLBACK_THREADS = Integer.getInteger("clinic.http.threads", 256);
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    
+    private enum Role { PATIENT, DOCTOR }
+    
+    private static class Session {
+        final Role role;
+        final String userId;
+        volatile long lastSeenMillis = System.currentTimeMillis();
         
-        addSchedule(new Schedule("S001", d1.getId(), LocalDate.now().plusDays(1), LocalTime.of(9, 0), LocalTime.of(10, 0)));
-        addSchedule(new Schedule("S002", d1.getId(), LocalDate.now().plusDays(1), LocalTime.of(10, 0), LocalTime.of(11, 0)));
-        addSchedule(new Schedule("S003", d2.getId(), LocalDate.now().plusDays(2), LocalTime.of(14, 0), LocalTime.of(15, 0)));
-        addSchedule(new Schedule("S004", d3.getId(), LocalDate.now().plusDays(3), LocalTime.of(11, 0), LocalTime.of(12, 0)));
+        Session(Role role, String userId) {
+            this.role = role;
+            this.userId = userId;
+        }
+    }
+    
+    private static class ApiException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        
+        final int status;
         
-        saveCounters();
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+    
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+    
+    static {
+        // Header dan body respons ditulis terpisah; tanpa TCP_NODELAY, Nagle + delayed ACK
+        // menambah ~40 ms pada setiap request di koneksi keep-alive
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+    
+    private final Database db;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    
+    public ClinicHttpServer(Database db, int port) throws IOException {
+        this.db = db;
+        this.server = HttpServer.create(new InetSocketAddress(port), 1024);
+        this.executor = VirtualThreads.perTaskExecutor("http-", FALLBACK_THREADS);
+        server.setExecutor(executor);
+        route("/api/patients", this::handlePatients);
+        route("/api/login", this::handleLogin);
+        route("/api/logout", this::handleLogout);
+        route("/api/doctors", this::handleDoctors);
+        route("/api/bookings", this::handleBookings);
+        route("/api/appointments", this::handleAppointments);
+        route("/api/schedules", this::handleSchedules);
+        route("/api/slots", this::handleSlots);
+        route("/api/history", this::handleHistory);
+        route("/api/metrics", this::handleMetrics);
+    }
+    
+    public void start() {
+        server.start();
+    }
+    
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+    
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+    
+    // Persentil latensi per endpoint, diurutkan berdasarkan nama endpoint
+    public Map<String, LatencyHistogram> getLatencies() {
+        return new TreeMap<>(latencies);
+    }
+    
+    private void route(String path, Handler handler) {
+        server.createContext(path, exchange -> {
+            long start = System.nanoTime();
+            String name = exchange.getRequestMethod() + " " + routeName(path, exchange.getRequestURI().getPath());
+            try {
+                handler.handle(exchange);
+            } catch (ApiException e) {
+                send(exchange, e.status, new Json().put("error", e.getMessage()));
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                send(exchange, 400, new Json().put("error", e.getMessage()));
+            } catch (RuntimeException e) {
+                System.err.println("Error handling " + name + ": " + e);
+                send(exchange, 500, new Json().put("error", "Kesalahan internal"));
+            } finally {
+                exchange.close();
+                latencies.computeIfAbsent(name, k -> new LatencyHistogram()).recordNanos(System.nanoTime() - start);
+            }
+        });
+    }
+    
+    // "/api/schedules/S001" -> "/api/schedules/{id}", agar metrik tidak dipecah per ID
+    private static String routeName(String context, String path) {
+        if (path.length() <= context.length() + 1) {
+            return context;
+        }
+        String rest = path.substring(context.length() + 1);
+        int slash = rest.indexOf('/');
+        return context + "/{id}" + (slash < 0 ? "" : rest.substring(slash));
+    }
+    
+    // ---- endpoint ----
+    
+    // POST /api/patients {name, email, phone, address}
+    private void handlePatients(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "POST");
+        Map<String, String> body = readBody(exchange);
+        Patient patient = new Patient(db.generatePatientId(), required(body, "name"), required(body, "email"),
+                                      body.getOrDefault("phone", "-"), body.getOrDefault("address", "-"));
+        db.addPatient(patient);
+        send(exchange, 201, patientJson(patient));
     }
     
-    public String generatePatientId() {
-        String id = String.format("P%03d", patientCounter++);
-        saveCounters();
-        return id;
+    // POST /api/login {role: "patient" | "doctor", id}
+    private void handleLogin(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "POST");
+        Map<String, String> body = readBody(exchange);
+        Role role = Role.valueOf(required(body, "role").toUpperCase(Locale.ROOT));
+        String id = required(body, "id");
+        Json user;
+        if (role == Role.PATIENT) {
+            Patient patient = db.getPatient(id);
+            if (patient == null) {
+                throw new ApiException(401, "ID pasien tidak ditemukan");
+            }
+            user = patientJson(patient);
+        } else {
+            Doctor doctor = db.getDoctor(id);
+            if (doctor == null) {
+                throw new ApiException(401, "ID dokter tidak ditemukan");
+            }
+            user = doctorJson(doctor);
+        }
+        String token = newToken();
+        sessions.put(token, new Session(role, id));
+        expireIdleSessions();
+        send(exchange, 200, new Json().put("token", token).put("role", role.name()).put("user", user));
     }
     
-    public String generateDoctorId() {
-        String id = String.format("D%03d", doctorCounter++);
-        saveCounters();
-        return id;
+    // POST /api/logout
+    private void handleLogout(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "POST");
+        String token = tokenOf(exchange);
+        if (token == null || sessions.remove(token) == null) {
+            throw new ApiException(401, "Sesi tidak valid");
+        }
+        send(exchange, 200, new Json().put("loggedOut", true));
     }
     
-    public String generateScheduleId() {
-        String id = String.format("S%03d", scheduleCounter++);
-        saveCounters();
-        return id;
+    // GET /api/doctors[?specialization=X&limit=50] - dokter beserta slot tersedia terdekat
+    private void handleDoctors(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "GET");
+        Map<String, String> query = query(exchange);
+        String specialization = query.get("specialization");
+        int limit = limit(query);
+        LocalDateTime now = LocalDateTime.now();
+        List<Json> result = new ArrayList<>();
+        for (Doctor doctor : db.getAllDoctors()) {
+            if (specialization != null && !doctor.getSpecialization().equalsIgnoreCase(specialization)) {
+                continue;
+            }
+            List<Json> available = new ArrayList<>();
+            for (Schedule schedule : db.getAvailableSchedules(doctor.getId(), now, LocalDateTime.MAX, limit)) {
+                available.add(scheduleJson(schedule));
+            }
+            result.add(doctorJson(doctor).put("availableSchedules", available)
+                .put("scheduleCount", db.getStatistics().getDoctorScheduleCount(doctor.getId()))
+                .put("availableCount", db.getStatistics().getDoctorAvailableCount(doctor.getId())));
+        }
+        send(exchange, 200, new Json().put("doctors", result));
     }
     
-    public String generateAppointmentId() {
-        String id = String.format("A%03d", appointmentCounter++);
-        saveCounters();
-        return id;
+    // POST /api/bookings {scheduleId} (pasien)
+    private void handleBookings(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "POST");
+        Session session = requireSession(exchange, Role.PATIENT);
+        String scheduleId = required(readBody(exchange), "scheduleId");
+        BookingResult result = db.bookSchedule(session.userId, scheduleId);
+        switch (result.getStatus()) {
+            case NOT_FOUND:
+                throw new ApiException(404, "Jadwal tidak ditemukan");
+            case ALREADY_BOOKED:
+                throw new ApiException(409, "Jadwal sudah dipesan oleh pasien lain");
+            default:
+                break;
+        }
+        Schedule schedule = result.getSchedule();
+        Appointment appointment = result.getAppointment();
+        db.getEventBus().publish(AppointmentEvent.booked(appointment, schedule, db.getDoctor(schedule.getDoctorId())));
+        send(exchange, 201, appointmentJson(appointment).put("schedule", scheduleJson(schedule)));
     }
     
-    public String generateHistoryId() {
-        String id = String.format("H%03d", historyCounter++);
-        saveCounters();
-        return id;
+    // GET  /api/appointments[?after=A001&limit=50]   pasien: semua miliknya, dokter: per halaman
+    // POST /api/appointments/{id}/complete {diagnosis, notes} (dokter)
+    private void handleAppointments(HttpExchange exchange) throws IOException {
+        String[] parts = subPath(exchange, "/api/appointments");
+        if (parts.length == 0) {
+            requireMethod(exchange, "GET");
+            Session session = requireSession(exchange, null);
+            List<Appointment> appointments;
+            Map<String, String> query = query(exchange);
+            if (session.role == Role.PATIENT) {
+                appointments = db.getPatientAppointments(session.userId);
+            } else {
+                appointments = db.getDoctorAppointments(session.userId, query.get("after"), limit(query));
+            }
+            List<Json> result = new ArrayList<>();
+            for (Appointment appointment : appointments) {
+                result.add(appointmentJson(appointment));
+            }
+            Json response = new Json().put("appointments", result);
+            if (session.role == Role.DOCTOR) {
+                response.put("total", db.countDoctorAppointments(session.userId));
+            }
+            send(exchange, 200, response);
+            return;
+        }
+        if (parts.length != 2 || !parts[1].equals("complete")) {
+            throw new ApiException(404, "Endpoint tidak ditemukan");
+        }
+        requireMethod(exchange, "POST");
+        Session session = requireSession(exchange, Role.DOCTOR);
+        Appointment appointment = db.getAppointment(parts[0]);
+        if (appointment == null) {
+            throw new ApiException(404, "Appointment tidak ditemukan");
+        }
+        Schedule schedule = db.getSchedule(appointment.getScheduleId());
+        if (schedule == null || !schedule.getDoctorId().equals(session.userId)) {
+            throw new ApiException(403, "Appointment ini bukan milik Anda");
+        }
+        if (!appointment.getStatus().equals("Booked")) {
+            throw new ApiException(409, "Appointment sudah berstatus " + appointment.getStatus());
+        }
+        Map<String, String> body = readBody(exchange);
+        ConsultationHistory history = new ConsultationHistory(db.generateHistoryId(), appointment.getId(),
+            required(body, "diagnosis"), body.getOrDefault("notes", ""));
+        if (!db.completeAppointment(appointment, history)) {
+            throw new ApiException(409, "Appointment sudah berstatus " + appointment.getStatus());
+        }
+        send(exchange, 200, appointmentJson(appointment).put("history", historyJson(history)));
     }
     
-    public void addPatient(Patient patient) {
-        patients.put(patient.getId(), patient);
-        savePatients();
+    // GET    /api/schedules                          jadwal dokter yang login
+    // POST   /api/schedules {date, startTime, endTime} (yyyy-MM-dd, HH:mm)
+    // POST   /api/schedules/recurring {days, startTime, endTime, slotMinutes, from, until}
+    // DELETE /api/schedules/{id}
+    private void handleSchedules(HttpExchange exchange) throws IOException {
+        Session session = requireSession(exchange, Role.DOCTOR);
+        Doctor doctor = db.getDoctor(session.userId);
+        if (doctor == null) {
+            throw new ApiException(404, "Dokter tidak ditemukan");
+        }
+        String[] parts = subPath(exchange, "/api/schedules");
+        String method = exchange.getRequestMethod();
+        if (parts.length == 0 && method.equals("GET")) {
+            List<Json> result = new ArrayList<>();
+            for (Schedule schedule : db.getDoctorSchedules(doctor.getId())) {
+                result.add(scheduleJson(schedule));
+            }
+            send(exchange, 200, new Json().put("schedules", result));
+        } else if (parts.length == 0 && method.equals("POST")) {
+            Map<String, String> body = readBody(exchange);
+            LocalDate date = LocalDate.parse(required(body, "date"));
+            LocalTime startTime = LocalTime.parse(required(body, "startTime"));
+            LocalTime endTime = LocalTime.parse(required(body, "endTime"));
+            if (!endTime.isAfter(startTime)) {
+                throw new ApiException(400, "Jam selesai harus setelah jam mulai");
+            }
+            Schedule schedule = new Schedule(db.generateScheduleId(), doctor.getId(), date, startTime, endTime);
+            ScheduleConflict conflict = db.addSchedule(schedule);
+            if (conflict != null) {
+                throw new ApiException(409, conflict.getReason());
+            }
+            send(exchange, 201, scheduleJson(schedule));
+        } else if (parts.length == 1 && parts[0].equals("recurring") && method.equals("POST")) {
+            Map<String, String> body = readBody(exchange);
+            ScheduleTemplate template = new ScheduleTemplate(doctor.getId(),
+                ScheduleTemplate.parseDays(required(body, "days")),
+                LocalTime.parse(required(body, "startTime")), LocalTime.parse(required(body, "endTime")),
+                Integer.parseInt(required(body, "slotMinutes")),
+                LocalDate.parse(required(body, "from")), LocalDate.parse(required(body, "until")));
+            List<ScheduleConflict> conflicts = db.publishTemplates(Collections.singletonList(template));
+            if (!conflicts.isEmpty()) {
+                throw new ApiException(409, conflicts.size() + " slot bentrok, tidak ada jadwal yang ditambahkan. "
+                                       + conflicts.get(0).getReason());
+            }
+            send(exchange, 201, new Json().put("created", template.countSlots()));
+        } else if (parts.length == 1 && method.equals("DELETE")) {
+            Schedule schedule = db.getSchedule(parts[0]);
+            if (schedule == null || !schedule.getDoctorId().equals(doctor.getId())) {
+                throw new ApiException(404, "Jadwal tidak ditemukan");
+            }
+            if (!db.removeSchedule(schedule.getId())) {
+                throw new ApiException(409, "Jadwal tidak dapat dihapus karena sudah ada booking");
+            }
+            send(exchange, 200, new Json().put("removed", schedule.getId()));
+        } else {
+            throw new ApiException(405, "Metode tidak didukung");
+        }
     }
     
-    public void addDoctor(Doctor doctor) {
-        doctors.put(doctor.getId(), doctor);
-        saveDoctors();
+    // GET /api/slots - slot tersedia terurut waktu, dari sekarang jika from tidak diisi
+    //   ?from=2026-10-20T08:00&to=2026-10-21T00:00     semua dokter dalam rentang
+    //   ?specialization=Umum                            slot berikutnya untuk satu spesialisasi
+    //   ?doctorId=D001&date=2026-10-20                  satu hari dokter, beserta fullyBooked
+    //   ?minutes=45&from=2026-10-20T08:00&to=2026-10-20T12:00[&specialization=Kardiologi]
+    //                                                   dokter yang bebas 45 menit berturut-turut (satu hari)
+    //   limit (default 50, maks 500) berlaku untuk semua bentuk
+    private void handleSlots(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "GET");
+        Map<String, String> query = query(exchange);
+        if (query.containsKey("minutes")) {
+            handleFreeWindows(exchange, query);
+            return;
+        }
+        int limit = limit(query);
+        String doctorId = query.get("doctorId");
+        String specialization = query.get("specialization");
+        LocalDate date = query.containsKey("date") ? LocalDate.parse(query.get("date")) : null;
+        LocalDateTime from = date != null ? date.atStartOfDay()
+            : query.containsKey("from") ? LocalDateTime.parse(query.get("from")) : LocalDateTime.now();
+        LocalDateTime to = date != null ? date.plusDays(1).atStartOfDay()
+            : query.containsKey("to") ? LocalDateTime.parse(query.get("to")) : LocalDateTime.MAX;
+        
+        List<Schedule> slots;
+        if (doctorId != null) {
+            if (db.getDoctor(doctorId) == null) {
+                throw new ApiException(404, "Dokter tidak ditemukan");
+            }
+            slots = db.getAvailableSchedules(doctorId, from, to, limit);
+        } else if (specialization != null) {
+            slots = new ArrayList<>();
+            for (Schedule schedule : db.getNextAvailableSchedules(specialization, from, limit)) {
+                if (!schedule.getDate().atTime(schedule.getStartTime()).isBefore(to)) {
+                    break;
+                }
+                slots.add(schedule);
+            }
+        } else {
+            slots = db.getAvailableSchedules(from, to, limit);
+        }
+        List<Json> result = new ArrayList<>();
+        for (Schedule schedule : slots) {
+            result.add(scheduleJson(schedule));
+        }
+        Json response = new Json().put("slots", result);
+        if (doctorId != null && date != null) {
+            response.put("fullyBooked", db.isDoctorFullyBooked(doctorId, date));
+        }
+        send(exchange, 200, response);
     }
     
-    public void addSchedule(Schedule schedule) {
-        schedules.put(schedule.getId(), schedule);
-        Doctor doctor = doctors.get(schedule.getDoctorId());
-        if (doctor != null) {
-            doctor.addSchedule(schedule);
+    private void handleFreeWindows(HttpExchange exchange, Map<String, String> query) throws IOException {
+        int minutes = Integer.parseInt(query.get("minutes"));
+        if (minutes <= 0) {
+            throw new ApiException(400, "minutes harus lebih dari 0");
         }
-        saveSchedules();
+        LocalDateTime from = query.containsKey("date") ? LocalDate.parse(query.get("date")).atStartOfDay()
+            : query.containsKey("from") ? LocalDateTime.parse(query.get("from")) : LocalDateTime.now();
+        LocalDate date = from.toLocalDate();
+        LocalTime to = LocalTime.MAX;
+        if (query.containsKey("to") && !query.containsKey("date")) {
+            LocalDateTime end = LocalDateTime.parse(query.get("to"));
+            to = end.toLocalDate().equals(date) ? end.toLocalTime() : LocalTime.MAX;
+        }
+        List<Json> result = new ArrayList<>();
+        for (FreeWindow window : db.findFreeWindows(query.get("specialization"), date, from.toLocalTime(), to,
+                                                    minutes, limit(query))) {
+            List<Json> slots = new ArrayList<>();
+            for (Schedule schedule : db.getAvailableSchedules(window.getDoctorId(), date.atTime(window.getStartTime()),
+                                                              date.atTime(window.getEndTime()), limit(query))) {
+                slots.add(scheduleJson(schedule));
+            }
+            result.add(new Json()
+                .put("doctorId", window.getDoctorId())
+                .put("date", window.getDate().toString())
+                .put("startTime", window.getStartTime().toString())
+                .put("endTime", window.getEndTime().toString())
+                .put("slots", slots));
+        }
+        send(exchange, 200, new Json().put("windows", result));
     }
     
-    public void updateSchedule(Schedule schedule) {
-        saveSchedules();
+    // GET /api/history (pasien)
+    private void handleHistory(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "GET");
+        Session session = requireSession(exchange, Role.PATIENT);
+        List<Json> result = new ArrayList<>();
+        for (ConsultationHistory history : db.getPatientConsultationHistory(session.userId)) {
+            result.add(historyJson(history));
+        }
+        send(exchange, 200, new Json().put("histories", result));
     }
     
-    public void removeSchedule(String scheduleId) {
-        Schedule schedule = schedules.get(scheduleId);
-        if (schedule != null) {
-            schedules.remove(scheduleId);
-            Doctor doctor = doctors.get(schedule.getDoctorId());
-            if (doctor != null) {
-                doctor.removeSchedule(schedule);
+    // GET /api/metrics - latensi per endpoint dan statistik notifikasi
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "GET");
+        List<Json> routes = new ArrayList<>();
+        for (Map.Entry<String, LatencyHistogram> entry : getLatencies().entrySet()) {
+            routes.add(latencyJson(new Json().put("route", entry.getKey()), entry.getValue()));
+        }
+        List<Json> channels = new ArrayList<>();
+        for (ChannelStats stats : NotificationDispatcher.getInstance().getStats()) {
+            channels.add(new Json().put("channel", stats.getChannel()).put("queueDepth", stats.getQueueDepth())
+                .put("sent", stats.getSent()).put("failed", stats.getFailed()).put("dropped", stats.getDropped()));
+        }
+        ClinicStatistics statistics = db.getStatistics();
+        Json clinic = new Json().put("patients", db.getAllPatients().size()).put("doctors", db.getAllDoctors().size())
+            .put("schedules", statistics.getScheduleCount()).put("availableSchedules", statistics.getAvailableScheduleCount())
+            .put("appointments", statistics.getAppointmentCount()).put("histories", statistics.getHistoryCount());
+        WriteBehindFlusher flusher = db.getFlusher();
+        WriteAheadJournal journal = db.getJournal();
+        Json persistence = new Json().put("durability", flusher != null ? flusher.getMode().name() : "SYNC")
+            .put("fsync", journal != null && journal.isFsync());
+        if (journal != null) {
+            persistence.put("force", latencyJson(new Json(), journal.getForceLatency()))
+                .put("journalSegments", journal.getSegmentCount()).put("journalBytes", journal.getSizeBytes())
+                .put("journalRecords", journal.getRecordCount())
+                .put("compaction", latencyJson(new Json(), db.getCompactionLatency())
+                    .put("bytesReclaimed", db.getBytesReclaimed()).put("lastBytesReclaimed", db.getLastBytesReclaimed())
+                    .put("recordsReclaimed", db.getRecordsReclaimed()));
+        }
+        HistoryStore historyStore = db.getHistoryStore();
+        if (historyStore != null) {
+            persistence.put("histories", new Json().put("records", historyStore.size())
+                .put("segments", historyStore.getSegmentCount()).put("memtable", historyStore.getMemtableSize())
+                .put("flush", latencyJson(new Json(), historyStore.getFlushLatency()))
+                .put("merge", latencyJson(new Json(), historyStore.getMergeLatency()))
+                .put("segmentReads", historyStore.getSegmentReads()).put("bloomSkips", historyStore.getBloomSkips()));
+        }
+        if (db.getLazyPatients() != null) {
+            Json lazy = new Json().put("patients", lazyJson(db.getLazyPatients()));
+            if (db.getLazyHistories() != null) {
+                lazy.put("histories", lazyJson(db.getLazyHistories()));
             }
-            saveSchedules();
+            persistence.put("lazy", lazy);
         }
+        if (flusher != null) {
+            persistence.put("flushes", flusher.getFlushes())
+                .put("recordsSubmitted", flusher.getRecordsSubmitted()).put("recordsWritten", flusher.getRecordsWritten())
+                .put("meanBatch", flusher.getMeanBatch()).put("largestBatch", flusher.getLargestBatch())
+                .put("commit", latencyJson(new Json(), flusher.getCommitLatency()))
+                .put("ack", latencyJson(new Json(), flusher.getAckLatency()));
+        }
+        send(exchange, 200, new Json().put("sessions", sessions.size()).put("virtualThreads", VirtualThreads.isAvailable())
+            .put("routes", routes).put("notifications", channels).put("clinic", clinic).put("persistence", persistence));
     }
     
-    public void addAppointment(Appointment appointment) {
-        appointments.put(appointment.getId(), appointment);
-        saveAppointments();
+    // ---- helper ----
+    
+    private static Json lazyJson(LazyRecordStore<?> store) {
+        return new Json().put("archived", store.getArchivedCount()).put("resident", store.getResidentCount())
+            .put("cached", store.getCachedCount()).put("loads", store.getLoads()).put("cacheHits", store.getCacheHits());
     }
     
-    public void addConsultationHistory(ConsultationHistory history) {
-        consultationHistories.put(history.getId(), history);
-        saveConsultationHistories();
+    private static Json latencyJson(Json json, LatencyHistogram h) {
+        return json.put("count", h.getCount()).put("meanUs", h.getMeanMicros()).put("p50Us", h.percentileMicros(50))
+            .put("p99Us", h.percentileMicros(99)).put("maxUs", h.getMaxMicros());
     }
     
-    public Patient getPatient(String id) {
-        return patients.get(id);
+    private Session requireSession(HttpExchange exchange, Role role) {
+        String token = tokenOf(exchange);
+        Session session = token == null ? null : sessions.get(token);
+        long now = System.currentTimeMillis();
+        if (session == null || now - session.lastSeenMillis > SESSION_IDLE_MS) {
+            if (session != null) {
+                sessions.remove(token);
+            }
+            throw new ApiException(401, "Silakan login terlebih dahulu");
+        }
+        if (role != null && session.role != role) {
+            throw new ApiException(403, "Endpoint ini hanya untuk " + role.name().toLowerCase(Locale.ROOT));
+        }
+        session.lastSeenMillis = now;
+        return session;
     }
     
-    public Doctor getDoctor(String id) {
-        return doctors.get(id);
+    private void expireIdleSessions() {
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(s -> now - s.lastSeenMillis > SESSION_IDLE_MS);
     }
     
-    public Schedule getSchedule(String id) {
-        return schedules.get(id);
+    private String newToken() {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        StringBuilder sb = new StringBuilder(32);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
     }
     
-    public Appointment getAppointment(String id) {
-        return appointments.get(id);
+    private static String tokenOf(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) {
+            return null;
+        }
+        return header.substring("Bearer ".length()).trim();
     }
     
-    public Collection<Patient> getAllPatients() {
-        return patients.values();
+    private static void requireMethod(HttpExchange exchange, String method) {
+        if (!exchange.getRequestMethod().equals(method)) {
+            throw new ApiException(405, "Metode tidak didukung");
+        }
     }
     
-    public Collection<Doctor> getAllDoctors() {
-        return doctors.values();
+    private static String required(Map<String, String> body, String key) {
+        String value = body.get(key);
+        if (value == null || value.trim().isEmpty()) {
+            throw new ApiException(400, "Field '" + key + "' wajib diisi");
+        }
+        return value.trim();
     }
     
-    public Collection<Schedule> getAllSchedules() {
-        return schedules.values();
+    private static String[] subPath(HttpExchange exchange, String context) {
+        String path = exchange.getRequestURI().getPath();
+        String rest = path.length() > context.length() ? path.substring(context.length() + 1) : "";
+        return rest.isEmpty() ? new String[0] : rest.split("/");
     }
     
-    public Collection<Appointment> getAllAppointments() {
-        return appointments.values();
+    // Field disimpan apa adanya di payload journal dan file .txt (satu record per baris, kolom dipisah '|'),
+    // jadi baris baru dan '|' ditolak di sini sebelum sampai ke Database
+    private static Map<String, String> readBody(HttpExchange exchange) throws IOException {
+        byte[] bytes = exchange.getRequestBody().readNBytes(MAX_BODY_BYTES + 1);
+        if (bytes.length > MAX_BODY_BYTES) {
+            throw new ApiException(413, "Body request terlalu besar");
+        }
+        Map<String, String> body = Json.parseObject(new String(bytes, StandardCharsets.UTF_8));
+        for (Map.Entry<String, String> field : body.entrySet()) {
+            String value = field.getValue();
+            if (value != null && (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0 || value.indexOf('|') >= 0)) {
+                throw new ApiException(400, "Field '" + field.getKey() + "' tidak boleh berisi baris baru atau '|'");
+            }
+        }
+        return body;
     }
     
-    public Collection<ConsultationHistory> getAllConsultationHistories() {
-        return consultationHistories.values();
+    private static int limit(Map<String, String> query) {
+        return Math.min(500, Integer.parseInt(query.getOrDefault("limit", String.valueOf(DEFAULT_PAGE_SIZE))));
     }
     
-    public List<Appointment> getPatientAppointments(String patientId) {
-        List<Appointment> result = new ArrayList<>();
-        for (Appointment app : appointments.values()) {
-            if (app.getPatientId().equals(patientId)) {
-                result.add(app);
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> result = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) {
+            return result;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                result.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                           URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
             }
         }
         return result;
     }
     
-    public List<ConsultationHistory> getPatientConsultationHistory(String patientId) {
-        List<ConsultationHistory> result = new ArrayList<>();
-        for (ConsultationHistory history : consultationHistories.values()) {
-            Appointment app = appointments.get(history.getAppointmentId());
-            if (app != null && app.getPatientId().equals(patientId)) {
-                result.add(history);
-            }
+    private static void send(HttpExchange exchange, int status, Json body) throws IOException {
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
         }
-        return result;
     }
-}
-
-// ==================== FACTORY METHOD PATTERN ====================
-
-abstract class UserFactory {
-    public abstract Patient createPatient(String name, String email, String phone, String address);
-    public abstract Doctor createDoctor(String name, String specialization);
-}
-
-class ConcreteUserFactory extends UserFactory {
-    private Database db = Database.getInstance();
     
-    @Override
-    public Patient createPatient(String name, String email, String phone, String address) {
-        String id = db.generatePatientId();
-        Patient patient = new Patient(id, name, email, phone, address);
-        db.addPatient(patient);
-        System.out.println("\n[FACTORY] Patient baru berhasil dibuat dengan ID: " + id);
-        return patient;
+    private static Json patientJson(Patient patient) {
+        return new Json().put("id", patient.getId()).put("name", patient.getName()).put("email", patient.getEmail())
+            .put("phone", patient.getPhone()).put("address", patient.getAddress());
     }
     
-    @Override
-    public Doctor createDoctor(String name, String specialization) {
-        String id = db.generateDoctorId();
-        Doctor doctor = new Doctor(id, name, specialization);
-        db.addDoctor(doctor);
-        System.out.println("\n[FACTORY] Doctor baru berhasil dibuat dengan ID: " + id);
-        return doctor;
+    private static Json doctorJson(Doctor doctor) {
+        return new Json().put("id", doctor.getId()).put("name", doctor.getName())
+            .put("specialization", doctor.getSpecialization());
+    }
+    
+    private static Json scheduleJson(Schedule schedule) {
+        return new Json().put("id", schedule.getId()).put("doctorId", schedule.getDoctorId())
+            .put("date", schedule.getDate().toString()).put("startTime", schedule.getStartTime().toString())
+            .put("endTime", schedule.getEndTime().toString()).put("available", schedule.isAvailable());
+    }
+    
+    private static Json appointmentJson(Appointment appointment) {
+        return new Json().put("id", appointment.getId()).put("patientId", appointment.getPatientId())
+            .put("scheduleId", appointment.getScheduleId()).put("bookingDate", appointment.getBookingDate().toString())
+            .put("status", appointment.getStatus());
+    }
+    
+    private static Json historyJson(ConsultationHistory history) {
+        return new Json().put("id", history.getId()).put("appointmentId", history.getAppointmentId())
+            .put("date", history.getConsultationDate().toString()).put("diagnosis", history.getDiagnosis())
+            .put("notes", history.getNotes());
     }
 }
 
@@ -672,8 +6846,16 @@ public class DoctorSchedulingApp {
     private static Scanner scanner = new Scanner(System.in);
     private static Patient currentPatient = null;
     private static Doctor currentDoctor = null;
+    private static final int APPOINTMENT_PAGE_SIZE = 10;
+    private static final int SLOTS_PER_DOCTOR = 5;
+    private static final int SEARCH_LIMIT = 20;
     
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--http")) {
+            startHttpServer(args.length > 1 ? Integer.parseInt(args[1]) : 8080);
+            return;
+        }
+        
         System.out.println("╔════════════════════════════════════════════════╗");
         System.out.println("║   SISTEM PENJADWALAN DOKTER KLINIK SEHAT      ║");
         System.out.println("║        (Singleton, Factory, Strategy,          ║");
@@ -684,22 +6866,29 @@ public class DoctorSchedulingApp {
             showMainMenu();
             int choice = getIntInput("Pilih menu: ");
             
-            switch (choice) {
-                case 1:
-                    patientMenu();
-                    break;
-                case 2:
-                    doctorMenu();
-                    break;
-                case 3:
-                    viewAllDoctorsAndPatients();
-                    break;
-                case 4:
-                    System.out.println("\n✓ Data telah disimpan ke file .txt");
-                    System.out.println("Terima kasih telah menggunakan sistem kami!");
-                    return;
-                default:
-                    System.out.println("Pilihan tidak valid!");
+            try {
+                switch (choice) {
+                    case 1:
+                        patientMenu();
+                        break;
+                    case 2:
+                        doctorMenu();
+                        break;
+                    case 3:
+                        viewAllDoctorsAndPatients();
+                        break;
+                    case 4:
+                        NotificationDispatcher.getInstance().shutdown(5000);
+                        db.shutdown();
+                        System.out.println("\n✓ Data telah disimpan ke file .txt");
+                        System.out.println("Terima kasih telah menggunakan sistem kami!");
+                        return;
+                    default:
+                        System.out.println("Pilihan tidak valid!");
+                }
+            } catch (UncheckedIOException e) {
+                // Mis. journal gagal ditulis: perubahan terakhir tidak tersimpan, menu tetap berjalan
+                System.out.println("✗ " + e.getMessage() + ": " + e.getCause().getMessage());
             }
         }
     }
@@ -747,6 +6936,7 @@ public class DoctorSchedulingApp {
         System.out.println("=".repeat(80));
         
         Collection<Doctor> doctors = db.getAllDoctors();
+        ClinicStatistics statistics = db.getStatistics();
         
         if (doctors.isEmpty()) {
             System.out.println("Belum ada dokter terdaftar.");
@@ -756,18 +6946,15 @@ public class DoctorSchedulingApp {
                 System.out.println(no + ". ID: " + doctor.getId());
                 System.out.println("   Nama: " + doctor.getName());
                 System.out.println("   Spesialisasi: " + doctor.getSpecialization());
-                System.out.println("   Jumlah Jadwal: " + doctor.getSchedules().size());
-                
-                // Hitung jadwal tersedia
-                long availableSchedules = doctor.getSchedules().stream()
-                    .filter(Schedule::isAvailable)
-                    .count();
-                System.out.println("   Jadwal Tersedia: " + availableSchedules);
+                System.out.println("   Jumlah Jadwal: " + statistics.getDoctorScheduleCount(doctor.getId()));
+                System.out.println("   Jadwal Tersedia: " + statistics.getDoctorAvailableCount(doctor.getId()));
                 
                 System.out.println("   " + "-".repeat(76));
                 no++;
             }
             System.out.println("\nTotal Dokter: " + doctors.size());
+            System.out.println("Total Jadwal: " + statistics.getScheduleCount()
+                               + " (tersedia " + statistics.getAvailableScheduleCount() + ")");
         }
         System.out.println("=".repeat(80));
     }
@@ -777,6 +6964,7 @@ public class DoctorSchedulingApp {
         System.out.println("=".repeat(80));
         
         Collection<Patient> patients = db.getAllPatients();
+        ClinicStatistics statistics = db.getStatistics();
         
         if (patients.isEmpty()) {
             System.out.println("Belum ada pasien terdaftar.");
@@ -789,18 +6977,15 @@ public class DoctorSchedulingApp {
                 System.out.println("   Telepon: " + patient.getPhone());
                 System.out.println("   Alamat: " + patient.getAddress());
                 
-                // Hitung jumlah appointment
-                List<Appointment> appointments = db.getPatientAppointments(patient.getId());
-                System.out.println("   Jumlah Appointment: " + appointments.size());
-                
-                // Hitung jumlah riwayat konsultasi
-                List<ConsultationHistory> histories = db.getPatientConsultationHistory(patient.getId());
-                System.out.println("   Riwayat Konsultasi: " + histories.size());
+                System.out.println("   Jumlah Appointment: " + statistics.getPatientAppointmentCount(patient.getId()));
+                System.out.println("   Riwayat Konsultasi: " + statistics.getPatientHistoryCount(patient.getId()));
                 
                 System.out.println("   " + "-".repeat(76));
                 no++;
             }
             System.out.println("\nTotal Pasien: " + patients.size());
+            System.out.println("Total Appointment: " + statistics.getAppointmentCount()
+                               + ", Riwayat Konsultasi: " + statistics.getHistoryCount());
         }
         System.out.println("=".repeat(80));
     }
@@ -931,73 +7116,128 @@ public class DoctorSchedulingApp {
         }
     }
     
+    // Hanya slot terdekat per dokter; slot lain dicari lewat spesialisasi atau rentang tanggal saat booking
     private static void viewDoctorList() {
         System.out.println("\n>>> DAFTAR DOKTER & JADWAL <<<");
         System.out.println("=".repeat(80));
         
+        LocalDateTime now = LocalDateTime.now();
         for (Doctor doctor : db.getAllDoctors()) {
             System.out.println("ID: " + doctor.getId());
             System.out.println("Nama: " + doctor.getName());
             System.out.println("Spesialisasi: " + doctor.getSpecialization());
-            System.out.println("\nJadwal Tersedia:");
-            
-            boolean hasSchedule = false;
-            for (Schedule schedule : doctor.getSchedules()) {
-                if (schedule.isAvailable()) {
-                    System.out.printf("  [%s] %s | %s - %s\n", 
-                        schedule.getId(),
-                        schedule.getDate().format(DateTimeFormatter.ofPattern("dd-MM-yyyy")),
-                        schedule.getStartTime().format(DateTimeFormatter.ofPattern("HH:mm")),
-                        schedule.getEndTime().format(DateTimeFormatter.ofPattern("HH:mm")));
-                    hasSchedule = true;
-                }
-            }
-            
-            if (!hasSchedule) {
-                System.out.println("  Tidak ada jadwal tersedia");
-            }
+            System.out.println("\nJadwal Tersedia Terdekat:");
             
+            List<Schedule> upcoming = db.getAvailableSchedules(doctor.getId(), now, LocalDateTime.MAX, SLOTS_PER_DOCTOR);
+            printSchedules(upcoming);
             System.out.println("=".repeat(80));
         }
     }
     
+    private static void printSchedules(List<Schedule> schedules) {
+        if (schedules.isEmpty()) {
+            System.out.println("  Tidak ada jadwal tersedia");
+        }
+        for (Schedule schedule : schedules) {
+            Doctor doctor = db.getDoctor(schedule.getDoctorId());
+            System.out.printf("  [%s] %s | %s - %s | %s\n",
+                schedule.getId(),
+                schedule.getDate().format(DateTimeFormatter.ofPattern("dd-MM-yyyy")),
+                schedule.getStartTime().format(DateTimeFormatter.ofPattern("HH:mm")),
+                schedule.getEndTime().format(DateTimeFormatter.ofPattern("HH:mm")),
+                doctor != null ? doctor.getName() : schedule.getDoctorId());
+        }
+    }
+    
+    private static void searchSchedules() {
+        System.out.println("\n>>> CARI JADWAL <<<");
+        System.out.println("1. Slot terdekat per dokter");
+        System.out.println("2. Slot terdekat per spesialisasi");
+        System.out.println("3. Slot dalam rentang tanggal");
+        System.out.println("4. Dokter yang bebas beberapa menit berturut-turut");
+        int choice = getIntInput("Pilih: ");
+        
+        try {
+            switch (choice) {
+                case 2:
+                    System.out.print("Spesialisasi: ");
+                    String specialization = scanner.nextLine().trim();
+                    printSchedules(db.getNextAvailableSchedules(specialization, LocalDateTime.now(), SEARCH_LIMIT));
+                    break;
+                case 3:
+                    System.out.print("Dari tanggal (dd-MM-yyyy): ");
+                    LocalDate from = LocalDate.parse(scanner.nextLine().trim(), DateTimeFormatter.ofPattern("dd-MM-yyyy"));
+                    System.out.print("Sampai tanggal (dd-MM-yyyy): ");
+                    LocalDate to = LocalDate.parse(scanner.nextLine().trim(), DateTimeFormatter.ofPattern("dd-MM-yyyy"));
+                    LocalDateTime start = from.atStartOfDay();
+                    if (start.isBefore(LocalDateTime.now())) {
+                        start = LocalDateTime.now();
+                    }
+                    printSchedules(db.getAvailableSchedules(start, to.plusDays(1).atStartOfDay(), SEARCH_LIMIT));
+                    break;
+                case 4:
+                    searchFreeWindows();
+                    break;
+                default:
+                    viewDoctorList();
+            }
+        } catch (DateTimeParseException e) {
+            System.out.println("✗ Format tanggal tidak valid!");
+        }
+    }
+    
+    // Mis. "dokter jantung yang bebas 45 menit besok pagi"; slot yang menutup jendela tersebut ikut ditampilkan
+    private static void searchFreeWindows() {
+        System.out.print("Spesialisasi (kosongkan untuk semua): ");
+        String specialization = scanner.nextLine().trim();
+        System.out.print("Tanggal (dd-MM-yyyy): ");
+        LocalDate date = LocalDate.parse(scanner.nextLine().trim(), DateTimeFormatter.ofPattern("dd-MM-yyyy"));
+        System.out.print("Dari jam (HH:mm): ");
+        LocalTime from = LocalTime.parse(scanner.nextLine().trim(), DateTimeFormatter.ofPattern("HH:mm"));
+        System.out.print("Sampai jam (HH:mm): ");
+        LocalTime to = LocalTime.parse(scanner.nextLine().trim(), DateTimeFormatter.ofPattern("HH:mm"));
+        int minutes = getIntInput("Durasi (menit): ");
+        
+        List<FreeWindow> windows = db.findFreeWindows(specialization.isEmpty() ? null : specialization,
+                                                      date, from, to, minutes, SEARCH_LIMIT);
+        if (windows.isEmpty()) {
+            System.out.println("  Tidak ada dokter yang bebas " + minutes + " menit pada rentang tersebut");
+        }
+        for (FreeWindow window : windows) {
+            Doctor doctor = db.getDoctor(window.getDoctorId());
+            System.out.println("\n" + (doctor != null ? doctor.getName() : window.getDoctorId()) + ": bebas mulai "
+                               + window.getStartTime() + " - " + window.getEndTime());
+            printSchedules(db.getAvailableSchedules(window.getDoctorId(), date.atTime(window.getStartTime()),
+                                                    date.atTime(window.getEndTime()), SEARCH_LIMIT));
+        }
+    }
+    
     private static void bookAppointment() {
-        viewDoctorList();
+        searchSchedules();
         
         System.out.println("\n>>> BOOKING JADWAL KONSULTASI (OBSERVER PATTERN) <<<");
         System.out.print("Masukkan ID Jadwal yang ingin dipesan: ");
         String scheduleId = scanner.nextLine();
         
-        Schedule schedule = db.getSchedule(scheduleId);
+        BookingResult result = db.bookSchedule(currentPatient.getId(), scheduleId);
         
-        if (schedule == null) {
+        if (result.getStatus() == BookingResult.Status.NOT_FOUND) {
             System.out.println("✗ Jadwal tidak ditemukan!");
             return;
         }
         
-        if (!schedule.isAvailable()) {
+        if (result.getStatus() == BookingResult.Status.ALREADY_BOOKED) {
             System.out.println("✗ Jadwal sudah dipesan oleh pasien lain!");
             return;
         }
         
-        String appointmentId = db.generateAppointmentId();
-        Appointment appointment = new Appointment(appointmentId, currentPatient.getId(), scheduleId);
+        Schedule schedule = result.getSchedule();
+        Appointment appointment = result.getAppointment();
+        String appointmentId = appointment.getId();
         
-        // Observer Pattern - Attach observers
-        appointment.attach(currentPatient);
+        // Observer Pattern - pasien dan dokter menerima event lewat event bus
         Doctor doctor = db.getDoctor(schedule.getDoctorId());
-        if (doctor != null) {
-            appointment.attach(doctor);
-        }
-        
-        db.addAppointment(appointment);
-        schedule.setAvailable(false);
-        db.updateSchedule(schedule);
-        
-        // Notify observers
-        appointment.notifyObservers("Booking berhasil! Appointment ID: " + appointmentId + 
-                                   " dengan " + (doctor != null ? doctor.getName() : "Dokter") + 
-                                   " pada " + schedule.getDate().format(DateTimeFormatter.ofPattern("dd-MM-yyyy")));
+        db.getEventBus().publish(AppointmentEvent.booked(appointment, schedule, doctor));
         
         System.out.println("\n✓ Booking berhasil!");
         System.out.println("ID Appointment: " + appointmentId);
@@ -1081,11 +7321,12 @@ public class DoctorSchedulingApp {
             System.out.println("=".repeat(50));
             System.out.println("1. Lihat Jadwal Saya");
             System.out.println("2. Tambah Jadwal Baru");
-            System.out.println("3. Hapus Jadwal");
-            System.out.println("4. Lihat Daftar Appointment");
-            System.out.println("5. Selesaikan Konsultasi");
-            System.out.println("6. Ubah Metode Notifikasi");
-            System.out.println("7. Logout");
+            System.out.println("3. Tambah Jadwal Berulang");
+            System.out.println("4. Hapus Jadwal");
+            System.out.println("5. Lihat Daftar Appointment");
+            System.out.println("6. Selesaikan Konsultasi");
+            System.out.println("7. Ubah Metode Notifikasi");
+            System.out.println("8. Logout");
             System.out.println("=".repeat(50));
             
             int choice = getIntInput("Pilih menu: ");
@@ -1098,18 +7339,21 @@ public class DoctorSchedulingApp {
                     addDoctorSchedule();
                     break;
                 case 3:
-                    removeDoctorSchedule();
+                    addRecurringSchedule();
                     break;
                 case 4:
-                    viewDoctorAppointments();
+                    removeDoctorSchedule();
                     break;
                 case 5:
-                    completeConsultation();
+                    viewDoctorAppointments();
                     break;
                 case 6:
-                    chooseNotificationStrategyDoctor(currentDoctor);
+                    completeConsultation();
                     break;
                 case 7:
+                    chooseNotificationStrategyDoctor(currentDoctor);
+                    break;
+                case 8:
                     currentDoctor = null;
                     System.out.println("✓ Logout berhasil!");
                     return;
@@ -1123,7 +7367,14 @@ public class DoctorSchedulingApp {
         System.out.println("\n>>> JADWAL PRAKTEK SAYA <<<");
         System.out.println("=".repeat(80));
         
-        for (Schedule schedule : currentDoctor.getSchedules()) {
+        LocalDate day = null;
+        for (Schedule schedule : db.getDoctorSchedules(currentDoctor.getId())) {
+            if (!schedule.getDate().equals(day)) {
+                day = schedule.getDate();
+                if (db.isDoctorFullyBooked(currentDoctor.getId(), day)) {
+                    System.out.println("-- " + day.format(DateTimeFormatter.ofPattern("dd-MM-yyyy")) + ": penuh --");
+                }
+            }
             System.out.printf("[%s] %s | %s - %s | Status: %s\n",
                 schedule.getId(),
                 schedule.getDate().format(DateTimeFormatter.ofPattern("dd-MM-yyyy")),
@@ -1150,9 +7401,18 @@ public class DoctorSchedulingApp {
             String endStr = scanner.nextLine();
             LocalTime endTime = LocalTime.parse(endStr, DateTimeFormatter.ofPattern("HH:mm"));
             
+            if (!endTime.isAfter(startTime)) {
+                System.out.println("✗ Jam selesai harus setelah jam mulai!");
+                return;
+            }
+            
             String scheduleId = db.generateScheduleId();
             Schedule schedule = new Schedule(scheduleId, currentDoctor.getId(), date, startTime, endTime);
-            db.addSchedule(schedule);
+            ScheduleConflict conflict = db.addSchedule(schedule);
+            if (conflict != null) {
+                System.out.println("✗ " + conflict.getReason() + "!");
+                return;
+            }
             
             System.out.println("✓ Jadwal berhasil ditambahkan!");
             System.out.println("ID Jadwal: " + scheduleId);
@@ -1162,6 +7422,48 @@ public class DoctorSchedulingApp {
         }
     }
     
+    private static void addRecurringSchedule() {
+        System.out.println("\n>>> TAMBAH JADWAL BERULANG <<<");
+        
+        try {
+            System.out.print("Hari praktik (mis. Senin,Rabu): ");
+            Set<DayOfWeek> days = ScheduleTemplate.parseDays(scanner.nextLine());
+            
+            System.out.print("Jam Mulai (HH:mm): ");
+            LocalTime startTime = LocalTime.parse(scanner.nextLine(), DateTimeFormatter.ofPattern("HH:mm"));
+            
+            System.out.print("Jam Selesai (HH:mm): ");
+            LocalTime endTime = LocalTime.parse(scanner.nextLine(), DateTimeFormatter.ofPattern("HH:mm"));
+            
+            int slotMinutes = getIntInput("Durasi per slot (menit): ");
+            
+            System.out.print("Mulai tanggal (dd-MM-yyyy): ");
+            LocalDate fromDate = LocalDate.parse(scanner.nextLine(), DateTimeFormatter.ofPattern("dd-MM-yyyy"));
+            
+            System.out.print("Sampai tanggal (dd-MM-yyyy): ");
+            LocalDate untilDate = LocalDate.parse(scanner.nextLine(), DateTimeFormatter.ofPattern("dd-MM-yyyy"));
+            
+            ScheduleTemplate template = new ScheduleTemplate(currentDoctor.getId(), days, startTime, endTime,
+                                                             slotMinutes, fromDate, untilDate);
+            List<ScheduleConflict> conflicts = db.publishTemplates(Collections.singletonList(template));
+            if (!conflicts.isEmpty()) {
+                System.out.println("✗ Tidak ada jadwal yang ditambahkan, " + conflicts.size() + " slot bentrok:");
+                for (ScheduleConflict conflict : conflicts.subList(0, Math.min(5, conflicts.size()))) {
+                    Schedule schedule = conflict.getSchedule();
+                    System.out.println("  " + schedule.getDate().format(DateTimeFormatter.ofPattern("dd-MM-yyyy"))
+                                       + " " + schedule.getStartTime() + ": " + conflict.getReason());
+                }
+                return;
+            }
+            
+            System.out.println("✓ " + template.countSlots() + " jadwal berhasil ditambahkan!");
+        } catch (DateTimeParseException e) {
+            System.out.println("✗ Format tanggal/waktu tidak valid!");
+        } catch (IllegalArgumentException e) {
+            System.out.println("✗ " + e.getMessage() + "!");
+        }
+    }
+    
     private static void removeDoctorSchedule() {
         viewDoctorSchedule();
         System.out.print("\nMasukkan ID Jadwal yang ingin dihapus: ");
@@ -1169,10 +7471,9 @@ public class DoctorSchedulingApp {
         
         Schedule schedule = db.getSchedule(scheduleId);
         if (schedule != null && schedule.getDoctorId().equals(currentDoctor.getId())) {
-            if (!schedule.isAvailable()) {
+            if (!db.removeSchedule(scheduleId)) {
                 System.out.println("✗ Jadwal tidak dapat dihapus karena sudah ada booking!");
             } else {
-                db.removeSchedule(scheduleId);
                 System.out.println("✓ Jadwal berhasil dihapus!");
                 System.out.println("Data diperbarui di file schedules.txt");
             }
@@ -1185,24 +7486,41 @@ public class DoctorSchedulingApp {
         System.out.println("\n>>> DAFTAR APPOINTMENT <<<");
         System.out.println("=".repeat(80));
         
-        boolean hasAppointment = false;
-        for (Appointment app : db.getAllAppointments()) {
-            Schedule schedule = db.getSchedule(app.getScheduleId());
-            if (schedule != null && schedule.getDoctorId().equals(currentDoctor.getId())) {
+        int total = db.countDoctorAppointments(currentDoctor.getId());
+        if (total == 0) {
+            System.out.println("Belum ada appointment.");
+            return;
+        }
+        
+        // Ditampilkan per halaman, terurut berdasarkan tanggal dan jam jadwal
+        String cursor = null;
+        int shown = 0;
+        while (true) {
+            List<Appointment> page = db.getDoctorAppointments(currentDoctor.getId(), cursor, APPOINTMENT_PAGE_SIZE);
+            for (Appointment app : page) {
+                Schedule schedule = db.getSchedule(app.getScheduleId());
                 Patient patient = db.getPatient(app.getPatientId());
                 
                 System.out.println("ID Appointment: " + app.getId());
                 System.out.println("Pasien: " + (patient != null ? patient.getName() : "N/A"));
-                System.out.println("Tanggal: " + schedule.getDate().format(DateTimeFormatter.ofPattern("dd-MM-yyyy")));
-                System.out.println("Waktu: " + schedule.getStartTime() + " - " + schedule.getEndTime());
+                // Jadwal bisa sudah tidak ada (slot dibatalkan lalu dihapus, atau data lama)
+                System.out.println("Tanggal: " + (schedule != null
+                    ? schedule.getDate().format(DateTimeFormatter.ofPattern("dd-MM-yyyy")) : "N/A"));
+                System.out.println("Waktu: " + (schedule != null
+                    ? schedule.getStartTime() + " - " + schedule.getEndTime() : "N/A"));
                 System.out.println("Status: " + app.getStatus());
                 System.out.println("=".repeat(80));
-                hasAppointment = true;
+                cursor = app.getId();
+            }
+            shown += page.size();
+            
+            if (shown >= total || page.isEmpty()) {
+                return;
+            }
+            System.out.print("Menampilkan " + shown + " dari " + total + ". Ketik 'n' untuk halaman berikutnya: ");
+            if (!scanner.nextLine().trim().equalsIgnoreCase("n")) {
+                return;
             }
-        }
-        
-        if (!hasAppointment) {
-            System.out.println("Belum ada appointment.");
         }
     }
     
@@ -1232,22 +7550,35 @@ public class DoctorSchedulingApp {
         
         String historyId = db.generateHistoryId();
         ConsultationHistory history = new ConsultationHistory(historyId, appointmentId, diagnosis, notes);
-        db.addConsultationHistory(history);
         
         // Observer Pattern - Update status dan notifikasi
-        Patient patient = db.getPatient(appointment.getPatientId());
-        if (patient != null) {
-            appointment.attach(patient);
+        if (!db.completeAppointment(appointment, history)) {
+            System.out.println("✗ Appointment sudah berstatus " + appointment.getStatus() + "!");
+            return;
         }
-        appointment.attach(currentDoctor);
-        
-        appointment.setStatus("Selesai");
         
         System.out.println("\n✓ Konsultasi berhasil diselesaikan!");
         System.out.println("ID Riwayat: " + historyId);
         System.out.println("Data tersimpan di file histories.txt");
     }
     
+    // Mode server: java DoctorSchedulingApp --http [port]; berhenti dengan Ctrl+C
+    private static void startHttpServer(int port) {
+        try {
+            ClinicHttpServer server = new ClinicHttpServer(db, port);
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop(1);
+                NotificationDispatcher.getInstance().shutdown(5000);
+                db.shutdown();
+            }));
+            System.out.println("[INFO] HTTP API berjalan di http://localhost:" + server.getPort() + "/api" +
+                               (VirtualThreads.isAvailable() ? " (virtual thread per request)" : ""));
+        } catch (IOException e) {
+            System.err.println("Error starting HTTP server: " + e.getMessage());
+        }
+    }
+    
     private static int getIntInput(String prompt) {
         while (true) {
             try {